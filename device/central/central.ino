@@ -30,7 +30,10 @@
 
 const char CR = (int8_t)'\r';
 const char LF = (int8_t)'\n';
+const char LETTER_A = (int8_t)'A';
 const char LETTER_B = (int8_t)'B';
+const char LETTER_C = (int8_t)'C';
+const char LETTER_F = (int8_t)'F';
 const char LETTER_G = (int8_t)'G';
 const char LETTER_L = (int8_t)'L';
 const char LETTER_R = (int8_t)'R';
@@ -88,13 +91,38 @@ const int8_t commBuffL = 40;
 char commBuff[commBuffL];
 
 // For commands sent by PC application.
-const int8_t appBuffL = 5;
+const int8_t appBuffL = 8;
 char appBuff[appBuffL];
 int8_t appL;
 
 // Data received from remote device.
 const int8_t remBuffL = 20;
 char remBuff[remBuffL];
+// Number of characters in remBuff.
+int8_t remL;
+
+// Framing of frames sent to the application. See BinaryFraming class of the
+// application. With binary framing, every frame is COBS encoded with a CRC-16,
+// and followed by 0x00. Frames are built into frameBuff before being encoded.
+boolean binaryFraming;
+const int8_t frameBuffL = 43;   // Type, 40 characters, CRC.
+uint8_t frameBuff[frameBuffL];
+int8_t frameL;
+uint8_t encodedBuff[frameBuffL + 2];
+
+// Most frequent traces, or beginnings of traces, sent as a code with binary
+// framing. Must be the same as TRACE_PREFIXES of the application.
+const char * const tracePrefixes[] = {
+  "T--------------------",
+  "T> radio set wdt ",
+  "T< ok",
+  "T> radio rx 0",
+  "T< radio_err",
+  "T< radio_rx  ",
+  "T> radio tx ",
+  "T< radio_tx_ok"
+};
+const uint8_t tracePrefixesL = sizeof(tracePrefixes) / sizeof(tracePrefixes[0]);
 
 enum events {
   evEndOfWait, evMsgRec, evUnknown
@@ -109,6 +137,7 @@ int intRs;
 boolean blueLedOn;
 
 const int ledMsgL = 4;    // L x CR LF
+const int framingMsgL = 4;    // F x CR LF
 
 /**
  * 
@@ -204,6 +233,7 @@ void setup() {
   currRespState = stWaitCR;
 
   appL = 0;
+  binaryFraming = false;
 
   exitSetup:
   if (!initialized) traceSerial.println(F("Error during initialization"));
@@ -219,7 +249,7 @@ void loop() {
 
   if (!initialized) return;
 
-  traceSerial.println(F("T--------------------"));
+  traceLine(F("T--------------------"));
 
   // Enter continuous reception mode after having set appropriate
   // timeout.
@@ -228,7 +258,7 @@ void loop() {
   sendCommand(commBuff, strlen(commBuff));
   boolRs = waitForResponse(RESET);
   if (!boolRs) {
-    traceSerial.println(F("TWTD request error"));
+    traceLine(F("TWTD request error"));
     initialized = false;
     return;
   }
@@ -236,7 +266,7 @@ void loop() {
   sendCommand(cmdRadioRx, sizeof(cmdRadioRx) - 1);
   boolRs = waitForResponse(RESET);
   if (!boolRs) {
-    traceSerial.println(F("TRX request error"));
+    traceLine(F("TRX request error"));
     initialized = false;
     return;
   }
@@ -245,7 +275,7 @@ void loop() {
   // when a command message is received.
   boolRs = waitForResponse(NORESET);
   if (!boolRs) {
-    traceSerial.println(F("Tend of RX request error"));
+    traceLine(F("Tend of RX request error"));
     initialized = false;
     return;
   }
@@ -263,6 +293,7 @@ void loop() {
       for (uint8_t i = start; i <= end; i++) {
         remBuff[i - start] = respBuff[i];
       }
+      remL = end - start + 1;
     }
   }
   if (respL >= (int8_t)(sizeof(respRadioErr) - 1)) {
@@ -284,19 +315,23 @@ void loop() {
       processTemperature();
       break;
     default:
-      traceSerial.print(F("Tunknown message type: "));
-      traceSerial.println(msgType);
+      outBegin();
+      outFlashStr(F("Tunknown message type: "));
+      outChar(msgType);
+      outEnd();
     }
     break;
   case evEndOfWait:
     // Nothing special in this case.
     break;
   case evUnknown:
-    traceSerial.println(F("TERROR: unknown event type"));
+    traceLine(F("TERROR: unknown event type"));
     break;
   default:
-    traceSerial.print(F("TERROR: unknown event type - "));
-    traceSerial.println(event);
+    outBegin();
+    outFlashStr(F("TERROR: unknown event type - "));
+    outNumber(event);
+    outEnd();
   }
   
   // Check whether the application sent us a command for remote device, and
@@ -315,19 +350,25 @@ void loop() {
 
 /**
  * Checks whether a command from the application is present in serial link buffer.
- * We currently support only one command: set RGB LED, so our check is very simple
- * and naive.
+ * We currently support two commands: set RGB LED of a remote device, and set
+ * framing, so our check is very simple and naive.
+ *
+ * LED command: 'L', identifier of remote device on 2 bytes, color, CR LF.
+ * Framing command: 'F', 'B' or 'A', CR LF.
  */
 void processCommand() {
 
-  char tempStr[5];
+  char tempStr[9];
   int recChar;
 
-  // Get all possibly waiting characters.
+  // Get all possibly waiting characters. Characters that do not fit into
+  // command buffer are lost.
   recChar = traceSerial.read();
   while (recChar != -1) {
-    appBuff[appL] = (char)recChar;
-    appL++;
+    if (appL < appBuffL) {
+      appBuff[appL] = (char)recChar;
+      appL++;
+    }
     // A very small delay seems to be required, in order to get all characters
     // waiting in serial-over-USB RX buffer! Otherwise, control is returned to
     // main loop, and command is processed in next iteration only. To be
@@ -336,31 +377,48 @@ void processCommand() {
     recChar = traceSerial.read();
   }
   if (appL >= 4) {
-    if (appBuff[0] == LETTER_L && appBuff[2] == CR && appBuff[3] == LF) {
+    if (appBuff[0] == LETTER_L && appL < 6) {
+      // Rest of LED command not received yet.
+      return;
+    }
+    if (appBuff[0] == LETTER_L && appBuff[4] == CR && appBuff[5] == LF) {
       appL = 0;
-      // LED command. Forward it.
-      tempStr[0] = hexa[(uint8_t)(LETTER_L >> 4 & 0x0F)];
-      tempStr[1] = hexa[(uint8_t)(LETTER_L & 0x0F)];
-      tempStr[2] = hexa[(uint8_t)(appBuff[1] >> 4 & 0x0F)];
-      tempStr[3] = hexa[(uint8_t)(appBuff[1] & 0x0F)];
-      tempStr[4] = 0;
+      // LED command. Forward it, with device identifier.
+      for (uint8_t i = 0; i < 4; i++) {
+        tempStr[2 * i] = hexa[(uint8_t)(appBuff[i] >> 4 & 0x0F)];
+        tempStr[2 * i + 1] = hexa[(uint8_t)(appBuff[i] & 0x0F)];
+      }
+      tempStr[8] = 0;
       strcpy(commBuff, cmdRadioTx);
       strcat(commBuff, tempStr);
       sendCommand(commBuff, strlen(commBuff));
       // Wait for first response.
       boolRs = waitForResponse(RESET);
       if (!boolRs) {
-        traceSerial.println(F("TRX request error"));
+        traceLine(F("TRX request error"));
         return;
       }
       // Wait for second response.
       boolRs = waitForResponse(RESET);
       if (!boolRs) {
-        traceSerial.println(F("Tend of RX request error"));
+        traceLine(F("Tend of RX request error"));
         return;
       }
+    } else if (appBuff[0] == LETTER_F && appBuff[2] == CR && appBuff[3] == LF) {
+      appL = 0;
+      // Framing command. Acknowledge it with current framing, then use
+      // requested framing.
+      if (appBuff[1] == LETTER_B) {
+        traceLine(F("Tframing binary"));
+        binaryFraming = true;
+      } else if (appBuff[1] == LETTER_A) {
+        traceLine(F("Tframing ascii"));
+        binaryFraming = false;
+      } else {
+        traceLine(F("Tunknown command"));
+      }
     } else {
-      traceSerial.println(F("Tunknown command"));
+      traceLine(F("Tunknown command"));
       appL = 0;
     }
   }
@@ -394,12 +452,20 @@ void processTemperature() {
 
   // Forward message to the application.
   // First send prefix.
-  traceSerial.print('A');
-  // Then send received message.
-  for (uint8_t i = 0; i < 7; i++) {
-    traceSerial.print(remBuff[i]);
+  outBegin();
+  outChar('A');
+  // Then send received message. With binary framing, hexadecimal characters
+  // are converted back to bytes.
+  if (binaryFraming) {
+    for (int8_t i = 0; i + 1 < remL; i += 2) {
+      outChar(hex2Char(remBuff[i], remBuff[i + 1]));
+    }
+  } else {
+    for (int8_t i = 0; i < remL; i++) {
+      outChar(remBuff[i]);
+    }
   }
-  traceSerial.println();
+  outEnd();
   
 }
 
@@ -484,7 +550,7 @@ int8_t getResponse() {
       weLoop = false;
       break;
     default:
-      traceSerial.println(F("**** internal error: unknown state for getResponse()"));
+      traceLine(F("**** internal error: unknown state for getResponse()"));
     }
   }
 
@@ -507,13 +573,14 @@ void resetResponse() {
  */
 void sendCommand(const char *cmd, int8_t cmdL) {
 
-  traceSerial.print(toStr);
+  outBegin();
+  outStr(toStr);
   for (int8_t i = 0; i < cmdL; i++) {
     loraSerial.print(cmd[i]);
-    traceSerial.print(cmd[i]);
+    outChar(cmd[i]);
   }
   loraSerial.println();
-  traceSerial.println();
+  outEnd();
   
 }
 
@@ -522,11 +589,12 @@ void sendCommand(const char *cmd, int8_t cmdL) {
  */
 void dumpResponse() {
 
-  traceSerial.print(fromStr);
+  outBegin();
+  outStr(fromStr);
   for (int8_t i = 0; i < respL; i++) {
-    traceSerial.print(respBuff[i]);
+    outChar(respBuff[i]);
   }
-  traceSerial.println();
+  outEnd();
   
 }
 
@@ -555,6 +623,169 @@ boolean waitForResponse(boolean reset) {
 
 }
 
+/**
+ * Starts a frame to be sent to the application.
+ */
+void outBegin() {
+
+  frameL = 0;
+
+}
+
+/**
+ * Adds a character to the frame being sent. With ASCII framing, it is sent
+ * immediately. With binary framing, characters exceeding the size of the frame
+ * buffer are lost.
+ */
+void outChar(char c) {
+
+  if (!binaryFraming) {
+    traceSerial.print(c);
+    return;
+  }
+  if (frameL < frameBuffL - 2) {
+    frameBuff[frameL] = (uint8_t)c;
+    frameL++;
+  }
+
+}
+
+/**
+ * 
+ */
+void outStr(const char *str) {
+
+  while (*str != 0) {
+    outChar(*str);
+    str++;
+  }
+
+}
+
+/**
+ * 
+ */
+void outFlashStr(const __FlashStringHelper *str) {
+
+  PGM_P p = reinterpret_cast<PGM_P>(str);
+  char c = pgm_read_byte(p);
+  while (c != 0) {
+    outChar(c);
+    p++;
+    c = pgm_read_byte(p);
+  }
+
+}
+
+/**
+ * 
+ */
+void outNumber(int n) {
+
+  char numStr[12];
+  itoa(n, numStr, 10);
+  outStr(numStr);
+
+}
+
+/**
+ * Ends the frame being sent. With ASCII framing, CR LF is sent. With binary
+ * framing, frequent traces are replaced by their code, then the frame is
+ * encoded and sent.
+ */
+void outEnd() {
+
+  if (!binaryFraming) {
+    traceSerial.println();
+    return;
+  }
+
+  // Look for the longest trace prefix.
+  int8_t code = -1;
+  uint8_t codeL = 0;
+  uint8_t prefixL;
+  for (uint8_t i = 0; i < tracePrefixesL; i++) {
+    prefixL = strlen(tracePrefixes[i]);
+    if ((prefixL > frameL) || (prefixL <= codeL)) continue;
+    if (memcmp(frameBuff, tracePrefixes[i], prefixL) == 0) {
+      code = i;
+      codeL = prefixL;
+    }
+  }
+  if (code >= 0) {
+    // Replace prefix by type and code.
+    frameBuff[0] = LETTER_C;
+    frameBuff[1] = (uint8_t)code;
+    memmove(&frameBuff[2], &frameBuff[codeL], frameL - codeL);
+    frameL = frameL - codeL + 2;
+  }
+
+  uint16_t crc = crc16(frameBuff, frameL);
+  frameBuff[frameL] = (uint8_t)(crc >> 8);
+  frameBuff[frameL + 1] = (uint8_t)crc;
+  uint8_t encodedL = cobsEncode(frameBuff, frameL + 2, encodedBuff);
+  traceSerial.write(encodedBuff, encodedL);
+  traceSerial.write((uint8_t)0);
+
+}
+
+/**
+ * Sends a whole trace.
+ */
+void traceLine(const __FlashStringHelper *line) {
+
+  outBegin();
+  outFlashStr(line);
+  outEnd();
+
+}
+
+/**
+ * CRC-16 CCITT, initial value 0xFFFF.
+ */
+uint16_t crc16(const uint8_t *data, uint8_t dataL) {
+
+  uint16_t crc = 0xFFFF;
+  for (uint8_t i = 0; i < dataL; i++) {
+    crc ^= (uint16_t)data[i] << 8;
+    for (uint8_t j = 0; j < 8; j++) {
+      if (crc & 0x8000) {
+        crc = (crc << 1) ^ 0x1021;
+      } else {
+        crc = crc << 1;
+      }
+    }
+  }
+  return crc;
+
+}
+
+/**
+ * COBS encoding. Data is shorter than 254 bytes: encoded data is one byte
+ * longer. Delimiter is not written.
+ */
+uint8_t cobsEncode(const uint8_t *data, uint8_t dataL, uint8_t *encoded) {
+
+  uint8_t codeIndex = 0;
+  uint8_t code = 1;
+  uint8_t encodedL = 1;
+  for (uint8_t i = 0; i < dataL; i++) {
+    if (data[i] == 0) {
+      encoded[codeIndex] = code;
+      codeIndex = encodedL;
+      encodedL++;
+      code = 1;
+    } else {
+      encoded[encodedL] = data[i];
+      encodedL++;
+      code++;
+    }
+  }
+  encoded[codeIndex] = code;
+  return encodedL;
+
+}
+
 /**
  * 
  */
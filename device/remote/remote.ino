@@ -32,6 +32,12 @@ const char CR = '\r';
 const char LF = '\n';
 const char LETTER_L = 'L';
 
+// Identifier of this remote device, sent in every message, on 2 bytes. Must
+// be different for every remote device served by a same central device.
+const uint16_t deviceId = 0x0001;
+// Commands sent to this identifier are processed by all remote devices.
+const uint16_t broadcastId = 0xFFFF;
+
 const char toStr[]   = {"> "};
 const char fromStr[] = {"< "};
 
@@ -291,13 +297,20 @@ void loop() {
 void processCommand() {
 
   char cmd;
+  uint16_t id;
 
   // Extract command.
   cmd = hex2Char(appBuff[0], appBuff[1]);
   if (cmd == LETTER_L) {
+    // We consider we have the right number of bytes! Identifier of the
+    // device follows the command.
+    id = ((uint8_t)hex2Char(appBuff[2], appBuff[3]) << 8) | (uint8_t)hex2Char(appBuff[4], appBuff[5]);
+    if ((id != deviceId) && (id != broadcastId)) {
+      traceSerial.println(F("command for another device"));
+      return;
+    }
     traceSerial.println(F("set LED command"));
-    // We consider we have the right number of bytes!
-    cmd = hex2Char(appBuff[2], appBuff[3]);
+    cmd = hex2Char(appBuff[6], appBuff[7]);
     switch (cmd) {
     case 'R':
       ledRed();
@@ -326,21 +339,26 @@ void processCommand() {
  */
 void sendTemperature() {
 
-  char tempStr[7];
+  char tempStr[11];
 
   digitalWrite(LED_BUILTIN, HIGH);
   // Read temperature and send it as a value from 0 to 1023 coded in 
-  // an hexadecimal string, prefixed by ASCII code for T letter.
+  // an hexadecimal string, prefixed by ASCII code for T letter and by
+  // device identifier.
   uint16_t mVolts = analogRead(TEMP_SENSOR);
   traceSerial.print("temperature: ");
   traceSerial.println(mVolts);
   tempStr[0] = hexa[(uint8_t)('T' >> 4 & 0x0F)];
   tempStr[1] = hexa[(uint8_t)('T' & 0x0F)];
-  tempStr[2] = hexa[(uint8_t)(mVolts >> 12 & 0x0F)];
-  tempStr[3] = hexa[(uint8_t)(mVolts >> 8 & 0x0F)];
-  tempStr[4] = hexa[(uint8_t)(mVolts >> 4 & 0x0F)];
-  tempStr[5] = hexa[(uint8_t)(mVolts & 0x0F)];
-  tempStr[6] = 0;
+  tempStr[2] = hexa[(uint8_t)(deviceId >> 12 & 0x0F)];
+  tempStr[3] = hexa[(uint8_t)(deviceId >> 8 & 0x0F)];
+  tempStr[4] = hexa[(uint8_t)(deviceId >> 4 & 0x0F)];
+  tempStr[5] = hexa[(uint8_t)(deviceId & 0x0F)];
+  tempStr[6] = hexa[(uint8_t)(mVolts >> 12 & 0x0F)];
+  tempStr[7] = hexa[(uint8_t)(mVolts >> 8 & 0x0F)];
+  tempStr[8] = hexa[(uint8_t)(mVolts >> 4 & 0x0F)];
+  tempStr[9] = hexa[(uint8_t)(mVolts & 0x0F)];
+  tempStr[10] = 0;
   strcpy(commBuff, cmdRadioTx);
   strcat(commBuff, tempStr);
   sendCommand(commBuff, strlen(commBuff));
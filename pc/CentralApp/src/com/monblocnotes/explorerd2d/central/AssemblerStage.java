@@ -0,0 +1,115 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Assembles frames from chunks of received bytes, and gives them to decoder stage.
+ * A chunk with a negative length resets frame assembly.
+ *
+ * If a capture writer is set, every chunk is written to it before being processed.
+ * An assembled frame is given the timestamp of the chunk its last byte belongs to.
+ *
+ */
+public class AssemblerStage extends PipelineStage implements FrameListener {
+
+	private FrameHandler frameHandler;
+	private SpscRing output;
+	private volatile CaptureWriter captureWriter;
+	// Timestamps of chunk being processed.
+	private long timestamp;
+	private long wallTime;
+
+	/**
+	 *
+	 * @param name
+	 * @param frameHandler
+	 * @param input chunks of received bytes
+	 * @param output assembled frames
+	 */
+	public AssemblerStage(String name, FrameHandler frameHandler, SpscRing input, SpscRing output) {
+
+		super(name, input);
+		this.frameHandler = frameHandler;
+		this.output = output;
+
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	protected void process(byte[] slot, int length, long timestamp, long wallTime) {
+
+		this.timestamp = timestamp;
+		this.wallTime = wallTime;
+		CaptureWriter cw = captureWriter;
+		if ((cw != null) && (length > 0)) {
+			cw.write(timestamp, slot, length);
+		}
+		if (length < 0) {
+			frameHandler.frameAssembler(-1);
+			return;
+		}
+		frameHandler.frameAssembler(slot, length, this);
+
+	}
+
+	/**
+	 * For FrameListener interface.
+	 */
+	@Override
+	public void frameAssembled(Frame frame) {
+
+		int index = output.claim();
+		if (index == -1) {
+			// Interrupted.
+			return;
+		}
+		output.publish(index, frame.copyTo(output.getSlot(index)), timestamp, wallTime);
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 *
+	 * @param captureWriter null to stop capture
+	 */
+	public void setCaptureWriter(CaptureWriter captureWriter) {
+
+		this.captureWriter = captureWriter;
+
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public long getStallCount() {
+
+		return output.getStallCount();
+
+	}
+
+}
@@ -0,0 +1,227 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * Writes time-stamped lines to a character stream, from a dedicated thread.
+ * Lines can be written from any context. Writer is flushed when there is no
+ * more line to write.
+ *
+ * When the queue of lines is full, callers wait, or lines are dropped, depending
+ * on the overload policy of the writer. Lines have no type: SAMPLE_TRACES policy
+ * is the same as DROP_NEWEST. Number of dropped lines is written before next
+ * written line.
+ *
+ */
+public class AsyncLineWriter implements Runnable {
+
+	private final static Logger log = Logger.get(LogCategory.APP);
+
+	// Maximum number of lines waiting to be written.
+	private final static int QUEUE_SIZE = 4096;
+	// Maximum time waited for a line, before checking whether writer is closed, in ms.
+	private final static long POLL_WAIT = 500;
+
+	private static class Line {
+		long time;
+		String text;
+	}
+
+	private BufferedWriter out;
+	private ArrayBlockingQueue<Line> lines;
+	private Thread thread;
+	private volatile boolean closed;
+	private OverloadPolicy policy;
+	private AtomicLong dropped;
+	// Number of dropped lines already reported by the writer thread.
+	private long reportedDropped;
+
+	private TimestampFormatter timeFormatter;
+	private StringBuilder timeText;
+
+	/**
+	 * Callers wait when the queue of lines is full.
+	 *
+	 * @param out
+	 * @param name name of writer thread
+	 */
+	public AsyncLineWriter(Writer out, String name) {
+
+		this(out, name, OverloadPolicy.BLOCK);
+
+	}
+
+	/**
+	 *
+	 * @param out
+	 * @param name name of writer thread
+	 * @param policy what is done when the queue of lines is full
+	 */
+	public AsyncLineWriter(Writer out, String name, OverloadPolicy policy) {
+
+		this.out = new BufferedWriter(out);
+		lines = new ArrayBlockingQueue<Line>(QUEUE_SIZE);
+		closed = false;
+		this.policy = policy;
+		dropped = new AtomicLong(0);
+		reportedDropped = 0;
+		timeFormatter = new TimestampFormatter("yyyy-MM-dd HH:mm:ss");
+		timeText = new StringBuilder(32);
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+
+	}
+
+	/**
+	 * Can be called from any context. Line is time-stamped with current time.
+	 * @param text
+	 */
+	public void write(String text) {
+
+		write(System.currentTimeMillis(), text);
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @param time time of the line, in ms since epoch
+	 * @param text
+	 */
+	public void write(long time, String text) {
+
+		Line line = new Line();
+		line.time = time;
+		line.text = text;
+		switch (policy) {
+		case BLOCK:
+			try {
+				lines.put(line);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			break;
+		case DROP_OLDEST:
+			while (!lines.offer(line)) {
+				if (lines.poll() != null) {
+					dropped.incrementAndGet();
+				}
+			}
+			break;
+		default:
+			if (!lines.offer(line)) {
+				dropped.incrementAndGet();
+			}
+		}
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @return number of lines dropped because the queue was full
+	 */
+	public long getDroppedCount() {
+
+		return dropped.get();
+
+	}
+
+	/**
+	 * Writes remaining lines, then closes the stream.
+	 */
+	public void close() {
+
+		closed = true;
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	/**
+	 * For Runnable interface.
+	 */
+	@Override
+	public void run() {
+
+		Line line;
+		try {
+			while (true) {
+				line = lines.poll();
+				if (line == null) {
+					out.flush();
+					if (closed && lines.isEmpty()) {
+						break;
+					}
+					line = lines.poll(POLL_WAIT, TimeUnit.MILLISECONDS);
+					if (line == null) {
+						continue;
+					}
+				}
+				long d = dropped.get();
+				if (d != reportedDropped) {
+					writeTime(line.time);
+					out.write(" - ");
+					out.write((d - reportedDropped) + " lines dropped");
+					out.newLine();
+					reportedDropped = d;
+				}
+				writeTime(line.time);
+				out.write(" - ");
+				out.write(line.text);
+				out.newLine();
+			}
+			out.close();
+		} catch (IOException e) {
+			log.error("write error: {}", e.getMessage());
+		} catch (InterruptedException e) {
+			// Nothing more to do.
+		}
+
+	}
+
+	/**
+	 * For writer thread.
+	 *
+	 * @param time
+	 * @throws IOException
+	 */
+	private void writeTime(long time) throws IOException {
+
+		timeText.setLength(0);
+		out.append(timeFormatter.format(time, timeText));
+
+	}
+
+}
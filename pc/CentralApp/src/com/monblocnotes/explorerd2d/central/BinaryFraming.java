@@ -0,0 +1,234 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * Binary framing of the link from the central device to the application, as an
+ * alternative to ASCII lines terminated by CR LF.
+ *
+ * Every frame is made of its type, its content and a CRC-16 (CCITT, initial
+ * value 0xFFFF, most significant byte first) of type and content. Frame is then
+ * COBS encoded, and followed by a 0x00 delimiter. Content of application frames
+ * is sent as raw bytes, instead of hexadecimal characters. Trace frames starting
+ * with one of the most frequent traces (see TRACE_PREFIXES) are sent as a code
+ * frame: type C, index of the trace, then remaining characters of the trace.
+ * Other trace frames keep their ASCII content. On reception, frames are given
+ * back their ASCII form, so that frame sinks and decoders process the same
+ * frames whatever the framing.
+ *
+ * Binary framing is requested by the application with FB CR LF command. Central
+ * device acknowledges it with a "Tframing binary" trace, still in ASCII, and
+ * uses binary framing from next frame. FA CR LF command goes back to ASCII
+ * framing. A central device without binary framing answers "Tunknown command":
+ * ASCII framing is then kept.
+ *
+ */
+public class BinaryFraming {
+
+	// Delimiter of COBS encoded frames.
+	public final static int DELIMITER = 0x00;
+	public final static int CRC_LENGTH = 2;
+	// Maximum length of a frame before encoding: type, raw content and CRC.
+	public final static int MAX_LENGTH_FRAME = 1 + FrameHandler.MAX_LENGTH_PAYLOAD + CRC_LENGTH;
+	// Maximum length of an encoded frame, delimiter excepted.
+	public final static int MAX_LENGTH_ENCODED = MAX_LENGTH_FRAME + 1 + MAX_LENGTH_FRAME / 254;
+
+	// Acknowledgements written by central device, type included.
+	public final static String BINARY_ACK = "Tframing binary";
+	public final static String ASCII_ACK = "Tframing ascii";
+
+	// Type of code frames.
+	public final static int CODE_FRAME = 'C';
+	// Most frequent traces, or beginnings of traces, written by central device,
+	// type included. Must be the same as in central.ino.
+	public final static String[] TRACE_PREFIXES = {
+		"T--------------------",
+		"T> radio set wdt ",
+		"T< ok",
+		"T> radio rx 0",
+		"T< radio_err",
+		"T< radio_rx  ",
+		"T> radio tx ",
+		"T< radio_tx_ok"
+	};
+	private final static byte[][] TRACE_PREFIX_BYTES = new byte[TRACE_PREFIXES.length][];
+
+	private final static byte LETTER_F = (byte)'F';
+	private final static byte LETTER_A = (byte)'A';
+	private final static byte LETTER_B = (byte)'B';
+
+	private final static int[] CRC_TABLE = new int[256];
+
+	static {
+		for (int i = 0; i < TRACE_PREFIXES.length; i++) {
+			TRACE_PREFIX_BYTES[i] = TRACE_PREFIXES[i].getBytes(StandardCharsets.US_ASCII);
+		}
+		int crc;
+		for (int i = 0; i < 256; i++) {
+			crc = i << 8;
+			for (int j = 0; j < 8; j++) {
+				crc = ((crc & 0x8000) != 0) ? (crc << 1) ^ 0x1021 : crc << 1;
+			}
+			CRC_TABLE[i] = crc & 0xFFFF;
+		}
+	}
+
+	/**
+	 *
+	 * @param binary true for binary framing, false for ASCII framing
+	 * @return command requesting a framing, terminators included
+	 */
+	public static byte[] createFramingMsg(boolean binary) {
+
+		return new byte[] { LETTER_F, binary ? LETTER_B : LETTER_A, (byte)FrameHandler.CR,
+				(byte)FrameHandler.LF };
+
+	}
+
+	/**
+	 *
+	 * @param code index of a trace prefix
+	 * @return trace prefix, type included, null if code is not valid
+	 */
+	public static byte[] getTracePrefix(int code) {
+
+		return ((code >= 0) && (code < TRACE_PREFIX_BYTES.length)) ? TRACE_PREFIX_BYTES[code] : null;
+
+	}
+
+	/**
+	 *
+	 * @param line
+	 * @param offset
+	 * @param length
+	 * @return index of the longest trace prefix line starts with, -1 if none
+	 */
+	public static int findTracePrefix(byte[] line, int offset, int length) {
+
+		int code = -1;
+		int codeLength = 0;
+		byte[] prefix;
+		for (int i = 0; i < TRACE_PREFIX_BYTES.length; i++) {
+			prefix = TRACE_PREFIX_BYTES[i];
+			if ((prefix.length > length) || (prefix.length <= codeLength)) {
+				continue;
+			}
+			int j = 0;
+			while ((j < prefix.length) && (line[offset + j] == prefix[j])) {
+				j++;
+			}
+			if (j == prefix.length) {
+				code = i;
+				codeLength = prefix.length;
+			}
+		}
+		return code;
+
+	}
+
+	/**
+	 *
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return CRC-16 CCITT of data
+	 */
+	public static int crc16(byte[] data, int offset, int length) {
+
+		int crc = 0xFFFF;
+		for (int i = offset; i < offset + length; i++) {
+			crc = ((crc << 8) ^ CRC_TABLE[((crc >> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+		}
+		return crc;
+
+	}
+
+	/**
+	 * COBS encodes data. Delimiter is not written.
+	 *
+	 * @param src
+	 * @param offset
+	 * @param length
+	 * @param dest must hold at least length + 1 + length / 254 bytes from destOffset
+	 * @param destOffset
+	 * @return number of bytes written to dest
+	 */
+	public static int encode(byte[] src, int offset, int length, byte[] dest, int destOffset) {
+
+		int codeIndex = destOffset;
+		int d = destOffset + 1;
+		int code = 1;
+		for (int i = offset; i < offset + length; i++) {
+			if (src[i] == 0) {
+				dest[codeIndex] = (byte)code;
+				codeIndex = d++;
+				code = 1;
+				continue;
+			}
+			dest[d++] = src[i];
+			code++;
+			if (code == 0xFF) {
+				dest[codeIndex] = (byte)code;
+				codeIndex = d++;
+				code = 1;
+			}
+		}
+		dest[codeIndex] = (byte)code;
+		return d - destOffset;
+
+	}
+
+	/**
+	 * COBS decodes data, without delimiter. Decoding can be performed in place.
+	 *
+	 * @param src
+	 * @param length
+	 * @param dest
+	 * @return number of bytes written to dest, -1 if data is not valid
+	 */
+	public static int decode(byte[] src, int length, byte[] dest) {
+
+		int s = 0;
+		int d = 0;
+		int code;
+		while (s < length) {
+			code = src[s++] & 0xFF;
+			if ((code == 0) || (s + code - 1 > length)) {
+				return -1;
+			}
+			for (int i = 1; i < code; i++) {
+				dest[d++] = src[s++];
+			}
+			if ((code < 0xFF) && (s < length)) {
+				dest[d++] = 0;
+			}
+		}
+		return d;
+
+	}
+
+}
@@ -0,0 +1,373 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *
+ * Bounded queue of frames and readings, between frame handlers and a consumer.
+ * Frames are copied into slots allocated once. Several producers may offer
+ * events, e.g. the decoders of several ports. Only one consumer may poll.
+ *
+ * When the queue is full, or about to be, the overload policy of the queue
+ * applies. Dropped events are counted exactly.
+ *
+ */
+public class BoundedFrameQueue {
+
+	// Kinds of events.
+	public final static int EVENT_FRAME = 0;
+	public final static int EVENT_READING = 1;
+
+	// With SAMPLE_TRACES policy, one trace frame out of SAMPLING_PERIOD is
+	// queued once queue is half full.
+	private final static int SAMPLING_PERIOD = 10;
+
+	private OverloadPolicy policy;
+	private int capacity;
+	private byte[][] frames;
+	private int[] lengths;
+	private int[] sourceIds;
+	private String[] sourceNames;
+	private int[] deviceIds;
+	private long[] arrivalTimes;
+	private long[] wallTimes;
+	private long[] postTimes;
+	private int[] kinds;
+	private int[] readingTypes;
+	private int[] rawValues;
+	private float[] values;
+
+	private ReentrantLock lock;
+	private Condition notEmpty;
+	private Condition notFull;
+	// Index of oldest event.
+	private int head;
+	private int count;
+	private int traceCount;
+
+	private AtomicLong offered;
+	private AtomicLong dropped;
+	private AtomicLong droppedTraces;
+
+	/**
+	 *
+	 * Event polled from the queue. Its frame is a copy, valid until next poll.
+	 *
+	 */
+	public static class Event {
+
+		private Frame frame;
+		private byte[] buffer;
+		private int kind;
+		private int readingType;
+		private int rawValue;
+		private float value;
+		private long postTime;
+
+		/**
+		 *
+		 */
+		public Event() {
+
+			frame = new Frame();
+			buffer = new byte[FrameHandler.MAX_LENGTH_PAYLOAD];
+
+		}
+
+		public Frame getFrame() {
+
+			return frame;
+
+		}
+
+		/**
+		 *
+		 * @return EVENT_FRAME or EVENT_READING
+		 */
+		public int getKind() {
+
+			return kind;
+
+		}
+
+		public int getReadingType() {
+
+			return readingType;
+
+		}
+
+		public int getRawValue() {
+
+			return rawValue;
+
+		}
+
+		public float getValue() {
+
+			return value;
+
+		}
+
+		/**
+		 *
+		 * @return value of System.nanoTime() when event was queued
+		 */
+		public long getPostTime() {
+
+			return postTime;
+
+		}
+
+	}
+
+	/**
+	 *
+	 * @param capacity maximum number of queued events
+	 * @param policy
+	 */
+	public BoundedFrameQueue(int capacity, OverloadPolicy policy) {
+
+		this.capacity = capacity;
+		this.policy = policy;
+		frames = new byte[capacity][FrameHandler.MAX_LENGTH_PAYLOAD];
+		lengths = new int[capacity];
+		sourceIds = new int[capacity];
+		sourceNames = new String[capacity];
+		deviceIds = new int[capacity];
+		arrivalTimes = new long[capacity];
+		wallTimes = new long[capacity];
+		postTimes = new long[capacity];
+		kinds = new int[capacity];
+		readingTypes = new int[capacity];
+		rawValues = new int[capacity];
+		values = new float[capacity];
+
+		lock = new ReentrantLock();
+		notEmpty = lock.newCondition();
+		notFull = lock.newCondition();
+		head = 0;
+		count = 0;
+		traceCount = 0;
+
+		offered = new AtomicLong(0);
+		dropped = new AtomicLong(0);
+		droppedTraces = new AtomicLong(0);
+
+	}
+
+	/**
+	 * Can be called from any context. Frame is copied.
+	 *
+	 * @param frame
+	 * @param kind EVENT_FRAME or EVENT_READING
+	 * @param readingType
+	 * @param rawValue
+	 * @param value
+	 * @return false if event was dropped
+	 */
+	public boolean offer(Frame frame, int kind, int readingType, int rawValue, float value) {
+
+		offered.incrementAndGet();
+		boolean trace = (kind == EVENT_FRAME) && (frame.getType() == 'T');
+		lock.lock();
+		try {
+			if ((policy == OverloadPolicy.SAMPLE_TRACES) && trace && (count >= capacity / 2)) {
+				if (traceCount++ % SAMPLING_PERIOD != 0) {
+					drop(true);
+					return false;
+				}
+			}
+			if (count == capacity) {
+				switch (policy) {
+				case BLOCK:
+					while (count == capacity) {
+						try {
+							notFull.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							drop(trace);
+							return false;
+						}
+					}
+					break;
+				case DROP_OLDEST:
+					drop(isTrace(head));
+					head = (head + 1) % capacity;
+					count--;
+					break;
+				default:
+					drop(trace);
+					return false;
+				}
+			}
+			int i = (head + count) % capacity;
+			lengths[i] = frame.copyTo(frames[i]);
+			sourceIds[i] = frame.getSourceId();
+			sourceNames[i] = frame.getSourceName();
+			deviceIds[i] = frame.getDeviceId();
+			arrivalTimes[i] = frame.getArrivalTime();
+			wallTimes[i] = frame.getWallTime();
+			postTimes[i] = System.nanoTime();
+			kinds[i] = kind;
+			readingTypes[i] = readingType;
+			rawValues[i] = rawValue;
+			values[i] = value;
+			count++;
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * For the consumer. Copies oldest event, and removes it from the queue.
+	 *
+	 * @param event
+	 * @param timeout maximum wait, in ms, 0 not to wait
+	 * @return false if queue is empty, after timeout
+	 * @throws InterruptedException
+	 */
+	public boolean poll(Event event, long timeout) throws InterruptedException {
+
+		long wait = TimeUnit.MILLISECONDS.toNanos(timeout);
+		lock.lock();
+		try {
+			while (count == 0) {
+				if (wait <= 0) {
+					return false;
+				}
+				wait = notEmpty.awaitNanos(wait);
+			}
+			int i = head;
+			System.arraycopy(frames[i], 0, event.buffer, 0, lengths[i]);
+			event.frame.set(event.buffer, 0, lengths[i]);
+			event.frame.setSource(sourceIds[i], sourceNames[i]);
+			event.frame.setDeviceId(deviceIds[i]);
+			event.frame.setArrivalTime(arrivalTimes[i]);
+			event.frame.setWallTime(wallTimes[i]);
+			event.kind = kinds[i];
+			event.readingType = readingTypes[i];
+			event.rawValue = rawValues[i];
+			event.value = values[i];
+			event.postTime = postTimes[i];
+			sourceNames[i] = null;
+			head = (head + 1) % capacity;
+			count--;
+			notFull.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @return number of queued events
+	 */
+	public int size() {
+
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	public int getCapacity() {
+
+		return capacity;
+
+	}
+
+	public OverloadPolicy getPolicy() {
+
+		return policy;
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @return number of offered events, dropped ones included
+	 */
+	public long getOfferedCount() {
+
+		return offered.get();
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @return number of dropped events
+	 */
+	public long getDroppedCount() {
+
+		return dropped.get();
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @return number of dropped trace frames
+	 */
+	public long getDroppedTraceCount() {
+
+		return droppedTraces.get();
+
+	}
+
+	/**
+	 *
+	 * @param trace
+	 */
+	private void drop(boolean trace) {
+
+		dropped.incrementAndGet();
+		if (trace) {
+			droppedTraces.incrementAndGet();
+		}
+
+	}
+
+	/**
+	 *
+	 * @param i
+	 * @return true if event at index i is a trace frame
+	 */
+	private boolean isTrace(int i) {
+
+		return (kinds[i] == EVENT_FRAME) && (lengths[i] > 0) && (frames[i][0] == 'T');
+
+	}
+
+}
@@ -0,0 +1,238 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+/**
+ *
+ * Frame sink decoupled from frame handlers by a bounded queue. Frames and readings
+ * are given to another frame sink from a dedicated thread. Consequently, a slow
+ * consumer doesn't slow down decoding of frames, nor the other sinks, unless its
+ * overload policy is BLOCK.
+ *
+ * A same buffered sink can be added to the frame handlers of several ports.
+ *
+ */
+public class BufferedFrameSink implements FrameSink, BufferedFrameSinkMBean, Runnable {
+
+	private final static String MBEAN_TYPE = "SinkQueue";
+	// Maximum time waited for an event, before checking whether sink is closed, in ms.
+	private final static long POLL_WAIT = 500;
+	// Maximum time waited for the consumer thread to deliver queued events, when
+	// closing, in ms.
+	private final static long CLOSE_WAIT = 10000;
+
+	private final static Logger log = Logger.get(LogCategory.APP);
+
+	private String name;
+	private FrameSink frameSink;
+	private boolean withFrames;
+	private BoundedFrameQueue queue;
+	private LongAdder delivered;
+	private Thread thread;
+	private volatile boolean closed;
+	private ObjectName objectName;
+
+	/**
+	 *
+	 * @param name name of consumer thread, and of published metrics
+	 * @param frameSink consumer of frames and readings
+	 * @param withFrames false if frameSink only consumes readings: frames are
+	 *        then not queued
+	 * @param capacity maximum number of queued frames and readings
+	 * @param policy what is done when queue is full
+	 */
+	public BufferedFrameSink(String name, FrameSink frameSink, boolean withFrames,
+			int capacity, OverloadPolicy policy) {
+
+		this.name = name;
+		this.frameSink = frameSink;
+		this.withFrames = withFrames;
+		queue = new BoundedFrameQueue(capacity, policy);
+		delivered = new LongAdder();
+		closed = false;
+		thread = new Thread(this, name + "-sink");
+		thread.setDaemon(true);
+		thread.start();
+		objectName = MetricsRegistry.register(this, MBEAN_TYPE, name);
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 *
+	 * @param frame
+	 */
+	@Override
+	public void frameReceived(Frame frame) {
+
+		if (withFrames) {
+			queue.offer(frame, BoundedFrameQueue.EVENT_FRAME, 0, 0, 0);
+		}
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 *
+	 * @param frame
+	 * @param type
+	 * @param rawValue
+	 * @param value
+	 */
+	@Override
+	public void readingReceived(Frame frame, int type, int rawValue, float value) {
+
+		queue.offer(frame, BoundedFrameQueue.EVENT_READING, type, rawValue, value);
+
+	}
+
+	/**
+	 * Gives frames and readings queued so far to the consumer, then stops. Frame
+	 * handlers giving events to this sink should be stopped first: events
+	 * queued after this call are not delivered.
+	 */
+	public void close() {
+
+		closed = true;
+		try {
+			thread.join(CLOSE_WAIT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (thread.isAlive()) {
+			log.warn("{}: consumer still busy, {} events not delivered", name, queue.size());
+		}
+		MetricsRegistry.unregister(objectName);
+
+	}
+
+	/**
+	 * For Runnable interface.
+	 */
+	@Override
+	public void run() {
+
+		BoundedFrameQueue.Event event = new BoundedFrameQueue.Event();
+		try {
+			while (!closed) {
+				if (queue.poll(event, POLL_WAIT)) {
+					deliver(event);
+				}
+			}
+			// Producers may keep on queueing events: only those already queued
+			// are delivered.
+			for (int remaining = queue.size(); remaining > 0; remaining--) {
+				if (!queue.poll(event, 0)) {
+					break;
+				}
+				deliver(event);
+			}
+		} catch (InterruptedException e) {
+			// Nothing more to do.
+		}
+
+	}
+
+	/**
+	 * Called from consumer thread.
+	 *
+	 * @param event
+	 */
+	private void deliver(BoundedFrameQueue.Event event) {
+
+		if (event.getKind() == BoundedFrameQueue.EVENT_FRAME) {
+			frameSink.frameReceived(event.getFrame());
+		} else {
+			frameSink.readingReceived(event.getFrame(), event.getReadingType(),
+					event.getRawValue(), event.getValue());
+		}
+		delivered.increment();
+
+	}
+
+	@Override
+	public String getPolicy() {
+
+		return queue.getPolicy().name();
+
+	}
+
+	@Override
+	public int getCapacity() {
+
+		return queue.getCapacity();
+
+	}
+
+	@Override
+	public int getQueueDepth() {
+
+		return queue.size();
+
+	}
+
+	@Override
+	public long getOffered() {
+
+		return queue.getOfferedCount();
+
+	}
+
+	@Override
+	public long getDelivered() {
+
+		return delivered.sum();
+
+	}
+
+	@Override
+	public long getDropped() {
+
+		return queue.getDroppedCount();
+
+	}
+
+	@Override
+	public long getDroppedTraces() {
+
+		return queue.getDroppedTraceCount();
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public String getSummary() {
+
+		return name + ": " + getOffered() + " offered, " + getDelivered() + " delivered, "
+				+ getDropped() + " dropped (" + getDroppedTraces() + " traces)";
+
+	}
+
+}
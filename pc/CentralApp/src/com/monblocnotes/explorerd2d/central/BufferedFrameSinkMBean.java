@@ -0,0 +1,63 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Queue of a buffered frame sink, published through JMX.
+ *
+ */
+public interface BufferedFrameSinkMBean {
+
+	public String getPolicy();
+
+	public int getCapacity();
+
+	public int getQueueDepth();
+
+	/**
+	 *
+	 * @return number of frames and readings given to the sink, dropped ones included
+	 */
+	public long getOffered();
+
+	/**
+	 *
+	 * @return number of frames and readings given to the consumer
+	 */
+	public long getDelivered();
+
+	/**
+	 *
+	 * @return number of frames and readings dropped by overload policy
+	 */
+	public long getDropped();
+
+	/**
+	 *
+	 * @return number of trace frames dropped by overload policy
+	 */
+	public long getDroppedTraces();
+
+}
@@ -0,0 +1,204 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * Feeds chunks of a capture file, written by a CaptureWriter, to an ingest
+ * pipeline. Chunks are fed either with their original pacing, or as fast as
+ * possible. In the latter case, replay measures the throughput of the whole
+ * receive chain: it ends once all chunks have been assembled, decoded and given
+ * to frame sinks.
+ *
+ * Caller acts as the reader of the ingest pipeline.
+ *
+ */
+public class CaptureReplay {
+
+	private final static int BUFFER_SIZE = 65536;
+	// Time waited between two checks of pipeline state, at the end of replay, in ns.
+	private final static long IDLE_CHECK_WAIT = 100000L;
+
+	private File file;
+	private long captureStart;
+	private long byteCount;
+	private long chunkCount;
+	private long elapsedTime;
+
+	/**
+	 *
+	 * @param file
+	 */
+	public CaptureReplay(File file) {
+
+		this.file = file;
+
+	}
+
+	/**
+	 * Replays the whole capture file.
+	 *
+	 * @param ingestPipeline started ingest pipeline
+	 * @param originalPacing true to wait between chunks as during capture, false
+	 *        to replay as fast as possible
+	 * @throws IOException
+	 */
+	public void replay(IngestPipeline ingestPipeline, boolean originalPacing) throws IOException {
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), BUFFER_SIZE));
+		try {
+			byte[] magic = new byte[CaptureWriter.MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, CaptureWriter.MAGIC)) {
+				throw new IOException(file + " is not a capture file");
+			}
+			captureStart = in.readLong();
+			// Capture start as given by System.nanoTime() is meaningless for replay.
+			in.readLong();
+
+			byteCount = 0;
+			chunkCount = 0;
+			byte[] chunk = new byte[0];
+			long start = System.nanoTime();
+			long chunkTime = 0;
+			long delay;
+			int length;
+			while (true) {
+				try {
+					delay = readVarLong(in);
+				} catch (EOFException e) {
+					// End of capture.
+					break;
+				}
+				length = (int)readVarLong(in);
+				if (length > chunk.length) {
+					chunk = new byte[length];
+				}
+				in.readFully(chunk, 0, length);
+				chunkTime += delay;
+				if (originalPacing) {
+					while ((delay = start + chunkTime - System.nanoTime()) > 0) {
+						LockSupport.parkNanos(delay);
+					}
+				}
+				ingestPipeline.write(chunk, 0, length);
+				byteCount += length;
+				chunkCount++;
+			}
+			while (!ingestPipeline.isIdle()) {
+				LockSupport.parkNanos(IDLE_CHECK_WAIT);
+			}
+			elapsedTime = System.nanoTime() - start;
+		} finally {
+			in.close();
+		}
+
+	}
+
+	/**
+	 *
+	 * @return capture start time, in ms since epoch
+	 */
+	public long getCaptureStart() {
+
+		return captureStart;
+
+	}
+
+	/**
+	 *
+	 * @return number of replayed bytes
+	 */
+	public long getByteCount() {
+
+		return byteCount;
+
+	}
+
+	/**
+	 *
+	 * @return number of replayed chunks
+	 */
+	public long getChunkCount() {
+
+		return chunkCount;
+
+	}
+
+	/**
+	 *
+	 * @return duration of replay, including processing of last chunks, in ns
+	 */
+	public long getElapsedTime() {
+
+		return elapsedTime;
+
+	}
+
+	/**
+	 *
+	 * @return summary of last replay
+	 */
+	public String getSummary() {
+
+		double seconds = elapsedTime / 1e9;
+		return String.format("%d bytes in %d chunks replayed in %.3f s: %.0f bytes/s, %.0f chunks/s",
+				byteCount, chunkCount, seconds, byteCount / seconds, chunkCount / seconds);
+
+	}
+
+	/**
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	private static long readVarLong(DataInputStream in) throws IOException {
+
+		long v = 0;
+		int shift = 0;
+		int b;
+		do {
+			if (shift > 63) {
+				throw new IOException("malformed capture file");
+			}
+			b = in.readUnsignedByte();
+			v |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return v;
+
+	}
+
+}
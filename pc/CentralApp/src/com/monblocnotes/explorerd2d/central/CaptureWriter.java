@@ -0,0 +1,148 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ *
+ * Writes chunks of received bytes to a capture file, with their reception time.
+ *
+ * Capture file format:
+ * - header:
+ *   - magic number: 8 bytes, "EXCAP001"
+ *   - capture start time, in ms since epoch: 8 bytes, big endian
+ *   - capture start time, as given by System.nanoTime(): 8 bytes, big endian
+ * - then, for every chunk:
+ *   - reception time, in ns since previous chunk (or since capture start for
+ *     first chunk): unsigned variable-length integer
+ *   - length of chunk: unsigned variable-length integer
+ *   - bytes of chunk
+ *
+ * Variable-length integers are stored 7 bits per byte, least significant group
+ * first. Most significant bit of a byte is set when another byte follows.
+ *
+ * On write error, an error is logged, and capture stops.
+ *
+ */
+public class CaptureWriter {
+
+	public final static byte[] MAGIC = { 'E', 'X', 'C', 'A', 'P', '0', '0', '1' };
+
+	private final static int BUFFER_SIZE = 65536;
+
+	private final static Logger log = Logger.get(LogCategory.PORT);
+
+	private OutputStream out;
+	private long previousTime;
+	private boolean failed;
+
+	/**
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public CaptureWriter(File file) throws IOException {
+
+		out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+		previousTime = System.nanoTime();
+		failed = false;
+		out.write(MAGIC);
+		writeLong(System.currentTimeMillis());
+		writeLong(previousTime);
+
+	}
+
+	/**
+	 * Must always be called from the same context.
+	 *
+	 * @param timestamp reception time, as given by System.nanoTime()
+	 * @param chunk
+	 * @param length
+	 */
+	public synchronized void write(long timestamp, byte[] chunk, int length) {
+
+		if (failed) {
+			return;
+		}
+		try {
+			// Reception times of successive chunks may be equal, but never decrease.
+			writeVarLong(Math.max(timestamp - previousTime, 0));
+			writeVarLong(length);
+			out.write(chunk, 0, length);
+		} catch (IOException e) {
+			failed = true;
+			log.error("capture stopped on error: {}", e.getMessage());
+		}
+		previousTime = Math.max(timestamp, previousTime);
+
+	}
+
+	/**
+	 *
+	 */
+	public synchronized void close() {
+
+		try {
+			out.close();
+		} catch (IOException e) {
+			log.error("can't close capture file: {}", e.getMessage());
+		}
+		failed = true;
+
+	}
+
+	/**
+	 *
+	 * @param v
+	 * @throws IOException
+	 */
+	private void writeLong(long v) throws IOException {
+
+		for (int i = 56; i >= 0; i -= 8) {
+			out.write((int)(v >>> i));
+		}
+
+	}
+
+	/**
+	 *
+	 * @param v positive value
+	 * @throws IOException
+	 */
+	private void writeVarLong(long v) throws IOException {
+
+		while ((v & ~0x7FL) != 0) {
+			out.write((int)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.write((int)v);
+
+	}
+
+}
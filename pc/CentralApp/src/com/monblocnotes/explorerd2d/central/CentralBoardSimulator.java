@@ -0,0 +1,513 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * Emulation of device/central/central.ino, used to test the application
+ * without any board. Every iteration of loop() is reproduced, with the same
+ * trace frames, and an application frame when a temperature is received from
+ * a remote device. Temperatures are received from a configurable number of
+ * remote devices, in turn, with identifiers from 1. LED commands sent by the application are processed as
+ * central.ino does, as well as framing commands: binary framing is supported.
+ *
+ * Frames are written at a configurable rate, that may be far beyond what a
+ * 57600 bit/s serial port allows. Frames are written by batches, so that a
+ * whole batch is usually received by a single read.
+ *
+ */
+public class CentralBoardSimulator implements Runnable {
+
+	// Lines written by central.ino.
+	private final static byte[] SEPARATOR = toBytes("T--------------------");
+	private final static byte[] RADIO_SET_WDT = toBytes("T> radio set wdt 5000");
+	private final static byte[] OK = toBytes("T< ok");
+	private final static byte[] RADIO_RX = toBytes("T> radio rx 0");
+	// Followed by device identifier and temperature, in hexadecimal.
+	private final static byte[] RADIO_RX_TEMPERATURE = toBytes("T< radio_rx  54");
+	private final static byte[] RADIO_ERR = toBytes("T< radio_err");
+	// Followed by device identifier and temperature, in hexadecimal.
+	private final static byte[] TEMPERATURE = toBytes("A54");
+	// Followed by device identifier and LED color, in hexadecimal.
+	private final static byte[] RADIO_TX_LED = toBytes("T> radio tx 4C");
+	private final static byte[] RADIO_TX_OK = toBytes("T< radio_tx_ok");
+	private final static byte[] UNKNOWN_COMMAND = toBytes("Tunknown command");
+	private final static byte[] BINARY_ACK = toBytes(BinaryFraming.BINARY_ACK);
+	private final static byte[] ASCII_ACK = toBytes(BinaryFraming.ASCII_ACK);
+	private final static byte[] HEXA = toBytes("0123456789ABCDEF");
+
+	// Steps of an iteration of loop().
+	private final static int STEP_SEPARATOR = 0;
+	private final static int STEP_SET_WDT = 1;
+	private final static int STEP_SET_WDT_OK = 2;
+	private final static int STEP_RX = 3;
+	private final static int STEP_RX_OK = 4;
+	private final static int STEP_RX_END = 5;
+	private final static int STEP_TEMPERATURE = 6;
+	private final static int STEP_COMMAND = 7;
+	private final static int STEP_TX_OK = 8;
+	private final static int STEP_TX_END = 9;
+	private final static int STEP_END = 10;
+
+	// Size of command buffer of central.ino.
+	private final static int APP_BUFFER_LENGTH = 8;
+	// Length of LED commands, and of other commands, terminators included.
+	private final static int LED_COMMAND_LENGTH = 6;
+	private final static int COMMAND_LENGTH = 4;
+	// Maximum number of frames written at once.
+	private final static int MAX_BATCH = 256;
+	// Wait between two checks, when there is no frame to be written, in ns.
+	private final static long IDLE_PERIOD = 1000000L;
+	// Raw ADC values sent by remote device, around 17 degrees Celsius.
+	private final static int RAW_TEMPERATURE_MIN = 200;
+	private final static int RAW_TEMPERATURE_MAX = 260;
+
+	private InputStream commandIn;
+	private OutputStream out;
+	private int framesPerSecond;
+	private int receptionPeriod;
+
+	private byte[] buffer;
+	private byte[] appBuffer;
+	private int appLength;
+	private byte[] commandBuffer;
+	private int step;
+	private long cycle;
+	private boolean received;
+	private int rawTemperature;
+	private int deviceCount;
+	// Device the current temperature is received from.
+	private int deviceId;
+	private int ledDeviceId;
+	private int ledColor;
+	private boolean binaryFraming;
+	// Framing requested by last framing command.
+	private boolean requestedBinaryFraming;
+	// Start of the frame being written into buffer.
+	private int frameStart;
+	// Frame before binary encoding.
+	private byte[] binaryFrame;
+	private Random random;
+
+	private Thread thread;
+	private volatile long frameCount;
+	private volatile long byteCount;
+	private volatile long startTime;
+	private volatile long stopTime;
+
+	/**
+	 *
+	 * @param commandIn stream commands from the application are read from
+	 * @param out stream frames are written to
+	 * @param framesPerSecond 0 to write frames as fast as possible
+	 */
+	public CentralBoardSimulator(InputStream commandIn, OutputStream out, int framesPerSecond) {
+
+		this.commandIn = commandIn;
+		this.out = out;
+		this.framesPerSecond = framesPerSecond;
+		receptionPeriod = 1;
+
+		buffer = new byte[MAX_BATCH * (BinaryFraming.MAX_LENGTH_ENCODED + 1)];
+		appBuffer = new byte[APP_BUFFER_LENGTH];
+		appLength = 0;
+		commandBuffer = new byte[64];
+		step = STEP_SEPARATOR;
+		cycle = 0;
+		received = false;
+		rawTemperature = (RAW_TEMPERATURE_MIN + RAW_TEMPERATURE_MAX) / 2;
+		deviceCount = 1;
+		deviceId = 1;
+		ledDeviceId = 0;
+		ledColor = 0;
+		binaryFraming = false;
+		binaryFrame = new byte[BinaryFraming.MAX_LENGTH_FRAME];
+		random = new Random(0);
+
+	}
+
+	/**
+	 * Must be called before start().
+	 *
+	 * @param receptionPeriod a temperature is received every receptionPeriod
+	 *        iterations of loop(). With real devices, this is every 6 iterations.
+	 */
+	public void setReceptionPeriod(int receptionPeriod) {
+
+		this.receptionPeriod = Math.max(1, receptionPeriod);
+
+	}
+
+	/**
+	 * Must be called before start().
+	 *
+	 * @param deviceCount number of remote devices temperatures are received from
+	 */
+	public void setDeviceCount(int deviceCount) {
+
+		this.deviceCount = Math.max(1, deviceCount);
+
+	}
+
+	/**
+	 * Starts writing frames, from a dedicated thread.
+	 */
+	public void start() {
+
+		thread = new Thread(this, "simulator");
+		thread.setDaemon(true);
+		thread.start();
+
+	}
+
+	/**
+	 *
+	 */
+	public void stop() {
+
+		if (thread != null) {
+			thread.interrupt();
+		}
+
+	}
+
+	/**
+	 * Writes frames until stopped, or until the output stream is closed.
+	 */
+	@Override
+	public void run() {
+
+		startTime = System.nanoTime();
+		stopTime = 0;
+		long sent = 0;
+		long due;
+		int length;
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				if (framesPerSecond <= 0) {
+					due = sent + MAX_BATCH;
+				} else {
+					due = (long)((System.nanoTime() - startTime) * (framesPerSecond / 1e9));
+				}
+				if (due <= sent) {
+					LockSupport.parkNanos(IDLE_PERIOD);
+					continue;
+				}
+				int n = (int)Math.min(due - sent, MAX_BATCH);
+				length = 0;
+				for (int i = 0; i < n; i++) {
+					length = nextFrame(length);
+				}
+				out.write(buffer, 0, length);
+				sent += n;
+				frameCount = sent;
+				byteCount += length;
+			}
+		} catch (IOException e) {
+			// Link closed.
+		}
+		stopTime = System.nanoTime();
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @return number of frames written
+	 */
+	public long getFrameCount() {
+
+		return frameCount;
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @return number of bytes written
+	 */
+	public long getByteCount() {
+
+		return byteCount;
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @return
+	 */
+	public String getSummary() {
+
+		long end = (stopTime != 0) ? stopTime : System.nanoTime();
+		double seconds = Math.max(end - startTime, 1) / 1e9;
+		return String.format(Locale.ROOT,
+				"simulator: %d frames, %d bytes in %.3f s (%.0f frames/s, %.0f bit/s)",
+				frameCount, byteCount, seconds, frameCount / seconds, byteCount * 10 / seconds);
+
+	}
+
+	/**
+	 * Writes next frame of current iteration of loop() into buffer, followed by
+	 * CR LF, or binary encoded.
+	 *
+	 * @param offset
+	 * @return offset following the frame
+	 * @throws IOException
+	 */
+	private int nextFrame(int offset) throws IOException {
+
+		frameStart = offset;
+		for (;;) {
+			switch (step) {
+			case STEP_SEPARATOR:
+				step = STEP_SET_WDT;
+				return putLine(offset, SEPARATOR);
+			case STEP_SET_WDT:
+				step = STEP_SET_WDT_OK;
+				return putLine(offset, RADIO_SET_WDT);
+			case STEP_SET_WDT_OK:
+				step = STEP_RX;
+				return putLine(offset, OK);
+			case STEP_RX:
+				step = STEP_RX_OK;
+				return putLine(offset, RADIO_RX);
+			case STEP_RX_OK:
+				step = STEP_RX_END;
+				return putLine(offset, OK);
+			case STEP_RX_END:
+				received = (cycle % receptionPeriod) == 0;
+				if (!received) {
+					step = STEP_COMMAND;
+					return putLine(offset, RADIO_ERR);
+				}
+				step = STEP_TEMPERATURE;
+				nextTemperature();
+				deviceId = (int)(cycle / receptionPeriod % deviceCount) + 1;
+				offset = put(offset, RADIO_RX_TEMPERATURE);
+				offset = putHex(offset, deviceId >> 8);
+				offset = putHex(offset, deviceId);
+				offset = putHex(offset, rawTemperature >> 8);
+				offset = putHex(offset, rawTemperature);
+				return putLine(offset, null);
+			case STEP_TEMPERATURE:
+				step = STEP_COMMAND;
+				offset = put(offset, TEMPERATURE);
+				offset = putHex(offset, deviceId >> 8);
+				offset = putHex(offset, deviceId);
+				offset = putHex(offset, rawTemperature >> 8);
+				offset = putHex(offset, rawTemperature);
+				return putLine(offset, null);
+			case STEP_COMMAND:
+				step = STEP_END;
+				int rs = processCommand();
+				if (rs == 0) {
+					break;
+				}
+				if (rs < 0) {
+					return putLine(offset, UNKNOWN_COMMAND);
+				}
+				if (rs == 2) {
+					// Acknowledged with current framing.
+					offset = putLine(offset, requestedBinaryFraming ? BINARY_ACK : ASCII_ACK);
+					binaryFraming = requestedBinaryFraming;
+					return offset;
+				}
+				step = STEP_TX_OK;
+				offset = put(offset, RADIO_TX_LED);
+				offset = putHex(offset, ledDeviceId >> 8);
+				offset = putHex(offset, ledDeviceId);
+				offset = putHex(offset, ledColor);
+				return putLine(offset, null);
+			case STEP_TX_OK:
+				step = STEP_TX_END;
+				return putLine(offset, OK);
+			case STEP_TX_END:
+				step = STEP_END;
+				return putLine(offset, RADIO_TX_OK);
+			default:
+				step = STEP_SEPARATOR;
+				cycle++;
+			}
+		}
+
+	}
+
+	/**
+	 * Same processing as processCommand() of central.ino.
+	 *
+	 * @return 0 - no command
+	 *         1 - LED command, ledDeviceId and ledColor are set
+	 *         2 - framing command, requestedBinaryFraming is set
+	 *        -1 - unknown command
+	 * @throws IOException
+	 */
+	private int processCommand() throws IOException {
+
+		int available = commandIn.available();
+		while (available > 0) {
+			int n = commandIn.read(commandBuffer, 0, Math.min(available, commandBuffer.length));
+			if (n <= 0) {
+				break;
+			}
+			// Characters that do not fit into command buffer are lost.
+			for (int i = 0; (i < n) && (appLength < appBuffer.length); i++) {
+				appBuffer[appLength++] = commandBuffer[i];
+			}
+			available = commandIn.available();
+		}
+		if ((appLength < COMMAND_LENGTH)
+				|| ((appBuffer[0] == 'L') && (appLength < LED_COMMAND_LENGTH))) {
+			return 0;
+		}
+		appLength = 0;
+		if ((appBuffer[0] == 'L') && (appBuffer[4] == FrameHandler.CR)
+				&& (appBuffer[5] == FrameHandler.LF)) {
+			ledDeviceId = ((appBuffer[1] & 0xFF) << 8) | (appBuffer[2] & 0xFF);
+			ledColor = appBuffer[3] & 0xFF;
+			return 1;
+		}
+		if ((appBuffer[0] == 'F') && (appBuffer[2] == FrameHandler.CR)
+				&& (appBuffer[3] == FrameHandler.LF)) {
+			if ((appBuffer[1] == 'B') || (appBuffer[1] == 'A')) {
+				requestedBinaryFraming = appBuffer[1] == 'B';
+				return 2;
+			}
+		}
+		return -1;
+
+	}
+
+	/**
+	 * Random walk.
+	 */
+	private void nextTemperature() {
+
+		rawTemperature += random.nextInt(3) - 1;
+		rawTemperature = Math.max(RAW_TEMPERATURE_MIN, Math.min(RAW_TEMPERATURE_MAX, rawTemperature));
+
+	}
+
+	/**
+	 *
+	 * @param offset
+	 * @param line null if nothing has to be written before CR LF
+	 * @return
+	 */
+	private int putLine(int offset, byte[] line) {
+
+		if (line != null) {
+			offset = put(offset, line);
+		}
+		if (binaryFraming) {
+			return encodeFrame(offset);
+		}
+		buffer[offset++] = (byte)FrameHandler.CR;
+		buffer[offset++] = (byte)FrameHandler.LF;
+		return offset;
+
+	}
+
+	/**
+	 * Binary encodes the frame written into buffer from frameStart, as central.ino
+	 * does: content of application frames is converted from hexadecimal, and
+	 * frequent traces are replaced by their code.
+	 *
+	 * @param offset end of frame
+	 * @return offset following the encoded frame
+	 */
+	private int encodeFrame(int offset) {
+
+		int length = 0;
+		int code = BinaryFraming.findTracePrefix(buffer, frameStart, offset - frameStart);
+		if (code >= 0) {
+			binaryFrame[length++] = (byte)BinaryFraming.CODE_FRAME;
+			binaryFrame[length++] = (byte)code;
+			for (int i = frameStart + BinaryFraming.getTracePrefix(code).length; i < offset; i++) {
+				binaryFrame[length++] = buffer[i];
+			}
+		} else if (buffer[frameStart] == 'A') {
+			binaryFrame[length++] = buffer[frameStart];
+			for (int i = frameStart + 1; i + 1 < offset; i += 2) {
+				binaryFrame[length++] = (byte)((Frame.hexDigit(buffer[i]) << 4)
+						| Frame.hexDigit(buffer[i + 1]));
+			}
+		} else {
+			for (int i = frameStart; i < offset; i++) {
+				binaryFrame[length++] = buffer[i];
+			}
+		}
+		int crc = BinaryFraming.crc16(binaryFrame, 0, length);
+		binaryFrame[length++] = (byte)(crc >> 8);
+		binaryFrame[length++] = (byte)crc;
+		offset = frameStart + BinaryFraming.encode(binaryFrame, 0, length, buffer, frameStart);
+		buffer[offset++] = (byte)BinaryFraming.DELIMITER;
+		return offset;
+
+	}
+
+	/**
+	 *
+	 * @param offset
+	 * @param b
+	 * @return
+	 */
+	private int put(int offset, byte[] b) {
+
+		System.arraycopy(b, 0, buffer, offset, b.length);
+		return offset + b.length;
+
+	}
+
+	/**
+	 *
+	 * @param offset
+	 * @param value only lowest byte is written
+	 * @return
+	 */
+	private int putHex(int offset, int value) {
+
+		buffer[offset++] = HEXA[(value >> 4) & 0x0F];
+		buffer[offset++] = HEXA[value & 0x0F];
+		return offset;
+
+	}
+
+	/**
+	 *
+	 * @param s
+	 * @return
+	 */
+	private static byte[] toBytes(String s) {
+
+		return s.getBytes(StandardCharsets.US_ASCII);
+
+	}
+
+}
@@ -0,0 +1,308 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * Queue of commands to be sent to the central device, drained by a dedicated
+ * writer thread, so that submitting a command never blocks the caller.
+ *
+ * Every command is encoded beforehand, and is sent with one write. A command
+ * waiting to be sent is replaced by any command submitted later for the same
+ * target: e.g. for successive clicks on LED buttons, only last state is sent.
+ *
+ * Central device reads commands once per iteration of its main loop, i.e.
+ * once per radio window, and only keeps the first one. Consequently, once a
+ * command is sent, next one is sent only after the outcome of the command was
+ * received, or after a timeout.
+ *
+ * Outcome of every submitted command is given by a future. Sent commands are
+ * tracked by a CommandTracker, which matches traces written by the central
+ * device to them. Trace frames are received through FrameSink interface.
+ *
+ */
+public class CommandQueue implements FrameSink {
+
+	// Maximum wait for the outcome of a command before sending next one, in ms.
+	// Radio window lasts 5 s.
+	private final static long WINDOW_TIMEOUT = 11000L;
+
+	private final static Logger log = Logger.get(LogCategory.PORT);
+
+	private long windowTimeout;
+	// Commands waiting to be sent, by target, in submission order.
+	private LinkedHashMap<String, Command> pending;
+	private OutputStream out;
+	private Thread writerThread;
+	// Outcome of last sent command, null if writer thread is not waiting for it.
+	private volatile CompletableFuture<CommandResult> awaited;
+	private volatile long sentCount;
+	private volatile long replacedCount;
+	private CommandTracker commandTracker;
+
+	/**
+	 *
+	 */
+	public CommandQueue() {
+
+		this(WINDOW_TIMEOUT);
+
+	}
+
+	/**
+	 *
+	 * @param windowTimeout maximum wait between two commands, in ms
+	 */
+	public CommandQueue(long windowTimeout) {
+
+		this.windowTimeout = windowTimeout;
+		pending = new LinkedHashMap<String, Command>();
+		awaited = null;
+		sentCount = 0;
+		replacedCount = 0;
+		commandTracker = new CommandTracker();
+
+	}
+
+	/**
+	 * Starts writer thread, and command tracking.
+	 *
+	 * @param name used to name writer thread
+	 * @param out stream commands are written to
+	 */
+	public void start(String name, OutputStream out) {
+
+		this.out = out;
+		commandTracker.start(name);
+		writerThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+
+				writeLoop();
+
+			}
+
+		}, name + "-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+
+	}
+
+	/**
+	 * Commands not sent yet, and commands waiting for their outcome, are
+	 * cancelled.
+	 */
+	public void stop() {
+
+		if (writerThread != null) {
+			writerThread.interrupt();
+		}
+		ArrayList<Command> cancelled;
+		synchronized (pending) {
+			cancelled = new ArrayList<Command>(pending.values());
+			pending.clear();
+		}
+		for (Command command: cancelled) {
+			command.future.complete(new CommandResult(CommandResult.Status.CANCELLED,
+					command.description, -1, null));
+		}
+		commandTracker.stop();
+
+	}
+
+	/**
+	 * Can be called from any context. Never blocks.
+	 *
+	 * @param target what the command applies to. A command waiting to be sent for
+	 *        the same target is replaced
+	 * @param message encoded command, terminators included, not copied
+	 * @param description used in log messages
+	 * @return completed with the outcome of the command
+	 */
+	public CompletableFuture<CommandResult> submit(String target, byte[] message, String description) {
+
+		Command command = new Command(message, description);
+		Command replaced;
+		synchronized (pending) {
+			// Replacing an existing key keeps its position.
+			replaced = pending.put(target, command);
+			if (replaced != null) {
+				replacedCount++;
+			}
+			pending.notifyAll();
+		}
+		if (replaced != null) {
+			log.info("{} replaced by {}", replaced.description, description);
+			replaced.future.complete(new CommandResult(CommandResult.Status.REPLACED,
+					replaced.description, -1, null));
+		}
+		return command.future;
+
+	}
+
+	/**
+	 *
+	 * @return tracker of sent commands
+	 */
+	public CommandTracker getCommandTracker() {
+
+		return commandTracker;
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @return number of commands sent
+	 */
+	public long getSentCount() {
+
+		return sentCount;
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @return number of commands replaced before being sent
+	 */
+	public long getReplacedCount() {
+
+		return replacedCount;
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public void frameReceived(Frame frame) {
+
+		commandTracker.frameReceived(frame);
+		CompletableFuture<CommandResult> future = awaited;
+		if ((future != null) && future.isDone()) {
+			Thread t = writerThread;
+			if (t != null) {
+				LockSupport.unpark(t);
+			}
+		}
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public void readingReceived(Frame frame, int type, int rawValue, float value) {
+
+		// Nothing to do.
+
+	}
+
+	/**
+	 * Run by writer thread.
+	 */
+	private void writeLoop() {
+
+		Command command;
+		while (!Thread.currentThread().isInterrupted()) {
+			synchronized (pending) {
+				while (pending.isEmpty()) {
+					try {
+						pending.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				Iterator<Command> iterator = pending.values().iterator();
+				command = iterator.next();
+				iterator.remove();
+			}
+			commandTracker.sent(command.message, command.description, command.future);
+			try {
+				out.write(command.message);
+				out.flush();
+			} catch (IOException e) {
+				log.warn("write error: {}", e.getMessage());
+				commandTracker.writeFailed(command.future);
+				continue;
+			}
+			sentCount++;
+			log.info("{} sent", command.description);
+			waitForOutcome(command.future);
+		}
+
+	}
+
+	/**
+	 * Waits until the outcome of a sent command was received, or until timeout.
+	 *
+	 * @param future
+	 */
+	private void waitForOutcome(CompletableFuture<CommandResult> future) {
+
+		awaited = future;
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowTimeout);
+		long remaining;
+		while (!future.isDone() && !Thread.currentThread().isInterrupted()) {
+			remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				break;
+			}
+			LockSupport.parkNanos(this, remaining);
+		}
+		awaited = null;
+
+	}
+
+	/**
+	 *
+	 * Encoded command.
+	 *
+	 */
+	private static class Command {
+
+		final byte[] message;
+		final String description;
+		final CompletableFuture<CommandResult> future;
+
+		Command(byte[] message, String description) {
+
+			this.message = message;
+			this.description = description;
+			future = new CompletableFuture<CommandResult>();
+
+		}
+
+	}
+
+}
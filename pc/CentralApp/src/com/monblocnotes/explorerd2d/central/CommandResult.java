@@ -0,0 +1,135 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Outcome of a command sent to the central device, as given by the traces it
+ * wrote after having received the command.
+ *
+ */
+public class CommandResult {
+
+	public static enum Status {
+		// Command was transmitted over the radio link (radio_tx_ok), or, for a
+		// command to the central device itself, was acknowledged.
+		DELIVERED,
+		// Radio transmission failed (radio_err).
+		RADIO_ERROR,
+		// Radio module rejected the transmission request.
+		REJECTED,
+		// Central device reported an error while transmitting.
+		DEVICE_ERROR,
+		// Central device didn't recognize the command.
+		UNKNOWN_COMMAND,
+		// Nothing was received from the central device before timeout.
+		TIMEOUT,
+		// Command was replaced by a later one before being sent.
+		REPLACED,
+		// Command could not be written.
+		WRITE_ERROR,
+		// Port was closed before an outcome was received.
+		CANCELLED
+	};
+
+	private final Status status;
+	private final String description;
+	private final long roundTripTime;
+	private final String response;
+
+	/**
+	 *
+	 * @param status
+	 * @param description description of the command
+	 * @param roundTripTime time from write of command to reception of outcome, in
+	 *        ns, -1 if command was not sent
+	 * @param response last trace written by the central device for the command,
+	 *        null if none
+	 */
+	public CommandResult(Status status, String description, long roundTripTime, String response) {
+
+		this.status = status;
+		this.description = description;
+		this.roundTripTime = roundTripTime;
+		this.response = response;
+
+	}
+
+	public Status getStatus() {
+
+		return status;
+
+	}
+
+	/**
+	 *
+	 * @return true if command was delivered
+	 */
+	public boolean isSuccess() {
+
+		return status == Status.DELIVERED;
+
+	}
+
+	public String getDescription() {
+
+		return description;
+
+	}
+
+	/**
+	 *
+	 * @return in ns, -1 if command was not sent
+	 */
+	public long getRoundTripTime() {
+
+		return roundTripTime;
+
+	}
+
+	public String getResponse() {
+
+		return response;
+
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public String toString() {
+
+		StringBuilder sb = new StringBuilder(description);
+		sb.append(": ").append(status.name().toLowerCase());
+		if (roundTripTime >= 0) {
+			sb.append(" after ").append(roundTripTime / 1000000L).append(" ms");
+		}
+		if ((response != null) && (status != Status.DELIVERED)) {
+			sb.append(" (").append(response).append(')');
+		}
+		return sb.toString();
+
+	}
+
+}
@@ -0,0 +1,521 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+/**
+ *
+ * Table of commands sent to the central device and waiting for their outcome.
+ *
+ * Central device forwards a command over the radio link and writes traces such
+ * as:
+ *   T> radio tx 4C52
+ *   T< ok
+ *   T< radio_tx_ok
+ * Errors are reported by "T< radio_err", "TRX request error", "Tend of RX request
+ * error" or "Tunknown command". Commands to the central device itself, e.g.
+ * framing commands, are acknowledged by a "Tframing ..." trace. Trace frames are
+ * received through FrameSink interface and matched to in-flight commands: a
+ * "radio tx" trace is matched to the oldest command with the same payload,
+ * responses are matched to the command being forwarded, and other traces to the
+ * oldest command not forwarded. Central device processes one command at a time.
+ *
+ * Every in-flight command has a timeout. All timeouts are managed by one hashed
+ * timer wheel. Outcome of a command is given by a future, completed from decoder
+ * context, or from timer context.
+ *
+ */
+public class CommandTracker implements FrameSink, CommandTrackerMBean {
+
+	// Maximum wait for the outcome of a command, in ms. Central device reads
+	// commands once per radio window, which lasts 5 s.
+	private final static long OUTCOME_TIMEOUT = 20000L;
+	// Timer wheel: 100 ms ticks, 512 buckets, i.e. about 51 s per round.
+	private final static long TICK_DURATION = 100L;
+	private final static int WHEEL_SIZE = 512;
+
+	private final static String MBEAN_TYPE = "Commands";
+	private final static long NS_PER_MS = 1000000L;
+
+	// Traces written by central device.
+	private final static byte[] RADIO_TX = toBytes("T> radio tx ");
+	private final static byte[] RESPONSE = toBytes("T< ");
+	private final static byte[] OK = toBytes("T< ok");
+	private final static byte[] RADIO_TX_OK = toBytes("T< radio_tx_ok");
+	private final static byte[] RADIO_ERR = toBytes("T< radio_err");
+	private final static byte[] RX_REQUEST_ERROR = toBytes("TRX request error");
+	private final static byte[] END_OF_RX_ERROR = toBytes("Tend of RX request error");
+	private final static byte[] UNKNOWN_COMMAND = toBytes("Tunknown command");
+	private final static byte[] FRAMING = toBytes("Tframing ");
+	// Trace written at the beginning of every iteration of the main loop.
+	private final static int SEPARATOR_CHAR = '-';
+	private final static int SEPARATOR_LENGTH = 21;
+
+	private final static byte[] HEXA = toBytes("0123456789ABCDEF");
+
+	// States of in-flight commands.
+	private static enum States {
+		// Written to central device.
+		SENT,
+		// Forwarded by central device to the radio module.
+		FORWARDED,
+		// Accepted by the radio module.
+		ACCEPTED
+	};
+
+	private final static Logger log = Logger.get(LogCategory.PORT);
+
+	private long outcomeTimeout;
+	private HashedTimerWheel timerWheel;
+	// In-flight commands, in sending order. Guarded by this.
+	private ArrayDeque<InFlight> inFlight;
+	// Command being forwarded by central device, null if none. Guarded by this.
+	private InFlight current;
+
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LatencyHistogram roundTripTime = new LatencyHistogram();
+	private ObjectName objectName;
+
+	/**
+	 *
+	 */
+	public CommandTracker() {
+
+		this(OUTCOME_TIMEOUT);
+
+	}
+
+	/**
+	 *
+	 * @param outcomeTimeout maximum wait for the outcome of a command, in ms
+	 */
+	public CommandTracker(long outcomeTimeout) {
+
+		this.outcomeTimeout = outcomeTimeout;
+		inFlight = new ArrayDeque<InFlight>();
+		current = null;
+
+	}
+
+	/**
+	 * Starts timer wheel, and publishes metrics through JMX.
+	 *
+	 * @param name name of the port, used to name timer thread and metrics
+	 */
+	public void start(String name) {
+
+		timerWheel = new HashedTimerWheel(name, TICK_DURATION, WHEEL_SIZE);
+		timerWheel.start();
+		objectName = MetricsRegistry.register(this, MBEAN_TYPE, name);
+
+	}
+
+	/**
+	 * In-flight commands are cancelled.
+	 */
+	public void stop() {
+
+		if (timerWheel != null) {
+			timerWheel.stop();
+		}
+		ArrayList<InFlight> cancelled;
+		synchronized (this) {
+			cancelled = new ArrayList<InFlight>(inFlight);
+		}
+		for (InFlight command: cancelled) {
+			complete(command, CommandResult.Status.CANCELLED, null);
+		}
+		MetricsRegistry.unregister(objectName);
+		objectName = null;
+
+	}
+
+	/**
+	 * Must be called just before the command is written, so that no trace can
+	 * be received for it before it is tracked. Can be called from any context.
+	 *
+	 * @param message encoded command, terminators included
+	 * @param description used in log messages
+	 * @param future completed with the outcome of the command
+	 */
+	public void sent(byte[] message, String description, CompletableFuture<CommandResult> future) {
+
+		final InFlight command = new InFlight(toRadioPayload(message), description, future);
+		synchronized (this) {
+			inFlight.addLast(command);
+		}
+		sent.increment();
+		command.timeout = timerWheel.newTimeout(new Runnable() {
+
+			@Override
+			public void run() {
+
+				complete(command, CommandResult.Status.TIMEOUT, null);
+
+			}
+
+		}, outcomeTimeout);
+
+	}
+
+	/**
+	 * Called when the command could not be written. Can be called from any context.
+	 *
+	 * @param future same as given to sent()
+	 */
+	public void writeFailed(CompletableFuture<CommandResult> future) {
+
+		InFlight command = null;
+		synchronized (this) {
+			for (InFlight c: inFlight) {
+				if (c.future == future) {
+					command = c;
+					break;
+				}
+			}
+		}
+		if (command != null) {
+			complete(command, CommandResult.Status.WRITE_ERROR, null);
+		}
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public void frameReceived(Frame frame) {
+
+		if ((frame.getType() != 'T') || (frame.getLength() < 2)) {
+			return;
+		}
+		InFlight command = null;
+		CommandResult.Status status = null;
+		synchronized (this) {
+			if (inFlight.isEmpty()) {
+				return;
+			}
+			if (startsWith(frame, RADIO_TX)) {
+				for (InFlight c: inFlight) {
+					if ((c.state == States.SENT) && endsWith(frame, RADIO_TX.length, c.payload)) {
+						c.state = States.FORWARDED;
+						current = c;
+						break;
+					}
+				}
+				return;
+			}
+			if (startsWith(frame, UNKNOWN_COMMAND) || startsWith(frame, FRAMING)) {
+				for (InFlight c: inFlight) {
+					if (c.state == States.SENT) {
+						command = c;
+						status = (frame.get(1) == 'u') ? CommandResult.Status.UNKNOWN_COMMAND
+								: CommandResult.Status.DELIVERED;
+						break;
+					}
+				}
+			} else if (current != null) {
+				if (equals(frame, OK) && (current.state == States.FORWARDED)) {
+					current.state = States.ACCEPTED;
+					return;
+				}
+				if (equals(frame, RADIO_TX_OK)) {
+					status = CommandResult.Status.DELIVERED;
+				} else if (equals(frame, RADIO_ERR)) {
+					status = CommandResult.Status.RADIO_ERROR;
+				} else if (startsWith(frame, RESPONSE)) {
+					status = CommandResult.Status.REJECTED;
+				} else if (equals(frame, RX_REQUEST_ERROR) || equals(frame, END_OF_RX_ERROR)
+						|| ((frame.getLength() == SEPARATOR_LENGTH) && (frame.get(1) == SEPARATOR_CHAR))) {
+					// A separator means that central device gave up the command.
+					status = CommandResult.Status.DEVICE_ERROR;
+				}
+				command = current;
+			}
+		}
+		if (status != null) {
+			complete(command, status, frame.toString());
+		}
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public void readingReceived(Frame frame, int type, int rawValue, float value) {
+
+		// Nothing to do.
+
+	}
+
+	@Override
+	public synchronized int getInFlight() {
+
+		return inFlight.size();
+
+	}
+
+	@Override
+	public long getSent() {
+
+		return sent.sum();
+
+	}
+
+	@Override
+	public long getDelivered() {
+
+		return delivered.sum();
+
+	}
+
+	@Override
+	public long getFailed() {
+
+		return failed.sum();
+
+	}
+
+	@Override
+	public long getTimeouts() {
+
+		return timeouts.sum();
+
+	}
+
+	@Override
+	public double getSuccessRate() {
+
+		long d = delivered.sum();
+		long total = d + failed.sum();
+		return (total == 0) ? 0 : (double)d / total;
+
+	}
+
+	@Override
+	public long getRoundTripCount() {
+
+		return roundTripTime.getCount();
+
+	}
+
+	@Override
+	public double getRoundTripMean() {
+
+		return roundTripTime.getMean() / NS_PER_MS;
+
+	}
+
+	@Override
+	public long getRoundTripP50() {
+
+		return roundTripTime.getPercentile(50) / NS_PER_MS;
+
+	}
+
+	@Override
+	public long getRoundTripP99() {
+
+		return roundTripTime.getPercentile(99) / NS_PER_MS;
+
+	}
+
+	@Override
+	public long getRoundTripMax() {
+
+		return roundTripTime.getMax() / NS_PER_MS;
+
+	}
+
+	/**
+	 * Removes command from in-flight commands, and completes its future. Only
+	 * first call for a given command has an effect.
+	 *
+	 * @param command
+	 * @param status
+	 * @param response
+	 */
+	private void complete(InFlight command, CommandResult.Status status, String response) {
+
+		long rtt = System.nanoTime() - command.sendTime;
+		synchronized (this) {
+			if (!inFlight.remove(command)) {
+				return;
+			}
+			if (current == command) {
+				current = null;
+			}
+		}
+		if (command.timeout != null) {
+			command.timeout.cancel();
+		}
+		switch (status) {
+		case DELIVERED:
+			delivered.increment();
+			roundTripTime.record(rtt);
+			break;
+		case TIMEOUT:
+			timeouts.increment();
+			failed.increment();
+			break;
+		case CANCELLED:
+			break;
+		default:
+			failed.increment();
+		}
+		if (status == CommandResult.Status.WRITE_ERROR) {
+			rtt = -1;
+		}
+		CommandResult result = new CommandResult(status, command.description, rtt, response);
+		log.info("{}", result);
+		command.future.complete(result);
+
+	}
+
+	/**
+	 * Returns the payload of a command, as written by the central device in
+	 * "radio tx" traces: bytes are hex encoded, terminators excepted.
+	 *
+	 * @param message
+	 * @return
+	 */
+	private static byte[] toRadioPayload(byte[] message) {
+
+		int length = message.length;
+		while ((length > 0) && ((message[length - 1] == FrameHandler.CR)
+				|| (message[length - 1] == FrameHandler.LF))) {
+			length--;
+		}
+		byte[] payload = new byte[2 * length];
+		for (int i = 0; i < length; i++) {
+			payload[2 * i] = HEXA[(message[i] >> 4) & 0x0F];
+			payload[2 * i + 1] = HEXA[message[i] & 0x0F];
+		}
+		return payload;
+
+	}
+
+	/**
+	 *
+	 * @param frame
+	 * @param text
+	 * @return true if frame, type included, starts with text
+	 */
+	private static boolean startsWith(Frame frame, byte[] text) {
+
+		if (frame.getLength() < text.length) {
+			return false;
+		}
+		for (int i = 0; i < text.length; i++) {
+			if (frame.get(i) != (text[i] & 0xFF)) {
+				return false;
+			}
+		}
+		return true;
+
+	}
+
+	/**
+	 *
+	 * @param frame
+	 * @param text
+	 * @return true if frame, type included, is text
+	 */
+	private static boolean equals(Frame frame, byte[] text) {
+
+		return (frame.getLength() == text.length) && startsWith(frame, text);
+
+	}
+
+	/**
+	 *
+	 * @param frame
+	 * @param offset
+	 * @param text
+	 * @return true if frame is text from offset to its end
+	 */
+	private static boolean endsWith(Frame frame, int offset, byte[] text) {
+
+		if (frame.getLength() - offset != text.length) {
+			return false;
+		}
+		for (int i = 0; i < text.length; i++) {
+			if (frame.get(offset + i) != (text[i] & 0xFF)) {
+				return false;
+			}
+		}
+		return true;
+
+	}
+
+	/**
+	 *
+	 * @param s
+	 * @return
+	 */
+	private static byte[] toBytes(String s) {
+
+		return s.getBytes(StandardCharsets.ISO_8859_1);
+
+	}
+
+	/**
+	 *
+	 * Command waiting for its outcome.
+	 *
+	 */
+	private static class InFlight {
+
+		final byte[] payload;
+		final String description;
+		final CompletableFuture<CommandResult> future;
+		final long sendTime;
+		// Guarded by tracker.
+		States state;
+		volatile HashedTimerWheel.Timeout timeout;
+
+		InFlight(byte[] payload, String description, CompletableFuture<CommandResult> future) {
+
+			this.payload = payload;
+			this.description = description;
+			this.future = future;
+			sendTime = System.nanoTime();
+			state = States.SENT;
+
+		}
+
+	}
+
+}
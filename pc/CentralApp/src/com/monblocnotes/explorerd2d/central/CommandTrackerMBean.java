@@ -0,0 +1,72 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Outcomes of commands sent to the central device of a port, published through
+ * JMX. Round-trip times are given in ms.
+ *
+ */
+public interface CommandTrackerMBean {
+
+	/**
+	 *
+	 * @return number of commands waiting for their outcome
+	 */
+	public int getInFlight();
+
+	public long getSent();
+
+	public long getDelivered();
+
+	/**
+	 *
+	 * @return number of sent commands which were not delivered, timeouts included
+	 */
+	public long getFailed();
+
+	public long getTimeouts();
+
+	/**
+	 *
+	 * @return delivered commands over commands with an outcome, 0 if none
+	 */
+	public double getSuccessRate();
+
+	/**
+	 *
+	 * @return number of round-trip times measured, for delivered commands
+	 */
+	public long getRoundTripCount();
+
+	public double getRoundTripMean();
+
+	public long getRoundTripP50();
+
+	public long getRoundTripP99();
+
+	public long getRoundTripMax();
+
+}
@@ -0,0 +1,114 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.text.DecimalFormat;
+
+/**
+ *
+ * DisplayMessage implementation that does not require JavaFX. Frames, log
+ * messages and temperatures are written to asynchronous line writers, e.g. to
+ * standard output or to files.
+ *
+ * All methods can be called from any context.
+ *
+ */
+public class ConsoleDisplay implements DisplayMessage {
+
+	private AsyncLineWriter frameWriter;
+	private AsyncLineWriter logWriter;
+	private AsyncLineWriter temperatureWriter;
+
+	private ThreadLocal<DecimalFormat> decimalFormat;
+
+	/**
+	 * A same writer may be used for several kinds of output.
+	 *
+	 * @param frameWriter
+	 * @param logWriter
+	 * @param temperatureWriter
+	 */
+	public ConsoleDisplay(AsyncLineWriter frameWriter, AsyncLineWriter logWriter,
+			AsyncLineWriter temperatureWriter) {
+
+		this.frameWriter = frameWriter;
+		this.logWriter = logWriter;
+		this.temperatureWriter = temperatureWriter;
+		decimalFormat = new ThreadLocal<DecimalFormat>() {
+
+			@Override
+			protected DecimalFormat initialValue() {
+
+				return new DecimalFormat("#0.0");
+
+			}
+
+		};
+
+	}
+
+	/**
+	 * For DisplayMessage interface.
+	 */
+	@Override
+	public void displayLog(String message) {
+
+		logWriter.write("L " + message);
+
+	}
+
+	/**
+	 * For DisplayMessage interface.
+	 */
+	@Override
+	public void displayFrame(String message) {
+
+		frameWriter.write("F " + message);
+
+	}
+
+	/**
+	 * For DisplayMessage interface.
+	 */
+	@Override
+	public void displayFrameLater(Frame frame) {
+
+		frameWriter.write(frame.getWallTime(), "F " + frame.getSourceName() + ": " + frame.toString());
+
+	}
+
+	/**
+	 * For DisplayMessage interface.
+	 */
+	@Override
+	public void displayTemperature(Frame frame, float temp) {
+
+		StringBuilder line = new StringBuilder(32).append("T ");
+		DisplayFrameSink.appendSeriesName(line, frame.getSourceName(), frame.getDeviceId());
+		line.append(": ").append(decimalFormat.get().format(temp)).append("\u00B0C");
+		temperatureWriter.write(frame.getWallTime(), line.toString());
+
+	}
+
+}
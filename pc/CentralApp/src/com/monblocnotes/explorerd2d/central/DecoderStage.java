@@ -0,0 +1,74 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Decodes assembled frames, and gives them to frame sinks.
+ *
+ */
+public class DecoderStage extends PipelineStage {
+
+	private FrameHandler frameHandler;
+	private Frame frame;
+
+	/**
+	 *
+	 * @param name
+	 * @param frameHandler
+	 * @param input assembled frames
+	 */
+	public DecoderStage(String name, FrameHandler frameHandler, SpscRing input) {
+
+		super(name, input);
+		this.frameHandler = frameHandler;
+		frame = new Frame();
+
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	protected void process(byte[] slot, int length, long timestamp, long wallTime) {
+
+		frame.set(slot, 0, length);
+		frame.setArrivalTime(timestamp);
+		frame.setWallTime(wallTime);
+		frameHandler.processFrame(frame);
+
+	}
+
+	/**
+	 * Decoded frames are given to sinks directly: this stage never waits for an
+	 * output ring.
+	 */
+	@Override
+	public long getStallCount() {
+
+		return 0;
+
+	}
+
+}
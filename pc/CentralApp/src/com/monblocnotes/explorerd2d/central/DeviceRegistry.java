@@ -0,0 +1,399 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import javax.management.ObjectName;
+
+/**
+ *
+ * Frame sink maintaining the state of every remote device: last reading,
+ * last-seen time, and counters of frames and readings.
+ *
+ * A remote device is identified by the source it is received from, e.g. a
+ * serial port, and by its identifier: remote devices behind different central
+ * devices can use the same identifier. Both are combined into a key, source
+ * identifier in the upper bits, device identifier in the lower 16 bits.
+ *
+ * Devices are found from their key with an open addressing hash table
+ * of ints, with linear probing. The table holds indexes into flat arrays, one
+ * per state variable, where devices are stored in order of first reception.
+ * Lookups take constant time, and nothing is allocated once the registry is
+ * created, whatever the number of devices. Devices are never removed. Once
+ * the registry is full, frames of new devices are only counted.
+ *
+ * Can be used from any context.
+ *
+ */
+public class DeviceRegistry implements FrameSink, DeviceRegistryMBean {
+
+	private final static String MBEAN_TYPE = "Devices";
+	// Free slot of the hash table.
+	private final static int FREE = -1;
+	// Multiplier of Fibonacci hashing.
+	private final static int HASH_MULTIPLIER = 0x9E3779B9;
+
+	private final int capacity;
+	// Indexes of devices, FREE for free slots. Size is a power of 2, at least
+	// twice the capacity, so that probe sequences stay short.
+	private final int[] slots;
+	private final int mask;
+	private final int shift;
+
+	// State of devices, by index.
+	private final int[] keys;
+	private final long[] lastSeen;
+	private final int[] lastTypes;
+	private final int[] lastRawValues;
+	private final float[] lastValues;
+	private final long[] frameCounts;
+	private final long[] readingCounts;
+	private int size;
+	// Last device found: readings usually follow the frame they were decoded
+	// from.
+	private int lastKey;
+	private int lastIndex;
+
+	private long rejectedFrames;
+
+	private ObjectName objectName;
+
+	/**
+	 *
+	 * @param capacity maximum number of devices
+	 */
+	public DeviceRegistry(int capacity) {
+
+		this.capacity = capacity;
+		int tableSize = Integer.highestOneBit(Math.max(capacity, 1)) * 4;
+		slots = new int[tableSize];
+		for (int i = 0; i < tableSize; i++) {
+			slots[i] = FREE;
+		}
+		mask = tableSize - 1;
+		shift = Integer.numberOfLeadingZeros(tableSize) + 1;
+
+		keys = new int[capacity];
+		lastSeen = new long[capacity];
+		lastTypes = new int[capacity];
+		lastRawValues = new int[capacity];
+		lastValues = new float[capacity];
+		frameCounts = new long[capacity];
+		readingCounts = new long[capacity];
+		size = 0;
+		lastKey = 0;
+		lastIndex = -1;
+		rejectedFrames = 0;
+
+	}
+
+	/**
+	 * Publishes the registry through JMX.
+	 */
+	public void register() {
+
+		objectName = MetricsRegistry.register(this, MBEAN_TYPE, null);
+
+	}
+
+	/**
+	 *
+	 */
+	public void unregister() {
+
+		MetricsRegistry.unregister(objectName);
+		objectName = null;
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public synchronized void frameReceived(Frame frame) {
+
+		int deviceId = frame.getDeviceId();
+		if (deviceId == Frame.NO_DEVICE) {
+			return;
+		}
+		int index = find(getKey(frame.getSourceId(), deviceId), true);
+		if (index < 0) {
+			rejectedFrames++;
+			return;
+		}
+		lastSeen[index] = frame.getWallTime();
+		frameCounts[index]++;
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public synchronized void readingReceived(Frame frame, int type, int rawValue, float value) {
+
+		int deviceId = frame.getDeviceId();
+		if (deviceId == Frame.NO_DEVICE) {
+			return;
+		}
+		// Registered by frameReceived(), unless registry is full.
+		int index = find(getKey(frame.getSourceId(), deviceId), false);
+		if (index < 0) {
+			return;
+		}
+		lastTypes[index] = type;
+		lastRawValues[index] = rawValue;
+		lastValues[index] = value;
+		readingCounts[index]++;
+
+	}
+
+	/**
+	 *
+	 * @param sourceId identifier of the source, e.g. of the serial port, the
+	 *        device is received from
+	 * @param deviceId
+	 * @return index of the device, to be given to other getters, -1 if unknown
+	 */
+	public synchronized int indexOf(int sourceId, int deviceId) {
+
+		return find(getKey(sourceId, deviceId), false);
+
+	}
+
+	/**
+	 * Devices are indexed from 0 to size - 1, in order of first reception.
+	 *
+	 * @return number of devices
+	 */
+	public synchronized int size() {
+
+		return size;
+
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return
+	 */
+	public synchronized int getDeviceId(int index) {
+
+		return keys[index] & 0xFFFF;
+
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return identifier of the source, e.g. of the serial port, the device is
+	 *         received from
+	 */
+	public synchronized int getSourceId(int index) {
+
+		return keys[index] >> 16;
+
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return time of last frame, in ms since epoch
+	 */
+	public synchronized long getLastSeen(int index) {
+
+		return lastSeen[index];
+
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return type of last reading, 0 if none
+	 */
+	public synchronized int getLastType(int index) {
+
+		return lastTypes[index];
+
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return
+	 */
+	public synchronized int getLastRawValue(int index) {
+
+		return lastRawValues[index];
+
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return
+	 */
+	public synchronized float getLastValue(int index) {
+
+		return lastValues[index];
+
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return
+	 */
+	public synchronized long getFrameCount(int index) {
+
+		return frameCounts[index];
+
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return
+	 */
+	public synchronized long getReadingCount(int index) {
+
+		return readingCounts[index];
+
+	}
+
+	/**
+	 * For DeviceRegistryMBean interface.
+	 */
+	@Override
+	public synchronized int getDeviceCount() {
+
+		return size;
+
+	}
+
+	/**
+	 * For DeviceRegistryMBean interface.
+	 */
+	@Override
+	public int getCapacity() {
+
+		return capacity;
+
+	}
+
+	/**
+	 * For DeviceRegistryMBean interface.
+	 */
+	@Override
+	public synchronized long getRejectedFrames() {
+
+		return rejectedFrames;
+
+	}
+
+	/**
+	 * For DeviceRegistryMBean interface.
+	 */
+	@Override
+	public synchronized String describeDevice(int deviceId) {
+
+		// Device may be received from several sources. Not on the receive path:
+		// scanning all devices is acceptable.
+		StringBuilder sb = new StringBuilder();
+		SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		for (int index = 0; index < size; index++) {
+			if ((keys[index] & 0xFFFF) != deviceId) {
+				continue;
+			}
+			if (sb.length() != 0) {
+				sb.append("; ");
+			}
+			sb.append(String.format("device %04X: port %d, last seen %s, %d frames, %d readings",
+					deviceId, keys[index] >> 16, timeFormat.format(new Date(lastSeen[index])),
+					frameCounts[index], readingCounts[index]));
+			if (readingCounts[index] != 0) {
+				sb.append(String.format(Locale.ROOT, ", last reading %c %.1f (%d)",
+						(char)lastTypes[index], lastValues[index], lastRawValues[index]));
+			}
+		}
+		if (sb.length() == 0) {
+			return String.format("device %04X: unknown", deviceId);
+		}
+		return sb.toString();
+
+	}
+
+	/**
+	 *
+	 * @param sourceId
+	 * @param deviceId
+	 * @return key of the device
+	 */
+	private static int getKey(int sourceId, int deviceId) {
+
+		return (sourceId << 16) | (deviceId & 0xFFFF);
+
+	}
+
+	/**
+	 *
+	 * @param key key of the device
+	 * @param add true if the device has to be added when it is not found
+	 * @return index of the device, -1 if it is not found, and can't be added
+	 */
+	private int find(int key, boolean add) {
+
+		if ((key == lastKey) && (lastIndex >= 0)) {
+			return lastIndex;
+		}
+		int slot = (key * HASH_MULTIPLIER) >>> shift;
+		int index;
+		while (true) {
+			index = slots[slot];
+			if (index == FREE) {
+				break;
+			}
+			if (keys[index] == key) {
+				lastKey = key;
+				lastIndex = index;
+				return index;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (!add || (size == capacity)) {
+			return -1;
+		}
+		index = size++;
+		slots[slot] = index;
+		keys[index] = key;
+		lastKey = key;
+		lastIndex = index;
+		return index;
+
+	}
+
+}
@@ -0,0 +1,110 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Gives decoded frames and temperatures to display services.
+ *
+ */
+public class DisplayFrameSink implements FrameSink {
+
+	private final static char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private DisplayMessage displayMessage;
+
+	/**
+	 *
+	 * @param displayMessage
+	 */
+	public DisplayFrameSink(DisplayMessage displayMessage) {
+
+		this.displayMessage = displayMessage;
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public void frameReceived(Frame frame) {
+
+		displayMessage.displayFrameLater(frame);
+
+	}
+
+	/**
+	 * Several remote devices can be received from the same source: their
+	 * readings are displayed separately, under this name. It should be built
+	 * once per device, e.g. when its series is created.
+	 *
+	 * @param sourceName
+	 * @param deviceId Frame.NO_DEVICE if the source is the device itself
+	 * @return name of the readings of the device
+	 */
+	public static String getSeriesName(String sourceName, int deviceId) {
+
+		if (deviceId == Frame.NO_DEVICE) {
+			return sourceName;
+		}
+		return appendSeriesName(new StringBuilder(sourceName.length() + 5), sourceName,
+				deviceId).toString();
+
+	}
+
+	/**
+	 * Same as getSeriesName(), without building an intermediate string.
+	 *
+	 * @param builder
+	 * @param sourceName
+	 * @param deviceId Frame.NO_DEVICE if the source is the device itself
+	 * @return builder
+	 */
+	public static StringBuilder appendSeriesName(StringBuilder builder, String sourceName,
+			int deviceId) {
+
+		builder.append(sourceName);
+		if (deviceId != Frame.NO_DEVICE) {
+			builder.append(' ');
+			for (int shift = 12; shift >= 0; shift -= 4) {
+				builder.append(HEX_DIGITS[(deviceId >> shift) & 0xF]);
+			}
+		}
+		return builder;
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public void readingReceived(Frame frame, int type, int rawValue, float value) {
+
+		if (type == FrameHandler.READING_TEMPERATURE) {
+			displayMessage.displayTemperature(frame, value);
+		}
+
+	}
+
+}
@@ -26,6 +26,8 @@ package com.monblocnotes.explorerd2d.central;
 /**
  *
  * Interface used to specify display services provided by main class.
+ * Diagnostics are not displayed through this interface: they are logged, see
+ * Logger.
  *
  */
 public interface DisplayMessage {
@@ -36,12 +38,6 @@ public interface DisplayMessage {
 	 */
 	public void displayLog(String message);
 
-	/**
-	 * Can be called from any context.
-	 * @param message
-	 */
-	public void displayLogLater(String message);
-
 	/**
 	 * Must be called from FX application context.
 	 * @param message
@@ -49,14 +45,18 @@ public interface DisplayMessage {
 	public void displayFrame(String message);
 
 	/**
-	 * Can be called from any context.
-	 * @param message
+	 * Can be called from any context. Frame is valid only during the call:
+	 * it must be copied if it has to be kept.
+	 * @param frame
 	 */
-	public void displayFrameLater(String message);
+	public void displayFrameLater(Frame frame);
 
 	/**
-	 * Can be called from any context.
+	 * Can be called from any context. Frame is valid only during the call.
+	 * @param frame frame the temperature was received in. Gives its source,
+	 *        remote device, and reception time
+	 * @param temp temperature in degrees Celsius
 	 */
-	public void displayTemperature(String temp);
+	public void displayTemperature(Frame frame, float temp);
 
 }
@@ -0,0 +1,309 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *
+ * View over a frame stored in a byte buffer, from offset to offset + length.
+ * First byte of a frame is its type. Remaining bytes are its content.
+ *
+ * A frame is tagged with the source it was received from, and, for application
+ * frames, with the remote device that sent it.
+ *
+ * A frame view is reused for every frame assembled by a same frame handler:
+ * its contents are valid only until next frame is assembled. Code that needs to
+ * keep a frame must copy it.
+ *
+ */
+public class Frame {
+
+	// Device identifier of frames not sent by a remote device, e.g. traces.
+	public final static int NO_DEVICE = -1;
+
+	private byte[] buffer;
+	private int offset;
+	private int length;
+	private int sourceId;
+	private String sourceName;
+	private int deviceId;
+	private long arrivalTime;
+	private long wallTime;
+
+	/**
+	 *
+	 */
+	public Frame() {
+
+		buffer = null;
+		offset = 0;
+		length = 0;
+		sourceId = 0;
+		sourceName = "";
+		deviceId = NO_DEVICE;
+		arrivalTime = 0;
+		wallTime = 0;
+
+	}
+
+	/**
+	 *
+	 * @param sourceId identifier of the source, e.g. of the serial port
+	 * @param sourceName name of the source
+	 */
+	public void setSource(int sourceId, String sourceName) {
+
+		this.sourceId = sourceId;
+		this.sourceName = sourceName;
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public int getSourceId() {
+
+		return sourceId;
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public String getSourceName() {
+
+		return sourceName;
+
+	}
+
+	/**
+	 *
+	 * @param deviceId identifier of the remote device, NO_DEVICE if none
+	 */
+	public void setDeviceId(int deviceId) {
+
+		this.deviceId = deviceId;
+
+	}
+
+	/**
+	 *
+	 * @return identifier of the remote device, NO_DEVICE if none
+	 */
+	public int getDeviceId() {
+
+		return deviceId;
+
+	}
+
+	/**
+	 *
+	 * @param arrivalTime value of System.nanoTime() when the bytes of the frame
+	 *        were received, 0 if unknown
+	 */
+	public void setArrivalTime(long arrivalTime) {
+
+		this.arrivalTime = arrivalTime;
+
+	}
+
+	/**
+	 *
+	 * @return value of System.nanoTime() when the bytes of the frame were
+	 *         received, 0 if unknown
+	 */
+	public long getArrivalTime() {
+
+		return arrivalTime;
+
+	}
+
+	/**
+	 *
+	 * @param wallTime time in ms since epoch when the bytes of the frame were
+	 *        received, 0 if unknown
+	 */
+	public void setWallTime(long wallTime) {
+
+		this.wallTime = wallTime;
+
+	}
+
+	/**
+	 * Sinks should use this time, rather than the time they process the frame
+	 * at, which is delayed by queueing.
+	 *
+	 * @return time in ms since epoch when the bytes of the frame were received,
+	 *         current time if unknown
+	 */
+	public long getWallTime() {
+
+		return (wallTime != 0) ? wallTime : System.currentTimeMillis();
+
+	}
+
+	/**
+	 *
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 */
+	public void set(byte[] buffer, int offset, int length) {
+
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public int getLength() {
+
+		return length;
+
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return value of byte at index, between 0 and 255
+	 */
+	public int get(int index) {
+
+		return buffer[offset + index] & 0xFF;
+
+	}
+
+	/**
+	 *
+	 * @return type of frame, or -1 if frame is empty
+	 */
+	public int getType() {
+
+		if (length == 0) {
+			return -1;
+		}
+		return buffer[offset] & 0xFF;
+
+	}
+
+	/**
+	 * Returns a value between 0 and 255, decoded from 2 bytes containing the ASCII
+	 * codes of the hex representation of the byte. MSQ is at index, LSQ at index + 1.
+	 *
+	 * @param index
+	 * @return 0 if bytes are not hexadecimal digits
+	 */
+	public int getHexByte(int index) {
+
+		return hexDigit(get(index)) * 16 + hexDigit(get(index + 1));
+
+	}
+
+	/**
+	 * Copies whole frame, i.e. type and content.
+	 *
+	 * @param dest buffer long enough to store the frame, starting at index 0
+	 * @return length of frame
+	 */
+	public int copyTo(byte[] dest) {
+
+		System.arraycopy(buffer, offset, dest, 0, length);
+		return length;
+
+	}
+
+	/**
+	 * Copies frame content, i.e. all bytes but the type.
+	 *
+	 * @return
+	 */
+	public byte[] copyContent() {
+
+		if (length == 0) {
+			return new byte[0];
+		}
+		return Arrays.copyOfRange(buffer, offset + 1, offset + length);
+
+	}
+
+	/**
+	 * Copies frame content, i.e. all bytes but the type, after a prefix.
+	 *
+	 * @param prefix
+	 * @return
+	 */
+	public byte[] copyContent(byte[] prefix) {
+
+		int l = (length == 0) ? 0 : length - 1;
+		byte[] b = Arrays.copyOf(prefix, prefix.length + l);
+		if (l > 0) {
+			System.arraycopy(buffer, offset + 1, b, prefix.length, l);
+		}
+		return b;
+
+	}
+
+	/**
+	 * Used to display frames received from device. First character is not displayed,
+	 * as it is used to multiplex trace and application frames.
+	 */
+	@Override
+	public String toString() {
+
+		if (length == 0) {
+			return "";
+		}
+		return new String(buffer, offset + 1, length - 1, StandardCharsets.ISO_8859_1);
+
+	}
+
+	/**
+	 *
+	 * @param c ASCII code of an hexadecimal digit
+	 * @return value of the digit, 0 if c is not an hexadecimal digit
+	 */
+	public static int hexDigit(int c) {
+
+		if ((c >= 0x30) && (c <= 0x39)) {
+			return c - 0x30;
+		}
+		if ((c >= 0x41) && (c <= 0x46)) {
+			return c - 0x41 + 10;
+		}
+		if ((c >= 0x61) && (c <= 0x66)) {
+			return c - 0x61 + 10;
+		}
+		return 0;
+
+	}
+
+}
@@ -23,12 +23,30 @@
  */
 package com.monblocnotes.explorerd2d.central;
 
-import java.text.DecimalFormat;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
  *
- * Beware: no flow control!
+ * Beware: no flow control with the device! Frame sinks are called from the
+ * processing context: slow consumers must be decoupled by a BufferedFrameSink,
+ * or by bounded queues of their own, with an overload policy.
+ *
+ * Frames are assembled into a byte buffer allocated once, and are given to
+ * processFrame() as a reusable Frame view over this buffer. Nothing is allocated
+ * when assembling and decoding frames, apart from what frame sinks require.
+ *
+ * Frame assembly and frame processing may be performed from two different
+ * contexts, e.g. by the stages of an IngestPipeline. Assembly must always be
+ * performed from the same context.
+ *
+ * Frames are received either as ASCII lines terminated by CR LF, or with binary
+ * framing (see BinaryFraming). Assembly switches to binary framing when central
+ * device acknowledges it, or when a COBS delimiter is received, e.g. because
+ * central device was left in binary framing by a previous session. It switches
+ * back to ASCII framing when central device acknowledges it, or after several
+ * corrupted binary frames in a row. Frames are given to processFrame() in the
+ * same form, whatever the framing.
  *
  */
 public class FrameHandler {
@@ -41,6 +59,17 @@ public class FrameHandler {
 	private final static short LETTER_L = (short)'L';
 	private final static short LETTER_R = (short)'R';
 
+	// Types of readings decoded from application frames.
+	public final static int READING_TEMPERATURE = 'T';
+
+	// Messages sent by remote devices start with their type code, then the
+	// identifier of the device, on 2 bytes, in big endian endianness. In
+	// application frames, they are hex encoded after 'A'.
+	private final static int DEVICE_ID_INDEX = 3;
+	private final static int MIN_LENGTH_ADDRESSED = DEVICE_ID_INDEX + 4;
+	// Commands sent with this identifier are processed by all remote devices.
+	public final static int BROADCAST_DEVICE_ID = 0xFFFF;
+
 	// States of frame assembly automaton.
 	private static enum AssemblyStates {
 		WAIT_CR, WAIT_LF
@@ -48,13 +77,36 @@ public class FrameHandler {
 
 	private AssemblyStates currentAssemblyState;
 
-	private final static int MAX_LENGTH_PAYLOAD = 40;
-	private short[] recBuffer;
+	public final static int MAX_LENGTH_PAYLOAD = 40;
+	private byte[] recBuffer;
 	private int recBufferIndex;
+	private Frame frame;
+
+	// Number of corrupted binary frames in a row after which ASCII framing is
+	// used again.
+	private final static int MAX_BINARY_ERRORS = 8;
+	private final static byte[] BINARY_ACK = BinaryFraming.BINARY_ACK.getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] ASCII_ACK = BinaryFraming.ASCII_ACK.getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] HEXA = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+	private boolean binaryFraming;
+	// Binary frame being received, COBS encoded.
+	private byte[] encodedBuffer;
+	private int encodedIndex;
+	private boolean encodedOverflow;
+	private int binaryErrors;
+
+	private final static Logger assemblerLog = Logger.get(LogCategory.ASSEMBLER);
+	private final static Logger decoderLog = Logger.get(LogCategory.DECODER);
+
+	private volatile FrameSink[] frameSinks;
+	// Decoders of application frames, indexed by type code.
+	private volatile FrameDecoder[] frameDecoders;
 
-	private DisplayMessage displayMessage;
+	private int sourceId;
+	private String sourceName;
 
-	private DecimalFormat decimalFormat;
+	private PipelineMetrics metrics;
 
 	/**
 	 *
@@ -62,13 +114,74 @@ public class FrameHandler {
 	 */
 	public FrameHandler(DisplayMessage displayMessage) {
 
-		this.displayMessage = displayMessage;
-
 		currentAssemblyState = AssemblyStates.WAIT_CR;
-		recBuffer = new short[MAX_LENGTH_PAYLOAD];
+		recBuffer = new byte[MAX_LENGTH_PAYLOAD];
 		recBufferIndex = 0;
+		frame = new Frame();
+
+		binaryFraming = false;
+		encodedBuffer = new byte[BinaryFraming.MAX_LENGTH_ENCODED];
+		encodedIndex = 0;
+		encodedOverflow = false;
+		binaryErrors = 0;
+
+		frameSinks = new FrameSink[] { new DisplayFrameSink(displayMessage) };
+		frameDecoders = FrameLayouts.getDefaultDecoders();
+
+		sourceId = 0;
+		sourceName = "";
+
+		metrics = new PipelineMetrics();
+
+	}
+
+	/**
+	 * Sets the source processed frames are tagged with. Must be called before
+	 * frames are processed.
+	 *
+	 * @param sourceId
+	 * @param sourceName
+	 */
+	public void setSource(int sourceId, String sourceName) {
+
+		this.sourceId = sourceId;
+		this.sourceName = sourceName;
+
+	}
+
+	/**
+	 *
+	 * @return metrics of frame assembly and processing
+	 */
+	public PipelineMetrics getMetrics() {
+
+		return metrics;
+
+	}
+
+	/**
+	 * Adds a consumer of processed frames. Can be called from any context.
+	 *
+	 * @param frameSink
+	 */
+	public synchronized void addFrameSink(FrameSink frameSink) {
+
+		FrameSink[] sinks = Arrays.copyOf(frameSinks, frameSinks.length + 1);
+		sinks[sinks.length - 1] = frameSink;
+		frameSinks = sinks;
+
+	}
+
+	/**
+	 * Replaces default decoders of application frames. Can be called from any
+	 * context.
+	 *
+	 * @param frameDecoders table of decoders, indexed by type code, as returned by
+	 *        FrameLayouts.compile()
+	 */
+	public void setFrameDecoders(FrameDecoder[] frameDecoders) {
 
-		decimalFormat = new DecimalFormat("#0.0");
+		this.frameDecoders = frameDecoders;
 
 	}
 
@@ -80,18 +193,26 @@ public class FrameHandler {
 	 * final LF. Thus, it would be easy to adapt to more complex frame formats.
 	 *
 	 * @param b byte to be processed. If -1, assembly processing is reset.
-	 * @return null until a new frame is received, otherwise frame
+	 * @return null until a new frame is received, otherwise frame. Returned frame is
+	 *         valid until next call.
 	 */
-	public short[] frameAssembler(int b) {
+	public Frame frameAssembler(int b) {
 
 		if (b == -1) {
-			displayMessage.displayLogLater("-1 passed to frameAssembler()");
+			metrics.otherResets.increment();
+			assemblerLog.error("{}: -1 passed to frameAssembler()", sourceName);
 			currentAssemblyState = AssemblyStates.WAIT_CR;
 			recBufferIndex = 0;
+			encodedIndex = 0;
+			encodedOverflow = false;
 			return null;
 		}
 
-		short[] payload = null;
+		if (binaryFraming) {
+			return binaryFrameAssembler(b);
+		}
+
+		Frame payload = null;
 
 		switch (currentAssemblyState) {
 		case WAIT_CR:
@@ -99,25 +220,44 @@ public class FrameHandler {
 				currentAssemblyState = AssemblyStates.WAIT_LF;
 				break;
 			}
-			recBuffer[recBufferIndex] = (short)b;
+			if (b == BinaryFraming.DELIMITER) {
+				// Never sent with ASCII framing.
+				setBinaryFraming(true, "binary frame received, switching to binary framing");
+				break;
+			}
+			if (recBufferIndex >= MAX_LENGTH_PAYLOAD) {
+				// Error. Reset assembly.
+				metrics.framesTooLong.increment();
+				assemblerLog.warn("{}: frame too long", sourceName);
+				recBufferIndex = 0;
+				break;
+			}
+			recBuffer[recBufferIndex] = (byte)b;
 			recBufferIndex++;
 			// Stay in same state.
 			break;
 		case WAIT_LF:
 			if (b != LF) {
 				// Error. Reset assembly.
-				displayMessage.displayLogLater("!= LF received");
+				metrics.missingLf.increment();
+				assemblerLog.warn("{}: != LF received", sourceName);
 				currentAssemblyState = AssemblyStates.WAIT_CR;
 				recBufferIndex = 0;
 				break;
 			}
 			// At this stage, LF received.
-			payload = Arrays.copyOfRange(recBuffer, 0, recBufferIndex);
+			frame.set(recBuffer, 0, recBufferIndex);
+			metrics.framesAssembled.increment();
+			payload = frame;
 			currentAssemblyState = AssemblyStates.WAIT_CR;
 			recBufferIndex = 0;
+			if (isFrame(BINARY_ACK)) {
+				setBinaryFraming(true, "binary framing enabled");
+			}
 			break;
 		default:
-			displayMessage.displayLogLater("unknown state for frame assembler");
+			metrics.otherResets.increment();
+			assemblerLog.error("{}: unknown state for frame assembler", sourceName);
 			currentAssemblyState = AssemblyStates.WAIT_CR;
 			recBufferIndex = 0;
 		}
@@ -127,146 +267,317 @@ public class FrameHandler {
 	}
 
 	/**
+	 * Same as above, for binary framing.
+	 *
+	 * @param b
+	 * @return
+	 */
+	private Frame binaryFrameAssembler(int b) {
+
+		if (b != BinaryFraming.DELIMITER) {
+			if (encodedIndex >= encodedBuffer.length) {
+				if (!encodedOverflow) {
+					encodedOverflow = true;
+					metrics.framesTooLong.increment();
+					assemblerLog.warn("{}: frame too long", sourceName);
+					binaryError();
+				}
+				return null;
+			}
+			encodedBuffer[encodedIndex++] = (byte)b;
+			return null;
+		}
+		if (encodedOverflow || (encodedIndex == 0)) {
+			encodedIndex = 0;
+			encodedOverflow = false;
+			return null;
+		}
+
+		int length = BinaryFraming.decode(encodedBuffer, encodedIndex, encodedBuffer);
+		encodedIndex = 0;
+		if ((length < 1 + BinaryFraming.CRC_LENGTH) || (BinaryFraming.crc16(encodedBuffer, 0, length)
+				!= 0)) {
+			// CRC of a frame followed by its CRC is 0.
+			metrics.corruptedFrames.increment();
+			assemblerLog.warn("{}: corrupted binary frame", sourceName);
+			binaryError();
+			return null;
+		}
+		binaryErrors = 0;
+		length -= BinaryFraming.CRC_LENGTH;
+
+		// Give frames back their ASCII form.
+		if (encodedBuffer[0] == BinaryFraming.CODE_FRAME) {
+			byte[] prefix = (length >= 2) ? BinaryFraming.getTracePrefix(encodedBuffer[1] & 0xFF) : null;
+			if (prefix == null) {
+				metrics.corruptedFrames.increment();
+				assemblerLog.warn("{}: unknown trace code", sourceName);
+				return null;
+			}
+			if (prefix.length + length - 2 > MAX_LENGTH_PAYLOAD) {
+				metrics.framesTooLong.increment();
+				assemblerLog.warn("{}: frame too long", sourceName);
+				return null;
+			}
+			System.arraycopy(prefix, 0, recBuffer, 0, prefix.length);
+			System.arraycopy(encodedBuffer, 2, recBuffer, prefix.length, length - 2);
+			recBufferIndex = prefix.length + length - 2;
+		} else if (encodedBuffer[0] == 'A') {
+			if (1 + 2 * (length - 1) > MAX_LENGTH_PAYLOAD) {
+				metrics.framesTooLong.increment();
+				assemblerLog.warn("{}: frame too long", sourceName);
+				return null;
+			}
+			recBuffer[0] = encodedBuffer[0];
+			recBufferIndex = 1;
+			for (int i = 1; i < length; i++) {
+				recBuffer[recBufferIndex++] = HEXA[(encodedBuffer[i] >> 4) & 0x0F];
+				recBuffer[recBufferIndex++] = HEXA[encodedBuffer[i] & 0x0F];
+			}
+		} else {
+			if (length > MAX_LENGTH_PAYLOAD) {
+				metrics.framesTooLong.increment();
+				assemblerLog.warn("{}: frame too long", sourceName);
+				return null;
+			}
+			System.arraycopy(encodedBuffer, 0, recBuffer, 0, length);
+			recBufferIndex = length;
+		}
+		frame.set(recBuffer, 0, recBufferIndex);
+		recBufferIndex = 0;
+		metrics.framesAssembled.increment();
+		if (isFrame(ASCII_ACK)) {
+			setBinaryFraming(false, "ASCII framing enabled");
+		}
+		return frame;
+
+	}
+
+	/**
+	 * Counts a corrupted binary frame. Goes back to ASCII framing after too many
+	 * corrupted frames in a row.
+	 */
+	private void binaryError() {
+
+		binaryErrors++;
+		if (binaryErrors >= MAX_BINARY_ERRORS) {
+			setBinaryFraming(false, "too many corrupted binary frames, switching to ASCII framing");
+		}
+
+	}
+
+	/**
+	 * Resets assembly, with a new framing.
+	 *
+	 * @param binary
+	 * @param logMsg
+	 */
+	private void setBinaryFraming(boolean binary, String logMsg) {
+
+		binaryFraming = binary;
+		currentAssemblyState = AssemblyStates.WAIT_CR;
+		recBufferIndex = 0;
+		encodedIndex = 0;
+		encodedOverflow = false;
+		binaryErrors = 0;
+		assemblerLog.info("{}: {}", sourceName, logMsg);
+
+	}
+
+	/**
+	 *
+	 * @param content
+	 * @return true if assembled frame, type included, is content
+	 */
+	private boolean isFrame(byte[] content) {
+
+		if (frame.getLength() != content.length) {
+			return false;
+		}
+		for (int i = 0; i < content.length; i++) {
+			if (frame.get(i) != content[i]) {
+				return false;
+			}
+		}
+		return true;
+
+	}
+
+	/**
+	 * Assembles frames using a chunk of bytes, as read in one call from the serial
+	 * port. Every whole frame found in the chunk is processed. Assembly state is kept
+	 * from one call to the next one, so that a frame may be split over several chunks.
+	 *
+	 * @param chunk bytes to be processed
+	 * @param length number of bytes to be processed, starting at index 0
+	 */
+	public void frameAssembler(byte[] chunk, int length) {
+
+		metrics.bytesRead.add(length);
+		Frame f;
+		for (int i = 0; i < length; i++) {
+			f = frameAssembler(chunk[i] & 0xFF);
+			if (f != null) {
+				processFrame(f);
+			}
+		}
+
+	}
+
+	/**
+	 * Same as above, but assembled frames are given to a listener, instead of
+	 * being processed.
+	 *
+	 * @param chunk bytes to be processed
+	 * @param length number of bytes to be processed, starting at index 0
+	 * @param listener
+	 */
+	public void frameAssembler(byte[] chunk, int length, FrameListener listener) {
+
+		metrics.bytesRead.add(length);
+		Frame f;
+		for (int i = 0; i < length; i++) {
+			f = frameAssembler(chunk[i] & 0xFF);
+			if (f != null) {
+				listener.frameAssembled(f);
+			}
+		}
+
+	}
+
+	/**
+	 * Decodes frame, tags it with its source, and gives it to frame sinks.
 	 *
 	 * @param frame
 	 */
-	public void processFrame(short frame[]) {
+	public void processFrame(Frame frame) {
 
-		switch(frame[0]) {
+		FrameSink[] sinks = frameSinks;
+		frame.setSource(sourceId, sourceName);
+
+		switch(frame.getType()) {
 		case 'T':
 			// Trace frame.
-			displayMessage.displayFrameLater(frameToString(frame));
+			frame.setDeviceId(Frame.NO_DEVICE);
+			metrics.traceFrames.increment();
+			for (FrameSink sink: sinks) {
+				sink.frameReceived(frame);
+			}
 			break;
 		case 'A':
 			// Application frame.
-			displayMessage.displayFrameLater(frameToString(frame));
-			if (frame[1] == '5' && frame[2] == '4') {
-				// Temperature. Extract and display it.
-				if (frame.length < 7) {
-					displayMessage.displayLogLater("temperature frame too short");
+			if (frame.getLength() >= MIN_LENGTH_ADDRESSED) {
+				frame.setDeviceId((frame.getHexByte(DEVICE_ID_INDEX) << 8)
+						| frame.getHexByte(DEVICE_ID_INDEX + 2));
+			} else {
+				frame.setDeviceId(Frame.NO_DEVICE);
+			}
+			metrics.applicationFrames.increment();
+			for (FrameSink sink: sinks) {
+				sink.frameReceived(frame);
+			}
+			// Type code of message sent by remote device, hex encoded.
+			if (frame.getLength() >= 3) {
+				FrameDecoder decoder = frameDecoders[frame.getHexByte(1)];
+				if (decoder != null) {
+					if (frame.getLength() < decoder.getMinLength()) {
+						metrics.framesTooShort.increment();
+						decoderLog.warn("{}: {} frame too short", sourceName, decoder.getName());
+						break;
+					}
+					decoder.decode(frame, sinks);
+					metrics.decodedFrames.increment();
 					break;
 				}
-				short msbs[] = new short[2];
-				msbs[0] = frame[3];
-				msbs[1] = frame[4];
-				short lsbs[] = new short[2];
-				lsbs[0] = frame[5];
-				lsbs[1] = frame[6];
-				int tempi = hexAsciiToByte(msbs) * 256 + hexAsciiToByte(lsbs);
-				// Value used for top voltage is adapted to board 11.
-				float tempf = (tempi * 3140.0f / 1023.0f - 500.0f) / 10.0f;
-				String temps = decimalFormat.format(tempf) + "°C";
-				displayMessage.displayLogLater("temperature: " + temps);
-				displayMessage.displayTemperature(temps);
-				break;
 			}
-			displayMessage.displayLogLater("unknown application frame");
+			metrics.unknownApplicationFrames.increment();
+			decoderLog.warn("{}: unknown application frame", sourceName);
 			break;
 		default:
-			displayMessage.displayLogLater("unknown frame type");
+			metrics.unknownTypeFrames.increment();
+			decoderLog.warn("{}: unknown frame type", sourceName);
 		}
+
+		long arrivalTime = frame.getArrivalTime();
+		if (arrivalTime != 0) {
+			metrics.decodeLatency.record(System.nanoTime() - arrivalTime);
+		}
+
 	}
 
 	/**
 	 *
+	 * @param deviceId identifier of the remote device, BROADCAST_DEVICE_ID for all
 	 */
-	public short[] createSetRemoteLedRMsg() {
+	public byte[] createSetRemoteLedRMsg(int deviceId) {
 
-		short message[] = new short[2];
-
-		message[0] = LETTER_L;
-		message[1] = LETTER_R;
-		return message;
+		return createLedMsg(deviceId, LETTER_R);
 
 	}
 
 	/**
 	 *
+	 * @param deviceId identifier of the remote device, BROADCAST_DEVICE_ID for all
 	 */
-	public short[] createSetRemoteLedGMsg() {
-
-		short message[] = new short[2];
+	public byte[] createSetRemoteLedGMsg(int deviceId) {
 
-		message[0] = LETTER_L;
-		message[1] = LETTER_G;
-		return message;
+		return createLedMsg(deviceId, LETTER_G);
 
 	}
 
 	/**
 	 *
+	 * @param deviceId identifier of the remote device, BROADCAST_DEVICE_ID for all
 	 */
-	public short[] createSetRemoteLedBMsg() {
+	public byte[] createSetRemoteLedBMsg(int deviceId) {
 
-		short message[] = new short[2];
-
-		message[0] = LETTER_L;
-		message[1] = LETTER_B;
-		return message;
+		return createLedMsg(deviceId, LETTER_B);
 
 	}
 
 	/**
 	 *
+	 * @param deviceId identifier of the remote device, BROADCAST_DEVICE_ID for all
 	 */
-	public short[] createSetRemoteLedOffMsg() {
+	public byte[] createSetRemoteLedOffMsg(int deviceId) {
 
-		short message[] = new short[2];
-
-		message[0] = LETTER_L;
-		message[1] = FIGURE_0;
-		return message;
+		return createLedMsg(deviceId, FIGURE_0);
 
 	}
 
 	/**
-	 * Returns a value between 0 and 255, taking as input parameter 2 bytes containing
-	 * the ASCII codes of the hex representation of the byte. MSQ has to be in first byte,
-	 * LSQ in second one.
+	 * Encodes a LED command, terminated by CR LF, so that it can be sent with
+	 * one write. Identifier of the remote device follows 'L', on 2 bytes, in big
+	 * endian endianness.
 	 *
-	 * @param b
-	 * @return 0 if input parameter is out of range
+	 * @param deviceId
+	 * @param color
+	 * @return
 	 */
-	private short hexAsciiToByte(short[] b) {
+	private static byte[] createLedMsg(int deviceId, short color) {
 
-		int l = 0;
-		int m = 0;
+		byte message[] = new byte[6];
 
-		if ((b[1] >= 0x30) && (b[1] <= 0x39)) {
-			l = b[1] - 0x30;
-		} else if ((b[1] >= 0x41) && (b[1] <= 0x46)) {
-			l = b[1] - 0x41 + 10;
-		} else if ((b[1] >= 0x61) && (b[1] <= 0x66)) {
-			l = b[1] - 0x61 + 10;
-		}
-
-		if ((b[0] >= 0x30) && (b[0] <= 0x39)) {
-			m = b[0] - 0x30;
-		} else if ((b[0] >= 0x41) && (b[0] <= 0x46)) {
-			m = b[0] - 0x41 + 10;
-		} else if ((b[0] >= 0x61) && (b[0] <= 0x66)) {
-			m = b[0] - 0x61 + 10;
-		}
+		message[0] = (byte)LETTER_L;
+		message[1] = (byte)(deviceId >> 8);
+		message[2] = (byte)deviceId;
+		message[3] = (byte)color;
+		message[4] = (byte)CR;
+		message[5] = (byte)LF;
+		return message;
 
-		return (short)(m * 16 + l);
 	}
 
 	/**
 	 *
 	 * Used to display frames received from device. First character is not displayed,
 	 * as it is used to multiplex trace and application frames.
-	 * @param b
+	 * @param frame
 	 * @return
 	 */
-	public String frameToString(short[] b) {
+	public String frameToString(Frame frame) {
 
-		if (b.length == 0) return "";
-
-		StringBuilder sb = new StringBuilder();
-		for (int i = 1; i < b.length; i++) {
-			sb.append((char)b[i]);
-		}
-		return sb.toString();
+		return frame.toString();
 
 	}
 
@@ -0,0 +1,449 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * Compiles layouts of application frames into decoders.
+ *
+ * Layouts are declared in a text file (see layouts.txt for the format). Each
+ * layout is compiled into a decoder dedicated to its encoding, whose field
+ * characteristics are final values. Decoders are stored into a table indexed by
+ * type code, so that finding the decoder of a frame does not depend on the
+ * number of layouts.
+ *
+ */
+public class FrameLayouts {
+
+	// Number of possible type codes.
+	public final static int NB_CODES = 256;
+	// System property giving a file replacing default layouts.
+	public final static String LAYOUTS_PROPERTY = "explorerd2d.layouts";
+	private final static String DEFAULT_LAYOUTS = "layouts.txt";
+	private final static int MAX_FIELD_LENGTH = 4;
+
+	private static FrameDecoder[] defaultDecoders;
+
+	private final static Logger log = Logger.get(LogCategory.DECODER);
+
+	/**
+	 * Compiles default layouts once, and returns the same decoders afterwards.
+	 * Can be called from any context. Layout errors are logged.
+	 *
+	 * @return table of decoders, indexed by type code
+	 */
+	public static synchronized FrameDecoder[] getDefaultDecoders() {
+
+		if (defaultDecoders != null) {
+			return defaultDecoders;
+		}
+		String fileName = System.getProperty(LAYOUTS_PROPERTY);
+		InputStream in = null;
+		try {
+			if (fileName != null) {
+				in = new FileInputStream(fileName);
+			} else {
+				fileName = DEFAULT_LAYOUTS;
+				in = FrameLayouts.class.getResourceAsStream(DEFAULT_LAYOUTS);
+				if (in == null) {
+					throw new IOException("not found");
+				}
+			}
+			defaultDecoders = compile(new InputStreamReader(in, StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			log.error("can't load frame layouts {}: {}", fileName, e.getMessage());
+			defaultDecoders = new FrameDecoder[NB_CODES];
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// Nothing more can be done.
+				}
+			}
+		}
+		return defaultDecoders;
+
+	}
+
+	/**
+	 *
+	 * @param reader layouts, in the format of layouts.txt
+	 * @return table of decoders, indexed by type code
+	 * @throws IOException on read error, or if a layout is not valid
+	 */
+	public static FrameDecoder[] compile(Reader reader) throws IOException {
+
+		// Fields, by type code, in declaration order.
+		LinkedHashMap<Integer, ArrayList<Field>> layouts = new LinkedHashMap<Integer, ArrayList<Field>>();
+		BufferedReader br = new BufferedReader(reader);
+		String line;
+		int lineNumber = 0;
+		while ((line = br.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			Field field;
+			int code;
+			try {
+				String[] items = line.split("\\s+");
+				if (items.length != 8) {
+					throw new IllegalArgumentException("8 items expected");
+				}
+				code = parseCharacter(items[1]);
+				field = new Field(items[0], parseCharacter(items[2]), Integer.parseInt(items[3]),
+						Integer.parseInt(items[4]), parseEncoding(items[5]), parseNumber(items[6]),
+						parseNumber(items[7]));
+			} catch (IllegalArgumentException e) {
+				throw new IOException("line " + lineNumber + ": " + e.getMessage());
+			}
+			ArrayList<Field> fields = layouts.get(code);
+			if (fields == null) {
+				fields = new ArrayList<Field>();
+				layouts.put(code, fields);
+			}
+			fields.add(field);
+		}
+
+		FrameDecoder[] decoders = new FrameDecoder[NB_CODES];
+		for (Map.Entry<Integer, ArrayList<Field>> layout: layouts.entrySet()) {
+			decoders[layout.getKey()] = compileLayout(layout.getValue());
+		}
+		return decoders;
+
+	}
+
+	/**
+	 *
+	 * @param fields
+	 * @return
+	 */
+	private static FrameDecoder compileLayout(ArrayList<Field> fields) {
+
+		Field first = fields.get(0);
+		int minLength = 0;
+		for (Field field: fields) {
+			minLength = Math.max(minLength, field.end);
+		}
+		if (fields.size() > 1) {
+			return new MultiFieldDecoder(first.name, minLength, fields.toArray(new Field[fields.size()]));
+		}
+		if (first.hex) {
+			return new HexFieldDecoder(first, minLength);
+		}
+		return new BinaryFieldDecoder(first, minLength);
+
+	}
+
+	/**
+	 *
+	 * @param s
+	 * @return
+	 */
+	private static int parseCharacter(String s) {
+
+		if ((s.length() != 1) || (s.charAt(0) >= NB_CODES)) {
+			throw new IllegalArgumentException("bad character " + s);
+		}
+		return s.charAt(0);
+
+	}
+
+	/**
+	 *
+	 * @param s
+	 * @return true for hex encoding
+	 */
+	private static boolean parseEncoding(String s) {
+
+		if (s.equals("hex")) {
+			return true;
+		}
+		if (s.equals("binary")) {
+			return false;
+		}
+		throw new IllegalArgumentException("bad encoding " + s);
+
+	}
+
+	/**
+	 *
+	 * @param s a number, or a fraction
+	 * @return
+	 */
+	private static double parseNumber(String s) {
+
+		int slash = s.indexOf('/');
+		if (slash < 0) {
+			return Double.parseDouble(s);
+		}
+		return Double.parseDouble(s.substring(0, slash)) / Double.parseDouble(s.substring(slash + 1));
+
+	}
+
+	/**
+	 *
+	 * @param frame
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	private static int hexValue(Frame frame, int offset, int length) {
+
+		int raw = 0;
+		for (int i = 0; i < length; i++) {
+			raw = (raw << 8) | frame.getHexByte(offset + 2 * i);
+		}
+		return raw;
+
+	}
+
+	/**
+	 *
+	 * @param frame
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	private static int binaryValue(Frame frame, int offset, int length) {
+
+		int raw = 0;
+		for (int i = 0; i < length; i++) {
+			raw = (raw << 8) | frame.get(offset + i);
+		}
+		return raw;
+
+	}
+
+	/**
+	 *
+	 * Field of a layout.
+	 *
+	 */
+	private static class Field {
+
+		final String name;
+		final int reading;
+		final int offset;
+		final int length;
+		final boolean hex;
+		final double scale;
+		final double valueOffset;
+		// Index following last character of field.
+		final int end;
+
+		Field(String name, int reading, int offset, int length, boolean hex, double scale,
+				double valueOffset) {
+
+			if (offset < 1) {
+				throw new IllegalArgumentException("bad offset " + offset);
+			}
+			if ((length < 1) || (length > MAX_FIELD_LENGTH)) {
+				throw new IllegalArgumentException("bad length " + length);
+			}
+			this.name = name;
+			this.reading = reading;
+			this.offset = offset;
+			this.length = length;
+			this.hex = hex;
+			this.scale = scale;
+			this.valueOffset = valueOffset;
+			end = offset + (hex ? 2 * length : length);
+
+		}
+
+	}
+
+	/**
+	 *
+	 * Layout made of one hex encoded field.
+	 *
+	 */
+	private final static class HexFieldDecoder implements FrameDecoder {
+
+		private final String name;
+		private final int minLength;
+		private final int reading;
+		private final int offset;
+		private final int length;
+		private final double scale;
+		private final double valueOffset;
+
+		HexFieldDecoder(Field field, int minLength) {
+
+			name = field.name;
+			this.minLength = minLength;
+			reading = field.reading;
+			offset = field.offset;
+			length = field.length;
+			scale = field.scale;
+			valueOffset = field.valueOffset;
+
+		}
+
+		@Override
+		public String getName() {
+
+			return name;
+
+		}
+
+		@Override
+		public int getMinLength() {
+
+			return minLength;
+
+		}
+
+		@Override
+		public void decode(Frame frame, FrameSink[] sinks) {
+
+			int raw = hexValue(frame, offset, length);
+			float value = (float)(raw * scale + valueOffset);
+			for (FrameSink sink: sinks) {
+				sink.readingReceived(frame, reading, raw, value);
+			}
+
+		}
+
+	}
+
+	/**
+	 *
+	 * Layout made of one binary field.
+	 *
+	 */
+	private final static class BinaryFieldDecoder implements FrameDecoder {
+
+		private final String name;
+		private final int minLength;
+		private final int reading;
+		private final int offset;
+		private final int length;
+		private final double scale;
+		private final double valueOffset;
+
+		BinaryFieldDecoder(Field field, int minLength) {
+
+			name = field.name;
+			this.minLength = minLength;
+			reading = field.reading;
+			offset = field.offset;
+			length = field.length;
+			scale = field.scale;
+			valueOffset = field.valueOffset;
+
+		}
+
+		@Override
+		public String getName() {
+
+			return name;
+
+		}
+
+		@Override
+		public int getMinLength() {
+
+			return minLength;
+
+		}
+
+		@Override
+		public void decode(Frame frame, FrameSink[] sinks) {
+
+			int raw = binaryValue(frame, offset, length);
+			float value = (float)(raw * scale + valueOffset);
+			for (FrameSink sink: sinks) {
+				sink.readingReceived(frame, reading, raw, value);
+			}
+
+		}
+
+	}
+
+	/**
+	 *
+	 * Layout made of several fields. Readings are given to sinks in declaration
+	 * order.
+	 *
+	 */
+	private final static class MultiFieldDecoder implements FrameDecoder {
+
+		private final String name;
+		private final int minLength;
+		private final Field[] fields;
+
+		MultiFieldDecoder(String name, int minLength, Field[] fields) {
+
+			this.name = name;
+			this.minLength = minLength;
+			this.fields = fields;
+
+		}
+
+		@Override
+		public String getName() {
+
+			return name;
+
+		}
+
+		@Override
+		public int getMinLength() {
+
+			return minLength;
+
+		}
+
+		@Override
+		public void decode(Frame frame, FrameSink[] sinks) {
+
+			for (Field field: fields) {
+				int raw = field.hex ? hexValue(frame, field.offset, field.length)
+						: binaryValue(frame, field.offset, field.length);
+				float value = (float)(raw * field.scale + field.valueOffset);
+				for (FrameSink sink: sinks) {
+					sink.readingReceived(frame, field.reading, raw, value);
+				}
+			}
+
+		}
+
+	}
+
+}
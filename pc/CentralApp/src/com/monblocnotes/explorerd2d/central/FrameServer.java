@@ -0,0 +1,652 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+/**
+ *
+ * Streams frames and readings to local clients, over TCP. Any number of clients
+ * is served by a single thread, using a selector.
+ *
+ * Messages are prefixed by their length (2 bytes, big endian, length prefix
+ * excluded), then by their kind (1 byte). Then, big endian:
+ * - 'S' (source): source identifier (2 bytes), source name (UTF-8). Sent for
+ *   every known source when a client connects, then for every new source
+ * - 'F' (frame): source identifier (2 bytes), device identifier (2 bytes,
+ *   0xFFFF if none), reception time in ms since epoch (8 bytes), frame (type
+ *   included)
+ * - 'R' (reading): source identifier (2 bytes), device identifier (2 bytes,
+ *   0xFFFF if none), reception time in ms since epoch (8 bytes), type (1 byte),
+ *   raw value (4 bytes), value (4 bytes, IEEE 754 float)
+ * Source identifiers are the low 16 bits of frame source identifiers: replayed
+ * frames have source identifier 0xFFFF.
+ * Bytes sent by clients are ignored.
+ *
+ * Frame handlers never wait for the server: messages are encoded into an outbox,
+ * and are dropped when the outbox is full. The selector thread copies messages
+ * from the outbox to the write buffer of every client. When the write buffer of
+ * a client is half full, the client is degraded: frame messages are no longer
+ * sent to it, until its write buffer is a quarter full. When the write buffer
+ * of a client is full, the client is disconnected.
+ *
+ */
+public class FrameServer implements FrameSink, FrameServerMBean, Runnable {
+
+	private final static Logger log = Logger.get(LogCategory.APP);
+
+	public final static byte MSG_SOURCE = 'S';
+	public final static byte MSG_FRAME = 'F';
+	public final static byte MSG_READING = 'R';
+
+	private final static String MBEAN_TYPE = "FrameServer";
+	// Size of outbox, in bytes.
+	private final static int OUTBOX_CAPACITY = 256 * 1024;
+	// Size of write buffer of every client, in bytes.
+	private final static int CLIENT_BUFFER_CAPACITY = 32 * 1024;
+	// Size of length prefix.
+	private final static int PREFIX_LENGTH = 2;
+	// Length of message headers: kind, source, device, time.
+	private final static int HEADER_LENGTH = 13;
+	// Device identifier used for frames not sent by a remote device.
+	private final static int NO_DEVICE_ID = 0xFFFF;
+	// Number of source identifiers that can be sent.
+	private final static int MAX_SOURCES = 65536;
+	// Initial number of source names.
+	private final static int INITIAL_SOURCES = 256;
+
+	private int port;
+	private Selector selector;
+	private ServerSocketChannel serverChannel;
+	private ArrayList<Client> clients;
+	private Thread thread;
+	private volatile boolean closed;
+
+	// Filled by frame handlers, emptied by selector thread. Access is protected
+	// by outboxLock.
+	private ByteBuffer outbox;
+	// Swapped with outbox by selector thread.
+	private ByteBuffer batch;
+	private final Object outboxLock = new Object();
+	// Names of known sources, by source identifier, grown as needed. Protected
+	// by outboxLock.
+	private String[] sourceNames;
+	// Set when selector has been woken up, and outbox was not yet emptied.
+	private AtomicBoolean wakeupPending;
+
+	// Bytes sent by clients are read into this buffer, then ignored.
+	private ByteBuffer readBuffer;
+	private volatile int clientCount;
+	private volatile int degradedClientCount;
+	private AtomicLong acceptedClients;
+	private AtomicLong disconnectedClients;
+	private AtomicLong droppedMessages;
+	private AtomicLong skippedFrames;
+	private AtomicLong sentBytes;
+	private ObjectName objectName;
+
+	/**
+	 * Only accepts connections from local host.
+	 *
+	 * @param port TCP port, 0 for any free port
+	 * @throws IOException if port can't be listened to
+	 */
+	public FrameServer(int port) throws IOException {
+
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		try {
+			serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			serverChannel.close();
+			selector.close();
+			throw e;
+		}
+		this.port = serverChannel.socket().getLocalPort();
+		clients = new ArrayList<Client>();
+		outbox = ByteBuffer.allocate(OUTBOX_CAPACITY);
+		batch = ByteBuffer.allocate(OUTBOX_CAPACITY);
+		sourceNames = new String[INITIAL_SOURCES];
+		wakeupPending = new AtomicBoolean(false);
+		readBuffer = ByteBuffer.allocate(512);
+		clientCount = 0;
+		degradedClientCount = 0;
+		acceptedClients = new AtomicLong(0);
+		disconnectedClients = new AtomicLong(0);
+		droppedMessages = new AtomicLong(0);
+		skippedFrames = new AtomicLong(0);
+		sentBytes = new AtomicLong(0);
+		closed = false;
+		thread = new Thread(this, "frame-server");
+		thread.setDaemon(true);
+		thread.start();
+		objectName = MetricsRegistry.register(this, MBEAN_TYPE, null);
+
+	}
+
+	/**
+	 * For FrameSink interface. Can be called from any context.
+	 *
+	 * @param frame
+	 */
+	@Override
+	public void frameReceived(Frame frame) {
+
+		int length = frame.getLength();
+		synchronized (outboxLock) {
+			if (!putHeader(frame, MSG_FRAME, HEADER_LENGTH + length)) {
+				return;
+			}
+			for (int i = 0; i < length; i++) {
+				outbox.put((byte)frame.get(i));
+			}
+		}
+		wakeup();
+
+	}
+
+	/**
+	 * For FrameSink interface. Can be called from any context.
+	 *
+	 * @param frame
+	 * @param type
+	 * @param rawValue
+	 * @param value
+	 */
+	@Override
+	public void readingReceived(Frame frame, int type, int rawValue, float value) {
+
+		synchronized (outboxLock) {
+			if (!putHeader(frame, MSG_READING, HEADER_LENGTH + 9)) {
+				return;
+			}
+			outbox.put((byte)type);
+			outbox.putInt(rawValue);
+			outbox.putFloat(value);
+		}
+		wakeup();
+
+	}
+
+	/**
+	 * Disconnects all clients, and stops selector thread.
+	 */
+	public void close() {
+
+		closed = true;
+		selector.wakeup();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		MetricsRegistry.unregister(objectName);
+
+	}
+
+	/**
+	 *
+	 * @return number of clients and of sent bytes
+	 */
+	public String getSummary() {
+
+		return "frame server on port " + port + ": " + acceptedClients.get() + " client(s) accepted, "
+				+ disconnectedClients.get() + " too slow, " + sentBytes.get() + " bytes sent, "
+				+ droppedMessages.get() + " message(s) dropped";
+
+	}
+
+	/**
+	 * Run by selector thread.
+	 */
+	@Override
+	public void run() {
+
+		while (!closed) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				log.error("frame server: {}", e.getMessage());
+				break;
+			}
+			Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+			SelectionKey key;
+			while (iterator.hasNext()) {
+				key = iterator.next();
+				iterator.remove();
+				if (!key.isValid()) {
+					continue;
+				}
+				if (key.isAcceptable()) {
+					accept();
+				} else {
+					Client client = (Client)key.attachment();
+					if (key.isReadable()) {
+						client.read();
+					}
+					if (key.isValid() && key.isWritable()) {
+						client.write();
+					}
+				}
+			}
+			if (wakeupPending.getAndSet(false)) {
+				dispatch();
+			}
+		}
+
+		for (Client client: new ArrayList<Client>(clients)) {
+			client.close();
+		}
+		try {
+			serverChannel.close();
+			selector.close();
+		} catch (IOException e) {
+			// Nothing more can be done.
+		}
+
+	}
+
+	/**
+	 * For FrameServerMBean interface.
+	 */
+	@Override
+	public int getPort() {
+
+		return port;
+
+	}
+
+	/**
+	 * For FrameServerMBean interface.
+	 */
+	@Override
+	public int getClientCount() {
+
+		return clientCount;
+
+	}
+
+	/**
+	 * For FrameServerMBean interface.
+	 */
+	@Override
+	public int getDegradedClientCount() {
+
+		return degradedClientCount;
+
+	}
+
+	/**
+	 * For FrameServerMBean interface.
+	 */
+	@Override
+	public long getAcceptedClients() {
+
+		return acceptedClients.get();
+
+	}
+
+	/**
+	 * For FrameServerMBean interface.
+	 */
+	@Override
+	public long getDisconnectedClients() {
+
+		return disconnectedClients.get();
+
+	}
+
+	/**
+	 * For FrameServerMBean interface.
+	 */
+	@Override
+	public long getDroppedMessages() {
+
+		return droppedMessages.get();
+
+	}
+
+	/**
+	 * For FrameServerMBean interface.
+	 */
+	@Override
+	public long getSkippedFrames() {
+
+		return skippedFrames.get();
+
+	}
+
+	/**
+	 * For FrameServerMBean interface.
+	 */
+	@Override
+	public long getSentBytes() {
+
+		return sentBytes.get();
+
+	}
+
+	/**
+	 * Called with outboxLock held. Puts a source message first, if source is new.
+	 *
+	 * @param frame
+	 * @param kind
+	 * @param length length of message, length prefix excluded
+	 * @return false if there is no room in outbox
+	 */
+	private boolean putHeader(Frame frame, byte kind, int length) {
+
+		int sourceId = frame.getSourceId() & (MAX_SOURCES - 1);
+		String sourceName = frame.getSourceName();
+		if (sourceId >= sourceNames.length) {
+			sourceNames = Arrays.copyOf(sourceNames,
+					Math.min(Math.max(sourceId + 1, 2 * sourceNames.length), MAX_SOURCES));
+		}
+		if (!sourceName.equals(sourceNames[sourceId])) {
+			byte[] name = sourceName.getBytes(StandardCharsets.UTF_8);
+			if (outbox.remaining() < PREFIX_LENGTH + 3 + name.length) {
+				droppedMessages.incrementAndGet();
+				return false;
+			}
+			putSource(outbox, sourceId, name);
+			sourceNames[sourceId] = sourceName;
+		}
+		if (outbox.remaining() < PREFIX_LENGTH + length) {
+			droppedMessages.incrementAndGet();
+			return false;
+		}
+		int deviceId = frame.getDeviceId();
+		outbox.putShort((short)length);
+		outbox.put(kind);
+		outbox.putShort((short)sourceId);
+		outbox.putShort((short)((deviceId == Frame.NO_DEVICE) ? NO_DEVICE_ID : deviceId));
+		outbox.putLong(frame.getWallTime());
+		return true;
+
+	}
+
+	/**
+	 *
+	 * @param buffer
+	 * @param sourceId
+	 * @param name
+	 */
+	private static void putSource(ByteBuffer buffer, int sourceId, byte[] name) {
+
+		buffer.putShort((short)(3 + name.length));
+		buffer.put(MSG_SOURCE);
+		buffer.putShort((short)sourceId);
+		buffer.put(name);
+
+	}
+
+	/**
+	 * Wakes selector thread up, unless it was already woken up.
+	 */
+	private void wakeup() {
+
+		if (!wakeupPending.getAndSet(true)) {
+			selector.wakeup();
+		}
+
+	}
+
+	/**
+	 * Called from selector thread.
+	 */
+	private void accept() {
+
+		SocketChannel channel;
+		try {
+			channel = serverChannel.accept();
+			if (channel == null) {
+				return;
+			}
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+		} catch (IOException e) {
+			log.warn("frame server: can't accept client: {}", e.getMessage());
+			return;
+		}
+		Client client = new Client(channel);
+		try {
+			client.key = channel.register(selector, SelectionKey.OP_READ, client);
+		} catch (IOException e) {
+			client.close();
+			return;
+		}
+		clients.add(client);
+		clientCount = clients.size();
+		acceptedClients.incrementAndGet();
+		synchronized (outboxLock) {
+			for (int i = 0; i < sourceNames.length; i++) {
+				if (sourceNames[i] != null) {
+					byte[] name = sourceNames[i].getBytes(StandardCharsets.UTF_8);
+					if (client.buffer.remaining() >= PREFIX_LENGTH + 3 + name.length) {
+						putSource(client.buffer, i, name);
+					}
+				}
+			}
+		}
+		client.write();
+
+	}
+
+	/**
+	 * Called from selector thread. Copies messages of outbox to all clients.
+	 */
+	private void dispatch() {
+
+		synchronized (outboxLock) {
+			ByteBuffer b = outbox;
+			outbox = batch;
+			batch = b;
+		}
+		batch.flip();
+		int degraded = 0;
+		// Clients may be removed while iterating.
+		for (int c = clients.size() - 1; c >= 0; c--) {
+			Client client = clients.get(c);
+			if (client.append(batch)) {
+				client.write();
+			}
+			if (client.degraded) {
+				degraded++;
+			}
+		}
+		degradedClientCount = degraded;
+		batch.clear();
+
+	}
+
+	/**
+	 * Client connection. Only accessed from selector thread.
+	 */
+	private class Client {
+
+		SocketChannel channel;
+		SelectionKey key;
+		// Bytes to be written, in write mode.
+		ByteBuffer buffer;
+		boolean degraded;
+		boolean closed;
+
+		/**
+		 *
+		 * @param channel
+		 */
+		Client(SocketChannel channel) {
+
+			this.channel = channel;
+			buffer = ByteBuffer.allocate(CLIENT_BUFFER_CAPACITY);
+			degraded = false;
+			closed = false;
+
+		}
+
+		/**
+		 * Copies messages to write buffer, skipping frame messages if client
+		 * is degraded.
+		 *
+		 * @param messages in read mode. Position is not modified
+		 * @return false if client has been disconnected
+		 */
+		boolean append(ByteBuffer messages) {
+
+			int end = messages.limit();
+			// Most of the time, the whole batch can be copied at once.
+			if (!degraded && (buffer.position() + end < CLIENT_BUFFER_CAPACITY / 2)) {
+				buffer.put(messages.array(), 0, end);
+				return true;
+			}
+			int position = 0;
+			int length;
+			while (position < end) {
+				length = PREFIX_LENGTH + (messages.getShort(position) & 0xFFFF);
+				// Socket may accept more bytes before client is considered slow.
+				if ((buffer.position() >= CLIENT_BUFFER_CAPACITY / 2) && !flush()) {
+					return false;
+				}
+				if (!degraded && (buffer.position() >= CLIENT_BUFFER_CAPACITY / 2)) {
+					degraded = true;
+				} else if (degraded && (buffer.position() < CLIENT_BUFFER_CAPACITY / 4)) {
+					degraded = false;
+				}
+				if (degraded && (messages.get(position + PREFIX_LENGTH) == MSG_FRAME)) {
+					skippedFrames.incrementAndGet();
+				} else if (buffer.remaining() < length) {
+					disconnectedClients.incrementAndGet();
+					close();
+					return false;
+				} else {
+					buffer.put(messages.array(), position, length);
+				}
+				position += length;
+			}
+			return true;
+
+		}
+
+		/**
+		 * Writes as many bytes as possible, then waits for the channel to be
+		 * writable if some bytes are left.
+		 */
+		void write() {
+
+			if (!flush()) {
+				return;
+			}
+			key.interestOps((buffer.position() > 0) ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+					: SelectionKey.OP_READ);
+
+		}
+
+		/**
+		 * Writes as many bytes as possible.
+		 *
+		 * @return false if client has been disconnected
+		 */
+		boolean flush() {
+
+			if (closed) {
+				return false;
+			}
+			if (buffer.position() == 0) {
+				return true;
+			}
+			buffer.flip();
+			try {
+				sentBytes.addAndGet(channel.write(buffer));
+			} catch (IOException e) {
+				close();
+				return false;
+			} finally {
+				buffer.compact();
+			}
+			return true;
+
+		}
+
+		/**
+		 * Reads and ignores bytes sent by client, detects disconnection.
+		 */
+		void read() {
+
+			int n;
+			try {
+				do {
+					readBuffer.clear();
+					n = channel.read(readBuffer);
+				} while (n > 0);
+			} catch (IOException e) {
+				n = -1;
+			}
+			if (n < 0) {
+				close();
+			}
+
+		}
+
+		/**
+		 *
+		 */
+		void close() {
+
+			if (closed) {
+				return;
+			}
+			closed = true;
+			clients.remove(this);
+			clientCount = clients.size();
+			if (key != null) {
+				key.cancel();
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// Nothing more can be done.
+			}
+
+		}
+
+	}
+
+}
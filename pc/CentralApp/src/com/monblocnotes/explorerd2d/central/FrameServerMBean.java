@@ -0,0 +1,67 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Frame server, published through JMX.
+ *
+ */
+public interface FrameServerMBean {
+
+	public int getPort();
+
+	public int getClientCount();
+
+	/**
+	 *
+	 * @return number of connected clients only receiving readings
+	 */
+	public int getDegradedClientCount();
+
+	public long getAcceptedClients();
+
+	/**
+	 *
+	 * @return number of clients disconnected because they did not read fast enough
+	 */
+	public long getDisconnectedClients();
+
+	/**
+	 *
+	 * @return number of messages dropped before being given to any client,
+	 *         because the selector thread could not keep up
+	 */
+	public long getDroppedMessages();
+
+	/**
+	 *
+	 * @return number of frame messages not sent to degraded clients, summed over
+	 *         all clients
+	 */
+	public long getSkippedFrames();
+
+	public long getSentBytes();
+
+}
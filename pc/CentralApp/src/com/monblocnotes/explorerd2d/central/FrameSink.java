@@ -0,0 +1,51 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Interface implemented by consumers of decoded frames. Methods are called
+ * from the decoder context.
+ *
+ */
+public interface FrameSink {
+
+	/**
+	 * Called for every received trace or application frame. Frame is valid only
+	 * during the call: it must be copied if it has to be kept.
+	 * @param frame
+	 */
+	public void frameReceived(Frame frame);
+
+	/**
+	 * Called for every reading decoded from an application frame, after
+	 * frameReceived() has been called for this frame.
+	 * @param frame frame the reading was decoded from
+	 * @param type type of reading, e.g. FrameHandler.READING_TEMPERATURE
+	 * @param rawValue value sent by the device
+	 * @param value value converted to physical unit
+	 */
+	public void readingReceived(Frame frame, int type, int rawValue, float value);
+
+}
@@ -0,0 +1,277 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * Hashed timer wheel: many timeouts are managed by one thread, without one
+ * scheduled task per timeout. Time is divided into ticks. Every bucket of the
+ * wheel holds the timeouts expiring during a same tick, modulo the number of
+ * buckets. Once per tick, the thread visits the next bucket and runs the tasks
+ * of expired timeouts. Consequently, timeouts expire up to one tick late.
+ *
+ * Timeouts can be created and cancelled from any context. They are given to the
+ * wheel thread through a lock-free queue. Cancelled timeouts are removed from
+ * their bucket when it is next visited.
+ *
+ * Tasks are run by the wheel thread: they must be short.
+ *
+ */
+public class HashedTimerWheel implements Runnable {
+
+	private final static Logger log = Logger.get(LogCategory.APP);
+
+	private final static int ST_PENDING = 0;
+	private final static int ST_CANCELLED = 1;
+	private final static int ST_EXPIRED = 2;
+
+	private long tickDuration;
+	private Timeout[] buckets;
+	private int mask;
+	private ConcurrentLinkedQueue<Timeout> newTimeouts;
+	// Only accessed from wheel thread.
+	private long tick;
+	private long startTime;
+	private String name;
+	private Thread thread;
+	private volatile boolean stopped;
+
+	/**
+	 *
+	 * Timeout returned by newTimeout().
+	 *
+	 */
+	public static class Timeout {
+
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state;
+		// Only accessed from wheel thread.
+		private long remainingRounds;
+		private Timeout next;
+		private Timeout prev;
+		private int bucket;
+
+		Timeout(Runnable task, long deadline) {
+
+			this.task = task;
+			this.deadline = deadline;
+			state = new AtomicInteger(ST_PENDING);
+
+		}
+
+		/**
+		 * Can be called from any context.
+		 * @return false if task was already run, or timeout already cancelled
+		 */
+		public boolean cancel() {
+
+			return state.compareAndSet(ST_PENDING, ST_CANCELLED);
+
+		}
+
+		/**
+		 *
+		 * @return true if task was run, or is about to be run
+		 */
+		public boolean isExpired() {
+
+			return state.get() == ST_EXPIRED;
+
+		}
+
+	}
+
+	/**
+	 *
+	 * @param name used to name wheel thread
+	 * @param tickDuration in ms
+	 * @param wheelSize number of buckets, rounded up to a power of 2
+	 */
+	public HashedTimerWheel(String name, long tickDuration, int wheelSize) {
+
+		this.name = name;
+		this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		buckets = new Timeout[size];
+		mask = size - 1;
+		newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+		stopped = false;
+
+	}
+
+	/**
+	 * Starts wheel thread.
+	 */
+	public void start() {
+
+		startTime = System.nanoTime();
+		tick = 0;
+		thread = new Thread(this, name + "-timer");
+		thread.setDaemon(true);
+		thread.start();
+
+	}
+
+	/**
+	 * Pending timeouts never expire.
+	 */
+	public void stop() {
+
+		stopped = true;
+		if (thread != null) {
+			thread.interrupt();
+		}
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 *
+	 * @param task run by wheel thread when timeout expires
+	 * @param delay in ms
+	 * @return
+	 */
+	public Timeout newTimeout(Runnable task, long delay) {
+
+		Timeout timeout = new Timeout(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+		newTimeouts.offer(timeout);
+		return timeout;
+
+	}
+
+	/**
+	 * For Runnable interface.
+	 */
+	@Override
+	public void run() {
+
+		long deadline;
+		long now;
+		while (!stopped) {
+			// Wait for end of current tick.
+			deadline = startTime + (tick + 1) * tickDuration;
+			now = System.nanoTime();
+			while ((now < deadline) && !stopped) {
+				LockSupport.parkNanos(this, deadline - now);
+				now = System.nanoTime();
+			}
+			if (stopped) {
+				break;
+			}
+			transferNewTimeouts();
+			expireTimeouts((int)(tick & mask), deadline);
+			tick++;
+		}
+
+	}
+
+	/**
+	 * Puts new timeouts into their bucket. Run by wheel thread.
+	 */
+	private void transferNewTimeouts() {
+
+		Timeout timeout;
+		long ticks;
+		while ((timeout = newTimeouts.poll()) != null) {
+			if (timeout.state.get() != ST_PENDING) {
+				continue;
+			}
+			// Number of the tick the timeout expires in. A timeout already
+			// expired expires in current tick.
+			ticks = (timeout.deadline - startTime + tickDuration - 1) / tickDuration - 1;
+			if (ticks < tick) {
+				ticks = tick;
+			}
+			timeout.remainingRounds = (ticks - tick) / buckets.length;
+			timeout.bucket = (int)(ticks & mask);
+			timeout.prev = null;
+			timeout.next = buckets[timeout.bucket];
+			if (timeout.next != null) {
+				timeout.next.prev = timeout;
+			}
+			buckets[timeout.bucket] = timeout;
+		}
+
+	}
+
+	/**
+	 * Runs tasks of expired timeouts of a bucket. Run by wheel thread.
+	 *
+	 * @param bucket
+	 * @param deadline end of current tick
+	 */
+	private void expireTimeouts(int bucket, long deadline) {
+
+		Timeout timeout = buckets[bucket];
+		Timeout next;
+		while (timeout != null) {
+			next = timeout.next;
+			if (timeout.state.get() != ST_PENDING) {
+				remove(timeout);
+			} else if (timeout.remainingRounds > 0) {
+				timeout.remainingRounds--;
+			} else if (timeout.deadline <= deadline) {
+				remove(timeout);
+				if (timeout.state.compareAndSet(ST_PENDING, ST_EXPIRED)) {
+					try {
+						timeout.task.run();
+					} catch (RuntimeException e) {
+						log.error("{} timer task error: {}", name, e);
+					}
+				}
+			}
+			timeout = next;
+		}
+
+	}
+
+	/**
+	 *
+	 * @param timeout
+	 */
+	private void remove(Timeout timeout) {
+
+		if (timeout.prev != null) {
+			timeout.prev.next = timeout.next;
+		} else {
+			buckets[timeout.bucket] = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.prev = timeout.prev;
+		}
+		timeout.prev = null;
+		timeout.next = null;
+
+	}
+
+}
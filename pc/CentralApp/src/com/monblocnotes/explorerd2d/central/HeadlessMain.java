@@ -0,0 +1,448 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ *
+ * Entry point for gateways without display. JavaFX is not used.
+ *
+ * Usage: HeadlessMain [-f file] [-l file] [-t file] [-s directory] [-a directory]
+ *                     [-c file] [-r file | -R file] [-p path[,path]]... [-S rate]
+ *                     [-n devices] [-L port] [-b] port...
+ *   -f: file frames are written to
+ *   -l: file log messages are written to
+ *   -t: file temperatures are written to
+ *   -s: directory readings are stored in
+ *   -a: directory readings are archived in, compressed
+ *   -c: file received bytes are captured to. If several ports are given, port
+ *       index is appended to file name
+ *   -r: capture file to be replayed with its original pacing, instead of
+ *       reading serial ports
+ *   -R: capture file to be replayed as fast as possible, instead of reading
+ *       serial ports. Throughput of the receive chain is displayed at the end
+ *   -p: pseudo terminal, or named pipes (input, then output) to be read as a
+ *       serial port
+ *   -S: simulated central device, writing rate frames per second (0: as fast
+ *       as possible). Simulator throughput is displayed at exit
+ *   -n: number of remote devices of the simulated central device. Default is 1
+ *   -L: local TCP port frames and readings are streamed to
+ *   -b: binary framing is requested from central devices. Devices not
+ *       supporting it keep using ASCII framing
+ * Standard output is used when no file is given. Several ports can be given.
+ * When no port, pipe or simulator is given, available serial ports are listed.
+ *
+ * Log events are written with log messages. They are also written to rolling
+ * files if explorerd2d.log.file system property gives a file name.
+ *
+ * Readings are stored from a dedicated thread. When output files can't keep up,
+ * lines are dropped, unless explorerd2d.policy.display system property is set to
+ * block. When the store or the archive can't keep up, frame handlers wait,
+ * unless explorerd2d.policy.store system property gives another policy.
+ *
+ */
+public class HeadlessMain {
+
+	// Current version.
+	private final static String VERSION = "0.3";
+	private final static String APPLICATION = "IoT LoRa D2D demonstrator (headless) - version ";
+
+	private final static String STDOUT = "-";
+	private final static String USAGE = "Usage: HeadlessMain [-f file] [-l file] [-t file] [-s directory] "
+			+ "[-a directory] [-c file] [-r file | -R file] [-p path[,path]]... [-S rate] [-n devices] [-L port] [-b] port...";
+	private final static String SIMULATOR = "simulator";
+
+	// Maximum number of readings waiting to be stored.
+	private final static int STORE_QUEUE_CAPACITY = 16384;
+	private final static String DISPLAY_POLICY_PROPERTY = "explorerd2d.policy.display";
+	private final static String STORE_POLICY_PROPERTY = "explorerd2d.policy.store";
+	// System property giving the file log events are written to.
+	private final static String LOG_FILE_PROPERTY = "explorerd2d.log.file";
+	// Remote devices are identified on 2 bytes.
+	private final static int MAX_DEVICES = 65536;
+
+	/**
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+
+		String frameFile = STDOUT;
+		String logFile = STDOUT;
+		String temperatureFile = STDOUT;
+		String storeDirectory = null;
+		String archiveDirectory = null;
+		String captureFile = null;
+		String replayFile = null;
+		boolean originalPacing = true;
+		int simulatorRate = -1;
+		int simulatorDevices = 1;
+		int serverPort = -1;
+		boolean binaryFraming = false;
+		ArrayList<Transport> transports = new ArrayList<Transport>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-f") && (i + 1 < args.length)) {
+				frameFile = args[++i];
+			} else if (args[i].equals("-l") && (i + 1 < args.length)) {
+				logFile = args[++i];
+			} else if (args[i].equals("-t") && (i + 1 < args.length)) {
+				temperatureFile = args[++i];
+			} else if (args[i].equals("-s") && (i + 1 < args.length)) {
+				storeDirectory = args[++i];
+			} else if (args[i].equals("-a") && (i + 1 < args.length)) {
+				archiveDirectory = args[++i];
+			} else if (args[i].equals("-c") && (i + 1 < args.length)) {
+				captureFile = args[++i];
+			} else if (args[i].equals("-r") && (i + 1 < args.length)) {
+				replayFile = args[++i];
+				originalPacing = true;
+			} else if (args[i].equals("-R") && (i + 1 < args.length)) {
+				replayFile = args[++i];
+				originalPacing = false;
+			} else if (args[i].equals("-p") && (i + 1 < args.length)) {
+				String[] paths = args[++i].split(",", 2);
+				transports.add(new PipeTransport(paths[0], paths[paths.length - 1]));
+			} else if (args[i].equals("-S") && (i + 1 < args.length)) {
+				try {
+					simulatorRate = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					System.err.println(USAGE);
+					System.exit(1);
+				}
+			} else if (args[i].equals("-n") && (i + 1 < args.length)) {
+				try {
+					simulatorDevices = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					System.err.println(USAGE);
+					System.exit(1);
+				}
+			} else if (args[i].equals("-L") && (i + 1 < args.length)) {
+				try {
+					serverPort = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					System.err.println(USAGE);
+					System.exit(1);
+				}
+			} else if (args[i].equals("-b")) {
+				binaryFraming = true;
+			} else if (args[i].startsWith("-")) {
+				System.err.println(USAGE);
+				System.exit(1);
+			} else {
+				transports.add(new SerialTransport(args[i]));
+			}
+		}
+
+		// A same file may be used for several kinds of output.
+		final HashMap<String, AsyncLineWriter> writers = new HashMap<String, AsyncLineWriter>();
+		ConsoleDisplay display;
+		try {
+			display = new ConsoleDisplay(getWriter(writers, frameFile),
+					getWriter(writers, logFile), getWriter(writers, temperatureFile));
+		} catch (IOException e) {
+			System.err.println("can't open output file: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		final ConsoleDisplay console = display;
+		Logger.addSink(new LogSink() {
+
+			@Override
+			public void logEvent(long time, LogLevel level, LogCategory category, String threadName,
+					String message) {
+
+				console.displayLog(message);
+
+			}
+
+			@Override
+			public void flush() {
+
+			}
+
+			@Override
+			public void close() {
+
+			}
+
+		});
+		String logFileName = System.getProperty(LOG_FILE_PROPERTY);
+		if (logFileName != null) {
+			try {
+				Logger.addSink(new RollingFileSink(new File(logFileName), RollingFileSink.DEFAULT_MAX_SIZE,
+						RollingFileSink.DEFAULT_MAX_FILES));
+			} catch (IOException e) {
+				System.err.println("can't open log file: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		ReadingStore readingStore = null;
+		if (storeDirectory != null) {
+			try {
+				readingStore = new ReadingStore(new File(storeDirectory));
+			} catch (IOException e) {
+				System.err.println("can't open reading store: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		final ReadingStore store = readingStore;
+		final BufferedFrameSink storeSink = (store == null) ? null
+				: new BufferedFrameSink("store", store, false, STORE_QUEUE_CAPACITY,
+						OverloadPolicy.fromProperty(STORE_POLICY_PROPERTY, OverloadPolicy.BLOCK));
+		ReadingArchive readingArchive = null;
+		if (archiveDirectory != null) {
+			try {
+				readingArchive = new ReadingArchive(new File(archiveDirectory));
+			} catch (IOException e) {
+				System.err.println("can't open reading archive: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		final ReadingArchive archive = readingArchive;
+		final BufferedFrameSink archiveSink = (archive == null) ? null
+				: new BufferedFrameSink("archive", archive, false, STORE_QUEUE_CAPACITY,
+						OverloadPolicy.fromProperty(STORE_POLICY_PROPERTY, OverloadPolicy.BLOCK));
+		FrameServer server = null;
+		if (serverPort >= 0) {
+			try {
+				server = new FrameServer(serverPort);
+			} catch (IOException e) {
+				System.err.println("can't start frame server: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		final FrameServer frameServer = server;
+		final ReadingAggregator readingAggregator = new ReadingAggregator();
+		final DeviceRegistry deviceRegistry = new DeviceRegistry(MAX_DEVICES);
+		deviceRegistry.register();
+		final ArrayList<CaptureWriter> captureWriters = new ArrayList<CaptureWriter>();
+		final ArrayList<PortHandler> portHandlers = new ArrayList<PortHandler>();
+		CentralBoardSimulator simulator = null;
+		if (simulatorRate >= 0) {
+			MemoryTransport memoryTransport = new MemoryTransport(SIMULATOR);
+			simulator = new CentralBoardSimulator(memoryTransport.getDeviceInputStream(),
+					memoryTransport.getDeviceOutputStream(), simulatorRate);
+			simulator.setDeviceCount(simulatorDevices);
+			transports.add(memoryTransport);
+		}
+		final CentralBoardSimulator centralBoardSimulator = simulator;
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+
+				if (centralBoardSimulator != null) {
+					centralBoardSimulator.stop();
+					console.displayLog(centralBoardSimulator.getSummary());
+				}
+				// Producers are stopped before the sinks they feed.
+				synchronized (portHandlers) {
+					for (PortHandler portHandler: portHandlers) {
+						portHandler.close();
+					}
+				}
+				synchronized (captureWriters) {
+					for (CaptureWriter captureWriter: captureWriters) {
+						captureWriter.close();
+					}
+				}
+				if (store != null) {
+					storeSink.close();
+					console.displayLog(storeSink.getSummary());
+					store.close();
+				}
+				if (archive != null) {
+					archiveSink.close();
+					console.displayLog(archiveSink.getSummary());
+					archive.close();
+					console.displayLog(archive.getSummary());
+				}
+				if (frameServer != null) {
+					frameServer.close();
+					console.displayLog(frameServer.getSummary());
+				}
+				readingAggregator.close();
+				deviceRegistry.unregister();
+				Logger.shutdown();
+				for (AsyncLineWriter writer: writers.values()) {
+					writer.close();
+				}
+
+			}
+
+		}));
+
+		display.displayLog(APPLICATION + VERSION);
+		if (frameServer != null) {
+			display.displayLog("frames streamed on port " + frameServer.getPort());
+		}
+		if (replayFile != null) {
+			ArrayList<FrameSink> sinks = new ArrayList<FrameSink>();
+			sinks.add(readingAggregator);
+			sinks.add(deviceRegistry);
+			if (archiveSink != null) {
+				sinks.add(archiveSink);
+			}
+			if (frameServer != null) {
+				sinks.add(frameServer);
+			}
+			replay(display, sinks.toArray(new FrameSink[sinks.size()]), storeSink,
+					replayFile, originalPacing);
+			System.exit(0);
+		}
+		if (transports.isEmpty()) {
+			ArrayList<String> portNameList = PortHandler.getSerialPorts(display);
+			if (portNameList == null) {
+				display.displayLog("No serial port available");
+			}
+			System.exit(0);
+		}
+
+		int opened = 0;
+		for (Transport transport: transports) {
+			PortHandler portHandler = new PortHandler(display, opened);
+			portHandler.addFrameSink(readingAggregator);
+			portHandler.addFrameSink(deviceRegistry);
+			if (storeSink != null) {
+				portHandler.addFrameSink(storeSink);
+			}
+			if (archiveSink != null) {
+				portHandler.addFrameSink(archiveSink);
+			}
+			if (frameServer != null) {
+				portHandler.addFrameSink(frameServer);
+			}
+			if (portHandler.setTransport(transport) != 0) {
+				continue;
+			}
+			synchronized (portHandlers) {
+				portHandlers.add(portHandler);
+			}
+			if (binaryFraming) {
+				portHandler.requestFraming(true);
+			}
+			String portName = transport.getName();
+			if (captureFile != null) {
+				String fileName = (transports.size() > 1) ? captureFile + "." + opened : captureFile;
+				try {
+					CaptureWriter captureWriter = new CaptureWriter(new File(fileName));
+					synchronized (captureWriters) {
+						captureWriters.add(captureWriter);
+					}
+					portHandler.getIngestPipeline().setCaptureWriter(captureWriter);
+					display.displayLog(portName + " captured to " + fileName);
+				} catch (IOException e) {
+					display.displayLog("can't open capture file: " + e.getMessage());
+				}
+			}
+			opened++;
+		}
+		if (opened == 0) {
+			System.exit(2);
+		}
+		if (simulator != null) {
+			simulator.start();
+		}
+
+		// Port handler threads are daemon threads: wait forever.
+		try {
+			new CountDownLatch(1).await();
+		} catch (InterruptedException e) {
+			// Exit.
+		}
+
+	}
+
+	/**
+	 * Replays a capture file through a frame handler and an ingest pipeline, as
+	 * if it was received from a serial port.
+	 *
+	 * @param display
+	 * @param sinks frame sinks, besides the store
+	 * @param store null if readings are not stored
+	 * @param fileName
+	 * @param originalPacing
+	 */
+	private static void replay(ConsoleDisplay display, FrameSink[] sinks,
+			FrameSink store, String fileName, boolean originalPacing) {
+
+		FrameHandler frameHandler = new FrameHandler(display);
+		frameHandler.setSource(0, fileName);
+		for (FrameSink sink: sinks) {
+			frameHandler.addFrameSink(sink);
+		}
+		if (store != null) {
+			frameHandler.addFrameSink(store);
+		}
+		IngestPipeline ingestPipeline = new IngestPipeline("replay", frameHandler);
+		ingestPipeline.start();
+		frameHandler.getMetrics().register(fileName);
+		CaptureReplay captureReplay = new CaptureReplay(new File(fileName));
+		try {
+			captureReplay.replay(ingestPipeline, originalPacing);
+			display.displayLog(captureReplay.getSummary());
+		} catch (IOException e) {
+			display.displayLog("replay error: " + e.getMessage());
+		}
+		ingestPipeline.stop();
+
+	}
+
+	/**
+	 *
+	 * @param writers
+	 * @param fileName
+	 * @return
+	 * @throws IOException
+	 */
+	private static AsyncLineWriter getWriter(HashMap<String, AsyncLineWriter> writers,
+			String fileName) throws IOException {
+
+		AsyncLineWriter writer = writers.get(fileName);
+		if (writer != null) {
+			return writer;
+		}
+		OverloadPolicy policy = OverloadPolicy.fromProperty(DISPLAY_POLICY_PROPERTY,
+				OverloadPolicy.DROP_NEWEST);
+		if (fileName.equals(STDOUT)) {
+			writer = new AsyncLineWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+					"stdout-writer", policy);
+		} else {
+			writer = new AsyncLineWriter(new OutputStreamWriter(new FileOutputStream(fileName, true),
+					StandardCharsets.UTF_8), fileName + "-writer", policy);
+		}
+		writers.put(fileName, writer);
+		return writer;
+
+	}
+
+}
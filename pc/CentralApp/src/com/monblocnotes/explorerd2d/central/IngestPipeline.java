@@ -0,0 +1,194 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ *
+ * Staged processing of received bytes:
+ * reader -> assembler -> decoder -> frame sinks.
+ *
+ * Reader is the thread that calls read() or write(). It only copies
+ * received bytes into the chunk ring, with their reception time, as given
+ * by System.nanoTime() and by System.currentTimeMillis(). Both times are
+ * carried by frames to every sink. Assembler and decoder stages run in their
+ * own threads. Stages are connected by bounded single-producer / single-consumer
+ * rings, so that only one thread may act as reader.
+ *
+ */
+public class IngestPipeline {
+
+	// Number and size of chunks of received bytes.
+	private final static int NB_CHUNKS = 64;
+	private final static int CHUNK_SIZE = 1024;
+	// Number of assembled frames waiting to be decoded.
+	private final static int NB_FRAMES = 256;
+
+	private SpscRing chunkRing;
+	private SpscRing frameRing;
+	private AssemblerStage assemblerStage;
+	private DecoderStage decoderStage;
+
+	/**
+	 *
+	 * @param name used to name stage threads
+	 * @param frameHandler
+	 */
+	public IngestPipeline(String name, FrameHandler frameHandler) {
+
+		chunkRing = new SpscRing(NB_CHUNKS, CHUNK_SIZE);
+		frameRing = new SpscRing(NB_FRAMES, FrameHandler.MAX_LENGTH_PAYLOAD);
+		assemblerStage = new AssemblerStage(name + "-assembler", frameHandler, chunkRing, frameRing);
+		decoderStage = new DecoderStage(name + "-decoder", frameHandler, frameRing);
+		frameHandler.getMetrics().setIngestPipeline(this);
+
+	}
+
+	/**
+	 *
+	 */
+	public void start() {
+
+		decoderStage.start();
+		assemblerStage.start();
+
+	}
+
+	/**
+	 *
+	 */
+	public void stop() {
+
+		assemblerStage.stop();
+		decoderStage.stop();
+
+	}
+
+	/**
+	 * For reader. Reads received bytes directly into chunk ring. Blocks until some
+	 * bytes are received, or until stream read timeout, if any. On end of stream,
+	 * frame assembly is reset.
+	 *
+	 * @param in
+	 * @return number of bytes read, 0 if none (timeout or interruption), -1 on end
+	 *         of stream
+	 * @throws IOException
+	 */
+	public int read(InputStream in) throws IOException {
+
+		int index = chunkRing.claim();
+		if (index == -1) {
+			// Interrupted.
+			return 0;
+		}
+		int n = in.read(chunkRing.getSlot(index), 0, CHUNK_SIZE);
+		if (n != 0) {
+			chunkRing.publish(index, n, System.nanoTime(), System.currentTimeMillis());
+		}
+		return n;
+
+	}
+
+	/**
+	 * For reader. Copies bytes into chunk ring.
+	 *
+	 * @param b
+	 * @param offset
+	 * @param length
+	 */
+	public void write(byte[] b, int offset, int length) {
+
+		int index;
+		int n;
+		while (length > 0) {
+			index = chunkRing.claim();
+			if (index == -1) {
+				// Interrupted.
+				return;
+			}
+			n = Math.min(length, CHUNK_SIZE);
+			System.arraycopy(b, offset, chunkRing.getSlot(index), 0, n);
+			chunkRing.publish(index, n, System.nanoTime(), System.currentTimeMillis());
+			offset += n;
+			length -= n;
+		}
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 *
+	 * @param captureWriter writer received chunks are captured to, null to
+	 *        stop capture
+	 */
+	public void setCaptureWriter(CaptureWriter captureWriter) {
+
+		assemblerStage.setCaptureWriter(captureWriter);
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 *
+	 * @return true if all received bytes have been assembled and decoded
+	 */
+	public boolean isIdle() {
+
+		return (chunkRing.getDepth() == 0) && (frameRing.getDepth() == 0);
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @return number of times reader had to wait for a free chunk
+	 */
+	public long getReaderStallCount() {
+
+		return chunkRing.getStallCount();
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public PipelineStage getAssemblerStage() {
+
+		return assemblerStage;
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public PipelineStage getDecoderStage() {
+
+		return decoderStage;
+
+	}
+
+}
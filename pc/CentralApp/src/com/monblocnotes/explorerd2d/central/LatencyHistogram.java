@@ -0,0 +1,157 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * Histogram of latencies, in ns, with one bucket per power of 2: bucket i
+ * counts latencies from 2^(i-1) to 2^i - 1. Recording is cheap and can be
+ * done from any context. Percentiles are given as the upper bound of the
+ * bucket they fall in, i.e. with an error of at most 100 %.
+ *
+ */
+public class LatencyHistogram {
+
+	private final static int NB_BUCKETS = 64;
+
+	private LongAdder[] buckets;
+	private LongAdder sum;
+	private AtomicLong max;
+
+	/**
+	 *
+	 */
+	public LatencyHistogram() {
+
+		buckets = new LongAdder[NB_BUCKETS];
+		for (int i = 0; i < NB_BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+		sum = new LongAdder();
+		max = new AtomicLong(0);
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 *
+	 * @param latency in ns. Negative values are recorded as 0
+	 */
+	public void record(long latency) {
+
+		if (latency < 0) {
+			latency = 0;
+		}
+		buckets[NB_BUCKETS - Long.numberOfLeadingZeros(latency)].increment();
+		sum.add(latency);
+		long m = max.get();
+		while ((latency > m) && !max.compareAndSet(m, latency)) {
+			m = max.get();
+		}
+
+	}
+
+	/**
+	 *
+	 * @return number of recorded latencies
+	 */
+	public long getCount() {
+
+		long count = 0;
+		for (LongAdder bucket: buckets) {
+			count += bucket.sum();
+		}
+		return count;
+
+	}
+
+	/**
+	 *
+	 * @return mean latency, in ns, 0 if nothing was recorded
+	 */
+	public double getMean() {
+
+		long count = getCount();
+		if (count == 0) {
+			return 0;
+		}
+		return (double)sum.sum() / count;
+
+	}
+
+	/**
+	 *
+	 * @return maximum latency, in ns
+	 */
+	public long getMax() {
+
+		return max.get();
+
+	}
+
+	/**
+	 *
+	 * @param percentile between 0 and 100
+	 * @return upper bound of the bucket the percentile falls in, in ns
+	 */
+	public long getPercentile(double percentile) {
+
+		long[] counts = getBuckets();
+		long count = 0;
+		for (long c: counts) {
+			count += c;
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long)Math.ceil(count * percentile / 100.0);
+		long cumulated = 0;
+		for (int i = 0; i < NB_BUCKETS; i++) {
+			cumulated += counts[i];
+			if ((cumulated >= rank) && (counts[i] > 0)) {
+				return Math.min((i == NB_BUCKETS - 1) ? Long.MAX_VALUE : (1L << i) - 1, getMax());
+			}
+		}
+		return getMax();
+
+	}
+
+	/**
+	 *
+	 * @return number of latencies recorded in every bucket
+	 */
+	public long[] getBuckets() {
+
+		long[] counts = new long[NB_BUCKETS];
+		for (int i = 0; i < NB_BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+		}
+		return counts;
+
+	}
+
+}
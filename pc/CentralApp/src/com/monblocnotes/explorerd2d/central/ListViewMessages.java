@@ -23,7 +23,9 @@
  */
 package com.monblocnotes.explorerd2d.central;
 
-import javafx.collections.ObservableList;
+import java.nio.charset.Charset;
+
+import javafx.collections.ObservableListBase;
 
 /**
  *
@@ -31,36 +33,137 @@ import javafx.collections.ObservableList;
  * to least recent one. When a new message is inserted, and maximum number
  * of messages is reached, oldest message is removed from the list.
  *
+ * Messages are stored in a circular buffer, in a compact form: time of
+ * the message, and bytes of the message, in a given charset. The list is a read-only view
+ * of this buffer, to be given to a ListView. A message is turned into a
+ * display string only when the ListView asks for it, i.e. for visible cells.
+ *
+ * Must be used from FX application context only.
+ *
  */
-public class ListViewMessages {
+public class ListViewMessages extends ObservableListBase<String> {
+
+	private final static String SEPARATOR = " - ";
+	// Removed messages are not rendered. Listeners get this value instead.
+	private final static String REMOVED_MESSAGE = "";
 
-	private ObservableList<String> messageList;
 	private int maxNumberOfMessages;
+	private long[] times;
+	private byte[][] messages;
+	private Charset charset;
+	// Index of slot where next message will be stored.
+	private int head;
+	private int size;
+
+	private TimestampFormatter timeFormatter;
+	private StringBuilder line;
 
 	/**
 	 *
-	 * @param frameList
+	 * @param maxNumberOfMessages
+	 * @param charset used to store messages
 	 */
-	public ListViewMessages(ObservableList<String> frameList, int maxNumberOfMessages) {
+	public ListViewMessages(int maxNumberOfMessages, Charset charset) {
 
-		this.messageList = frameList;
 		this.maxNumberOfMessages = maxNumberOfMessages;
+		this.charset = charset;
+		times = new long[maxNumberOfMessages];
+		messages = new byte[maxNumberOfMessages][];
+		head = 0;
+		size = 0;
+
+		timeFormatter = new TimestampFormatter("HH:mm:ss");
+		line = new StringBuilder(128);
 
 	}
 
 	/**
+	 * Time of insertion is associated to the message.
 	 *
-	 * @param frame
+	 * @param message
 	 */
 	public void addMessage(String message) {
 
-		int s = messageList.size();
-		if (s >= maxNumberOfMessages) {
-			// Remove oldest element.
-			messageList.remove(s - 1);
+		addMessage(System.currentTimeMillis(), message.getBytes(charset));
+
+	}
+
+	/**
+	 * Time of insertion is associated to the message.
+	 *
+	 * @param message message bytes, in list charset. Array is kept, not copied.
+	 */
+	public void addMessage(byte[] message) {
+
+		addMessage(System.currentTimeMillis(), message);
+
+	}
+
+	/**
+	 *
+	 * @param time time of the message, e.g. reception time of a frame, in ms
+	 *        since epoch
+	 * @param message
+	 */
+	public void addMessage(long time, String message) {
+
+		addMessage(time, message.getBytes(charset));
+
+	}
+
+	/**
+	 *
+	 * @param time time of the message, e.g. reception time of a frame, in ms
+	 *        since epoch
+	 * @param message message bytes, in list charset. Array is kept, not copied.
+	 */
+	public void addMessage(long time, byte[] message) {
+
+		beginChange();
+		if (size >= maxNumberOfMessages) {
+			// Remove oldest element. Its slot is the one overwritten below.
+			nextRemove(size - 1, REMOVED_MESSAGE);
+		} else {
+			size++;
 		}
 		// Add new element.
-		messageList.add(0, message);
+		times[head] = time;
+		messages[head] = message;
+		head++;
+		if (head == maxNumberOfMessages) {
+			head = 0;
+		}
+		nextAdd(0, 1);
+		endChange();
+
+	}
+
+	/**
+	 * Renders the message. Index 0 is the most recent message.
+	 */
+	@Override
+	public String get(int index) {
+
+		if ((index < 0) || (index >= size)) {
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+		}
+		int i = head - 1 - index;
+		if (i < 0) {
+			i += maxNumberOfMessages;
+		}
+		line.setLength(0);
+		timeFormatter.format(times[i], line).append(SEPARATOR);
+		return line.append(new String(messages[i], charset)).toString();
+
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public int size() {
+
+		return size;
 
 	}
 
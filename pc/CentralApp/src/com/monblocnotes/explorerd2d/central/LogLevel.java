@@ -0,0 +1,60 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Levels of log events, from most to least severe.
+ *
+ */
+public enum LogLevel {
+
+	ERROR,
+	WARN,
+	INFO,
+	DEBUG,
+	TRACE;
+
+	/**
+	 *
+	 * @param property name of a system property giving a level, e.g. debug
+	 * @param defaultLevel level returned when property is not set, or is not valid
+	 * @return
+	 */
+	public static LogLevel fromProperty(String property, LogLevel defaultLevel) {
+
+		String value = System.getProperty(property);
+		if (value == null) {
+			return defaultLevel;
+		}
+		try {
+			return valueOf(value.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.err.println("bad value for " + property + ": " + value);
+			return defaultLevel;
+		}
+
+	}
+
+}
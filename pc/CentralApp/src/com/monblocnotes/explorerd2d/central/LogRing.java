@@ -0,0 +1,334 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * Bounded multi-producer / single-consumer ring of log events, consumed by an
+ * appender thread. All slots are allocated once, when the ring is created.
+ *
+ * Producers never wait: an event is dropped when the ring is full, and dropped
+ * events are counted. Messages are formatted by the appender thread, then given
+ * to every sink. Arguments of an event must not be modified once the event is
+ * logged.
+ *
+ * Sequence of a slot tells its state: equal to the sequence number of next event
+ * to be put into the slot when it is free, incremented once the event is
+ * published, and set to the sequence number of the following event once the
+ * event is consumed.
+ *
+ */
+public class LogRing implements Runnable {
+
+	// Maximum time waited by appender thread between two checks, when ring is empty.
+	private final static long IDLE_WAIT_NANOS = 100000000L;
+	// Placeholder of arguments in messages.
+	private final static String PLACEHOLDER = "{}";
+	// Given instead of missing arguments.
+	final static Object NO_ARG = new Object();
+
+	private int mask;
+	private AtomicLongArray sequences;
+	private long[] times;
+	private LogLevel[] levels;
+	private LogCategory[] categories;
+	private String[] threadNames;
+	private String[] patterns;
+	private Object[] args0;
+	private Object[] args1;
+	private Object[] args2;
+
+	// Sequence number of next event to be published by producers.
+	private AtomicLong tail;
+	// Sequence number of next event to be consumed. Only accessed by appender thread.
+	private long head;
+
+	private CopyOnWriteArrayList<LogSink> sinks;
+	private Thread thread;
+	private volatile boolean consumerWaiting;
+	private volatile boolean closed;
+	private AtomicLong dropped;
+	// Number of dropped events already reported by appender thread.
+	private long reportedDropped;
+	private StringBuilder message;
+
+	/**
+	 *
+	 * @param nbSlots maximum number of events waiting to be appended, rounded up
+	 *        to a power of 2
+	 */
+	public LogRing(int nbSlots) {
+
+		int capacity = Integer.highestOneBit(Math.max(nbSlots - 1, 1)) << 1;
+		mask = capacity - 1;
+		sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			sequences.set(i, i);
+		}
+		times = new long[capacity];
+		levels = new LogLevel[capacity];
+		categories = new LogCategory[capacity];
+		threadNames = new String[capacity];
+		patterns = new String[capacity];
+		args0 = new Object[capacity];
+		args1 = new Object[capacity];
+		args2 = new Object[capacity];
+		tail = new AtomicLong(0);
+		head = 0;
+		sinks = new CopyOnWriteArrayList<LogSink>();
+		consumerWaiting = false;
+		closed = false;
+		dropped = new AtomicLong(0);
+		reportedDropped = 0;
+		message = new StringBuilder(256);
+
+	}
+
+	/**
+	 * Can be called from any context. Never waits.
+	 *
+	 * @param level
+	 * @param category
+	 * @param pattern message, {} being replaced by arguments, in order
+	 * @param arg0 NO_ARG if missing
+	 * @param arg1 NO_ARG if missing
+	 * @param arg2 NO_ARG if missing
+	 * @return false if event was dropped
+	 */
+	public boolean publish(LogLevel level, LogCategory category, String pattern, Object arg0,
+			Object arg1, Object arg2) {
+
+		long t;
+		int index;
+		long sequence;
+		while (true) {
+			t = tail.get();
+			index = (int)(t & mask);
+			sequence = sequences.get(index);
+			if (sequence == t) {
+				if (tail.compareAndSet(t, t + 1)) {
+					break;
+				}
+			} else if (sequence < t) {
+				// Slot still holds an event of previous round: ring is full.
+				dropped.incrementAndGet();
+				return false;
+			}
+			// Otherwise, slot was claimed by another producer: retry.
+		}
+		times[index] = System.currentTimeMillis();
+		levels[index] = level;
+		categories[index] = category;
+		threadNames[index] = Thread.currentThread().getName();
+		patterns[index] = pattern;
+		args0[index] = arg0;
+		args1[index] = arg1;
+		args2[index] = arg2;
+		sequences.lazySet(index, t + 1);
+		if (consumerWaiting) {
+			LockSupport.unpark(thread);
+		}
+		return true;
+
+	}
+
+	/**
+	 * Starts appender thread, if not already started. Events published before
+	 * are given to the sink, as long as the ring was not full.
+	 *
+	 * @param sink
+	 */
+	public synchronized void addSink(LogSink sink) {
+
+		sinks.add(sink);
+		if ((thread == null) && !closed) {
+			thread = new Thread(this, "log-appender");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+	}
+
+	/**
+	 * Sink is no longer given events. It is not closed.
+	 *
+	 * @param sink
+	 */
+	public void removeSink(LogSink sink) {
+
+		sinks.remove(sink);
+
+	}
+
+	/**
+	 * Appends events already published, then closes all sinks. Events
+	 * published afterwards are ignored.
+	 */
+	public void close() {
+
+		Thread t;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			t = thread;
+		}
+		if (t != null) {
+			LockSupport.unpark(t);
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		for (LogSink sink: sinks) {
+			sink.close();
+		}
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 *
+	 * @return number of events dropped because the ring was full
+	 */
+	public long getDropped() {
+
+		return dropped.get();
+
+	}
+
+	/**
+	 * Run by appender thread.
+	 */
+	@Override
+	public void run() {
+
+		int index;
+		while (true) {
+			index = (int)(head & mask);
+			if (sequences.get(index) != head + 1) {
+				// Ring is empty.
+				reportDropped();
+				for (LogSink sink: sinks) {
+					sink.flush();
+				}
+				if (closed) {
+					return;
+				}
+				consumerWaiting = true;
+				if (sequences.get(index) != head + 1) {
+					LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+				}
+				consumerWaiting = false;
+				continue;
+			}
+			message.setLength(0);
+			format(message, patterns[index], args0[index], args1[index], args2[index]);
+			append(times[index], levels[index], categories[index], threadNames[index],
+					message.toString());
+			threadNames[index] = null;
+			patterns[index] = null;
+			args0[index] = null;
+			args1[index] = null;
+			args2[index] = null;
+			sequences.lazySet(index, head + mask + 1);
+			head++;
+		}
+
+	}
+
+	/**
+	 * Called from appender thread.
+	 */
+	private void reportDropped() {
+
+		long d = dropped.get();
+		if (d != reportedDropped) {
+			append(System.currentTimeMillis(), LogLevel.WARN, LogCategory.APP,
+					Thread.currentThread().getName(), (d - reportedDropped) + " log event(s) dropped");
+			reportedDropped = d;
+		}
+
+	}
+
+	/**
+	 * Called from appender thread.
+	 *
+	 * @param time
+	 * @param level
+	 * @param category
+	 * @param threadName
+	 * @param msg
+	 */
+	private void append(long time, LogLevel level, LogCategory category, String threadName,
+			String msg) {
+
+		for (LogSink sink: sinks) {
+			try {
+				sink.logEvent(time, level, category, threadName, msg);
+			} catch (RuntimeException e) {
+				System.err.println("log sink error: " + e);
+			}
+		}
+
+	}
+
+	/**
+	 * Replaces placeholders by arguments. Placeholders without argument are kept.
+	 * Arguments may be null.
+	 *
+	 * @param sb
+	 * @param pattern
+	 * @param arg0
+	 * @param arg1
+	 * @param arg2
+	 */
+	static void format(StringBuilder sb, String pattern, Object arg0, Object arg1, Object arg2) {
+
+		int from = 0;
+		int argIndex = 0;
+		int i;
+		Object arg;
+		while ((argIndex < 3) && ((i = pattern.indexOf(PLACEHOLDER, from)) >= 0)) {
+			arg = (argIndex == 0) ? arg0 : ((argIndex == 1) ? arg1 : arg2);
+			if (arg == NO_ARG) {
+				break;
+			}
+			sb.append(pattern, from, i);
+			sb.append(arg);
+			argIndex++;
+			from = i + PLACEHOLDER.length();
+		}
+		sb.append(pattern, from, pattern.length());
+
+	}
+
+}
@@ -0,0 +1,296 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Logs events of a category, asynchronously. There is one logger per category.
+ *
+ * Messages are patterns, {} being replaced by arguments, in order: they are
+ * formatted by the log appender thread, and only if their level is enabled.
+ * Checking a disabled level only costs a volatile read. Logging an enabled event
+ * never waits: event is dropped if the appender can't keep up.
+ *
+ * Level of a category is given by explorerd2d.log.level.category system
+ * property (e.g. explorerd2d.log.level.decoder=debug), or else by
+ * explorerd2d.log.level system property. Default level is INFO.
+ *
+ */
+public class Logger {
+
+	private final static String LEVEL_PROPERTY = "explorerd2d.log.level";
+	// Maximum number of events waiting to be appended.
+	private final static int RING_SIZE = 4096;
+
+	private final static LogRing ring = new LogRing(RING_SIZE);
+	private final static Logger[] loggers;
+
+	static {
+		LogLevel defaultLevel = LogLevel.fromProperty(LEVEL_PROPERTY, LogLevel.INFO);
+		LogCategory[] values = LogCategory.values();
+		loggers = new Logger[values.length];
+		for (LogCategory category: values) {
+			loggers[category.ordinal()] = new Logger(category,
+					LogLevel.fromProperty(LEVEL_PROPERTY + "." + category.getName(), defaultLevel));
+		}
+	}
+
+	private LogCategory category;
+	// Ordinal of least severe enabled level.
+	private volatile int threshold;
+
+	/**
+	 *
+	 * @param category
+	 * @param level
+	 */
+	private Logger(LogCategory category, LogLevel level) {
+
+		this.category = category;
+		threshold = level.ordinal();
+
+	}
+
+	/**
+	 *
+	 * @param category
+	 * @return logger of the category
+	 */
+	public static Logger get(LogCategory category) {
+
+		return loggers[category.ordinal()];
+
+	}
+
+	/**
+	 * Events logged before first sink is added are kept, as long as there is
+	 * room for them.
+	 *
+	 * @param sink
+	 */
+	public static void addSink(LogSink sink) {
+
+		ring.addSink(sink);
+
+	}
+
+	/**
+	 *
+	 * @param sink
+	 */
+	public static void removeSink(LogSink sink) {
+
+		ring.removeSink(sink);
+
+	}
+
+	/**
+	 * Appends pending events, then closes all sinks.
+	 */
+	public static void shutdown() {
+
+		ring.close();
+
+	}
+
+	/**
+	 *
+	 * @return number of events dropped because the appender could not keep up
+	 */
+	public static long getDropped() {
+
+		return ring.getDropped();
+
+	}
+
+	/**
+	 *
+	 * @return least severe enabled level
+	 */
+	public LogLevel getLevel() {
+
+		return LogLevel.values()[threshold];
+
+	}
+
+	/**
+	 *
+	 * @param level least severe enabled level
+	 */
+	public void setLevel(LogLevel level) {
+
+		threshold = level.ordinal();
+
+	}
+
+	/**
+	 *
+	 * @param level
+	 * @return
+	 */
+	public boolean isEnabled(LogLevel level) {
+
+		return level.ordinal() <= threshold;
+
+	}
+
+	/**
+	 *
+	 * @param level
+	 * @param pattern
+	 * @param arg0
+	 * @param arg1
+	 * @param arg2
+	 */
+	public void log(LogLevel level, String pattern, Object arg0, Object arg1, Object arg2) {
+
+		if (level.ordinal() <= threshold) {
+			ring.publish(level, category, pattern, arg0, arg1, arg2);
+		}
+
+	}
+
+	/**
+	 *
+	 * @param pattern
+	 */
+	public void error(String pattern) {
+
+		log(LogLevel.ERROR, pattern, LogRing.NO_ARG, LogRing.NO_ARG, LogRing.NO_ARG);
+
+	}
+
+	/**
+	 *
+	 * @param pattern
+	 * @param arg0
+	 */
+	public void error(String pattern, Object arg0) {
+
+		log(LogLevel.ERROR, pattern, arg0, LogRing.NO_ARG, LogRing.NO_ARG);
+
+	}
+
+	/**
+	 *
+	 * @param pattern
+	 * @param arg0
+	 * @param arg1
+	 */
+	public void error(String pattern, Object arg0, Object arg1) {
+
+		log(LogLevel.ERROR, pattern, arg0, arg1, LogRing.NO_ARG);
+
+	}
+
+	/**
+	 *
+	 * @param pattern
+	 */
+	public void warn(String pattern) {
+
+		log(LogLevel.WARN, pattern, LogRing.NO_ARG, LogRing.NO_ARG, LogRing.NO_ARG);
+
+	}
+
+	/**
+	 *
+	 * @param pattern
+	 * @param arg0
+	 */
+	public void warn(String pattern, Object arg0) {
+
+		log(LogLevel.WARN, pattern, arg0, LogRing.NO_ARG, LogRing.NO_ARG);
+
+	}
+
+	/**
+	 *
+	 * @param pattern
+	 * @param arg0
+	 * @param arg1
+	 */
+	public void warn(String pattern, Object arg0, Object arg1) {
+
+		log(LogLevel.WARN, pattern, arg0, arg1, LogRing.NO_ARG);
+
+	}
+
+	/**
+	 *
+	 * @param pattern
+	 */
+	public void info(String pattern) {
+
+		log(LogLevel.INFO, pattern, LogRing.NO_ARG, LogRing.NO_ARG, LogRing.NO_ARG);
+
+	}
+
+	/**
+	 *
+	 * @param pattern
+	 * @param arg0
+	 */
+	public void info(String pattern, Object arg0) {
+
+		log(LogLevel.INFO, pattern, arg0, LogRing.NO_ARG, LogRing.NO_ARG);
+
+	}
+
+	/**
+	 *
+	 * @param pattern
+	 * @param arg0
+	 * @param arg1
+	 */
+	public void info(String pattern, Object arg0, Object arg1) {
+
+		log(LogLevel.INFO, pattern, arg0, arg1, LogRing.NO_ARG);
+
+	}
+
+	/**
+	 *
+	 * @param pattern
+	 * @param arg0
+	 */
+	public void debug(String pattern, Object arg0) {
+
+		log(LogLevel.DEBUG, pattern, arg0, LogRing.NO_ARG, LogRing.NO_ARG);
+
+	}
+
+	/**
+	 *
+	 * @param pattern
+	 * @param arg0
+	 * @param arg1
+	 */
+	public void debug(String pattern, Object arg0, Object arg1) {
+
+		log(LogLevel.DEBUG, pattern, arg0, arg1, LogRing.NO_ARG);
+
+	}
+
+}
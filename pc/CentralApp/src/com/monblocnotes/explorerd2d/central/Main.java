@@ -23,7 +23,11 @@
  */
 package com.monblocnotes.explorerd2d.central;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.monblocnotes.explorerd2d.central.UserInterfaceController.ProcessAction;
 
@@ -48,10 +52,83 @@ public class Main extends Application implements DisplayMessage, ProcessAction {
 
 	// Size of main window.
 	private final static int WIDTH = 600;
-	private final static int HEIGHT = 600;
+	private final static int HEIGHT = 800;
+
+	// System property giving the directory readings are stored in. If not set,
+	// readings are not stored.
+	private final static String STORE_DIRECTORY_PROPERTY = "explorerd2d.store";
+	// System property giving the directory readings are archived in,
+	// compressed. If not set, readings are not archived.
+	private final static String ARCHIVE_DIRECTORY_PROPERTY = "explorerd2d.archive";
+	// System property giving the local TCP port frames and readings are
+	// streamed to. If not set, they are not streamed.
+	private final static String SERVER_PORT_PROPERTY = "explorerd2d.server.port";
+	// System property giving the file received bytes are captured to. Index of
+	// port is appended to file name for every port but the first one.
+	private final static String CAPTURE_FILE_PROPERTY = "explorerd2d.capture";
+	// System properties giving a capture file to be replayed at startup, and
+	// whether it is replayed as fast as possible.
+	private final static String REPLAY_FILE_PROPERTY = "explorerd2d.replay";
+	private final static String REPLAY_FAST_PROPERTY = "explorerd2d.replay.fast";
+	// System property giving the rate of a simulated central device, in frames
+	// per second (0: as fast as possible). If set, the simulated device can be
+	// selected as a serial port.
+	private final static String SIMULATOR_PROPERTY = "explorerd2d.simulator";
+	private final static String SIMULATOR_PORT_NAME = "simulator";
+	// System property giving the number of remote devices of the simulated
+	// central device. Default is 1.
+	private final static String SIMULATOR_DEVICES_PROPERTY = "explorerd2d.simulator.devices";
+	// System property requesting binary framing from central devices, when
+	// set to true. Devices not supporting it keep using ASCII framing.
+	private final static String BINARY_FRAMING_PROPERTY = "explorerd2d.framing.binary";
+	// System property giving the least severe level of log events displayed in
+	// the log list, or off to display none. Default is info.
+	private final static String LOG_UI_PROPERTY = "explorerd2d.log.ui";
+	private final static String LOG_UI_OFF = "off";
+	// System property giving the file log events are written to. If not set,
+	// log events are not written to a file.
+	private final static String LOG_FILE_PROPERTY = "explorerd2d.log.file";
+
+	// Target of LED commands, followed by device identifier: a LED command
+	// replaces any LED command for the same device not sent yet.
+	private final static String LED_TARGET = "led:";
+	// Remote devices are identified on 2 bytes.
+	private final static int MAX_DEVICES = 65536;
+
+	// Maximum number of frames, and of log messages, displayed per pulse.
+	private final static int UI_MAX_BATCH_PER_PULSE = 50;
+	// Maximum number of frames, and of log messages, waiting to be displayed.
+	private final static int UI_QUEUE_CAPACITY = 4096;
+	// Maximum number of readings waiting to be stored.
+	private final static int STORE_QUEUE_CAPACITY = 16384;
+	// System properties giving what is done when the display, or the reading
+	// store, can't keep up: block, drop_oldest, drop_newest or sample_traces.
+	private final static String DISPLAY_POLICY_PROPERTY = "explorerd2d.policy.display";
+	private final static String STORE_POLICY_PROPERTY = "explorerd2d.policy.store";
+
+	private final static Logger log = Logger.get(LogCategory.APP);
 
 	private UserInterfaceController controller;
+	// Opened serial ports, by name. Only accessed from FX application context.
+	private LinkedHashMap<String, PortHandler> portHandlers;
+	// Source identifier of next opened port. Identifiers are never reused, even
+	// when a port is removed: sinks keep state by source identifier.
+	private int nextSourceId;
+	// Port used to send commands.
 	private PortHandler portHandler;
+	private PortWatcher portWatcher;
+	private ReadingStore readingStore;
+	// Readings are stored from a dedicated thread.
+	private BufferedFrameSink storeSink;
+	private ReadingArchive readingArchive;
+	// Readings are archived from a dedicated thread.
+	private BufferedFrameSink archiveSink;
+	private FrameServer frameServer;
+	// Statistics of readings over rolling windows.
+	private ReadingAggregator readingAggregator;
+	private DeviceRegistry deviceRegistry;
+	private ArrayList<CaptureWriter> captureWriters;
+	private UiUpdateDispatcher uiUpdateDispatcher;
 
 	/**
 	 *
@@ -71,17 +148,131 @@ public class Main extends Application implements DisplayMessage, ProcessAction {
 			e.printStackTrace();
 		}
 		controller = (UserInterfaceController)fxmlLoader.getController();
+		uiUpdateDispatcher = new UiUpdateDispatcher(controller, UI_MAX_BATCH_PER_PULSE,
+				UI_QUEUE_CAPACITY, OverloadPolicy.fromProperty(DISPLAY_POLICY_PROPERTY,
+						OverloadPolicy.SAMPLE_TRACES));
+		uiUpdateDispatcher.getMetrics().register();
 		// Display version.
 		controller.displayLogMsg(APPLICATION + VERSION);
-		// Display list of available serial ports.
-		portHandler = new PortHandler(this);
-		ArrayList<String> portNameList = portHandler.getSerialPorts();
-		if (portNameList != null) {
-			controller.displaySerialPorts(portNameList);
-		} else {
-			controller.displayLogMsg("No serial port available");
+		addLogSinks();
+		portHandlers = new LinkedHashMap<String, PortHandler>();
+		nextSourceId = 0;
+		String storeDirectory = System.getProperty(STORE_DIRECTORY_PROPERTY);
+		if (storeDirectory != null) {
+			try {
+				readingStore = new ReadingStore(new File(storeDirectory));
+				storeSink = new BufferedFrameSink("store", readingStore, false, STORE_QUEUE_CAPACITY,
+						OverloadPolicy.fromProperty(STORE_POLICY_PROPERTY, OverloadPolicy.BLOCK));
+				controller.displayLogMsg("readings stored in " + storeDirectory);
+			} catch (IOException e) {
+				controller.displayLogMsg("can't open reading store: " + e.getMessage());
+			}
 		}
+		String archiveDirectory = System.getProperty(ARCHIVE_DIRECTORY_PROPERTY);
+		if (archiveDirectory != null) {
+			try {
+				readingArchive = new ReadingArchive(new File(archiveDirectory));
+				archiveSink = new BufferedFrameSink("archive", readingArchive, false, STORE_QUEUE_CAPACITY,
+						OverloadPolicy.fromProperty(STORE_POLICY_PROPERTY, OverloadPolicy.BLOCK));
+				controller.displayLogMsg("readings archived in " + archiveDirectory);
+			} catch (IOException e) {
+				controller.displayLogMsg("can't open reading archive: " + e.getMessage());
+			}
+		}
+		String serverPort = System.getProperty(SERVER_PORT_PROPERTY);
+		if (serverPort != null) {
+			try {
+				frameServer = new FrameServer(Integer.parseInt(serverPort));
+				controller.displayLogMsg("frames streamed on port " + frameServer.getPort());
+			} catch (NumberFormatException e) {
+				controller.displayLogMsg("bad frame server port: " + serverPort);
+			} catch (IOException e) {
+				controller.displayLogMsg("can't start frame server: " + e.getMessage());
+			}
+		}
+		readingAggregator = new ReadingAggregator();
+		deviceRegistry = new DeviceRegistry(MAX_DEVICES);
+		deviceRegistry.register();
+		captureWriters = new ArrayList<CaptureWriter>();
+		String replayFile = System.getProperty(REPLAY_FILE_PROPERTY);
+		if (replayFile != null) {
+			replay(replayFile, Boolean.getBoolean(REPLAY_FAST_PROPERTY));
+		}
+		// Serial ports are added to the list as they are found by the port
+		// watcher.
+		ArrayList<String> portNameList = new ArrayList<String>();
+		if (System.getProperty(SIMULATOR_PROPERTY) != null) {
+			portNameList.add(SIMULATOR_PORT_NAME);
+		}
+		controller.displaySerialPorts(portNameList);
 		controller.setProcessAction(this);
+		portWatcher = new PortWatcher(new PortWatcher.PortListener() {
+
+			@Override
+			public void portAdded(final String portName) {
+
+				Platform.runLater(new Runnable() {
+
+					@Override
+					public void run() {
+
+						controller.addSerialPort(portName);
+
+					}
+
+				});
+
+			}
+
+			@Override
+			public void portRemoved(final String portName) {
+
+				Platform.runLater(new Runnable() {
+
+					@Override
+					public void run() {
+
+						serialPortRemoved(portName);
+
+					}
+
+				});
+
+			}
+
+		});
+		portWatcher.start();
+
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public void stop() {
+
+		portWatcher.close();
+		// Producers are stopped before the sinks they feed.
+		for (PortHandler ph: portHandlers.values()) {
+			ph.close();
+		}
+		for (CaptureWriter captureWriter: captureWriters) {
+			captureWriter.close();
+		}
+		if (readingStore != null) {
+			storeSink.close();
+			readingStore.close();
+		}
+		if (readingArchive != null) {
+			archiveSink.close();
+			readingArchive.close();
+		}
+		if (frameServer != null) {
+			frameServer.close();
+		}
+		readingAggregator.close();
+		deviceRegistry.unregister();
+		Logger.shutdown();
 
 	}
 
@@ -110,31 +301,23 @@ public class Main extends Application implements DisplayMessage, ProcessAction {
 	/**
 	 * For DisplayMessage interface.
 	 *
+	 * @param message
 	 */
 	@Override
-	public void displayLogLater(String message) {
-
-		Platform.runLater(new Runnable() {
-
-			@Override
-			public void run() {
-
-				controller.displayLogMsg(message);
+	public void displayFrame(String message) {
 
-			}
+		controller.displayFrame(message);
 
-		});
 	}
 
 	/**
 	 * For DisplayMessage interface.
 	 *
-	 * @param message
 	 */
 	@Override
-	public void displayFrame(String message) {
+	public void displayFrameLater(Frame frame) {
 
-		controller.displayFrame(message);
+		uiUpdateDispatcher.postFrame(frame);
 
 	}
 
@@ -143,45 +326,160 @@ public class Main extends Application implements DisplayMessage, ProcessAction {
 	 *
 	 */
 	@Override
-	public void displayFrameLater(String message) {
+	public void displayTemperature(Frame frame, float temp) {
 
-		Platform.runLater(new Runnable() {
+		uiUpdateDispatcher.postTemperature(frame, temp);
 
-			@Override
-			public void run() {
+	}
+
+	/**
+	 * Log events are displayed in the log list, unless disabled, and written to
+	 * a log file, if requested.
+	 */
+	private void addLogSinks() {
+
+		String uiLevel = System.getProperty(LOG_UI_PROPERTY);
+		if (!LOG_UI_OFF.equalsIgnoreCase(uiLevel)) {
+			final LogLevel level = LogLevel.fromProperty(LOG_UI_PROPERTY, LogLevel.INFO);
+			Logger.addSink(new LogSink() {
+
+				@Override
+				public void logEvent(long time, LogLevel l, LogCategory category, String threadName,
+						String message) {
+
+					if (l.compareTo(level) <= 0) {
+						uiUpdateDispatcher.postLogMsg(time, message);
+					}
+
+				}
+
+				@Override
+				public void flush() {
 
-				controller.displayFrame(message);
+				}
+
+				@Override
+				public void close() {
+
+				}
 
+			});
+		}
+		String logFile = System.getProperty(LOG_FILE_PROPERTY);
+		if (logFile != null) {
+			try {
+				Logger.addSink(new RollingFileSink(new File(logFile), RollingFileSink.DEFAULT_MAX_SIZE,
+						RollingFileSink.DEFAULT_MAX_FILES));
+				controller.displayLogMsg("log events written to " + logFile);
+			} catch (IOException e) {
+				controller.displayLogMsg("can't open log file: " + e.getMessage());
 			}
+		}
 
-		});
 	}
 
 	/**
-	 * For DisplayMessage interface.
+	 * Replays a capture file in a dedicated thread, as if it was received from
+	 * a serial port.
 	 *
+	 * @param fileName
+	 * @param fast true to replay as fast as possible
 	 */
-	@Override
-	public void displayTemperature(String temp) {
+	private void replay(final String fileName, final boolean fast) {
+
+		final FrameHandler frameHandler = new FrameHandler(this);
+		// Source identifiers of serial ports start from 0.
+		frameHandler.setSource(-1, fileName);
+		frameHandler.addFrameSink(readingAggregator);
+		frameHandler.addFrameSink(deviceRegistry);
+		if (storeSink != null) {
+			frameHandler.addFrameSink(storeSink);
+		}
+		if (archiveSink != null) {
+			frameHandler.addFrameSink(archiveSink);
+		}
+		if (frameServer != null) {
+			frameHandler.addFrameSink(frameServer);
+		}
+		Thread replayThread = new Thread(new Runnable() {
 
-		Platform.runLater(new Runnable() {
 			@Override
 			public void run() {
-				controller.displayTemperature(temp);
+
+				IngestPipeline ingestPipeline = new IngestPipeline("replay", frameHandler);
+				ingestPipeline.start();
+				frameHandler.getMetrics().register(fileName);
+				CaptureReplay captureReplay = new CaptureReplay(new File(fileName));
+				try {
+					captureReplay.replay(ingestPipeline, !fast);
+					log.info("{}", captureReplay.getSummary());
+				} catch (IOException e) {
+					log.error("replay error: {}", e.getMessage());
+				}
+				ingestPipeline.stop();
+
 			}
-		});
+
+		}, "replay");
+		replayThread.setDaemon(true);
+		replayThread.start();
+
 	}
 
 	/**
 	 * For ProcessAction interface.
+	 * Opens the serial port if it is not opened yet. In any case, it becomes the
+	 * port used to send commands.
 	 *
 	 * @param serialPortName
 	 */
 	@Override
 	public void serialPortValue(String serialPortName) {
 
-		int rs = portHandler.setSerialPort(serialPortName);
+		PortHandler ph = portHandlers.get(serialPortName);
+		if (ph != null) {
+			portHandler = ph;
+			displayLog(serialPortName + " used to send commands");
+			return;
+		}
+		ph = new PortHandler(this, nextSourceId++);
+		ph.addFrameSink(readingAggregator);
+		ph.addFrameSink(deviceRegistry);
+		if (storeSink != null) {
+			ph.addFrameSink(storeSink);
+		}
+		if (archiveSink != null) {
+			ph.addFrameSink(archiveSink);
+		}
+		if (frameServer != null) {
+			ph.addFrameSink(frameServer);
+		}
+		int rs;
+		if (serialPortName.equals(SIMULATOR_PORT_NAME)) {
+			rs = openSimulator(ph);
+		} else {
+			rs = ph.setSerialPort(serialPortName);
+		}
 		if (rs == 0) {
+			String captureFile = System.getProperty(CAPTURE_FILE_PROPERTY);
+			if (captureFile != null) {
+				if (ph.getSourceId() > 0) {
+					captureFile = captureFile + "." + ph.getSourceId();
+				}
+				try {
+					CaptureWriter captureWriter = new CaptureWriter(new File(captureFile));
+					captureWriters.add(captureWriter);
+					ph.getIngestPipeline().setCaptureWriter(captureWriter);
+					displayLog(serialPortName + " captured to " + captureFile);
+				} catch (IOException e) {
+					displayLog("can't open capture file: " + e.getMessage());
+				}
+			}
+			if (Boolean.getBoolean(BINARY_FRAMING_PROPERTY)) {
+				ph.requestFraming(true);
+			}
+			portHandlers.put(serialPortName, ph);
+			portHandler = ph;
 			// Enable buttons.
 			Platform.runLater(new Runnable() {
 
@@ -197,14 +495,74 @@ public class Main extends Application implements DisplayMessage, ProcessAction {
 
 	}
 
+	/**
+	 * Removes the port from the list. If it was opened, its port handler is
+	 * closed, so that the port can be opened again once plugged in again.
+	 * Must be called from FX application context.
+	 *
+	 * @param serialPortName
+	 */
+	private void serialPortRemoved(String serialPortName) {
+
+		controller.removeSerialPort(serialPortName);
+		PortHandler ph = portHandlers.remove(serialPortName);
+		if (ph == null) {
+			return;
+		}
+		ph.close();
+		displayLog(serialPortName + " closed");
+		if (ph == portHandler) {
+			// Last opened port is used instead, if any.
+			portHandler = null;
+			String name = null;
+			for (Map.Entry<String, PortHandler> entry: portHandlers.entrySet()) {
+				name = entry.getKey();
+				portHandler = entry.getValue();
+			}
+			if (portHandler == null) {
+				controller.enableActions(false);
+			} else {
+				displayLog(name + " used to send commands");
+			}
+		}
+
+	}
+
+	/**
+	 * Connects a port handler to a simulated central device.
+	 *
+	 * @param ph
+	 * @return same as PortHandler.setTransport()
+	 */
+	private int openSimulator(PortHandler ph) {
+
+		int framesPerSecond;
+		try {
+			framesPerSecond = Integer.parseInt(System.getProperty(SIMULATOR_PROPERTY));
+		} catch (NumberFormatException e) {
+			displayLog("bad value for " + SIMULATOR_PROPERTY);
+			return -3;
+		}
+		MemoryTransport transport = new MemoryTransport(SIMULATOR_PORT_NAME);
+		CentralBoardSimulator simulator = new CentralBoardSimulator(transport.getDeviceInputStream(),
+				transport.getDeviceOutputStream(), framesPerSecond);
+		simulator.setDeviceCount(Integer.getInteger(SIMULATOR_DEVICES_PROPERTY, 1));
+		int rs = ph.setTransport(transport);
+		if (rs == 0) {
+			simulator.start();
+		}
+		return rs;
+
+	}
+
 	/**
 	 *
 	 */
 	@Override
-	public void setRemoteLedR() {
+	public void setRemoteLedR(int deviceId) {
 
-		portHandler.sendMsg(portHandler.createSetRemoteLedRMsg());
-		displayLog("set remote LED red message sent");
+		portHandler.sendMsg(getLedTarget(deviceId), portHandler.createSetRemoteLedRMsg(deviceId),
+				"set remote LED red message" + getDeviceSuffix(deviceId));
 
 	}
 
@@ -212,10 +570,10 @@ public class Main extends Application implements DisplayMessage, ProcessAction {
 	 *
 	 */
 	@Override
-	public void setRemoteLedG() {
+	public void setRemoteLedG(int deviceId) {
 
-		portHandler.sendMsg(portHandler.createSetRemoteLedGMsg());
-		displayLog("set remote LED green message sent");
+		portHandler.sendMsg(getLedTarget(deviceId), portHandler.createSetRemoteLedGMsg(deviceId),
+				"set remote LED green message" + getDeviceSuffix(deviceId));
 
 	}
 
@@ -223,10 +581,10 @@ public class Main extends Application implements DisplayMessage, ProcessAction {
 	 *
 	 */
 	@Override
-	public void setRemoteLedB() {
+	public void setRemoteLedB(int deviceId) {
 
-		portHandler.sendMsg(portHandler.createSetRemoteLedBMsg());
-		displayLog("set remote LED blue message sent");
+		portHandler.sendMsg(getLedTarget(deviceId), portHandler.createSetRemoteLedBMsg(deviceId),
+				"set remote LED blue message" + getDeviceSuffix(deviceId));
 
 	}
 
@@ -234,10 +592,35 @@ public class Main extends Application implements DisplayMessage, ProcessAction {
 	 *
 	 */
 	@Override
-	public void setRemoteLedOff() {
+	public void setRemoteLedOff(int deviceId) {
+
+		portHandler.sendMsg(getLedTarget(deviceId), portHandler.createSetRemoteLedOffMsg(deviceId),
+				"set remote LED off message" + getDeviceSuffix(deviceId));
+
+	}
+
+	/**
+	 *
+	 * @param deviceId
+	 * @return
+	 */
+	private static String getLedTarget(int deviceId) {
 
-		portHandler.sendMsg(portHandler.createSetRemoteLedOffMsg());
-		displayLog("set remote LED off message sent");
+		return LED_TARGET + deviceId;
+
+	}
+
+	/**
+	 *
+	 * @param deviceId
+	 * @return
+	 */
+	private static String getDeviceSuffix(int deviceId) {
+
+		if (deviceId == FrameHandler.BROADCAST_DEVICE_ID) {
+			return " (all devices)";
+		}
+		return String.format(" (device %04X)", deviceId);
 
 	}
 
@@ -0,0 +1,371 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ *
+ * In-memory link to a simulated central device, e.g. a CentralBoardSimulator.
+ * The device uses the device side streams. Each direction is a bounded byte
+ * buffer: contrary to a serial port, a writer waits while the buffer is full,
+ * so that no byte is lost when the receive chain can't keep up.
+ *
+ * Reads from the application side time out, as for a serial port, and then
+ * return 0. Once the transport is closed, reads return -1, and writes throw
+ * an IOException.
+ *
+ */
+public class MemoryTransport implements Transport {
+
+	// Size of the buffer of each direction.
+	private final static int BUFFER_SIZE = 64 * 1024;
+	// Maximum time an application side read waits for bytes, in ms.
+	private final static int READ_TIMEOUT = 500;
+
+	private String name;
+	// From device to application.
+	private ByteQueue upQueue;
+	// From application to device.
+	private ByteQueue downQueue;
+	private InputStream in;
+	private OutputStream out;
+	private InputStream deviceIn;
+	private OutputStream deviceOut;
+
+	/**
+	 *
+	 * @param name
+	 */
+	public MemoryTransport(String name) {
+
+		this.name = name;
+		upQueue = new ByteQueue(BUFFER_SIZE);
+		downQueue = new ByteQueue(BUFFER_SIZE);
+		in = new QueueInputStream(upQueue, READ_TIMEOUT);
+		out = new QueueOutputStream(downQueue);
+		// Device side does not need read timeout.
+		deviceIn = new QueueInputStream(downQueue, 0);
+		deviceOut = new QueueOutputStream(upQueue);
+
+	}
+
+	/**
+	 * For Transport interface.
+	 */
+	@Override
+	public String getName() {
+
+		return name;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 */
+	@Override
+	public int open(DisplayMessage displayMessage) {
+
+		return 0;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 */
+	@Override
+	public InputStream getInputStream() {
+
+		return in;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 */
+	@Override
+	public OutputStream getOutputStream() {
+
+		return out;
+
+	}
+
+	/**
+	 *
+	 * @return stream of bytes sent by the application, for the device
+	 */
+	public InputStream getDeviceInputStream() {
+
+		return deviceIn;
+
+	}
+
+	/**
+	 *
+	 * @return stream of bytes sent by the device, for the application
+	 */
+	public OutputStream getDeviceOutputStream() {
+
+		return deviceOut;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 */
+	@Override
+	public void close() {
+
+		upQueue.close();
+		downQueue.close();
+
+	}
+
+	/**
+	 *
+	 * Bounded byte buffer, used as a circular buffer.
+	 *
+	 */
+	private static class ByteQueue {
+
+		private byte[] buffer;
+		// Index of next byte to be read.
+		private int head;
+		private int count;
+		private boolean closed;
+
+		/**
+		 *
+		 * @param size
+		 */
+		ByteQueue(int size) {
+
+			buffer = new byte[size];
+			head = 0;
+			count = 0;
+			closed = false;
+
+		}
+
+		/**
+		 *
+		 * @param b
+		 * @param offset
+		 * @param length
+		 * @param timeout maximum wait, in ms, 0 to wait until some bytes are available
+		 * @return number of bytes read, 0 on timeout or interruption, -1 once closed
+		 */
+		synchronized int read(byte[] b, int offset, int length, long timeout) {
+
+			long deadline = System.currentTimeMillis() + timeout;
+			while ((count == 0) && !closed) {
+				long wait = 0;
+				if (timeout > 0) {
+					wait = deadline - System.currentTimeMillis();
+					if (wait <= 0) {
+						return 0;
+					}
+				}
+				try {
+					wait(wait);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return 0;
+				}
+			}
+			if (count == 0) {
+				return -1;
+			}
+			int n = Math.min(length, count);
+			int first = Math.min(n, buffer.length - head);
+			System.arraycopy(buffer, head, b, offset, first);
+			System.arraycopy(buffer, 0, b, offset + first, n - first);
+			head = (head + n) % buffer.length;
+			count -= n;
+			notifyAll();
+			return n;
+
+		}
+
+		/**
+		 * Waits while buffer is full.
+		 *
+		 * @param b
+		 * @param offset
+		 * @param length
+		 * @throws IOException
+		 */
+		synchronized void write(byte[] b, int offset, int length) throws IOException {
+
+			while (length > 0) {
+				while ((count == buffer.length) && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("interrupted");
+					}
+				}
+				if (closed) {
+					throw new IOException("closed");
+				}
+				int tail = (head + count) % buffer.length;
+				int n = Math.min(length, Math.min(buffer.length - count, buffer.length - tail));
+				System.arraycopy(b, offset, buffer, tail, n);
+				count += n;
+				offset += n;
+				length -= n;
+				notifyAll();
+			}
+
+		}
+
+		/**
+		 *
+		 * @return
+		 */
+		synchronized int available() {
+
+			return count;
+
+		}
+
+		/**
+		 *
+		 */
+		synchronized void close() {
+
+			closed = true;
+			notifyAll();
+
+		}
+
+	}
+
+	/**
+	 *
+	 * Reading side of a byte queue.
+	 *
+	 */
+	private static class QueueInputStream extends InputStream {
+
+		private ByteQueue queue;
+		private long timeout;
+		private byte[] single;
+
+		/**
+		 *
+		 * @param queue
+		 * @param timeout in ms, 0 for no timeout
+		 */
+		QueueInputStream(ByteQueue queue, long timeout) {
+
+			this.queue = queue;
+			this.timeout = timeout;
+			single = new byte[1];
+
+		}
+
+		@Override
+		public int read() throws IOException {
+
+			int n = read(single, 0, 1);
+			if (n <= 0) {
+				return -1;
+			}
+			return single[0] & 0xFF;
+
+		}
+
+		@Override
+		public int read(byte[] b, int offset, int length) throws IOException {
+
+			if (length == 0) {
+				return 0;
+			}
+			return queue.read(b, offset, length, timeout);
+
+		}
+
+		@Override
+		public int available() throws IOException {
+
+			return queue.available();
+
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			queue.close();
+
+		}
+
+	}
+
+	/**
+	 *
+	 * Writing side of a byte queue.
+	 *
+	 */
+	private static class QueueOutputStream extends OutputStream {
+
+		private ByteQueue queue;
+
+		/**
+		 *
+		 * @param queue
+		 */
+		QueueOutputStream(ByteQueue queue) {
+
+			this.queue = queue;
+
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+
+			queue.write(new byte[] { (byte)b }, 0, 1);
+
+		}
+
+		@Override
+		public void write(byte[] b, int offset, int length) throws IOException {
+
+			queue.write(b, offset, length);
+
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			queue.close();
+
+		}
+
+	}
+
+}
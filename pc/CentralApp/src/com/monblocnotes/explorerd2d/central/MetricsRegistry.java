@@ -0,0 +1,88 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ *
+ * Publishes metrics as MBeans of the platform MBean server, under
+ * com.monblocnotes.explorerd2d domain, so that they can be read with any JMX
+ * client.
+ *
+ */
+public class MetricsRegistry {
+
+	private final static String DOMAIN = "com.monblocnotes.explorerd2d";
+
+	/**
+	 * An MBean already registered with the same type and name is replaced.
+	 *
+	 * @param mbean
+	 * @param type
+	 * @param name null if there is only one MBean of this type
+	 * @return name of the MBean, null if it could not be registered
+	 */
+	public static ObjectName register(Object mbean, String type, String name) {
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			String s = DOMAIN + ":type=" + type;
+			if (name != null) {
+				s = s + ",name=" + ObjectName.quote(name);
+			}
+			ObjectName objectName = new ObjectName(s);
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(mbean, objectName);
+			return objectName;
+		} catch (JMException e) {
+			return null;
+		}
+
+	}
+
+	/**
+	 *
+	 * @param objectName null if nothing has to be done
+	 */
+	public static void unregister(ObjectName objectName) {
+
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			// Already unregistered.
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * What a bounded queue does when its consumer can't keep up.
+ *
+ */
+public enum OverloadPolicy {
+
+	// Producer waits until there is room in the queue.
+	BLOCK,
+	// Oldest queued element is dropped.
+	DROP_OLDEST,
+	// New element is dropped.
+	DROP_NEWEST,
+	// Once queue is half full, only one trace frame out of several is queued.
+	// New element is dropped when queue is full.
+	SAMPLE_TRACES;
+
+	/**
+	 *
+	 * @param property name of a system property giving a policy, e.g. drop_oldest
+	 * @param defaultPolicy policy returned when property is not set, or is not valid
+	 * @return
+	 */
+	public static OverloadPolicy fromProperty(String property, OverloadPolicy defaultPolicy) {
+
+		String value = System.getProperty(property);
+		if (value == null) {
+			return defaultPolicy;
+		}
+		try {
+			return valueOf(value.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			Logger.get(LogCategory.APP).warn("bad value for {}: {}", property, value);
+			return defaultPolicy;
+		}
+
+	}
+
+}
@@ -0,0 +1,151 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ *
+ * Pseudo terminal, or pair of named pipes, e.g. created by socat, or by a
+ * device simulator running in another process.
+ *
+ * Beware: opening a named pipe blocks until its other end is opened. Input
+ * pipe is opened first. Reads do not time out: reader thread is only woken up
+ * by received bytes, or when the other end is closed.
+ *
+ */
+public class PipeTransport implements Transport {
+
+	private String inputPath;
+	private String outputPath;
+	private InputStream in;
+	private OutputStream out;
+
+	/**
+	 * Pseudo terminal: the same file is used for both directions.
+	 *
+	 * @param path
+	 */
+	public PipeTransport(String path) {
+
+		this(path, path);
+
+	}
+
+	/**
+	 *
+	 * @param inputPath file bytes from the central device are read from
+	 * @param outputPath file bytes to the central device are written to
+	 */
+	public PipeTransport(String inputPath, String outputPath) {
+
+		this.inputPath = inputPath;
+		this.outputPath = outputPath;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 */
+	@Override
+	public String getName() {
+
+		if (inputPath.equals(outputPath)) {
+			return inputPath;
+		}
+		return inputPath + "," + outputPath;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 * @return -1 - no such file
+	 *         -5 - can't open output file
+	 *          0 - success
+	 */
+	@Override
+	public int open(DisplayMessage displayMessage) {
+
+		try {
+			in = new FileInputStream(inputPath);
+		} catch (FileNotFoundException e) {
+			displayMessage.displayLog(inputPath + " does not exist");
+			return -1;
+		}
+		try {
+			out = new FileOutputStream(outputPath);
+		} catch (FileNotFoundException e) {
+			displayMessage.displayLog("can't open " + outputPath);
+			close();
+			return -5;
+		}
+		return 0;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 */
+	@Override
+	public InputStream getInputStream() {
+
+		return in;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 */
+	@Override
+	public OutputStream getOutputStream() {
+
+		return out;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 */
+	@Override
+	public void close() {
+
+		try {
+			if (in != null) {
+				in.close();
+			}
+			if (out != null) {
+				out.close();
+			}
+		} catch (IOException e) {
+			// Nothing more can be done.
+		}
+
+	}
+
+}
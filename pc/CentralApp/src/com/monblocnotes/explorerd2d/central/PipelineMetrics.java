@@ -0,0 +1,261 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+/**
+ *
+ * Metrics of the receive chain of a port: counters updated by the frame handler
+ * and the ingest pipeline, and latency from byte arrival, as stamped by the
+ * reader, to end of decoding. Counters are striped, so that updating them from
+ * the threads of the pipeline is cheap.
+ *
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+	private final static String MBEAN_TYPE = "Pipeline";
+	private final static long NS_PER_US = 1000L;
+
+	final LongAdder bytesRead = new LongAdder();
+	final LongAdder framesAssembled = new LongAdder();
+	final LongAdder traceFrames = new LongAdder();
+	final LongAdder applicationFrames = new LongAdder();
+	final LongAdder unknownTypeFrames = new LongAdder();
+	final LongAdder decodedFrames = new LongAdder();
+	final LongAdder otherResets = new LongAdder();
+	final LongAdder framesTooLong = new LongAdder();
+	final LongAdder missingLf = new LongAdder();
+	final LongAdder corruptedFrames = new LongAdder();
+	final LongAdder framesTooShort = new LongAdder();
+	final LongAdder unknownApplicationFrames = new LongAdder();
+	final LatencyHistogram decodeLatency = new LatencyHistogram();
+
+	private volatile IngestPipeline ingestPipeline;
+	private ObjectName objectName;
+
+	/**
+	 * Sets the pipeline queue depths and stall counts are read from.
+	 *
+	 * @param ingestPipeline
+	 */
+	public void setIngestPipeline(IngestPipeline ingestPipeline) {
+
+		this.ingestPipeline = ingestPipeline;
+
+	}
+
+	/**
+	 * Publishes metrics through JMX.
+	 *
+	 * @param name name of the port
+	 */
+	public synchronized void register(String name) {
+
+		MetricsRegistry.unregister(objectName);
+		objectName = MetricsRegistry.register(this, MBEAN_TYPE, name);
+
+	}
+
+	/**
+	 *
+	 */
+	public synchronized void unregister() {
+
+		MetricsRegistry.unregister(objectName);
+		objectName = null;
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public LatencyHistogram getDecodeLatency() {
+
+		return decodeLatency;
+
+	}
+
+	@Override
+	public long getBytesRead() {
+
+		return bytesRead.sum();
+
+	}
+
+	@Override
+	public long getFramesAssembled() {
+
+		return framesAssembled.sum();
+
+	}
+
+	@Override
+	public long getTraceFrames() {
+
+		return traceFrames.sum();
+
+	}
+
+	@Override
+	public long getApplicationFrames() {
+
+		return applicationFrames.sum();
+
+	}
+
+	@Override
+	public long getUnknownTypeFrames() {
+
+		return unknownTypeFrames.sum();
+
+	}
+
+	@Override
+	public long getDecodedFrames() {
+
+		return decodedFrames.sum();
+
+	}
+
+	@Override
+	public long getAssemblyResets() {
+
+		return otherResets.sum() + framesTooLong.sum() + missingLf.sum() + corruptedFrames.sum();
+
+	}
+
+	@Override
+	public long getFramesTooLong() {
+
+		return framesTooLong.sum();
+
+	}
+
+	@Override
+	public long getMissingLf() {
+
+		return missingLf.sum();
+
+	}
+
+	@Override
+	public long getCorruptedFrames() {
+
+		return corruptedFrames.sum();
+
+	}
+
+	@Override
+	public long getDecodeErrors() {
+
+		return framesTooShort.sum() + unknownApplicationFrames.sum();
+
+	}
+
+	@Override
+	public long getFramesTooShort() {
+
+		return framesTooShort.sum();
+
+	}
+
+	@Override
+	public long getUnknownApplicationFrames() {
+
+		return unknownApplicationFrames.sum();
+
+	}
+
+	@Override
+	public int getChunkQueueDepth() {
+
+		IngestPipeline ip = ingestPipeline;
+		return (ip == null) ? 0 : ip.getAssemblerStage().getQueueDepth();
+
+	}
+
+	@Override
+	public int getFrameQueueDepth() {
+
+		IngestPipeline ip = ingestPipeline;
+		return (ip == null) ? 0 : ip.getDecoderStage().getQueueDepth();
+
+	}
+
+	@Override
+	public long getReaderStalls() {
+
+		IngestPipeline ip = ingestPipeline;
+		return (ip == null) ? 0 : ip.getReaderStallCount();
+
+	}
+
+	@Override
+	public long getAssemblerStalls() {
+
+		IngestPipeline ip = ingestPipeline;
+		return (ip == null) ? 0 : ip.getAssemblerStage().getStallCount();
+
+	}
+
+	@Override
+	public long getDecodeLatencyCount() {
+
+		return decodeLatency.getCount();
+
+	}
+
+	@Override
+	public double getDecodeLatencyMean() {
+
+		return decodeLatency.getMean() / NS_PER_US;
+
+	}
+
+	@Override
+	public long getDecodeLatencyP50() {
+
+		return decodeLatency.getPercentile(50) / NS_PER_US;
+
+	}
+
+	@Override
+	public long getDecodeLatencyP99() {
+
+		return decodeLatency.getPercentile(99) / NS_PER_US;
+
+	}
+
+	@Override
+	public long getDecodeLatencyMax() {
+
+		return decodeLatency.getMax() / NS_PER_US;
+
+	}
+
+}
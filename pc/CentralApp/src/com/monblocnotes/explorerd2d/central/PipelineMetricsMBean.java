@@ -0,0 +1,95 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Metrics of the receive chain of a port, published through JMX. Counters are
+ * counted since the port was opened. Latencies are given in us (microseconds).
+ *
+ */
+public interface PipelineMetricsMBean {
+
+	public long getBytesRead();
+
+	public long getFramesAssembled();
+
+	public long getTraceFrames();
+
+	public long getApplicationFrames();
+
+	public long getUnknownTypeFrames();
+
+	public long getDecodedFrames();
+
+	/**
+	 *
+	 * @return number of times frame assembly was reset, whatever the reason
+	 */
+	public long getAssemblyResets();
+
+	public long getFramesTooLong();
+
+	public long getMissingLf();
+
+	/**
+	 *
+	 * @return number of binary frames rejected because of a bad CRC, or of bad
+	 *         COBS encoding
+	 */
+	public long getCorruptedFrames();
+
+	/**
+	 *
+	 * @return number of application frames that could not be decoded
+	 */
+	public long getDecodeErrors();
+
+	public long getFramesTooShort();
+
+	public long getUnknownApplicationFrames();
+
+	public int getChunkQueueDepth();
+
+	public int getFrameQueueDepth();
+
+	public long getReaderStalls();
+
+	public long getAssemblerStalls();
+
+	/**
+	 *
+	 * @return number of latencies measured from byte arrival to end of decoding
+	 */
+	public long getDecodeLatencyCount();
+
+	public double getDecodeLatencyMean();
+
+	public long getDecodeLatencyP50();
+
+	public long getDecodeLatencyP99();
+
+	public long getDecodeLatencyMax();
+
+}
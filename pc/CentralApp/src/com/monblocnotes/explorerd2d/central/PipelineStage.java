@@ -0,0 +1,126 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Stage of the ingest pipeline. A stage runs in its own thread. It takes slots
+ * from its input ring, and processes them one after the other.
+ *
+ */
+public abstract class PipelineStage implements Runnable {
+
+	private String name;
+	private SpscRing input;
+	private Thread thread;
+
+	/**
+	 *
+	 * @param name name of stage thread
+	 * @param input ring the stage is the consumer of
+	 */
+	public PipelineStage(String name, SpscRing input) {
+
+		this.name = name;
+		this.input = input;
+
+	}
+
+	/**
+	 *
+	 */
+	public void start() {
+
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+
+	}
+
+	/**
+	 *
+	 */
+	public void stop() {
+
+		if (thread != null) {
+			thread.interrupt();
+		}
+
+	}
+
+	/**
+	 * For Runnable interface.
+	 */
+	@Override
+	public void run() {
+
+		int slot;
+		while (!Thread.currentThread().isInterrupted()) {
+			slot = input.take();
+			if (slot == -1) {
+				break;
+			}
+			process(input.getSlot(slot), input.getLength(slot), input.getTimestamp(slot),
+					input.getWallTime(slot));
+			input.release();
+		}
+
+	}
+
+	/**
+	 * Processes one slot of input ring. Slot is valid only during the call.
+	 * @param slot
+	 * @param length number of bytes stored in slot
+	 * @param timestamp time associated to slot contents, as given by System.nanoTime()
+	 * @param wallTime same time, in ms since epoch
+	 */
+	protected abstract void process(byte[] slot, int length, long timestamp, long wallTime);
+
+	/**
+	 * Can be called from any context.
+	 * @return number of input slots waiting to be processed
+	 */
+	public int getQueueDepth() {
+
+		return input.getDepth();
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @return number of times the stage had to wait for its output
+	 */
+	public abstract long getStallCount();
+
+	/**
+	 *
+	 * @return
+	 */
+	public String getName() {
+
+		return name;
+
+	}
+
+}
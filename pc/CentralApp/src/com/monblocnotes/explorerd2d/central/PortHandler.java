@@ -27,251 +27,263 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.TooManyListenersException;
-
-import gnu.io.CommPortIdentifier;
-import gnu.io.NoSuchPortException;
-import gnu.io.PortInUseException;
-import gnu.io.SerialPort;
-import gnu.io.SerialPortEvent;
-import gnu.io.SerialPortEventListener;
-import gnu.io.UnsupportedCommOperationException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  *
- * Handles serial port.
+ * Handles a link to a central device, i.e. a transport: usually a serial port.
+ * Several links can be handled at the same time, each one by its own port
+ * handler: every port handler has its own reader thread, frame handler and
+ * ingest pipeline. Frames given to frame sinks are tagged with the source they
+ * come from.
  *
  */
-public class PortHandler implements SerialPortEventListener {
+public class PortHandler {
+
+	// Target of framing commands: a framing command replaces any framing command
+	// not sent yet.
+	private final static String FRAMING_TARGET = "framing";
 
-	private final static int PORT_OPEN_WAIT = 1000;
-	// Characteristics of Sodaq ExpLoRer serial port (over USB).
-	private final static int PORT_SPEED = 57600;
-	private final static int PORT_DATA_BITS = SerialPort.DATABITS_8;
-	private final static int PORT_STOP_BITS = SerialPort.STOPBITS_1;
-	private final static int PORT_PARITY = SerialPort.PARITY_NONE;
-	private final static int PORT_FLOW_CONTROL = SerialPort.FLOWCONTROL_NONE;
+	private final static Logger log = Logger.get(LogCategory.PORT);
 
-	private SerialPort serialPort;
+	private Transport transport;
 	private OutputStream out;
 	private InputStream in;
 	private DisplayMessage displayMessage;
 	private FrameHandler frameHandler;
+	private CommandQueue commandQueue;
+	private IngestPipeline ingestPipeline;
+	private Thread readerThread;
+	private int sourceId;
 
 	/**
 	 *
 	 * @param displayMessage
+	 * @param sourceId identifier of the port, unique for the application
 	 */
-	public PortHandler(DisplayMessage displayMessage) {
+	public PortHandler(DisplayMessage displayMessage, int sourceId) {
 
 		this.displayMessage = displayMessage;
+		this.sourceId = sourceId;
 		frameHandler = new FrameHandler(displayMessage);
+		commandQueue = new CommandQueue();
+		frameHandler.addFrameSink(commandQueue);
 
 	}
 
 	/**
 	 *
+	 * @param deviceId identifier of the remote device
 	 */
-	public short[] createSetRemoteLedRMsg() {
+	public byte[] createSetRemoteLedRMsg(int deviceId) {
 
-		return frameHandler.createSetRemoteLedRMsg();
+		return frameHandler.createSetRemoteLedRMsg(deviceId);
 
 	}
 
 	/**
 	 *
+	 * @param deviceId identifier of the remote device
 	 */
-	public short[] createSetRemoteLedGMsg() {
+	public byte[] createSetRemoteLedGMsg(int deviceId) {
 
-		return frameHandler.createSetRemoteLedGMsg();
+		return frameHandler.createSetRemoteLedGMsg(deviceId);
 
 	}
 
 	/**
 	 *
+	 * @param deviceId identifier of the remote device
 	 */
-	public short[] createSetRemoteLedBMsg() {
+	public byte[] createSetRemoteLedBMsg(int deviceId) {
 
-		return frameHandler.createSetRemoteLedBMsg();
+		return frameHandler.createSetRemoteLedBMsg(deviceId);
 
 	}
 
 	/**
 	 *
+	 * @param deviceId identifier of the remote device
 	 */
-	public short[] createSetRemoteLedOffMsg() {
+	public byte[] createSetRemoteLedOffMsg(int deviceId) {
 
-		return frameHandler.createSetRemoteLedOffMsg();
+		return frameHandler.createSetRemoteLedOffMsg(deviceId);
 
 	}
 
 	/**
 	 *
+	 * @param frameSink
 	 */
-	public ArrayList<String> getSerialPorts() {
-
-		ArrayList<String> portNameList = new ArrayList<String>();
-		@SuppressWarnings("unchecked")
-		Enumeration<CommPortIdentifier> portList = CommPortIdentifier.getPortIdentifiers();
-		if (portList == null) {
-			displayMessage.displayLog("no CommPortIdentifier!");
-			return null;
-		}
-		CommPortIdentifier port;
-		while (portList.hasMoreElements()) {
-			port = portList.nextElement();
-			if (port.getPortType() != CommPortIdentifier.PORT_SERIAL) {
-				displayMessage.displayLog(port.getName() + " not a serial port");
-				continue;
-			}
-			if (port.isCurrentlyOwned()) {
-				displayMessage.displayLog(port.getName() + " currently owned");
-				continue;
-			}
-			portNameList.add(port.getName());
-			displayMessage.displayLog(port.getName() + " added to list");
-		}
-		if (portNameList.isEmpty()) {
-			return null;
-		}
+	public void addFrameSink(FrameSink frameSink) {
+
+		frameHandler.addFrameSink(frameSink);
 
-		return portNameList;
 	}
 
 	/**
-	 * Tries to open the serial port. Side effect:
-	 * - set serialPort
-	 * - set out
-	 * In current version, can be called only once (i.e. serial port is never closed).
+	 *
+	 * @return identifier of the port
+	 */
+	public int getSourceId() {
+
+		return sourceId;
+
+	}
+
+	/**
+	 *
+	 * @return null until the port is opened
+	 */
+	public IngestPipeline getIngestPipeline() {
+
+		return ingestPipeline;
+
+	}
+
+	/**
+	 *
+	 * @param displayMessage
+	 */
+	public static ArrayList<String> getSerialPorts(DisplayMessage displayMessage) {
+
+		return SerialTransport.getSerialPorts(displayMessage);
+
+	}
+
+	/**
+	 * Tries to open the serial port.
+	 * In current version, can be called only once.
+	 * To handle another port, use another port handler.
 	 * @param serialPortName
 	 * @return -1 - no such port
 	 *         -2 - port in use
 	 *         -3 - internal error
-	 *         -4 - too many event listeners
+	 *         -4 - can't set read timeout
 	 *         -5 - can't get output stream
 	 *         -6 - can't get input stream
 	 *          0 - success
 	 */
 	public int setSerialPort(String serialPortName) {
 
-		CommPortIdentifier commPortIdentifier;
-		try {
-			commPortIdentifier = CommPortIdentifier.getPortIdentifier(serialPortName);
-		} catch (NoSuchPortException e) {
-			displayMessage.displayLog(serialPortName + " does not exist");
-			return -1;
-		}
-		try {
-			serialPort = (SerialPort) commPortIdentifier.open("FrameHandler", PORT_OPEN_WAIT);
-		} catch (PortInUseException e) {
-			displayMessage.displayLog(serialPortName + " is in use");
-			return -2;
-		}
-		try {
-			serialPort.setSerialPortParams(PORT_SPEED, PORT_DATA_BITS, PORT_STOP_BITS, PORT_PARITY);
-		} catch (UnsupportedCommOperationException e) {
-			displayMessage.displayLog("internal error: bad port profile");
-			return -3;
-		}
-		try {
-			serialPort.setFlowControlMode(PORT_FLOW_CONTROL);
-		} catch (UnsupportedCommOperationException e) {
-			displayMessage.displayLog("internal error: bad flow control");
-			return -3;
-		}
-		try {
-			out = serialPort.getOutputStream();
-		} catch (IOException e) {
-			displayMessage.displayLog("can't get output stream");
-			return -5;
-		}
-		try {
-			in = serialPort.getInputStream();
-		} catch (IOException e) {
-			displayMessage.displayLog("can't get input stream");
-			return -6;
-		}
-		try {
-			serialPort.addEventListener(this);
-			serialPort.notifyOnDataAvailable(true);
-		} catch (TooManyListenersException e) {
-			displayMessage.displayLog("too many event listeners");
-			return -4;
+		return setTransport(new SerialTransport(serialPortName));
+
+	}
+
+	/**
+	 * Tries to open the transport. Side effect:
+	 * - set transport
+	 * - set out and in
+	 * - start reader thread and ingest pipeline
+	 * In current version, can be called only once.
+	 * To handle another transport, use another port handler.
+	 * @param transport
+	 * @return 0 on success, error code returned by transport.open() otherwise
+	 */
+	public int setTransport(Transport transport) {
+
+		int rs = transport.open(displayMessage);
+		if (rs != 0) {
+			return rs;
 		}
-		displayMessage.displayLog(serialPortName + " opened and configured");
+		this.transport = transport;
+		in = transport.getInputStream();
+		out = transport.getOutputStream();
+		String name = transport.getName();
+		frameHandler.setSource(sourceId, name);
+		ingestPipeline = new IngestPipeline(name, frameHandler);
+		ingestPipeline.start();
+		frameHandler.getMetrics().register(name);
+		commandQueue.start(name, out);
+		readerThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+
+				readLoop();
+
+			}
+
+		}, name + "-reader");
+		readerThread.setDaemon(true);
+		readerThread.start();
+		displayMessage.displayLog(name + " opened and configured");
 		return 0;
 	}
 
 	/**
-	 * Event notification must be enabled for every event in setSerialPort() above.
-	 * We can't call displayMessage.display() from this method, as we are not in FX thread.
+	 * Stops reader thread and ingest pipeline, and closes the transport.
+	 * Port handler can't be used anymore.
+	 */
+	public void close() {
+
+		if (transport == null) {
+			return;
+		}
+		readerThread.interrupt();
+		commandQueue.stop();
+		transport.close();
+		ingestPipeline.stop();
+		frameHandler.getMetrics().unregister();
+
+	}
+
+	/**
+	 * Run by reader thread. We can't call displayMessage.display() from this method,
+	 * as we are not in FX thread: errors are logged. Received bytes must be read as fast as possible:
+	 * frames are assembled and decoded by the stages of the ingest pipeline.
 	 *
-	 * @param event
+	 * A receive error is handled as end of stream: once a device is unplugged,
+	 * every read fails.
 	 */
-	@Override
-	public void serialEvent(SerialPortEvent event) {
-
-		switch(event.getEventType()) {
-		case SerialPortEvent.BI:
-		case SerialPortEvent.CD:
-		case SerialPortEvent.CTS:
-		case SerialPortEvent.DSR:
-		case SerialPortEvent.FE:
-		case SerialPortEvent.OE:
-		case SerialPortEvent.OUTPUT_BUFFER_EMPTY:
-		case SerialPortEvent.PE:
-		case SerialPortEvent.RI:
-			break;
-		case SerialPortEvent.DATA_AVAILABLE:
-			short[] frame;
-			int b;
-			while (true) {
-				try {
-					if (in.available() == 0) {
-						// No more data available.
-						break;
-					}
-					b = in.read();
-				} catch (IOException e) {
-					displayMessage.displayLogLater("error on receive: " + e.getMessage());
-					break;
-				}
-				frame = frameHandler.frameAssembler(b);
-				if (frame != null) {
-					frameHandler.processFrame(frame);
-				}
+	private void readLoop() {
+
+		int n;
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				n = ingestPipeline.read(in);
+			} catch (IOException e) {
+				log.warn("{}: error on receive, reception stopped: {}", transport.getName(),
+						e.getMessage());
+				break;
+			}
+			if (n < 0) {
+				log.info("{}: end of stream", transport.getName());
+				break;
 			}
-			break;
-		default:
-			displayMessage.displayLogLater("FrameHandler.serialEvent() - unknown event type: " +
-					event.getEventType());
 		}
 
 	}
 
 	/**
+	 * Queues a command, to be sent by writer thread. Can be called from any
+	 * context. Never blocks.
 	 *
-	 * @param bytes
+	 * @param target what the command applies to. A command waiting to be sent
+	 *        for the same target is replaced
+	 * @param message encoded command, e.g. as returned by createSetRemoteLedRMsg()
+	 * @param description used in log messages
+	 * @return completed with the outcome of the command, and its round-trip time
 	 */
-	public void sendMsg(short[] bytes) {
+	public CompletableFuture<CommandResult> sendMsg(String target, byte[] message, String description) {
 
-		// To allow for tests while building the application.
-		if (bytes == null) {
-			displayMessage.displayLogLater("can't send null message");
-			return;
-		}
+		return commandQueue.submit(target, message, description);
 
-		try {
-			for (short b: bytes) {
-				out.write(b);
-			}
-			out.write(FrameHandler.CR);
-			out.write(FrameHandler.LF);
-		} catch (IOException e) {
-			displayMessage.displayLogLater("write error: " + e.getMessage());
-			return;
-		}
+	}
+
+	/**
+	 * Requests central device to use binary, or ASCII, framing. Can be called
+	 * from any context. Frame assembly follows the framing acknowledged by the
+	 * central device. If central device doesn't support binary framing, ASCII
+	 * framing is kept.
+	 *
+	 * @param binary
+	 * @return completed with the outcome of the request
+	 */
+	public CompletableFuture<CommandResult> requestFraming(boolean binary) {
+
+		return sendMsg(FRAMING_TARGET, BinaryFraming.createFramingMsg(binary),
+				binary ? "binary framing request" : "ASCII framing request");
 
 	}
 
@@ -0,0 +1,339 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ *
+ * Keeps the list of available serial ports up to date, from a dedicated
+ * thread, so that enumerating ports, which can take several seconds, never
+ * delays the user interface.
+ *
+ * Ports are first enumerated by RXTX. Then, on Linux, /dev is watched, and
+ * USB serial devices, e.g. ExpLoRer boards, are added or removed as soon as
+ * they are plugged in or removed. On other systems, ports are enumerated
+ * again periodically.
+ *
+ * Every change is reported to a listener, from the watcher thread.
+ *
+ */
+public class PortWatcher implements Runnable {
+
+	private final static Logger log = Logger.get(LogCategory.PORT);
+
+	// Where device files are created on Linux.
+	private final static String DEVICE_DIRECTORY = "/dev";
+	// Device files of USB serial devices.
+	private final static Pattern USB_SERIAL_DEVICE = Pattern.compile("tty(ACM|USB)[0-9]+");
+	// Time between two enumerations when /dev can't be watched, in ms.
+	private final static long RESCAN_PERIOD = 5000;
+
+	/**
+	 * Is called from the watcher thread.
+	 */
+	public interface PortListener {
+
+		public void portAdded(String portName);
+
+		public void portRemoved(String portName);
+
+	}
+
+	private PortListener listener;
+	// Available ports, sorted by name. Only modified by the watcher thread.
+	private TreeSet<String> ports;
+	private Thread thread;
+	private volatile boolean closed;
+	private volatile WatchService watchService;
+
+	/**
+	 *
+	 * @param listener
+	 */
+	public PortWatcher(PortListener listener) {
+
+		this.listener = listener;
+		ports = new TreeSet<String>();
+		closed = false;
+
+	}
+
+	/**
+	 * Starts the watcher thread. Initial enumeration is performed by this
+	 * thread: available ports are reported as they are added.
+	 */
+	public void start() {
+
+		thread = new Thread(this, "port-watcher");
+		thread.setDaemon(true);
+		thread.start();
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 *
+	 * @return names of available ports, sorted
+	 */
+	public synchronized ArrayList<String> getPorts() {
+
+		return new ArrayList<String>(ports);
+
+	}
+
+	/**
+	 * Stops the watcher thread. No change is reported after this call returns.
+	 */
+	public void close() {
+
+		closed = true;
+		WatchService ws = watchService;
+		if (ws != null) {
+			try {
+				ws.close();
+			} catch (IOException e) {
+				// Nothing more can be done.
+			}
+		}
+		if (thread != null) {
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+	/**
+	 * Run by watcher thread.
+	 */
+	@Override
+	public void run() {
+
+		try {
+			update(SerialTransport.listSerialPorts());
+		} catch (LinkageError e) {
+			// RXTX native library is missing. USB serial devices are still
+			// watched on Linux.
+			log.error("can't enumerate serial ports: {}", e.toString());
+		}
+		File devices = new File(DEVICE_DIRECTORY);
+		if (System.getProperty("os.name", "").startsWith("Linux") && devices.isDirectory()) {
+			try {
+				watchService = FileSystems.getDefault().newWatchService();
+				Paths.get(DEVICE_DIRECTORY).register(watchService,
+						StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+			} catch (IOException e) {
+				log.warn("can't watch {}: {}", DEVICE_DIRECTORY, e.getMessage());
+				watchService = null;
+			}
+		}
+		if (closed) {
+			if (watchService != null) {
+				try {
+					watchService.close();
+				} catch (IOException e) {
+					// Nothing more can be done.
+				}
+			}
+			return;
+		}
+		if (watchService != null) {
+			// A device plugged in before the watch started is not reported.
+			updateDevices(devices);
+		}
+		if (getPorts().isEmpty()) {
+			log.info("no serial port available");
+		}
+		if (watchService != null) {
+			watchDevices(devices);
+		} else {
+			while (!closed) {
+				try {
+					Thread.sleep(RESCAN_PERIOD);
+				} catch (InterruptedException e) {
+					return;
+				}
+				try {
+					update(SerialTransport.listSerialPorts());
+				} catch (LinkageError e) {
+					return;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Called from watcher thread, until the watcher is closed.
+	 *
+	 * @param devices
+	 */
+	private void watchDevices(File devices) {
+
+		WatchKey key;
+		String name;
+		while (!closed) {
+			try {
+				key = watchService.take();
+			} catch (InterruptedException e) {
+				return;
+			} catch (ClosedWatchServiceException e) {
+				return;
+			}
+			for (WatchEvent<?> event: key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					updateDevices(devices);
+					continue;
+				}
+				name = ((Path)event.context()).getFileName().toString();
+				if (!USB_SERIAL_DEVICE.matcher(name).matches()) {
+					continue;
+				}
+				name = DEVICE_DIRECTORY + "/" + name;
+				if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+					add(name);
+				} else {
+					remove(name);
+				}
+			}
+			if (!key.reset()) {
+				log.warn("{} can't be watched anymore", DEVICE_DIRECTORY);
+				return;
+			}
+		}
+
+	}
+
+	/**
+	 * Called from watcher thread. Brings USB serial devices in line with
+	 * device files, other ports being kept.
+	 *
+	 * @param devices
+	 */
+	private void updateDevices(File devices) {
+
+		HashSet<String> current = new HashSet<String>();
+		String[] names = devices.list();
+		if (names != null) {
+			for (String name: names) {
+				if (USB_SERIAL_DEVICE.matcher(name).matches()) {
+					current.add(DEVICE_DIRECTORY + "/" + name);
+				}
+			}
+		}
+		for (String port: getPorts()) {
+			if (isUsbSerialDevice(port) && !current.contains(port)) {
+				remove(port);
+			}
+		}
+		for (String port: current) {
+			add(port);
+		}
+
+	}
+
+	/**
+	 * Called from watcher thread.
+	 *
+	 * @param current all available ports
+	 */
+	private void update(Collection<String> current) {
+
+		HashSet<String> currentSet = new HashSet<String>(current);
+		for (String port: getPorts()) {
+			if (!currentSet.contains(port)) {
+				remove(port);
+			}
+		}
+		for (String port: currentSet) {
+			add(port);
+		}
+
+	}
+
+	/**
+	 *
+	 * @param port
+	 * @return true if port is a device file of a USB serial device
+	 */
+	private static boolean isUsbSerialDevice(String port) {
+
+		return port.startsWith(DEVICE_DIRECTORY + "/")
+				&& USB_SERIAL_DEVICE.matcher(port.substring(DEVICE_DIRECTORY.length() + 1)).matches();
+
+	}
+
+	/**
+	 * Called from watcher thread.
+	 *
+	 * @param port
+	 */
+	private void add(String port) {
+
+		synchronized (this) {
+			if (closed || !ports.add(port)) {
+				return;
+			}
+		}
+		log.info("{} added to list", port);
+		listener.portAdded(port);
+
+	}
+
+	/**
+	 * Called from watcher thread.
+	 *
+	 * @param port
+	 */
+	private void remove(String port) {
+
+		synchronized (this) {
+			if (closed || !ports.remove(port)) {
+				return;
+			}
+		}
+		log.info("{} removed from list", port);
+		listener.portRemoved(port);
+
+	}
+
+}
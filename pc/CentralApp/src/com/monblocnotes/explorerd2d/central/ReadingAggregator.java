@@ -0,0 +1,322 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.management.ObjectName;
+
+/**
+ *
+ * Frame sink maintaining, for every source and every type of reading, statistics
+ * over the last minute, the last hour and the last day. A reading is taken into
+ * account in constant time, and memory does not depend on the number of readings.
+ * Statistics are published through JMX, and can be queried without any scan of
+ * stored readings.
+ *
+ * When a source relays several remote devices, statistics are also maintained
+ * for every remote device, in addition to the statistics of the whole source.
+ * As windows take a few hundred KB, the number of remote devices with
+ * statistics is bounded: readings of other devices are only taken into account
+ * by the statistics of their source.
+ *
+ */
+public class ReadingAggregator implements FrameSink {
+
+	public final static int WINDOW_MINUTE = 0;
+	public final static int WINDOW_HOUR = 1;
+	public final static int WINDOW_DAY = 2;
+
+	private final static String[] WINDOW_NAMES = { "1 min", "1 h", "1 day" };
+	// Bucket durations, in ms, and numbers of buckets of windows.
+	private final static long[] BUCKET_DURATIONS = { 1000L, 60000L, 600000L };
+	private final static int[] NB_BUCKETS = { 60, 60, 144 };
+
+	private final static int NB_TYPES = 256;
+	private final static int NB_DEVICE_IDS = 65536;
+	// Maximum number of remote devices with their own statistics, all sources
+	// included.
+	private final static int MAX_DEVICES = 64;
+	private final static int NB_BINS = 256;
+	// Histogram range, for types without a specific one.
+	private final static float DEFAULT_LOWEST = -1024;
+	private final static float DEFAULT_HIGHEST = 1024;
+	// Histogram range for temperatures, in degrees Celsius: bins are 0.5 degree wide.
+	private final static float TEMPERATURE_LOWEST = -40;
+	private final static float TEMPERATURE_HIGHEST = 88;
+
+	private final static String MBEAN_TYPE = "Readings";
+
+	private final static Logger log = Logger.get(LogCategory.APP);
+
+	// Windows of a source, and of the remote devices it relays.
+	private static class SourceWindows {
+		// Windows of the whole source, indexed by type.
+		final AtomicReferenceArray<RollingWindow[]> types =
+				new AtomicReferenceArray<RollingWindow[]>(NB_TYPES);
+		// Windows of remote devices, indexed by device identifier, then by type.
+		// Created with first reading of a remote device.
+		volatile AtomicReferenceArray<AtomicReferenceArray<RollingWindow[]>> devices;
+	}
+
+	private final float[] lowests;
+	private final float[] highests;
+
+	// Windows, by source name.
+	private final ConcurrentHashMap<String, SourceWindows> sources;
+	private final ArrayList<ObjectName> objectNames;
+	// Number of remote devices with their own windows.
+	private int nbDevices;
+	// Set when no more remote device can have its own windows.
+	private volatile boolean devicesFull;
+
+	/**
+	 *
+	 */
+	public ReadingAggregator() {
+
+		lowests = new float[NB_TYPES];
+		highests = new float[NB_TYPES];
+		for (int i = 0; i < NB_TYPES; i++) {
+			lowests[i] = DEFAULT_LOWEST;
+			highests[i] = DEFAULT_HIGHEST;
+		}
+		setRange(FrameHandler.READING_TEMPERATURE, TEMPERATURE_LOWEST, TEMPERATURE_HIGHEST);
+		sources = new ConcurrentHashMap<String, SourceWindows>();
+		objectNames = new ArrayList<ObjectName>();
+		nbDevices = 0;
+		devicesFull = false;
+
+	}
+
+	/**
+	 * Sets the range of histograms used to estimate percentiles of a type of
+	 * reading. Only windows created afterwards are affected.
+	 *
+	 * @param type
+	 * @param lowest
+	 * @param highest
+	 */
+	public synchronized void setRange(int type, float lowest, float highest) {
+
+		lowests[type & 0xFF] = lowest;
+		highests[type & 0xFF] = highest;
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public void frameReceived(Frame frame) {
+
+		// Nothing to do.
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public void readingReceived(Frame frame, int type, int rawValue, float value) {
+
+		long time = frame.getWallTime();
+		RollingWindow[] windows = getWindows(frame.getSourceName(), Frame.NO_DEVICE, type, true);
+		for (RollingWindow window: windows) {
+			window.add(time, value);
+		}
+		if (frame.getDeviceId() == Frame.NO_DEVICE) {
+			return;
+		}
+		windows = getWindows(frame.getSourceName(), frame.getDeviceId(), type, true);
+		if (windows != null) {
+			for (RollingWindow window: windows) {
+				window.add(time, value);
+			}
+		}
+
+	}
+
+	/**
+	 *
+	 * @param sourceName
+	 * @param type
+	 * @param window WINDOW_MINUTE, WINDOW_HOUR or WINDOW_DAY
+	 * @return statistics of the whole source, null if no reading of this type was
+	 * ever received from this source
+	 */
+	public ReadingStatistics getStatistics(String sourceName, int type, int window) {
+
+		return getStatistics(sourceName, Frame.NO_DEVICE, type, window);
+
+	}
+
+	/**
+	 *
+	 * @param sourceName
+	 * @param deviceId remote device, Frame.NO_DEVICE for the whole source
+	 * @param type
+	 * @param window WINDOW_MINUTE, WINDOW_HOUR or WINDOW_DAY
+	 * @return statistics, null if no reading of this type was ever received from
+	 * this remote device, or if it has no statistics of its own
+	 */
+	public ReadingStatistics getStatistics(String sourceName, int deviceId, int type, int window) {
+
+		RollingWindow[] windows = getWindows(sourceName, deviceId, type, false);
+		if (windows == null) {
+			return null;
+		}
+		return windows[window].getStatistics(System.currentTimeMillis());
+
+	}
+
+	/**
+	 * Unregisters MBeans.
+	 */
+	public synchronized void close() {
+
+		for (ObjectName objectName: objectNames) {
+			MetricsRegistry.unregister(objectName);
+		}
+		objectNames.clear();
+
+	}
+
+	/**
+	 *
+	 * @param sourceName
+	 * @param deviceId remote device, Frame.NO_DEVICE for the whole source
+	 * @param type
+	 * @param create true if windows have to be created when they don't exist
+	 * @return null if windows don't exist and create is false, or if there are
+	 * already too many remote devices
+	 */
+	private RollingWindow[] getWindows(String sourceName, int deviceId, int type, boolean create) {
+
+		type &= 0xFF;
+		SourceWindows source = sources.get(sourceName);
+		if (source != null) {
+			AtomicReferenceArray<RollingWindow[]> types = getTypes(source, deviceId);
+			RollingWindow[] windows = (types == null) ? null : types.get(type);
+			if ((windows != null) || !create) {
+				return windows;
+			}
+		} else if (!create) {
+			return null;
+		}
+		if ((deviceId != Frame.NO_DEVICE) && devicesFull
+				&& ((source == null) || (getTypes(source, deviceId) == null))) {
+			return null;
+		}
+		return createWindows(sourceName, deviceId, type);
+
+	}
+
+	/**
+	 *
+	 * @param source
+	 * @param deviceId remote device, Frame.NO_DEVICE for the whole source
+	 * @return windows indexed by type, null if remote device has none
+	 */
+	private static AtomicReferenceArray<RollingWindow[]> getTypes(SourceWindows source,
+			int deviceId) {
+
+		if (deviceId == Frame.NO_DEVICE) {
+			return source.types;
+		}
+		AtomicReferenceArray<AtomicReferenceArray<RollingWindow[]>> devices = source.devices;
+		return (devices == null) ? null : devices.get(deviceId & 0xFFFF);
+
+	}
+
+	/**
+	 * Creates windows of a type, for a source or a remote device, and registers
+	 * their MBeans.
+	 *
+	 * @param sourceName
+	 * @param deviceId remote device, Frame.NO_DEVICE for the whole source
+	 * @param type
+	 * @return null if there are already too many remote devices
+	 */
+	private synchronized RollingWindow[] createWindows(String sourceName, int deviceId, int type) {
+
+		SourceWindows source = sources.get(sourceName);
+		if (source == null) {
+			source = new SourceWindows();
+			sources.put(sourceName, source);
+		}
+		AtomicReferenceArray<RollingWindow[]> types = getTypes(source, deviceId);
+		if (types == null) {
+			if (nbDevices >= MAX_DEVICES) {
+				devicesFull = true;
+				log.warn("more than {} remote devices, statistics of {} are not kept",
+						MAX_DEVICES, DisplayFrameSink.getSeriesName(sourceName, deviceId));
+				return null;
+			}
+			if (source.devices == null) {
+				source.devices = new AtomicReferenceArray<AtomicReferenceArray<RollingWindow[]>>(
+						NB_DEVICE_IDS);
+			}
+			types = new AtomicReferenceArray<RollingWindow[]>(NB_TYPES);
+			source.devices.set(deviceId & 0xFFFF, types);
+			nbDevices++;
+		}
+		RollingWindow[] windows = types.get(type);
+		if (windows != null) {
+			// Created by another decoder in the meantime.
+			return windows;
+		}
+		String name = DisplayFrameSink.getSeriesName(sourceName, deviceId) + "/" + getTypeName(type);
+		windows = new RollingWindow[WINDOW_NAMES.length];
+		for (int i = 0; i < windows.length; i++) {
+			windows[i] = new RollingWindow(BUCKET_DURATIONS[i], NB_BUCKETS[i], lowests[type],
+					highests[type], NB_BINS);
+			ObjectName objectName = MetricsRegistry.register(windows[i], MBEAN_TYPE,
+					name + "/" + WINDOW_NAMES[i]);
+			if (objectName != null) {
+				objectNames.add(objectName);
+			}
+		}
+		types.set(type, windows);
+		return windows;
+
+	}
+
+	/**
+	 *
+	 * @param type
+	 * @return
+	 */
+	private static String getTypeName(int type) {
+
+		if (type == FrameHandler.READING_TEMPERATURE) {
+			return "temperature";
+		}
+		return String.valueOf((char)type);
+
+	}
+
+}
@@ -0,0 +1,807 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Compressed, columnar archive of decoded readings.
+ *
+ * Readings are grouped by series, i.e. by source, remote device and type of
+ * reading. Readings of a series are appended to an open block, kept in memory.
+ * A block is closed when it is full, or when it is older than a given
+ * duration. Closed blocks are compressed by ReadingBlockCodec, from a dedicated
+ * thread, and appended to the data file. For every block, an index entry is
+ * appended to the index file (big endian):
+ * - series: 4 bytes
+ * - number of readings: 4 bytes
+ * - length of compressed block: 4 bytes
+ * - minimum and maximum raw values: 4 bytes each
+ * - times of first and last readings, in ms since epoch: 8 bytes each
+ * - offset of compressed block in data file: 8 bytes
+ *
+ * The index is kept in memory. Range scans only decompress blocks whose
+ * series, time range and value range match the query. Readings are visible to
+ * scans once their block is archived.
+ *
+ * Series are described in a text file, one per line, in order of creation:
+ * source name, device identifier, and type, separated by tabs.
+ *
+ * Times of a series are kept in increasing order: a reading older than last
+ * one of its series is archived with time of last one. After a crash, blocks
+ * without a complete index entry are discarded.
+ *
+ */
+public class ReadingArchive implements FrameSink, Runnable {
+
+	private final static Logger log = Logger.get(LogCategory.APP);
+
+	// Default characteristics of blocks.
+	public final static int DEFAULT_BLOCK_SIZE = 1024;
+	public final static long DEFAULT_BLOCK_DURATION = 6 * 3600L * 1000;
+
+	private final static String DATA_FILE = "readings.arc";
+	private final static String INDEX_FILE = "readings.idx";
+	private final static String SERIES_FILE = "series.txt";
+	private final static int INDEX_ENTRY_SIZE = 44;
+	private final static String SEPARATOR = "\t";
+	// Period of checks for blocks older than block duration, in ms.
+	private final static long CHECK_PERIOD = 60000L;
+	// Maximum number of closed blocks waiting to be compressed.
+	private final static int QUEUE_CAPACITY = 256;
+	// Initial capacity of open blocks.
+	private final static int INITIAL_BLOCK_CAPACITY = 16;
+	// Device identifier, in keys of open blocks, of readings without a device.
+	private final static int NO_DEVICE_KEY = 0xFFFF;
+
+	private File directory;
+	private int blockSize;
+	private long blockDuration;
+
+	// Series, indexed by their identifier.
+	private ArrayList<Series> series;
+	private HashMap<String, Integer> seriesIds;
+	private Writer seriesWriter;
+
+	// Open blocks, by key built from frame source identifier, device
+	// identifier and type, see append().
+	private HashMap<Long, Block> openBlocks;
+	private LinkedBlockingQueue<Block> closedBlocks;
+	// Put into closedBlocks to stop the archiving thread.
+	private final Block endBlock;
+
+	private FileChannel dataChannel;
+	private FileChannel indexChannel;
+	private long dataSize;
+	private ByteBuffer indexEntry;
+
+	// Index, by block. Arrays are replaced by larger copies when they are full:
+	// entries below indexSize are never modified.
+	private int[] indexSeries;
+	private int[] indexCounts;
+	private int[] indexLengths;
+	private int[] indexMins;
+	private int[] indexMaxs;
+	private long[] indexFirstTimes;
+	private long[] indexLastTimes;
+	private long[] indexOffsets;
+	private int indexSize;
+	private long readingCount;
+
+	private Thread thread;
+	private boolean closed;
+
+	// Lock of files and index. Never held while waiting for the archiving
+	// thread: the lock of the archive is held by producers, while they wait
+	// for room in closedBlocks.
+	private final Object indexLock = new Object();
+
+	/**
+	 * Interface used to return scanned readings.
+	 */
+	public interface Visitor {
+
+		/**
+		 *
+		 * @param source name of the source
+		 * @param deviceId identifier of the remote device, Frame.NO_DEVICE if none
+		 * @param type type of reading
+		 * @param time in ms since epoch
+		 * @param rawValue
+		 */
+		public void reading(String source, int deviceId, int type, long time, int rawValue);
+
+	}
+
+	/**
+	 * Uses default block characteristics.
+	 *
+	 * @param directory directory archive files are stored in
+	 * @throws IOException
+	 */
+	public ReadingArchive(File directory) throws IOException {
+
+		this(directory, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_DURATION);
+
+	}
+
+	/**
+	 * An existing archive is reopened, and new blocks are appended to it.
+	 *
+	 * @param directory directory archive files are stored in
+	 * @param blockSize maximum number of readings of a block
+	 * @param blockDuration maximum duration of a block, in ms
+	 * @throws IOException
+	 */
+	public ReadingArchive(File directory, int blockSize, long blockDuration) throws IOException {
+
+		this.directory = directory;
+		this.blockSize = blockSize;
+		// Deltas of times are first encoded on 32 bits.
+		this.blockDuration = Math.min(blockDuration, Integer.MAX_VALUE);
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("can't create " + directory);
+		}
+
+		series = new ArrayList<Series>();
+		seriesIds = new HashMap<String, Integer>();
+		File seriesFile = new File(directory, SERIES_FILE);
+		if (seriesFile.exists()) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(seriesFile), StandardCharsets.UTF_8));
+			try {
+				String line;
+				String[] fields;
+				while ((line = reader.readLine()) != null) {
+					fields = line.split(SEPARATOR);
+					if (fields.length != 3) {
+						continue;
+					}
+					try {
+						addSeries(new Series(fields[0], Integer.parseInt(fields[1]),
+								Integer.parseInt(fields[2])));
+					} catch (NumberFormatException e) {
+						throw new IOException("bad series: " + line);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		seriesWriter = new OutputStreamWriter(new FileOutputStream(seriesFile, true),
+				StandardCharsets.UTF_8);
+
+		indexSeries = new int[INITIAL_BLOCK_CAPACITY];
+		indexCounts = new int[INITIAL_BLOCK_CAPACITY];
+		indexLengths = new int[INITIAL_BLOCK_CAPACITY];
+		indexMins = new int[INITIAL_BLOCK_CAPACITY];
+		indexMaxs = new int[INITIAL_BLOCK_CAPACITY];
+		indexFirstTimes = new long[INITIAL_BLOCK_CAPACITY];
+		indexLastTimes = new long[INITIAL_BLOCK_CAPACITY];
+		indexOffsets = new long[INITIAL_BLOCK_CAPACITY];
+		indexSize = 0;
+		readingCount = 0;
+		indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+		openFiles();
+
+		openBlocks = new HashMap<Long, Block>();
+		closedBlocks = new LinkedBlockingQueue<Block>(QUEUE_CAPACITY);
+		endBlock = new Block(-1, 0);
+		closed = false;
+		thread = new Thread(this, "reading-archive");
+		thread.setDaemon(true);
+		thread.start();
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public void frameReceived(Frame frame) {
+
+		// Only readings are archived.
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public void readingReceived(Frame frame, int type, int rawValue, float value) {
+
+		try {
+			append(frame.getWallTime(), frame, type, rawValue);
+		} catch (IOException e) {
+			log.error("can't archive reading: {}", e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	/**
+	 * Can be called from any context. Waits when the archiving thread can't
+	 * keep up.
+	 *
+	 * @param time in ms since epoch
+	 * @param frame frame the reading was decoded from
+	 * @param type
+	 * @param rawValue
+	 * @throws IOException if series file can't be written
+	 * @throws InterruptedException
+	 */
+	public synchronized void append(long time, Frame frame, int type, int rawValue)
+			throws IOException, InterruptedException {
+
+		if (closed) {
+			return;
+		}
+		int deviceId = frame.getDeviceId();
+		// Whole source identifier: identifiers are not reused, and replayed
+		// frames have a negative one.
+		long key = ((long)frame.getSourceId() << 32)
+				| (((deviceId == Frame.NO_DEVICE) ? NO_DEVICE_KEY : deviceId & 0xFFFF) << 8)
+				| (type & 0xFF);
+		Block block = openBlocks.get(key);
+		if (block == null) {
+			block = new Block(getSeries(frame.getSourceName(), deviceId, type), INITIAL_BLOCK_CAPACITY);
+			openBlocks.put(key, block);
+		} else if ((block.count > 0) && (time - block.times[0] >= blockDuration)) {
+			closedBlocks.put(block);
+			block = new Block(block);
+			openBlocks.put(key, block);
+		}
+		block.add(Math.max(time, block.lastTime), rawValue);
+		if (block.count >= blockSize) {
+			closedBlocks.put(block);
+			openBlocks.put(key, new Block(block));
+		}
+
+	}
+
+	/**
+	 * Closes all open blocks, so that their readings are archived. Can be
+	 * called from any context. Blocks are then archived by the archiving
+	 * thread.
+	 *
+	 * @throws InterruptedException
+	 */
+	public synchronized void flush() throws InterruptedException {
+
+		for (Map.Entry<Long, Block> entry: openBlocks.entrySet()) {
+			Block block = entry.getValue();
+			if (block.count > 0) {
+				closedBlocks.put(block);
+				entry.setValue(new Block(block));
+			}
+		}
+
+	}
+
+	/**
+	 * Returns all readings archived between two times. Readings of a block are
+	 * returned in increasing time order, blocks in archiving order. Can be
+	 * called from any context.
+	 *
+	 * @param from in ms since epoch, included
+	 * @param to in ms since epoch, included
+	 * @param visitor
+	 * @return number of blocks decompressed
+	 * @throws IOException
+	 */
+	public int scan(long from, long to, Visitor visitor) throws IOException {
+
+		return scan(from, to, Integer.MIN_VALUE, Integer.MAX_VALUE, visitor);
+
+	}
+
+	/**
+	 * Returns all readings archived between two times, with a raw value in a
+	 * given range. Blocks without such readings are skipped.
+	 *
+	 * @param from in ms since epoch, included
+	 * @param to in ms since epoch, included
+	 * @param minRawValue included
+	 * @param maxRawValue included
+	 * @param visitor
+	 * @return number of blocks decompressed
+	 * @throws IOException
+	 */
+	public int scan(long from, long to, int minRawValue, int maxRawValue, Visitor visitor)
+			throws IOException {
+
+		int size;
+		int[] seriesOf;
+		int[] counts;
+		int[] lengths;
+		int[] mins;
+		int[] maxs;
+		long[] firstTimes;
+		long[] lastTimes;
+		long[] offsets;
+		Series[] allSeries;
+		synchronized (indexLock) {
+			size = indexSize;
+			seriesOf = indexSeries;
+			counts = indexCounts;
+			lengths = indexLengths;
+			mins = indexMins;
+			maxs = indexMaxs;
+			firstTimes = indexFirstTimes;
+			lastTimes = indexLastTimes;
+			offsets = indexOffsets;
+		}
+		// Series of a block are created before the block is archived.
+		synchronized (this) {
+			allSeries = series.toArray(new Series[series.size()]);
+		}
+
+		int decoded = 0;
+		long[] times = new long[blockSize];
+		int[] values = new int[blockSize];
+		byte[] block = new byte[0];
+		for (int b = 0; b < size; b++) {
+			if ((lastTimes[b] < from) || (firstTimes[b] > to) || (maxs[b] < minRawValue)
+					|| (mins[b] > maxRawValue)) {
+				continue;
+			}
+			if (block.length < lengths[b]) {
+				block = new byte[lengths[b]];
+			}
+			read(block, lengths[b], offsets[b]);
+			int count = counts[b];
+			if (times.length < count) {
+				times = new long[count];
+				values = new int[count];
+			}
+			ReadingBlockCodec.decode(block, count, times, values);
+			decoded++;
+			Series s = allSeries[seriesOf[b]];
+			for (int i = 0; i < count; i++) {
+				if ((times[i] >= from) && (times[i] <= to) && (values[i] >= minRawValue)
+						&& (values[i] <= maxRawValue)) {
+					visitor.reading(s.source, s.deviceId, s.type, times[i], values[i]);
+				}
+			}
+		}
+		return decoded;
+
+	}
+
+	/**
+	 *
+	 * @return number of readings, of compressed blocks and of bytes of the archive
+	 */
+	public String getSummary() {
+
+		synchronized (indexLock) {
+			long bytes = dataSize + (long)indexSize * INDEX_ENTRY_SIZE;
+			return String.format(Locale.ROOT, "archive %s: %d readings in %d blocks, %d bytes (%.2f bytes per reading)",
+					directory, readingCount, indexSize, bytes,
+					(readingCount == 0) ? 0.0 : (double)bytes / readingCount);
+		}
+
+	}
+
+	/**
+	 * Archives open blocks, and stops archiving thread.
+	 */
+	public void close() {
+
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			try {
+				flush();
+				closedBlocks.put(endBlock);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			closed = true;
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			try {
+				seriesWriter.close();
+			} catch (IOException e) {
+				log.error("can't close reading archive: {}", e.getMessage());
+			}
+		}
+		synchronized (indexLock) {
+			try {
+				dataChannel.force(false);
+				indexChannel.force(false);
+				dataChannel.close();
+				indexChannel.close();
+			} catch (IOException e) {
+				log.error("can't close reading archive: {}", e.getMessage());
+			}
+		}
+
+	}
+
+	/**
+	 * Run by archiving thread: compresses closed blocks, and appends them to
+	 * the archive. Checks periodically for blocks older than block duration.
+	 */
+	@Override
+	public void run() {
+
+		Block block;
+		while (true) {
+			try {
+				block = closedBlocks.poll(CHECK_PERIOD, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (block == endBlock) {
+				return;
+			}
+			if (block == null) {
+				closeOldBlocks(System.currentTimeMillis());
+				continue;
+			}
+			try {
+				write(block);
+			} catch (IOException e) {
+				log.error("can't archive block: {}", e.getMessage());
+			}
+		}
+
+	}
+
+	/**
+	 * Called from archiving thread.
+	 *
+	 * @param now
+	 */
+	private synchronized void closeOldBlocks(long now) {
+
+		Block block;
+		Iterator<Map.Entry<Long, Block>> it = openBlocks.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, Block> entry = it.next();
+			block = entry.getValue();
+			if ((block.count == 0) && (now - block.lastTime >= blockDuration)) {
+				// Series idle for a block duration, e.g. its source was closed.
+				it.remove();
+			} else if ((block.count > 0) && (now - block.times[0] >= blockDuration)) {
+				// Archiving thread itself consumes the queue: never wait.
+				if (closedBlocks.offer(block)) {
+					entry.setValue(new Block(block));
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Called from archiving thread. Compression is performed without holding
+	 * any lock.
+	 *
+	 * @param block
+	 * @throws IOException
+	 */
+	private void write(Block block) throws IOException {
+
+		byte[] compressed = ReadingBlockCodec.encode(block.times, block.values, block.count);
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int i = 0; i < block.count; i++) {
+			min = Math.min(min, block.values[i]);
+			max = Math.max(max, block.values[i]);
+		}
+
+		synchronized (indexLock) {
+			long offset = dataSize;
+			ByteBuffer b = ByteBuffer.wrap(compressed);
+			while (b.hasRemaining()) {
+				dataChannel.write(b, offset + b.position());
+			}
+			// Index entry is written once its block is complete.
+			indexEntry.clear();
+			indexEntry.putInt(block.series);
+			indexEntry.putInt(block.count);
+			indexEntry.putInt(compressed.length);
+			indexEntry.putInt(min);
+			indexEntry.putInt(max);
+			indexEntry.putLong(block.times[0]);
+			indexEntry.putLong(block.times[block.count - 1]);
+			indexEntry.putLong(offset);
+			indexEntry.flip();
+			long indexOffset = (long)indexSize * INDEX_ENTRY_SIZE;
+			while (indexEntry.hasRemaining()) {
+				indexChannel.write(indexEntry, indexOffset + indexEntry.position());
+			}
+			dataSize += compressed.length;
+			addIndexEntry(block.series, block.count, compressed.length, min, max, block.times[0],
+					block.times[block.count - 1], offset);
+		}
+
+	}
+
+	/**
+	 * Opens data and index files, and loads index. Blocks without a complete
+	 * index entry, and index entries without a complete block, are discarded.
+	 *
+	 * @throws IOException
+	 */
+	private void openFiles() throws IOException {
+
+		dataChannel = FileChannel.open(new File(directory, DATA_FILE).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		indexChannel = FileChannel.open(new File(directory, INDEX_FILE).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long dataLength = dataChannel.size();
+		int entries = (int)(indexChannel.size() / INDEX_ENTRY_SIZE);
+		ByteBuffer index = ByteBuffer.allocate(entries * INDEX_ENTRY_SIZE);
+		while (index.hasRemaining()) {
+			if (indexChannel.read(index, index.position()) < 0) {
+				break;
+			}
+		}
+		index.flip();
+		dataSize = 0;
+		int s;
+		int count;
+		int length;
+		int min;
+		int max;
+		long first;
+		long last;
+		long offset;
+		while (index.remaining() >= INDEX_ENTRY_SIZE) {
+			s = index.getInt();
+			count = index.getInt();
+			length = index.getInt();
+			min = index.getInt();
+			max = index.getInt();
+			first = index.getLong();
+			last = index.getLong();
+			offset = index.getLong();
+			if ((offset != dataSize) || (offset + length > dataLength) || (s < 0)
+					|| (s >= series.size())) {
+				break;
+			}
+			addIndexEntry(s, count, length, min, max, first, last, offset);
+			dataSize += length;
+		}
+		dataChannel.truncate(dataSize);
+		indexChannel.truncate((long)indexSize * INDEX_ENTRY_SIZE);
+
+	}
+
+	/**
+	 *
+	 * @param s
+	 * @param count
+	 * @param length
+	 * @param min
+	 * @param max
+	 * @param first
+	 * @param last
+	 * @param offset
+	 */
+	private void addIndexEntry(int s, int count, int length, int min, int max, long first, long last,
+			long offset) {
+
+		if (indexSize == indexSeries.length) {
+			int capacity = indexSize * 2;
+			indexSeries = Arrays.copyOf(indexSeries, capacity);
+			indexCounts = Arrays.copyOf(indexCounts, capacity);
+			indexLengths = Arrays.copyOf(indexLengths, capacity);
+			indexMins = Arrays.copyOf(indexMins, capacity);
+			indexMaxs = Arrays.copyOf(indexMaxs, capacity);
+			indexFirstTimes = Arrays.copyOf(indexFirstTimes, capacity);
+			indexLastTimes = Arrays.copyOf(indexLastTimes, capacity);
+			indexOffsets = Arrays.copyOf(indexOffsets, capacity);
+		}
+		indexSeries[indexSize] = s;
+		indexCounts[indexSize] = count;
+		indexLengths[indexSize] = length;
+		indexMins[indexSize] = min;
+		indexMaxs[indexSize] = max;
+		indexFirstTimes[indexSize] = first;
+		indexLastTimes[indexSize] = last;
+		indexOffsets[indexSize] = offset;
+		indexSize++;
+		readingCount += count;
+
+	}
+
+	/**
+	 *
+	 * @param block
+	 * @param length
+	 * @param offset
+	 * @throws IOException
+	 */
+	private void read(byte[] block, int length, long offset) throws IOException {
+
+		ByteBuffer b = ByteBuffer.wrap(block, 0, length);
+		while (b.hasRemaining()) {
+			if (dataChannel.read(b, offset + b.position()) < 0) {
+				throw new IOException("truncated archive");
+			}
+		}
+
+	}
+
+	/**
+	 * Returns the identifier of a series, creating it if it does not exist.
+	 *
+	 * @param source
+	 * @param deviceId
+	 * @param type
+	 * @return
+	 * @throws IOException
+	 */
+	private int getSeries(String source, int deviceId, int type) throws IOException {
+
+		Series s = new Series(source, deviceId, type);
+		Integer id = seriesIds.get(s.getKey());
+		if (id != null) {
+			return id;
+		}
+		seriesWriter.write(s.getKey() + "\n");
+		seriesWriter.flush();
+		return addSeries(s);
+
+	}
+
+	/**
+	 *
+	 * @param s
+	 * @return identifier of the series
+	 */
+	private int addSeries(Series s) {
+
+		series.add(s);
+		seriesIds.put(s.getKey(), series.size() - 1);
+		return series.size() - 1;
+
+	}
+
+	/**
+	 * Series of readings: same source, same device, same type.
+	 */
+	private static class Series {
+
+		final String source;
+		final int deviceId;
+		final int type;
+
+		/**
+		 *
+		 * @param source
+		 * @param deviceId
+		 * @param type
+		 */
+		Series(String source, int deviceId, int type) {
+
+			this.source = source;
+			this.deviceId = deviceId;
+			this.type = type;
+
+		}
+
+		/**
+		 *
+		 * @return line of series file
+		 */
+		String getKey() {
+
+			return source + SEPARATOR + deviceId + SEPARATOR + type;
+
+		}
+
+	}
+
+	/**
+	 * Readings of a series, before compression.
+	 */
+	private static class Block {
+
+		final int series;
+		long[] times;
+		int[] values;
+		int count;
+		// Time of last reading of the series.
+		long lastTime;
+
+		/**
+		 *
+		 * @param series
+		 * @param capacity initial capacity
+		 */
+		Block(int series, int capacity) {
+
+			this.series = series;
+			times = new long[capacity];
+			values = new int[capacity];
+			count = 0;
+			lastTime = Long.MIN_VALUE;
+
+		}
+
+		/**
+		 * Next block of a series.
+		 *
+		 * @param previous
+		 */
+		Block(Block previous) {
+
+			this(previous.series, INITIAL_BLOCK_CAPACITY);
+			lastTime = previous.lastTime;
+
+		}
+
+		/**
+		 *
+		 * @param time
+		 * @param value
+		 */
+		void add(long time, int value) {
+
+			if (count == times.length) {
+				times = Arrays.copyOf(times, count * 2);
+				values = Arrays.copyOf(values, count * 2);
+			}
+			times[count] = time;
+			values[count] = value;
+			count++;
+			lastTime = time;
+
+		}
+
+	}
+
+}
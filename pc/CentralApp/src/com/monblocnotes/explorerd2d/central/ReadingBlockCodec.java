@@ -0,0 +1,270 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Compression of a block of readings of a same series, inspired by Gorilla
+ * (Facebook's time series database). Times and raw values are encoded as
+ * two consecutive bit columns:
+ * - times: first time on 64 bits, first delta on 32 bits, then deltas of
+ *   deltas, in variable-size buckets. Readings sent at a regular period have
+ *   deltas of deltas close to 0, i.e. take a few bits
+ * - raw values: first value on 32 bits, then deltas, in variable-size
+ *   buckets. Values of slowly varying readings, like ADC values of a
+ *   temperature, take a few bits
+ *
+ * Buckets are prefixed by a unary code: 0, 10, 110, 1110 or 1111. First bucket
+ * is an empty delta, last one holds any value. Deltas of values are computed
+ * modulo 2^32, so that any int value can be encoded.
+ *
+ */
+public final class ReadingBlockCodec {
+
+	// Sizes, in bits, of buckets of deltas of deltas of times, in ms.
+	private final static int[] TIME_BUCKETS = { 0, 7, 10, 16, 64 };
+	// Sizes, in bits, of buckets of deltas of raw values.
+	private final static int[] VALUE_BUCKETS = { 0, 3, 8, 16, 32 };
+
+	/**
+	 *
+	 */
+	private ReadingBlockCodec() {
+
+	}
+
+	/**
+	 *
+	 * @param times times of readings, in ms, in increasing order
+	 * @param values raw values of readings
+	 * @param count number of readings, at least 1
+	 * @return encoded block
+	 */
+	public static byte[] encode(long[] times, int[] values, int count) {
+
+		BitWriter writer = new BitWriter(count * 2 + 16);
+		writer.write(times[0], 64);
+		long previousDelta = 0;
+		for (int i = 1; i < count; i++) {
+			long delta = times[i] - times[i - 1];
+			if (i == 1) {
+				writer.write(delta, 32);
+			} else {
+				writeBucket(writer, delta - previousDelta, TIME_BUCKETS);
+			}
+			previousDelta = delta;
+		}
+		writer.write(values[0], 32);
+		for (int i = 1; i < count; i++) {
+			writeBucket(writer, (long)values[i] - values[i - 1], VALUE_BUCKETS);
+		}
+		return writer.toByteArray();
+
+	}
+
+	/**
+	 *
+	 * @param block encoded block
+	 * @param count number of readings of the block
+	 * @param times receives times of readings. Length must be at least count
+	 * @param values receives raw values of readings. Length must be at least count
+	 */
+	public static void decode(byte[] block, int count, long[] times, int[] values) {
+
+		BitReader reader = new BitReader(block);
+		times[0] = reader.read(64);
+		long delta = 0;
+		for (int i = 1; i < count; i++) {
+			if (i == 1) {
+				delta = reader.read(32);
+			} else {
+				delta += readBucket(reader, TIME_BUCKETS);
+			}
+			times[i] = times[i - 1] + delta;
+		}
+		values[0] = (int)reader.read(32);
+		for (int i = 1; i < count; i++) {
+			values[i] = (int)(values[i - 1] + readBucket(reader, VALUE_BUCKETS));
+		}
+
+	}
+
+	/**
+	 *
+	 * @param writer
+	 * @param value signed value
+	 * @param buckets
+	 */
+	private static void writeBucket(BitWriter writer, long value, int[] buckets) {
+
+		if (value == 0) {
+			writer.write(0, 1);
+			return;
+		}
+		int last = buckets.length - 1;
+		for (int b = 1; b < last; b++) {
+			// Range of a bucket of n bits: [-2^(n-1), 2^(n-1) - 1].
+			long half = 1L << (buckets[b] - 1);
+			if ((value >= -half) && (value < half)) {
+				// b ones, then a zero.
+				writer.write((1L << (b + 1)) - 2, b + 1);
+				writer.write(value, buckets[b]);
+				return;
+			}
+		}
+		writer.write((1L << last) - 1, last);
+		writer.write(value, buckets[last]);
+
+	}
+
+	/**
+	 *
+	 * @param reader
+	 * @param buckets
+	 * @return signed value
+	 */
+	private static long readBucket(BitReader reader, int[] buckets) {
+
+		int last = buckets.length - 1;
+		int b = 0;
+		while ((b < last) && (reader.read(1) == 1)) {
+			b++;
+		}
+		if (b == 0) {
+			return 0;
+		}
+		int n = buckets[b];
+		long value = reader.read(n);
+		if (n < 64) {
+			// Sign extension.
+			value = (value << (64 - n)) >> (64 - n);
+		}
+		return value;
+
+	}
+
+	/**
+	 * Writes bits, most significant first.
+	 */
+	private static class BitWriter {
+
+		private byte[] buffer;
+		private int bitCount;
+
+		/**
+		 *
+		 * @param capacity initial capacity, in bytes
+		 */
+		BitWriter(int capacity) {
+
+			buffer = new byte[capacity];
+			bitCount = 0;
+
+		}
+
+		/**
+		 *
+		 * @param value
+		 * @param n number of low-order bits of value to write, from 1 to 64
+		 */
+		void write(long value, int n) {
+
+			if (bitCount + n > buffer.length * 8L) {
+				byte[] b = new byte[Math.max(buffer.length * 2, (bitCount + n) / 8 + 1)];
+				System.arraycopy(buffer, 0, b, 0, buffer.length);
+				buffer = b;
+			}
+			// Up to 8 bits at a time, filling current byte.
+			int free;
+			int k;
+			while (n > 0) {
+				free = 8 - (bitCount & 7);
+				k = Math.min(free, n);
+				int bits = (int)(value >>> (n - k)) & ((1 << k) - 1);
+				buffer[bitCount >>> 3] |= (byte)(bits << (free - k));
+				bitCount += k;
+				n -= k;
+			}
+
+		}
+
+		/**
+		 *
+		 * @return
+		 */
+		byte[] toByteArray() {
+
+			byte[] b = new byte[(bitCount + 7) / 8];
+			System.arraycopy(buffer, 0, b, 0, b.length);
+			return b;
+
+		}
+
+	}
+
+	/**
+	 * Reads bits, most significant first.
+	 */
+	private static class BitReader {
+
+		private final byte[] buffer;
+		private int bitIndex;
+
+		/**
+		 *
+		 * @param buffer
+		 */
+		BitReader(byte[] buffer) {
+
+			this.buffer = buffer;
+			bitIndex = 0;
+
+		}
+
+		/**
+		 *
+		 * @param n number of bits to read, from 1 to 64
+		 * @return bits, as low-order bits, not sign extended
+		 */
+		long read(int n) {
+
+			// Up to 8 bits at a time, from current byte.
+			long value = 0;
+			int available;
+			int k;
+			while (n > 0) {
+				available = 8 - (bitIndex & 7);
+				k = Math.min(available, n);
+				int bits = ((buffer[bitIndex >>> 3] & 0xFF) >>> (available - k)) & ((1 << k) - 1);
+				value = (value << k) | bits;
+				bitIndex += k;
+				n -= k;
+			}
+			return value;
+
+		}
+
+	}
+
+}
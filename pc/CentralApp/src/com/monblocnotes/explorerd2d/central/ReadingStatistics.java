@@ -0,0 +1,127 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.util.Locale;
+
+/**
+ *
+ * Statistics of the readings received during a time window. Percentiles are
+ * estimated from a histogram: their precision is the width of its bins.
+ *
+ */
+public class ReadingStatistics {
+
+	private final long count;
+	private final float min;
+	private final float max;
+	private final double mean;
+	private final float p50;
+	private final float p90;
+	private final float p99;
+
+	/**
+	 *
+	 * @param count
+	 * @param min
+	 * @param max
+	 * @param mean
+	 * @param p50
+	 * @param p90
+	 * @param p99
+	 */
+	public ReadingStatistics(long count, float min, float max, double mean, float p50, float p90,
+			float p99) {
+
+		this.count = count;
+		this.min = min;
+		this.max = max;
+		this.mean = mean;
+		this.p50 = p50;
+		this.p90 = p90;
+		this.p99 = p99;
+
+	}
+
+	/**
+	 *
+	 * @return number of readings. If 0, other values are NaN
+	 */
+	public long getCount() {
+
+		return count;
+
+	}
+
+	public float getMin() {
+
+		return min;
+
+	}
+
+	public float getMax() {
+
+		return max;
+
+	}
+
+	public double getMean() {
+
+		return mean;
+
+	}
+
+	public float getP50() {
+
+		return p50;
+
+	}
+
+	public float getP90() {
+
+		return p90;
+
+	}
+
+	public float getP99() {
+
+		return p99;
+
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public String toString() {
+
+		if (count == 0) {
+			return "no reading";
+		}
+		return String.format(Locale.ROOT, "%d readings, min %.1f, mean %.1f, max %.1f, p50 %.1f, p90 %.1f, p99 %.1f",
+				count, min, mean, max, p50, p90, p99);
+
+	}
+
+}
@@ -0,0 +1,545 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ *
+ * Append-only store of decoded readings. Every reading is stored as a fixed-size
+ * binary record (big endian):
+ * - time, in ms since epoch: 8 bytes
+ * - source: 2 bytes
+ * - type of reading: 2 bytes
+ * - remote device, Frame.NO_DEVICE if none: 4 bytes
+ * - raw value, as sent by the device: 4 bytes
+ *
+ * Records are appended to memory-mapped segment files, named after the time of
+ * their first record. A new segment is started when current one is full, or
+ * when it is older than a given duration. Mapped segments are forced to disk
+ * periodically, by a dedicated thread, and not for every record.
+ *
+ * Times are kept in increasing order: a reading older than last stored one is
+ * stored with time of last stored one. Consequently, time-range scans can skip
+ * segments, and use a binary search in segments.
+ *
+ * Sources are stored as identifiers local to the store. Mapping from source
+ * names to these identifiers is kept in a text file.
+ *
+ * Segments written by previous versions, with 16-byte records without remote
+ * device, have another suffix: they are left as they are, and are not scanned.
+ *
+ */
+public class ReadingStore implements FrameSink {
+
+	private final static Logger log = Logger.get(LogCategory.APP);
+
+	public final static int RECORD_SIZE = 20;
+
+	// Default characteristics of segments.
+	public final static long DEFAULT_SEGMENT_SIZE = 16L * 1024 * 1024;
+	public final static long DEFAULT_SEGMENT_DURATION = 24L * 3600 * 1000;
+	public final static long DEFAULT_SYNC_PERIOD = 1000;
+
+	private final static String SEGMENT_PREFIX = "readings-";
+	private final static String SEGMENT_SUFFIX = ".seg2";
+	private final static String OLD_SEGMENT_SUFFIX = ".seg";
+	private final static String SOURCES_FILE = "sources.txt";
+	// Maximum number of sources handled by the application.
+	private final static int MAX_SOURCES = 256;
+
+	private File directory;
+	private long segmentDuration;
+	private int recordsPerSegment;
+	private long syncPeriod;
+
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	private long segmentStart;
+	private int recordCount;
+	private long lastTime;
+	private volatile boolean dirty;
+
+	// Store identifiers of sources, indexed by frame source identifier.
+	private int[] storeSources;
+	private ArrayList<String> sourceNames;
+	private Writer sourcesWriter;
+
+	private Thread syncThread;
+	private volatile boolean closed;
+
+	/**
+	 * Interface used to return scanned readings.
+	 */
+	public interface ReadingVisitor {
+
+		/**
+		 *
+		 * @param time in ms since epoch
+		 * @param source store identifier of the source, see getSourceName()
+		 * @param deviceId remote device, Frame.NO_DEVICE if none
+		 * @param type
+		 * @param rawValue
+		 */
+		public void reading(long time, int source, int deviceId, int type, int rawValue);
+
+	}
+
+	/**
+	 * Uses default segment characteristics.
+	 *
+	 * @param directory directory segment files are stored in
+	 * @throws IOException
+	 */
+	public ReadingStore(File directory) throws IOException {
+
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SEGMENT_DURATION, DEFAULT_SYNC_PERIOD);
+
+	}
+
+	/**
+	 * Last segment, if any, is reopened, and new records are appended to it.
+	 *
+	 * @param directory directory segment files are stored in
+	 * @param segmentSize maximum size of a segment, in bytes
+	 * @param segmentDuration maximum duration of a segment, in ms
+	 * @param syncPeriod period of segment synchronization to disk, in ms
+	 * @throws IOException
+	 */
+	public ReadingStore(File directory, long segmentSize, long segmentDuration,
+			long syncPeriod) throws IOException {
+
+		this.directory = directory;
+		this.segmentDuration = segmentDuration;
+		this.syncPeriod = syncPeriod;
+		recordsPerSegment = (int)Math.min(segmentSize / RECORD_SIZE, Integer.MAX_VALUE / RECORD_SIZE);
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("can't create " + directory);
+		}
+
+		storeSources = new int[MAX_SOURCES];
+		Arrays.fill(storeSources, -1);
+		sourceNames = new ArrayList<String>();
+		File sourcesFile = new File(directory, SOURCES_FILE);
+		if (sourcesFile.exists()) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(sourcesFile), StandardCharsets.UTF_8));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (!line.isEmpty()) {
+						sourceNames.add(line);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		sourcesWriter = new OutputStreamWriter(new FileOutputStream(sourcesFile, true),
+				StandardCharsets.UTF_8);
+
+		String[] files = directory.list();
+		if (files != null) {
+			for (String name: files) {
+				if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(OLD_SEGMENT_SUFFIX)) {
+					log.warn("{} contains segments of a previous version, they are not scanned",
+							directory);
+					break;
+				}
+			}
+		}
+
+		lastTime = 0;
+		File[] segments = listSegments();
+		if (segments.length > 0) {
+			openSegment(segments[segments.length - 1], getSegmentStart(segments[segments.length - 1]));
+			if (recordCount > 0) {
+				lastTime = segment.getLong((recordCount - 1) * RECORD_SIZE);
+			}
+		}
+
+		closed = false;
+		dirty = false;
+		syncThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+
+				syncLoop();
+
+			}
+
+		}, "reading-store-sync");
+		syncThread.setDaemon(true);
+		syncThread.start();
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public void frameReceived(Frame frame) {
+
+		// Only readings are stored.
+
+	}
+
+	/**
+	 * For FrameSink interface.
+	 */
+	@Override
+	public void readingReceived(Frame frame, int type, int rawValue, float value) {
+
+		try {
+			append(frame.getWallTime(), getStoreSource(frame), frame.getDeviceId(), type, rawValue);
+		} catch (IOException e) {
+			log.error("can't store reading: {}", e.getMessage());
+		}
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 *
+	 * @param time in ms since epoch
+	 * @param source store identifier of the source
+	 * @param deviceId remote device, Frame.NO_DEVICE if none
+	 * @param type
+	 * @param rawValue
+	 * @throws IOException if a new segment can't be created
+	 */
+	public synchronized void append(long time, int source, int deviceId, int type, int rawValue)
+			throws IOException {
+
+		if (closed) {
+			return;
+		}
+		if (time < lastTime) {
+			time = lastTime;
+		}
+		if ((segment == null) || (recordCount >= recordsPerSegment)
+				|| (time - segmentStart >= segmentDuration)) {
+			rollSegment(time);
+		}
+		int p = recordCount * RECORD_SIZE;
+		segment.putShort(p + 8, (short)source);
+		segment.putShort(p + 10, (short)type);
+		segment.putInt(p + 12, deviceId);
+		segment.putInt(p + 16, rawValue);
+		// Time is written last: a record with a null time is not written yet.
+		segment.putLong(p, time);
+		recordCount++;
+		lastTime = time;
+		dirty = true;
+
+	}
+
+	/**
+	 * Returns all readings stored between two times, in increasing time order.
+	 * Can be called from any context.
+	 *
+	 * @param from in ms since epoch, included
+	 * @param to in ms since epoch, included
+	 * @param visitor
+	 * @throws IOException
+	 */
+	public void scan(long from, long to, ReadingVisitor visitor) throws IOException {
+
+		File[] segments = listSegments();
+		File current;
+		ByteBuffer currentBuffer;
+		int currentCount;
+		synchronized (this) {
+			current = (segment == null) ? null : getSegmentFile(segmentStart);
+			currentBuffer = (segment == null) ? null : segment.duplicate();
+			currentCount = recordCount;
+		}
+
+		for (int i = 0; i < segments.length; i++) {
+			if (getSegmentStart(segments[i]) > to) {
+				break;
+			}
+			if ((i + 1 < segments.length) && (getSegmentStart(segments[i + 1]) < from)) {
+				// All records of this segment are older than from.
+				continue;
+			}
+			if (segments[i].equals(current)) {
+				scanSegment(currentBuffer, currentCount, from, to, visitor);
+				continue;
+			}
+			FileChannel fc = FileChannel.open(segments[i].toPath(), StandardOpenOption.READ);
+			try {
+				ByteBuffer b = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+				scanSegment(b, countRecords(b), from, to, visitor);
+			} finally {
+				fc.close();
+			}
+		}
+
+	}
+
+	/**
+	 *
+	 * @param source store identifier of a source
+	 * @return null if identifier is unknown
+	 */
+	public synchronized String getSourceName(int source) {
+
+		if ((source < 0) || (source >= sourceNames.size())) {
+			return null;
+		}
+		return sourceNames.get(source);
+
+	}
+
+	/**
+	 * Forces current segment to disk, and stops synchronization thread.
+	 */
+	public void close() {
+
+		synchronized (this) {
+			closed = true;
+			if (segment != null) {
+				segment.force();
+			}
+			try {
+				sourcesWriter.close();
+				if (channel != null) {
+					channel.close();
+				}
+			} catch (IOException e) {
+				log.error("can't close reading store: {}", e.getMessage());
+			}
+		}
+		syncThread.interrupt();
+
+	}
+
+	/**
+	 * Run by synchronization thread.
+	 */
+	private void syncLoop() {
+
+		while (!closed) {
+			try {
+				Thread.sleep(syncPeriod);
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (dirty) {
+				MappedByteBuffer s;
+				synchronized (this) {
+					s = segment;
+					dirty = false;
+				}
+				if (s != null) {
+					s.force();
+				}
+			}
+		}
+
+	}
+
+	/**
+	 *
+	 * @param frame
+	 * @return
+	 * @throws IOException
+	 */
+	private synchronized int getStoreSource(Frame frame) throws IOException {
+
+		int id = frame.getSourceId();
+		if ((id >= 0) && (id < MAX_SOURCES) && (storeSources[id] != -1)) {
+			return storeSources[id];
+		}
+		String name = frame.getSourceName();
+		int storeSource = sourceNames.indexOf(name);
+		if (storeSource == -1) {
+			sourceNames.add(name);
+			storeSource = sourceNames.size() - 1;
+			sourcesWriter.write(name + "\n");
+			sourcesWriter.flush();
+		}
+		if ((id >= 0) && (id < MAX_SOURCES)) {
+			storeSources[id] = storeSource;
+		}
+		return storeSource;
+
+	}
+
+	/**
+	 * Forces current segment to disk, and starts a new one.
+	 *
+	 * @param time time of first record of new segment
+	 * @throws IOException
+	 */
+	private void rollSegment(long time) throws IOException {
+
+		if (segment != null) {
+			segment.force();
+			channel.close();
+		}
+		openSegment(getSegmentFile(time), time);
+
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @param start
+	 * @throws IOException
+	 */
+	private void openSegment(File file, long start) throws IOException {
+
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long)recordsPerSegment * RECORD_SIZE);
+		segmentStart = start;
+		recordCount = countRecords(segment);
+
+	}
+
+	/**
+	 * Uses a binary search for first record with a null time.
+	 *
+	 * @param b
+	 * @return number of records written in segment
+	 */
+	private static int countRecords(ByteBuffer b) {
+
+		int low = 0;
+		int high = b.limit() / RECORD_SIZE;
+		int mid;
+		while (low < high) {
+			mid = (low + high) >>> 1;
+			if (b.getLong(mid * RECORD_SIZE) != 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+
+	}
+
+	/**
+	 *
+	 * @param b
+	 * @param count
+	 * @param from
+	 * @param to
+	 * @param visitor
+	 */
+	private static void scanSegment(ByteBuffer b, int count, long from, long to, ReadingVisitor visitor) {
+
+		// Binary search for first record not older than from.
+		int low = 0;
+		int high = count;
+		int mid;
+		while (low < high) {
+			mid = (low + high) >>> 1;
+			if (b.getLong(mid * RECORD_SIZE) < from) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		long time;
+		int p;
+		for (int i = low; i < count; i++) {
+			p = i * RECORD_SIZE;
+			time = b.getLong(p);
+			if (time > to) {
+				break;
+			}
+			visitor.reading(time, b.getShort(p + 8), b.getInt(p + 12), b.getShort(p + 10),
+					b.getInt(p + 16));
+		}
+
+	}
+
+	/**
+	 *
+	 * @return segment files, sorted by time of first record
+	 */
+	private File[] listSegments() {
+
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return new File[0];
+		}
+		ArrayList<File> segments = new ArrayList<File>();
+		for (File f: files) {
+			if (f.getName().startsWith(SEGMENT_PREFIX) && f.getName().endsWith(SEGMENT_SUFFIX)) {
+				segments.add(f);
+			}
+		}
+		File[] s = segments.toArray(new File[segments.size()]);
+		// Names contain zero-padded times: alphabetical order is time order.
+		Arrays.sort(s);
+		return s;
+
+	}
+
+	/**
+	 *
+	 * @param start
+	 * @return
+	 */
+	private File getSegmentFile(long start) {
+
+		return new File(directory, String.format("%s%019d%s", SEGMENT_PREFIX, start, SEGMENT_SUFFIX));
+
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @return
+	 */
+	private static long getSegmentStart(File file) {
+
+		String name = file.getName();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+				name.length() - SEGMENT_SUFFIX.length()));
+
+	}
+
+}
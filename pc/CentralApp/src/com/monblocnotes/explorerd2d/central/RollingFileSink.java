@@ -0,0 +1,192 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * Log sink writing events to a file, one line per event: time, level, category,
+ * thread name and message, separated by spaces.
+ *
+ * When the file reaches a given size, it is renamed by appending .1 to its name,
+ * previous file.1 being renamed file.2, and so on. Oldest file is deleted.
+ *
+ */
+public class RollingFileSink implements LogSink {
+
+	// Default characteristics of log files.
+	public final static long DEFAULT_MAX_SIZE = 10L * 1024 * 1024;
+	public final static int DEFAULT_MAX_FILES = 5;
+
+	private File file;
+	private long maxSize;
+	private int maxFiles;
+	private Writer out;
+	// Number of characters written to current file, close to its size.
+	private long size;
+	private boolean failed;
+
+	private TimestampFormatter timeFormatter;
+	private StringBuilder line;
+
+	/**
+	 * Events are appended to the file, if it exists.
+	 *
+	 * @param file
+	 * @param maxSize size of a file, in bytes, above which it is rolled
+	 * @param maxFiles number of rolled files kept
+	 * @throws IOException
+	 */
+	public RollingFileSink(File file, long maxSize, int maxFiles) throws IOException {
+
+		this.file = file;
+		this.maxSize = maxSize;
+		this.maxFiles = maxFiles;
+		open();
+		failed = false;
+		timeFormatter = new TimestampFormatter("yyyy-MM-dd HH:mm:ss");
+		line = new StringBuilder(256);
+
+	}
+
+	/**
+	 * For LogSink interface.
+	 */
+	@Override
+	public void logEvent(long time, LogLevel level, LogCategory category, String threadName,
+			String message) {
+
+		if (failed) {
+			return;
+		}
+		line.setLength(0);
+		timeFormatter.format(time, line).append(' ');
+		line.append(level.name());
+		for (int i = level.name().length(); i < 5; i++) {
+			line.append(' ');
+		}
+		line.append(' ').append(category.getName()).append(" [").append(threadName).append("] ");
+		line.append(message).append('\n');
+		try {
+			if (size + line.length() > maxSize) {
+				roll();
+			}
+			out.append(line);
+			size += line.length();
+		} catch (IOException e) {
+			fail(e);
+		}
+
+	}
+
+	/**
+	 * For LogSink interface.
+	 */
+	@Override
+	public void flush() {
+
+		if (failed) {
+			return;
+		}
+		try {
+			out.flush();
+		} catch (IOException e) {
+			fail(e);
+		}
+
+	}
+
+	/**
+	 * For LogSink interface.
+	 */
+	@Override
+	public void close() {
+
+		try {
+			out.close();
+		} catch (IOException e) {
+			// Nothing more can be done.
+		}
+
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	private void open() throws IOException {
+
+		size = file.length();
+		out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+				StandardCharsets.UTF_8));
+
+	}
+
+	/**
+	 *
+	 * @throws IOException
+	 */
+	private void roll() throws IOException {
+
+		out.close();
+		File oldest = new File(file.getPath() + "." + maxFiles);
+		if (oldest.exists() && !oldest.delete()) {
+			throw new IOException("can't delete " + oldest);
+		}
+		for (int i = maxFiles - 1; i >= 1; i--) {
+			File f = new File(file.getPath() + "." + i);
+			if (f.exists() && !f.renameTo(new File(file.getPath() + "." + (i + 1)))) {
+				throw new IOException("can't rename " + f);
+			}
+		}
+		if ((maxFiles > 0) && !file.renameTo(new File(file.getPath() + ".1"))) {
+			throw new IOException("can't rename " + file);
+		}
+		if ((maxFiles == 0) && !file.delete()) {
+			throw new IOException("can't delete " + file);
+		}
+		open();
+
+	}
+
+	/**
+	 * Log file can no longer be written: events are ignored.
+	 *
+	 * @param e
+	 */
+	private void fail(IOException e) {
+
+		failed = true;
+		System.err.println("can't write log file " + file + ": " + e.getMessage());
+
+	}
+
+}
@@ -0,0 +1,300 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Statistics of readings over a rolling time window, updated in constant time
+ * per reading, within a bounded memory, whatever the number of readings.
+ *
+ * The window is divided into a ring of buckets of same duration. Every bucket
+ * holds count, sum, min, max and a histogram of the readings received during
+ * its period. Count, sum and histogram of the whole window are maintained
+ * incrementally: a reading is added to them, and an expired bucket is subtracted
+ * from them when its slot is reused. Queries only scan the buckets for min and
+ * max, and the window histogram for percentiles.
+ *
+ * Readings older than the window are ignored. Can be used from any context.
+ *
+ */
+public class RollingWindow implements RollingWindowMBean {
+
+	private final static long MS_PER_S = 1000L;
+
+	private final long bucketDuration;
+	private final int nbBuckets;
+	private final float lowest;
+	private final float binWidth;
+	private final int nbBins;
+
+	// Per bucket.
+	private final int[] counts;
+	private final double[] sums;
+	private final float[] mins;
+	private final float[] maxs;
+	// Histogram of bucket i is at i * nbBins.
+	private final int[] bucketBins;
+
+	// Whole window.
+	private final long[] windowBins;
+	private long windowCount;
+	private double windowSum;
+	// Index of the period of last bucket, i.e. time / bucketDuration.
+	private long currentPeriod;
+
+	/**
+	 *
+	 * @param bucketDuration in ms
+	 * @param nbBuckets window lasts nbBuckets * bucketDuration
+	 * @param lowest lowest value of histogram. Lower values are counted in its first bin
+	 * @param highest highest value of histogram. Higher values are counted in its last bin
+	 * @param nbBins number of bins of histogram
+	 */
+	public RollingWindow(long bucketDuration, int nbBuckets, float lowest, float highest, int nbBins) {
+
+		this.bucketDuration = bucketDuration;
+		this.nbBuckets = nbBuckets;
+		this.lowest = lowest;
+		this.binWidth = (highest - lowest) / nbBins;
+		this.nbBins = nbBins;
+
+		counts = new int[nbBuckets];
+		sums = new double[nbBuckets];
+		mins = new float[nbBuckets];
+		maxs = new float[nbBuckets];
+		bucketBins = new int[nbBuckets * nbBins];
+		windowBins = new long[nbBins];
+		windowCount = 0;
+		windowSum = 0;
+		currentPeriod = -1;
+
+	}
+
+	/**
+	 *
+	 * @param time in ms since epoch
+	 * @param value
+	 */
+	public synchronized void add(long time, float value) {
+
+		long period = time / bucketDuration;
+		if (period > currentPeriod) {
+			advance(period);
+		} else if (period <= currentPeriod - nbBuckets) {
+			// Too old.
+			return;
+		}
+
+		int bucket = (int)(period % nbBuckets);
+		if (counts[bucket] == 0) {
+			mins[bucket] = value;
+			maxs[bucket] = value;
+		} else if (value < mins[bucket]) {
+			mins[bucket] = value;
+		} else if (value > maxs[bucket]) {
+			maxs[bucket] = value;
+		}
+		counts[bucket]++;
+		sums[bucket] += value;
+		int bin = getBin(value);
+		bucketBins[bucket * nbBins + bin]++;
+		windowBins[bin]++;
+		windowCount++;
+		windowSum += value;
+
+	}
+
+	/**
+	 *
+	 * @param now in ms since epoch
+	 * @return statistics of the window ending at now
+	 */
+	public synchronized ReadingStatistics getStatistics(long now) {
+
+		long period = now / bucketDuration;
+		if (period > currentPeriod) {
+			advance(period);
+		}
+		if (windowCount == 0) {
+			return new ReadingStatistics(0, Float.NaN, Float.NaN, Double.NaN, Float.NaN, Float.NaN,
+					Float.NaN);
+		}
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < nbBuckets; i++) {
+			if (counts[i] != 0) {
+				min = Math.min(min, mins[i]);
+				max = Math.max(max, maxs[i]);
+			}
+		}
+		return new ReadingStatistics(windowCount, min, max, windowSum / windowCount,
+				getPercentile(50, min, max), getPercentile(90, min, max), getPercentile(99, min, max));
+
+	}
+
+	/**
+	 *
+	 * @return duration of the window, in ms
+	 */
+	public long getDuration() {
+
+		return bucketDuration * nbBuckets;
+
+	}
+
+	@Override
+	public long getWindowDuration() {
+
+		return getDuration() / MS_PER_S;
+
+	}
+
+	@Override
+	public long getCount() {
+
+		return getStatistics(System.currentTimeMillis()).getCount();
+
+	}
+
+	@Override
+	public float getMin() {
+
+		return getStatistics(System.currentTimeMillis()).getMin();
+
+	}
+
+	@Override
+	public float getMax() {
+
+		return getStatistics(System.currentTimeMillis()).getMax();
+
+	}
+
+	@Override
+	public double getMean() {
+
+		return getStatistics(System.currentTimeMillis()).getMean();
+
+	}
+
+	@Override
+	public float getP50() {
+
+		return getStatistics(System.currentTimeMillis()).getP50();
+
+	}
+
+	@Override
+	public float getP90() {
+
+		return getStatistics(System.currentTimeMillis()).getP90();
+
+	}
+
+	@Override
+	public float getP99() {
+
+		return getStatistics(System.currentTimeMillis()).getP99();
+
+	}
+
+	/**
+	 * Expires buckets up to a new period. At most nbBuckets buckets are
+	 * expired, whatever the elapsed time.
+	 *
+	 * @param period
+	 */
+	private void advance(long period) {
+
+		long steps = Math.min(period - currentPeriod, nbBuckets);
+		int bucket;
+		for (long p = period - steps + 1; p <= period; p++) {
+			bucket = (int)(p % nbBuckets);
+			if (counts[bucket] == 0) {
+				continue;
+			}
+			windowCount -= counts[bucket];
+			windowSum -= sums[bucket];
+			int base = bucket * nbBins;
+			for (int i = 0; i < nbBins; i++) {
+				windowBins[i] -= bucketBins[base + i];
+				bucketBins[base + i] = 0;
+			}
+			counts[bucket] = 0;
+			sums[bucket] = 0;
+		}
+		currentPeriod = period;
+		if (windowCount == 0) {
+			// Avoid accumulation of rounding errors.
+			windowSum = 0;
+		}
+
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return
+	 */
+	private int getBin(float value) {
+
+		int bin = (int)((value - lowest) / binWidth);
+		if (bin < 0) {
+			return 0;
+		}
+		if (bin >= nbBins) {
+			return nbBins - 1;
+		}
+		return bin;
+
+	}
+
+	/**
+	 * Linear interpolation within the bin holding the percentile.
+	 *
+	 * @param percentile
+	 * @param min of the window
+	 * @param max of the window
+	 * @return
+	 */
+	private float getPercentile(double percentile, float min, float max) {
+
+		double rank = percentile / 100 * windowCount;
+		long cumulated = 0;
+		for (int i = 0; i < nbBins; i++) {
+			if (windowBins[i] == 0) {
+				continue;
+			}
+			if (cumulated + windowBins[i] >= rank) {
+				double fraction = (rank - cumulated) / windowBins[i];
+				float value = (float)(lowest + (i + fraction) * binWidth);
+				return Math.max(min, Math.min(max, value));
+			}
+			cumulated += windowBins[i];
+		}
+		return max;
+
+	}
+
+}
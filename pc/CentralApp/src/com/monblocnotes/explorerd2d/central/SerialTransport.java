@@ -0,0 +1,258 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+
+import gnu.io.CommPortIdentifier;
+import gnu.io.NoSuchPortException;
+import gnu.io.PortInUseException;
+import gnu.io.SerialPort;
+import gnu.io.UnsupportedCommOperationException;
+
+/**
+ *
+ * Serial port, handled by RXTX.
+ *
+ */
+public class SerialTransport implements Transport {
+
+	private final static int PORT_OPEN_WAIT = 1000;
+	// Maximum time a read waits for received bytes, in ms. Allows reader thread
+	// to check whether it has to stop.
+	private final static int PORT_READ_TIMEOUT = 500;
+	// Characteristics of Sodaq ExpLoRer serial port (over USB).
+	private final static int PORT_SPEED = 57600;
+	private final static int PORT_DATA_BITS = SerialPort.DATABITS_8;
+	private final static int PORT_STOP_BITS = SerialPort.STOPBITS_1;
+	private final static int PORT_PARITY = SerialPort.PARITY_NONE;
+	private final static int PORT_FLOW_CONTROL = SerialPort.FLOWCONTROL_NONE;
+
+	private String serialPortName;
+	private SerialPort serialPort;
+	private OutputStream out;
+	private InputStream in;
+
+	/**
+	 *
+	 * @param serialPortName
+	 */
+	public SerialTransport(String serialPortName) {
+
+		this.serialPortName = serialPortName;
+
+	}
+
+	/**
+	 *
+	 * @param displayMessage
+	 */
+	public static ArrayList<String> getSerialPorts(DisplayMessage displayMessage) {
+
+		ArrayList<String> portNameList = new ArrayList<String>();
+		@SuppressWarnings("unchecked")
+		Enumeration<CommPortIdentifier> portList = CommPortIdentifier.getPortIdentifiers();
+		if (portList == null) {
+			displayMessage.displayLog("no CommPortIdentifier!");
+			return null;
+		}
+		CommPortIdentifier port;
+		while (portList.hasMoreElements()) {
+			port = portList.nextElement();
+			if (port.getPortType() != CommPortIdentifier.PORT_SERIAL) {
+				displayMessage.displayLog(port.getName() + " not a serial port");
+				continue;
+			}
+			if (port.isCurrentlyOwned()) {
+				displayMessage.displayLog(port.getName() + " currently owned");
+				continue;
+			}
+			portNameList.add(port.getName());
+			displayMessage.displayLog(port.getName() + " added to list");
+		}
+		if (portNameList.isEmpty()) {
+			return null;
+		}
+
+		return portNameList;
+	}
+
+	/**
+	 * Enumerates serial ports known to RXTX. Ports added since previous call
+	 * are detected. Can take several seconds: must not be called from FX
+	 * application context.
+	 *
+	 * @return names of serial ports, possibly empty
+	 */
+	public static ArrayList<String> listSerialPorts() {
+
+		ArrayList<String> portNameList = new ArrayList<String>();
+		@SuppressWarnings("unchecked")
+		Enumeration<CommPortIdentifier> portList = CommPortIdentifier.getPortIdentifiers();
+		if (portList == null) {
+			return portNameList;
+		}
+		CommPortIdentifier port;
+		while (portList.hasMoreElements()) {
+			port = portList.nextElement();
+			if (port.getPortType() == CommPortIdentifier.PORT_SERIAL) {
+				portNameList.add(port.getName());
+			}
+		}
+		return portNameList;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 */
+	@Override
+	public String getName() {
+
+		return serialPortName;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 * Tries to open the serial port. Side effect:
+	 * - set serialPort
+	 * - set out and in
+	 * @return -1 - no such port
+	 *         -2 - port in use
+	 *         -3 - internal error
+	 *         -4 - can't set read timeout
+	 *         -5 - can't get output stream
+	 *         -6 - can't get input stream
+	 *          0 - success
+	 */
+	@Override
+	public int open(DisplayMessage displayMessage) {
+
+		CommPortIdentifier commPortIdentifier;
+		try {
+			commPortIdentifier = CommPortIdentifier.getPortIdentifier(serialPortName);
+		} catch (NoSuchPortException e) {
+			// Port may have been plugged in after last enumeration.
+			CommPortIdentifier.getPortIdentifiers();
+			try {
+				commPortIdentifier = CommPortIdentifier.getPortIdentifier(serialPortName);
+			} catch (NoSuchPortException e2) {
+				displayMessage.displayLog(serialPortName + " does not exist");
+				return -1;
+			}
+		}
+		try {
+			serialPort = (SerialPort) commPortIdentifier.open("FrameHandler", PORT_OPEN_WAIT);
+		} catch (PortInUseException e) {
+			displayMessage.displayLog(serialPortName + " is in use");
+			return -2;
+		}
+		try {
+			serialPort.setSerialPortParams(PORT_SPEED, PORT_DATA_BITS, PORT_STOP_BITS, PORT_PARITY);
+		} catch (UnsupportedCommOperationException e) {
+			displayMessage.displayLog("internal error: bad port profile");
+			return fail(-3);
+		}
+		try {
+			serialPort.setFlowControlMode(PORT_FLOW_CONTROL);
+		} catch (UnsupportedCommOperationException e) {
+			displayMessage.displayLog("internal error: bad flow control");
+			return fail(-3);
+		}
+		try {
+			out = serialPort.getOutputStream();
+		} catch (IOException e) {
+			displayMessage.displayLog("can't get output stream");
+			return fail(-5);
+		}
+		try {
+			in = serialPort.getInputStream();
+		} catch (IOException e) {
+			displayMessage.displayLog("can't get input stream");
+			return fail(-6);
+		}
+		try {
+			serialPort.enableReceiveTimeout(PORT_READ_TIMEOUT);
+		} catch (UnsupportedCommOperationException e) {
+			displayMessage.displayLog("can't set read timeout");
+			return fail(-4);
+		}
+		return 0;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 */
+	@Override
+	public InputStream getInputStream() {
+
+		return in;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 */
+	@Override
+	public OutputStream getOutputStream() {
+
+		return out;
+
+	}
+
+	/**
+	 * For Transport interface.
+	 */
+	@Override
+	public void close() {
+
+		if (serialPort != null) {
+			serialPort.close();
+			serialPort = null;
+		}
+
+	}
+
+	/**
+	 * Closes the serial port once opened, so that opening can be tried again.
+	 *
+	 * @param rs error code
+	 * @return rs
+	 */
+	private int fail(int rs) {
+
+		close();
+		out = null;
+		in = null;
+		return rs;
+
+	}
+
+}
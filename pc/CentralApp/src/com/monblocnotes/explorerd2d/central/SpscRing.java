@@ -0,0 +1,235 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * Bounded single-producer / single-consumer ring of byte slots. All slots are
+ * allocated once, when the ring is created.
+ *
+ * Producer claims a slot, fills it, then publishes it. Consumer takes the oldest
+ * published slot, processes it, then releases it. When the ring is full, producer
+ * waits: every claim that has to wait is counted as a stall.
+ *
+ */
+public class SpscRing {
+
+	// Time waited by producer between two checks, when ring is full.
+	private final static long STALL_WAIT_NANOS = 50000L;
+	// Maximum time waited by consumer between two checks, when ring is empty.
+	private final static long IDLE_WAIT_NANOS = 10000000L;
+
+	private int mask;
+	private byte[][] slots;
+	private int[] lengths;
+	private long[] timestamps;
+	private long[] wallTimes;
+
+	// Sequence number of next slot to be taken by consumer.
+	private AtomicLong head;
+	// Sequence number of next slot to be published by producer.
+	private AtomicLong tail;
+
+	private volatile Thread consumer;
+	private volatile boolean consumerWaiting;
+
+	private AtomicLong stallCount;
+
+	/**
+	 *
+	 * @param nbSlots number of slots, rounded up to a power of 2
+	 * @param slotSize size of every slot, in bytes
+	 */
+	public SpscRing(int nbSlots, int slotSize) {
+
+		int capacity = Integer.highestOneBit(Math.max(nbSlots - 1, 1)) << 1;
+		mask = capacity - 1;
+		slots = new byte[capacity][slotSize];
+		lengths = new int[capacity];
+		timestamps = new long[capacity];
+		wallTimes = new long[capacity];
+		head = new AtomicLong(0);
+		tail = new AtomicLong(0);
+		consumerWaiting = false;
+		stallCount = new AtomicLong(0);
+
+	}
+
+	/**
+	 * For producer. Waits until a slot is free.
+	 *
+	 * @return index of claimed slot, or -1 if current thread is interrupted
+	 */
+	public int claim() {
+
+		long t = tail.get();
+		if (t - head.get() > mask) {
+			stallCount.incrementAndGet();
+			while (t - head.get() > mask) {
+				LockSupport.parkNanos(STALL_WAIT_NANOS);
+				if (Thread.currentThread().isInterrupted()) {
+					return -1;
+				}
+			}
+		}
+		return (int)(t & mask);
+
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return buffer of slot
+	 */
+	public byte[] getSlot(int index) {
+
+		return slots[index];
+
+	}
+
+	/**
+	 * For producer. Makes claimed slot available to consumer.
+	 *
+	 * @param index index returned by claim()
+	 * @param length number of bytes stored in slot
+	 * @param timestamp time associated to slot contents, e.g. reception time, as
+	 *        given by System.nanoTime()
+	 * @param wallTime same time, in ms since epoch
+	 */
+	public void publish(int index, int length, long timestamp, long wallTime) {
+
+		lengths[index] = length;
+		timestamps[index] = timestamp;
+		wallTimes[index] = wallTime;
+		tail.set(tail.get() + 1);
+		if (consumerWaiting) {
+			LockSupport.unpark(consumer);
+		}
+
+	}
+
+	/**
+	 * For consumer. Waits until a slot is published.
+	 *
+	 * @return index of oldest published slot, or -1 if current thread is interrupted
+	 */
+	public int take() {
+
+		long h = head.get();
+		if (h == tail.get()) {
+			consumer = Thread.currentThread();
+			while (h == tail.get()) {
+				consumerWaiting = true;
+				if (h == tail.get()) {
+					LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+				}
+				consumerWaiting = false;
+				if (Thread.currentThread().isInterrupted()) {
+					return -1;
+				}
+			}
+		}
+		return (int)(h & mask);
+
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return number of bytes stored in slot
+	 */
+	public int getLength(int index) {
+
+		return lengths[index];
+
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return time associated to slot contents
+	 */
+	public long getTimestamp(int index) {
+
+		return timestamps[index];
+
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return time associated to slot contents, in ms since epoch
+	 */
+	public long getWallTime(int index) {
+
+		return wallTimes[index];
+
+	}
+
+	/**
+	 * For consumer. Gives back slot returned by take().
+	 */
+	public void release() {
+
+		head.lazySet(head.get() + 1);
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 *
+	 * @return number of published slots not released yet
+	 */
+	public int getDepth() {
+
+		long h = head.get();
+		return (int)(tail.get() - h);
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 *
+	 * @return number of times producer had to wait for a free slot
+	 */
+	public long getStallCount() {
+
+		return stallCount.get();
+
+	}
+
+	/**
+	 *
+	 * @return size of every slot
+	 */
+	public int getSlotSize() {
+
+		return slots[0].length;
+
+	}
+
+}
@@ -0,0 +1,414 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.collections.ObservableList;
+import javafx.event.EventHandler;
+import javafx.geometry.Point2D;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.util.StringConverter;
+
+/**
+ *
+ * Chart of the temperatures of every remote device, of every source, able to
+ * display days of readings.
+ *
+ * Readings are kept in a time series per displayed remote device, named as
+ * given by DisplayFrameSink.getSeriesName(). Series are added when their first
+ * reading is received, and removed on request, e.g. when their device is idle.
+ * The chart only displays a
+ * decimated view of them, with at most two points per pixel column of the
+ * time axis, so that the scene graph holds O(chart width) points whatever the
+ * number of readings. Points of a series are updated in place. The view is
+ * refreshed at most once per refresh period when readings are received, not
+ * for every reading.
+ *
+ * By default, the whole history is displayed, and the view follows new
+ * readings. Dragging the chart pans it, the mouse wheel zooms around the
+ * cursor, and a double click returns to the default view. While the end of the
+ * view is the latest reading, the view keeps following new readings.
+ *
+ * readingReceived() and removeSeries() can be called from any context. Other
+ * methods must be called from FX application context.
+ *
+ */
+public class TemperatureChart extends LineChart<Number, Number> {
+
+	// Readings kept per series: 6 days at one reading per second. Histories
+	// grow as readings are received, see TimeSeries.
+	private final static int HISTORY_CAPACITY = 524288;
+	// Minimum time between two refreshes triggered by readings, in ns.
+	private final static long REFRESH_PERIOD = 250000000L;
+	// Shortest view, in ms.
+	private final static long MIN_SPAN = 10000L;
+	// Number of columns when the chart has not been laid out yet.
+	private final static int DEFAULT_NB_COLUMNS = 600;
+	private final static int NB_TICKS = 6;
+	// Zoom factor for one step of the mouse wheel.
+	private final static double ZOOM_FACTOR = 1.25;
+	private final static double SCROLL_STEP = 40.0;
+	private final static long MS_PER_DAY = 86400000L;
+
+	private final NumberAxis timeAxis;
+
+	// Histories, by series name.
+	private final ConcurrentHashMap<String, TimeSeries> histories;
+	// Set when a reading is added to a history.
+	private final AtomicBoolean modified;
+
+	// Displayed series, by series name.
+	private final HashMap<String, XYChart.Series<Number, Number>> series;
+	private long lastRefresh;
+	// Scratch buffers receiving decimated histories.
+	private long[] times;
+	private float[] values;
+
+	// When following, the view ends at the latest reading, and lasts viewSpan
+	// ms, or starts at the oldest reading if viewSpan is 0. Otherwise, the view
+	// is from viewFrom to viewTo.
+	private boolean following;
+	private long viewSpan;
+	private long viewFrom;
+	private long viewTo;
+	// Currently displayed view.
+	private long from;
+	private long to;
+	private double dragX;
+
+	private final SimpleDateFormat timeFormat;
+	private final SimpleDateFormat dateTimeFormat;
+	private SimpleDateFormat tickFormat;
+	private final Date date;
+
+	/**
+	 *
+	 */
+	public TemperatureChart() {
+
+		super(new NumberAxis(), new NumberAxis());
+
+		histories = new ConcurrentHashMap<String, TimeSeries>();
+		modified = new AtomicBoolean(false);
+		series = new HashMap<String, XYChart.Series<Number, Number>>();
+		lastRefresh = 0;
+		times = new long[0];
+		values = new float[0];
+		following = true;
+		viewSpan = 0;
+
+		timeFormat = new SimpleDateFormat("HH:mm:ss");
+		dateTimeFormat = new SimpleDateFormat("dd/MM HH:mm");
+		tickFormat = timeFormat;
+		date = new Date();
+
+		timeAxis = (NumberAxis)getXAxis();
+		timeAxis.setAutoRanging(false);
+		timeAxis.setAnimated(false);
+		timeAxis.setTickLabelFormatter(new StringConverter<Number>() {
+
+			@Override
+			public String toString(Number object) {
+
+				date.setTime(object.longValue());
+				return tickFormat.format(date);
+
+			}
+
+			@Override
+			public Number fromString(String string) {
+
+				return null;
+
+			}
+
+		});
+		NumberAxis temperatureAxis = (NumberAxis)getYAxis();
+		temperatureAxis.setForceZeroInRange(false);
+		temperatureAxis.setAnimated(false);
+		temperatureAxis.setLabel("\u00B0C");
+		setAnimated(false);
+		setCreateSymbols(false);
+
+		setOnMousePressed(new EventHandler<MouseEvent>() {
+
+			@Override
+			public void handle(MouseEvent event) {
+
+				dragX = event.getX();
+
+			}
+
+		});
+
+		setOnMouseDragged(new EventHandler<MouseEvent>() {
+
+			@Override
+			public void handle(MouseEvent event) {
+
+				double width = timeAxis.getWidth();
+				if (width <= 0) {
+					return;
+				}
+				long shift = (long)((event.getX() - dragX) * (to - from) / width);
+				dragX = event.getX();
+				setView(from - shift, to - shift);
+
+			}
+
+		});
+
+		setOnScroll(new EventHandler<ScrollEvent>() {
+
+			@Override
+			public void handle(ScrollEvent event) {
+
+				if ((event.getDeltaY() == 0) || (to <= from)) {
+					return;
+				}
+				double factor = Math.pow(ZOOM_FACTOR, -event.getDeltaY() / SCROLL_STEP);
+				Point2D p = timeAxis.sceneToLocal(event.getSceneX(), event.getSceneY());
+				long t = timeAxis.getValueForDisplay(p.getX()).longValue();
+				t = Math.max(from, Math.min(to, t));
+				setView(t - (long)((t - from) * factor), t + (long)((to - t) * factor));
+
+			}
+
+		});
+
+		setOnMouseClicked(new EventHandler<MouseEvent>() {
+
+			@Override
+			public void handle(MouseEvent event) {
+
+				if ((event.getButton() == MouseButton.PRIMARY) && (event.getClickCount() == 2)) {
+					following = true;
+					viewSpan = 0;
+					redraw();
+				}
+
+			}
+
+		});
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 *
+	 * @param source name of the series, see DisplayFrameSink.getSeriesName()
+	 * @param time in ms since epoch
+	 * @param temperature in degrees Celsius
+	 */
+	public void readingReceived(String source, long time, float temperature) {
+
+		TimeSeries history = histories.get(source);
+		if (history == null) {
+			histories.putIfAbsent(source, new TimeSeries(HISTORY_CAPACITY));
+			history = histories.get(source);
+		}
+		history.add(time, temperature);
+		modified.set(true);
+
+	}
+
+	/**
+	 * Can be called from any context. Series disappears from the chart at next
+	 * refresh.
+	 *
+	 * @param source name of the series, see DisplayFrameSink.getSeriesName()
+	 */
+	public void removeSeries(String source) {
+
+		if (histories.remove(source) != null) {
+			modified.set(true);
+		}
+
+	}
+
+	/**
+	 * Redraws the chart if readings were received since last refresh, and if
+	 * last refresh is older than the refresh period.
+	 *
+	 * @param now current time, in ns, as given to animation timers
+	 * @return true if a refresh is still pending
+	 */
+	public boolean refresh(long now) {
+
+		if (!modified.get()) {
+			return false;
+		}
+		if (now - lastRefresh < REFRESH_PERIOD) {
+			return true;
+		}
+		lastRefresh = now;
+		modified.set(false);
+		redraw();
+		return false;
+
+	}
+
+	/**
+	 * Called when the user pans or zooms.
+	 *
+	 * @param newFrom
+	 * @param newTo
+	 */
+	private void setView(long newFrom, long newTo) {
+
+		if (newTo - newFrom < MIN_SPAN) {
+			newFrom = newTo - MIN_SPAN;
+		}
+		if (newTo >= getLatestTime()) {
+			following = true;
+			viewSpan = newTo - newFrom;
+		} else {
+			following = false;
+			viewFrom = newFrom;
+			viewTo = newTo;
+		}
+		redraw();
+
+	}
+
+	/**
+	 * Decimates every history over current view, and updates displayed series.
+	 */
+	private void redraw() {
+
+		Iterator<Map.Entry<String, XYChart.Series<Number, Number>>> it = series.entrySet().iterator();
+		Map.Entry<String, XYChart.Series<Number, Number>> displayed;
+		while (it.hasNext()) {
+			displayed = it.next();
+			if (!histories.containsKey(displayed.getKey())) {
+				getData().remove(displayed.getValue());
+				it.remove();
+			}
+		}
+
+		long latest = getLatestTime();
+		if (latest == Long.MIN_VALUE) {
+			return;
+		}
+		if (following) {
+			to = latest;
+			if (viewSpan == 0) {
+				from = latest;
+				for (TimeSeries history: histories.values()) {
+					from = Math.min(from, history.getFirstTime());
+				}
+			} else {
+				from = to - viewSpan;
+			}
+		} else {
+			from = viewFrom;
+			to = viewTo;
+		}
+		if (to - from < MIN_SPAN) {
+			from = to - MIN_SPAN;
+		}
+
+		int nbColumns = (int)timeAxis.getWidth();
+		if (nbColumns <= 0) {
+			nbColumns = DEFAULT_NB_COLUMNS;
+		}
+		if (times.length < 2 * nbColumns + 2) {
+			times = new long[2 * nbColumns + 2];
+			values = new float[2 * nbColumns + 2];
+		}
+		for (Map.Entry<String, TimeSeries> entry: histories.entrySet()) {
+			XYChart.Series<Number, Number> s = series.get(entry.getKey());
+			if (s == null) {
+				s = new XYChart.Series<Number, Number>();
+				s.setName(entry.getKey());
+				series.put(entry.getKey(), s);
+				getData().add(s);
+			}
+			int n = entry.getValue().decimate(from, to, nbColumns, times, values);
+			update(s.getData(), n);
+		}
+
+		tickFormat = (to - from > MS_PER_DAY) ? dateTimeFormat : timeFormat;
+		timeAxis.setLowerBound(from);
+		timeAxis.setUpperBound(to);
+		timeAxis.setTickUnit((double)(to - from) / NB_TICKS);
+
+	}
+
+	/**
+	 * Updates points of a series from scratch buffers, reusing existing points.
+	 *
+	 * @param data
+	 * @param n number of points in scratch buffers
+	 */
+	private void update(ObservableList<XYChart.Data<Number, Number>> data, int n) {
+
+		int existing = data.size();
+		int i;
+		for (i = 0; (i < n) && (i < existing); i++) {
+			XYChart.Data<Number, Number> point = data.get(i);
+			point.setXValue(times[i]);
+			point.setYValue(values[i]);
+		}
+		if (n < existing) {
+			data.remove(n, existing);
+		} else if (n > existing) {
+			ArrayList<XYChart.Data<Number, Number>> added =
+					new ArrayList<XYChart.Data<Number, Number>>(n - existing);
+			for (; i < n; i++) {
+				added.add(new XYChart.Data<Number, Number>(times[i], values[i]));
+			}
+			data.addAll(added);
+		}
+
+	}
+
+	/**
+	 *
+	 * @return time of latest reading of all sources, Long.MIN_VALUE if none
+	 */
+	private long getLatestTime() {
+
+		long latest = Long.MIN_VALUE;
+		for (TimeSeries history: histories.values()) {
+			latest = Math.max(latest, history.getLastTime());
+		}
+		return latest;
+
+	}
+
+}
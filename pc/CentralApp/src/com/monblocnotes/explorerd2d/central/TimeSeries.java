@@ -0,0 +1,359 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.util.Arrays;
+
+/**
+ *
+ * History of the values of a variable, as time and value pairs, stored in a
+ * circular buffer of fixed capacity: once it is full, oldest values are
+ * overwritten. Buffer starts small, and is doubled as values are added, until
+ * it reaches its capacity. Times are expected in increasing order; an earlier time is
+ * replaced by last time, so that history can be searched by dichotomy.
+ *
+ * To be displayed, history is decimated: it is divided into columns, usually
+ * one per pixel, and only the minimum and maximum values of every column are
+ * kept, in their time order. Shape of the curve is preserved, including peaks,
+ * with at most two points per column, whatever the number of values.
+ * Minimum and maximum of every block of consecutive values are maintained as
+ * values are added, so that decimation skips whole blocks when columns hold
+ * many values.
+ *
+ * Can be used from any context.
+ *
+ */
+public class TimeSeries {
+
+	private final static int BLOCK_SIZE = 32;
+	private final static int INITIAL_CAPACITY = 1024;
+
+	private long[] times;
+	private float[] values;
+	// Current length of buffers.
+	private int capacity;
+	private final int maxCapacity;
+	// Index of slot where next value will be stored.
+	private int head;
+	private int size;
+	// Incremented every time a value is added. It is also the sequence number
+	// of next value. Value of sequence number seq is stored at index
+	// seq % capacity.
+	private long version;
+	// Sequence numbers of minimum and maximum values of blocks. Block of
+	// sequence number seq is at index (seq / BLOCK_SIZE) % number of blocks.
+	private long[] blockMins;
+	private long[] blockMaxs;
+
+	/**
+	 *
+	 * @param capacity maximum number of values kept
+	 */
+	public TimeSeries(int capacity) {
+
+		maxCapacity = capacity;
+		this.capacity = Math.min(capacity, INITIAL_CAPACITY);
+		times = new long[this.capacity];
+		values = new float[capacity];
+		blockMins = new long[this.capacity / BLOCK_SIZE + 1];
+		blockMaxs = new long[blockMins.length];
+		head = 0;
+		size = 0;
+		version = 0;
+
+	}
+
+	/**
+	 *
+	 * @param time
+	 * @param value
+	 */
+	public synchronized void add(long time, float value) {
+
+		if ((size > 0) && (time < times[index(size - 1)])) {
+			time = times[index(size - 1)];
+		}
+		times[head] = time;
+		values[head] = value;
+		int block = (int)((version / BLOCK_SIZE) % blockMins.length);
+		if (version % BLOCK_SIZE == 0) {
+			blockMins[block] = version;
+			blockMaxs[block] = version;
+		} else if (value < values[(int)(blockMins[block] % capacity)]) {
+			blockMins[block] = version;
+		} else if (value > values[(int)(blockMaxs[block] % capacity)]) {
+			blockMaxs[block] = version;
+		}
+		head++;
+		if (head == capacity) {
+			if (capacity < maxCapacity) {
+				grow();
+			} else {
+				head = 0;
+			}
+		}
+		if (size < capacity) {
+			size++;
+		}
+		version++;
+
+	}
+
+	/**
+	 * Doubles buffers, up to maximum capacity. Called when buffers are full for
+	 * the first time: values, and blocks, are still stored at the index of their
+	 * sequence number, which remains valid.
+	 */
+	private void grow() {
+
+		capacity = (int)Math.min((long)capacity * 2, maxCapacity);
+		times = Arrays.copyOf(times, capacity);
+		values = Arrays.copyOf(values, capacity);
+		blockMins = Arrays.copyOf(blockMins, capacity / BLOCK_SIZE + 1);
+		blockMaxs = Arrays.copyOf(blockMaxs, blockMins.length);
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public synchronized int size() {
+
+		return size;
+
+	}
+
+	/**
+	 *
+	 * @return number of values added since creation. Can be used to know whether
+	 * the series was modified
+	 */
+	public synchronized long getVersion() {
+
+		return version;
+
+	}
+
+	/**
+	 *
+	 * @return time of oldest value, Long.MAX_VALUE if there is no value
+	 */
+	public synchronized long getFirstTime() {
+
+		return (size == 0) ? Long.MAX_VALUE : times[index(0)];
+
+	}
+
+	/**
+	 *
+	 * @return time of most recent value, Long.MIN_VALUE if there is no value
+	 */
+	public synchronized long getLastTime() {
+
+		return (size == 0) ? Long.MIN_VALUE : times[index(size - 1)];
+
+	}
+
+	/**
+	 * Decimates values between two times. Last value before from, and first value
+	 * after to, are added, so that a curve drawn from points reaches the edges.
+	 * Cost is proportional to the number of values between the two times.
+	 *
+	 * @param from
+	 * @param to
+	 * @param nbColumns
+	 * @param outTimes receives times of points. Length must be at least
+	 *        2 * nbColumns + 2
+	 * @param outValues receives values of points. Same length as outTimes
+	 * @return number of points
+	 */
+	public synchronized int decimate(long from, long to, int nbColumns, long[] outTimes,
+			float[] outValues) {
+
+		if ((size == 0) || (to <= from) || (nbColumns <= 0)) {
+			return 0;
+		}
+		int first = search(from);
+		int last = search(to + 1);
+		int n = 0;
+		if (first > 0) {
+			n = put(first - 1, outTimes, outValues, n);
+		}
+		double columnDuration = (double)(to - from) / nbColumns;
+		// Sequence number of logical index 0.
+		long base = version - size;
+		int column = -1;
+		int minIndex = 0;
+		int maxIndex = 0;
+		int c;
+		int j = first;
+		while (j < last) {
+			c = getColumn(j, from, columnDuration, nbColumns);
+			if (c != column) {
+				if (column >= 0) {
+					n = putColumn(minIndex, maxIndex, outTimes, outValues, n);
+				}
+				column = c;
+				minIndex = j;
+				maxIndex = j;
+			}
+			if (((base + j) % BLOCK_SIZE == 0) && (j + BLOCK_SIZE <= last)
+					&& (getColumn(j + BLOCK_SIZE - 1, from, columnDuration, nbColumns) == c)) {
+				// Whole block in the column.
+				int block = (int)(((base + j) / BLOCK_SIZE) % blockMins.length);
+				minIndex = min(minIndex, (int)(blockMins[block] - base));
+				maxIndex = max(maxIndex, (int)(blockMaxs[block] - base));
+				j += BLOCK_SIZE;
+			} else {
+				minIndex = min(minIndex, j);
+				maxIndex = max(maxIndex, j);
+				j++;
+			}
+		}
+		if (column >= 0) {
+			n = putColumn(minIndex, maxIndex, outTimes, outValues, n);
+		}
+		if (last < size) {
+			n = put(last, outTimes, outValues, n);
+		}
+		return n;
+
+	}
+
+	/**
+	 *
+	 * @param j logical index
+	 * @param from
+	 * @param columnDuration
+	 * @param nbColumns
+	 * @return column of value
+	 */
+	private int getColumn(int j, long from, double columnDuration, int nbColumns) {
+
+		int c = (int)((times[index(j)] - from) / columnDuration);
+		// Value at time to belongs to last column.
+		return (c < nbColumns) ? c : nbColumns - 1;
+
+	}
+
+	/**
+	 *
+	 * @param j1 logical index
+	 * @param j2 logical index
+	 * @return logical index of lower value
+	 */
+	private int min(int j1, int j2) {
+
+		return (values[index(j2)] < values[index(j1)]) ? j2 : j1;
+
+	}
+
+	/**
+	 *
+	 * @param j1 logical index
+	 * @param j2 logical index
+	 * @return logical index of higher value
+	 */
+	private int max(int j1, int j2) {
+
+		return (values[index(j2)] > values[index(j1)]) ? j2 : j1;
+
+	}
+
+	/**
+	 *
+	 * @param minIndex
+	 * @param maxIndex
+	 * @param outTimes
+	 * @param outValues
+	 * @param n
+	 * @return
+	 */
+	private int putColumn(int minIndex, int maxIndex, long[] outTimes, float[] outValues, int n) {
+
+		if (minIndex == maxIndex) {
+			return put(minIndex, outTimes, outValues, n);
+		}
+		if (minIndex < maxIndex) {
+			n = put(minIndex, outTimes, outValues, n);
+			return put(maxIndex, outTimes, outValues, n);
+		}
+		n = put(maxIndex, outTimes, outValues, n);
+		return put(minIndex, outTimes, outValues, n);
+
+	}
+
+	/**
+	 *
+	 * @param j logical index, 0 being oldest value
+	 * @param outTimes
+	 * @param outValues
+	 * @param n
+	 * @return
+	 */
+	private int put(int j, long[] outTimes, float[] outValues, int n) {
+
+		int i = index(j);
+		outTimes[n] = times[i];
+		outValues[n] = values[i];
+		return n + 1;
+
+	}
+
+	/**
+	 *
+	 * @param time
+	 * @return logical index of first value at or after time, size if none
+	 */
+	private int search(long time) {
+
+		int low = 0;
+		int high = size;
+		int middle;
+		while (low < high) {
+			middle = (low + high) >>> 1;
+			if (times[index(middle)] < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+
+	}
+
+	/**
+	 *
+	 * @param j logical index, 0 being oldest value
+	 * @return index in buffers
+	 */
+	private int index(int j) {
+
+		int i = head - size + j;
+		return (i < 0) ? i + capacity : i;
+
+	}
+
+}
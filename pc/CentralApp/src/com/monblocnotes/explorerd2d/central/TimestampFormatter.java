@@ -0,0 +1,98 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ *
+ * Formats times given in ms since epoch, as a date pattern followed by
+ * milliseconds, e.g. HH:mm:ss.SSS. The part given by the date pattern is
+ * rendered once per second, and kept: formatting a time in the same second
+ * as the previous one only appends milliseconds.
+ *
+ * Not thread-safe: each thread must use its own formatter.
+ *
+ */
+public class TimestampFormatter {
+
+	private SimpleDateFormat secondFormat;
+	private Date date;
+	// Second, in s since epoch, rendered in prefix.
+	private long second;
+	private String prefix;
+
+	/**
+	 *
+	 * @param secondPattern SimpleDateFormat pattern, with a resolution of one
+	 *        second at most, e.g. HH:mm:ss
+	 */
+	public TimestampFormatter(String secondPattern) {
+
+		secondFormat = new SimpleDateFormat(secondPattern);
+		date = new Date();
+		second = Long.MIN_VALUE;
+		prefix = "";
+
+	}
+
+	/**
+	 *
+	 * @param time in ms since epoch
+	 * @param sb where formatted time is appended
+	 * @return sb
+	 */
+	public StringBuilder format(long time, StringBuilder sb) {
+
+		long s = Math.floorDiv(time, 1000L);
+		if (s != second) {
+			date.setTime(s * 1000L);
+			prefix = secondFormat.format(date);
+			second = s;
+		}
+		int ms = (int)(time - s * 1000L);
+		sb.append(prefix).append('.');
+		if (ms < 100) {
+			sb.append('0');
+		}
+		if (ms < 10) {
+			sb.append('0');
+		}
+		return sb.append(ms);
+
+	}
+
+	/**
+	 *
+	 * @param time in ms since epoch
+	 * @return formatted time
+	 */
+	public String format(long time) {
+
+		return format(time, new StringBuilder(prefix.length() + 4)).toString();
+
+	}
+
+}
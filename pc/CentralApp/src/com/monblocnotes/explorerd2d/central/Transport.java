@@ -0,0 +1,70 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ *
+ * Byte link to a central device, used by a port handler: a serial port, a
+ * named pipe or pseudo terminal, or an in-memory link to a simulated device.
+ *
+ */
+public interface Transport {
+
+	/**
+	 *
+	 * @return name of the transport, used as source name of received frames
+	 */
+	public String getName();
+
+	/**
+	 * Opens the transport. Called once, before streams are used. Errors are
+	 * displayed using displayMessage.displayLog().
+	 * @param displayMessage
+	 * @return 0 on success, a negative error code otherwise (see
+	 *         PortHandler.setSerialPort())
+	 */
+	public int open(DisplayMessage displayMessage);
+
+	/**
+	 * Reads should return after a bounded time, even when nothing is received,
+	 * so that the reader thread can check whether it has to stop.
+	 * @return stream of bytes received from the central device
+	 */
+	public InputStream getInputStream();
+
+	/**
+	 *
+	 * @return stream of bytes sent to the central device
+	 */
+	public OutputStream getOutputStream();
+
+	/**
+	 * Can be called from any context.
+	 */
+	public void close();
+
+}
@@ -0,0 +1,185 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+/**
+ *
+ * Metrics of user interface updates, maintained by the UI update dispatcher.
+ *
+ */
+public class UiMetrics implements UiMetricsMBean {
+
+	private final static String MBEAN_TYPE = "UserInterface";
+	private final static long NS_PER_US = 1000L;
+
+	final LongAdder framesPosted = new LongAdder();
+	final LongAdder framesDisplayed = new LongAdder();
+	final LongAdder logMsgsPosted = new LongAdder();
+	final LongAdder logMsgsDisplayed = new LongAdder();
+	final LongAdder logMsgsDropped = new LongAdder();
+	final LongAdder temperaturesDisplayed = new LongAdder();
+	final LongAdder temperaturesDropped = new LongAdder();
+	final LatencyHistogram renderLatency = new LatencyHistogram();
+
+	private volatile BoundedFrameQueue frameQueue;
+	private ObjectName objectName;
+
+	/**
+	 *
+	 * @param frameQueue queue of frames waiting to be displayed
+	 */
+	void setFrameQueue(BoundedFrameQueue frameQueue) {
+
+		this.frameQueue = frameQueue;
+
+	}
+
+	/**
+	 * Publishes metrics through JMX.
+	 */
+	public synchronized void register() {
+
+		MetricsRegistry.unregister(objectName);
+		objectName = MetricsRegistry.register(this, MBEAN_TYPE, null);
+
+	}
+
+	/**
+	 *
+	 */
+	public synchronized void unregister() {
+
+		MetricsRegistry.unregister(objectName);
+		objectName = null;
+
+	}
+
+	@Override
+	public long getFrameQueueDepth() {
+
+		// Read displayed count first, so that depth is never negative.
+		long displayed = framesDisplayed.sum();
+		return framesPosted.sum() - displayed;
+
+	}
+
+	@Override
+	public long getLogQueueDepth() {
+
+		long displayed = logMsgsDisplayed.sum();
+		return logMsgsPosted.sum() - displayed;
+
+	}
+
+	@Override
+	public long getFramesDisplayed() {
+
+		return framesDisplayed.sum();
+
+	}
+
+	@Override
+	public long getLogMsgsDisplayed() {
+
+		return logMsgsDisplayed.sum();
+
+	}
+
+	@Override
+	public long getFramesDropped() {
+
+		BoundedFrameQueue queue = frameQueue;
+		return (queue == null) ? 0 : queue.getDroppedCount();
+
+	}
+
+	@Override
+	public long getTraceFramesDropped() {
+
+		BoundedFrameQueue queue = frameQueue;
+		return (queue == null) ? 0 : queue.getDroppedTraceCount();
+
+	}
+
+	@Override
+	public long getLogMsgsDropped() {
+
+		return logMsgsDropped.sum();
+
+	}
+
+	@Override
+	public long getTemperaturesDisplayed() {
+
+		return temperaturesDisplayed.sum();
+
+	}
+
+	@Override
+	public long getTemperaturesDropped() {
+
+		return temperaturesDropped.sum();
+
+	}
+
+	@Override
+	public long getRenderLatencyCount() {
+
+		return renderLatency.getCount();
+
+	}
+
+	@Override
+	public double getRenderLatencyMean() {
+
+		return renderLatency.getMean() / NS_PER_US;
+
+	}
+
+	@Override
+	public long getRenderLatencyP50() {
+
+		return renderLatency.getPercentile(50) / NS_PER_US;
+
+	}
+
+	@Override
+	public long getRenderLatencyP99() {
+
+		return renderLatency.getPercentile(99) / NS_PER_US;
+
+	}
+
+	@Override
+	public long getRenderLatencyMax() {
+
+		return renderLatency.getMax() / NS_PER_US;
+
+	}
+
+}
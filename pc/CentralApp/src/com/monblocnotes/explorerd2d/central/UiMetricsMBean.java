@@ -0,0 +1,89 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+/**
+ *
+ * Metrics of user interface updates, published through JMX. Latencies are given
+ * in us (microseconds).
+ *
+ */
+public interface UiMetricsMBean {
+
+	/**
+	 *
+	 * @return number of frames waiting to be displayed
+	 */
+	public long getFrameQueueDepth();
+
+	/**
+	 *
+	 * @return number of log messages waiting to be displayed
+	 */
+	public long getLogQueueDepth();
+
+	public long getFramesDisplayed();
+
+	public long getLogMsgsDisplayed();
+
+	/**
+	 *
+	 * @return number of frames dropped because the user interface couldn't keep up
+	 */
+	public long getFramesDropped();
+
+	public long getTraceFramesDropped();
+
+	/**
+	 *
+	 * @return number of log messages dropped because the user interface couldn't
+	 *         keep up
+	 */
+	public long getLogMsgsDropped();
+
+	public long getTemperaturesDisplayed();
+
+	/**
+	 *
+	 * @return number of temperatures of remote devices that are not displayed,
+	 *         because too many devices are displayed
+	 */
+	public long getTemperaturesDropped();
+
+	/**
+	 *
+	 * @return number of latencies measured from end of decoding to display of
+	 *         frame, i.e. to the pulse that renders it
+	 */
+	public long getRenderLatencyCount();
+
+	public double getRenderLatencyMean();
+
+	public long getRenderLatencyP50();
+
+	public long getRenderLatencyP99();
+
+	public long getRenderLatencyMax();
+
+}
@@ -0,0 +1,405 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+/**
+ *
+ * Coalesces user interface updates requested from any thread. Requests are
+ * appended to bounded queues, and are applied from the FX application thread,
+ * once per pulse, by an animation timer. At most a given number of frames and
+ * of log messages is displayed per pulse. Only last requested temperature of
+ * every displayed remote device is displayed as text, while all its
+ * temperatures are added to the temperature chart, one series per displayed
+ * remote device, which is refreshed from the same pulses.
+ *
+ * A bounded number of remote devices, of every source, are displayed: the
+ * first ones temperatures are received from. A device that has not sent any
+ * temperature for some time is removed from the display, chart included, and
+ * its place is given to next new device. Temperatures of other devices are
+ * not displayed, and are counted into UI metrics.
+ *
+ * When the user interface can't keep up, frames are dropped according to an
+ * overload policy, and new log messages are dropped once their queue is full,
+ * so that decoding of frames is never slowed down by the display. Dropped
+ * frames and log messages are counted into UI metrics.
+ *
+ * The timer is stopped when there is nothing left to display, and is started
+ * again by next request. Consequently, at most one FX task is scheduled per
+ * burst of requests.
+ *
+ * Latency from posting of a frame, i.e. end of its decoding, to the pulse that
+ * displays it, is recorded into UI metrics.
+ *
+ */
+public class UiUpdateDispatcher extends AnimationTimer {
+
+	private UserInterfaceController controller;
+	private int maxBatchPerPulse;
+
+	// Value of temperature when there is no temperature to display. Temperature
+	// is stored as the raw int bits of a float, which can't be this value.
+	private final static long NO_TEMPERATURE = -1L;
+	// Same as number of default colors of chart series.
+	private final static int MAX_DISPLAYED_DEVICES = 8;
+	// A displayed device that has not sent any temperature for this time, in ms,
+	// can be replaced by another one.
+	private final static long DEVICE_IDLE_TIME = 600000L;
+
+	private final static Logger log = Logger.get(LogCategory.UI);
+
+	private static class LogMsg {
+		long time;
+		String text;
+	}
+
+	// A displayed remote device, with its last temperature and its reception
+	// time.
+	private static class DisplayedDevice {
+		final long key;
+		// Series name, see DisplayFrameSink.getSeriesName().
+		final String name;
+		final AtomicLong temp = new AtomicLong(NO_TEMPERATURE);
+		volatile long time;
+		// Set when device is no longer displayed.
+		volatile boolean removed;
+
+		DisplayedDevice(long key, String name) {
+			this.key = key;
+			this.name = name;
+		}
+	}
+
+	private BoundedFrameQueue frames;
+	private BoundedFrameQueue.Event frameEvent;
+	// Displayed before the content of frames, by source name. Only accessed from
+	// FX application context.
+	private HashMap<String, byte[]> framePrefixes;
+	private ConcurrentLinkedQueue<LogMsg> logMsgs;
+	private int maxLogMsgs;
+	private AtomicInteger logMsgCount;
+	// Displayed remote devices, see getKey(). Slots are only written with lock
+	// of the array held.
+	private AtomicReferenceArray<DisplayedDevice> devices;
+	// True once a device could not be displayed, so that it is logged once.
+	private boolean devicesFull;
+	private TemperatureChart temperatureChart;
+	// True when the temperature chart has readings not displayed yet.
+	private boolean chartPending;
+
+	// True when the timer is running, or is about to be started.
+	private AtomicBoolean active;
+	private Runnable starter;
+
+	private UiMetrics metrics;
+
+	/**
+	 *
+	 * @param controller
+	 * @param maxBatchPerPulse maximum number of frames, and of log messages,
+	 *        displayed per pulse
+	 * @param capacity maximum number of frames, and of log messages, waiting to
+	 *        be displayed
+	 * @param policy what is done with frames when their queue is full
+	 */
+	public UiUpdateDispatcher(UserInterfaceController controller, int maxBatchPerPulse,
+			int capacity, OverloadPolicy policy) {
+
+		this.controller = controller;
+		this.maxBatchPerPulse = maxBatchPerPulse;
+
+		frames = new BoundedFrameQueue(capacity, policy);
+		frameEvent = new BoundedFrameQueue.Event();
+		framePrefixes = new HashMap<String, byte[]>();
+		logMsgs = new ConcurrentLinkedQueue<LogMsg>();
+		maxLogMsgs = capacity;
+		logMsgCount = new AtomicInteger(0);
+		devices = new AtomicReferenceArray<DisplayedDevice>(MAX_DISPLAYED_DEVICES);
+		devicesFull = false;
+		temperatureChart = controller.getTemperatureChart();
+		chartPending = false;
+
+		active = new AtomicBoolean(false);
+		starter = new Runnable() {
+
+			@Override
+			public void run() {
+
+				start();
+
+			}
+
+		};
+
+		metrics = new UiMetrics();
+		metrics.setFrameQueue(frames);
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public UiMetrics getMetrics() {
+
+		return metrics;
+
+	}
+
+	/**
+	 * Can be called from any context. Frame is copied.
+	 * @param frame
+	 */
+	public void postFrame(Frame frame) {
+
+		if (frames.offer(frame, BoundedFrameQueue.EVENT_FRAME, 0, 0, 0)) {
+			metrics.framesPosted.increment();
+			wakeUp();
+		}
+
+	}
+
+	/**
+	 * Can be called from any context.
+	 * @param time time of the message, in ms since epoch
+	 * @param logMsg
+	 */
+	public void postLogMsg(long time, String logMsg) {
+
+		if (logMsgCount.incrementAndGet() > maxLogMsgs) {
+			logMsgCount.decrementAndGet();
+			metrics.logMsgsDropped.increment();
+			return;
+		}
+		LogMsg m = new LogMsg();
+		m.time = time;
+		m.text = logMsg;
+		logMsgs.offer(m);
+		metrics.logMsgsPosted.increment();
+		wakeUp();
+
+	}
+
+	/**
+	 * Can be called from any context. Replaces any temperature of same remote
+	 * device not displayed yet. Frame is valid only during the call.
+	 * @param frame gives source, remote device and reception time of the
+	 *        temperature
+	 * @param temp
+	 */
+	public void postTemperature(Frame frame, float temp) {
+
+		long time = frame.getWallTime();
+		DisplayedDevice device = getDevice(frame, time);
+		if (device == null) {
+			metrics.temperaturesDropped.increment();
+			return;
+		}
+		device.time = time;
+		device.temp.set(Float.floatToIntBits(temp) & 0xFFFFFFFFL);
+		temperatureChart.readingReceived(device.name, time, temp);
+		if (device.removed) {
+			// Device was replaced while its reading was added.
+			temperatureChart.removeSeries(device.name);
+		}
+		wakeUp();
+
+	}
+
+	/**
+	 *
+	 * @param frame
+	 * @param time reception time of frame, in ms since epoch
+	 * @return displayed device of frame, null if it can't be displayed
+	 */
+	private DisplayedDevice getDevice(Frame frame, long time) {
+
+		long key = getKey(frame);
+		DisplayedDevice device;
+		for (int i = 0; i < MAX_DISPLAYED_DEVICES; i++) {
+			device = devices.get(i);
+			if ((device != null) && (device.key == key)) {
+				return device;
+			}
+		}
+		synchronized (devices) {
+			int free = -1;
+			for (int i = 0; i < MAX_DISPLAYED_DEVICES; i++) {
+				device = devices.get(i);
+				if (device == null) {
+					if (free == -1) {
+						free = i;
+					}
+				} else if (device.key == key) {
+					return device;
+				} else if ((free == -1) && (time - device.time > DEVICE_IDLE_TIME)
+						&& (device.temp.get() == NO_TEMPERATURE)) {
+					free = i;
+				}
+			}
+			if (free == -1) {
+				if (!devicesFull) {
+					devicesFull = true;
+					log.warn("more than {} remote devices, {} is not displayed",
+							MAX_DISPLAYED_DEVICES,
+							DisplayFrameSink.getSeriesName(frame.getSourceName(), frame.getDeviceId()));
+				}
+				return null;
+			}
+			DisplayedDevice old = devices.get(free);
+			device = new DisplayedDevice(key,
+					DisplayFrameSink.getSeriesName(frame.getSourceName(), frame.getDeviceId()));
+			devices.set(free, device);
+			if (old != null) {
+				old.removed = true;
+				temperatureChart.removeSeries(old.name);
+			}
+			return device;
+		}
+
+	}
+
+	/**
+	 * Same key as DeviceRegistry.
+	 *
+	 * @param frame
+	 * @return key of remote device of frame, unique across sources
+	 */
+	private static long getKey(Frame frame) {
+
+		return ((long)frame.getSourceId() << 16) | (frame.getDeviceId() & 0xFFFF);
+
+	}
+
+	/**
+	 * Called from FX application thread, once per pulse.
+	 */
+	@Override
+	public void handle(long now) {
+
+		long temp;
+		DisplayedDevice device;
+		for (int i = 0; i < MAX_DISPLAYED_DEVICES; i++) {
+			device = devices.get(i);
+			if (device == null) {
+				continue;
+			}
+			temp = device.temp.getAndSet(NO_TEMPERATURE);
+			if (temp != NO_TEMPERATURE) {
+				controller.displayTemperature(device.name, device.time,
+						Float.intBitsToFloat((int)temp));
+				metrics.temperaturesDisplayed.increment();
+			}
+		}
+		chartPending = temperatureChart.refresh(now);
+
+		Frame f;
+		String source;
+		byte[] prefix;
+		long displayTime = System.nanoTime();
+		for (int i = 0; i < maxBatchPerPulse; i++) {
+			try {
+				if (!frames.poll(frameEvent, 0)) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				// Not possible without waiting.
+				break;
+			}
+			f = frameEvent.getFrame();
+			source = f.getSourceName();
+			prefix = framePrefixes.get(source);
+			if (prefix == null) {
+				prefix = (source + ": ").getBytes(StandardCharsets.ISO_8859_1);
+				framePrefixes.put(source, prefix);
+			}
+			controller.displayFrame(f.getWallTime(), f.copyContent(prefix));
+			metrics.renderLatency.record(displayTime - frameEvent.getPostTime());
+			metrics.framesDisplayed.increment();
+		}
+		LogMsg m;
+		for (int i = 0; i < maxBatchPerPulse; i++) {
+			m = logMsgs.poll();
+			if (m == null) {
+				break;
+			}
+			logMsgCount.decrementAndGet();
+			controller.displayLogMsg(m.time, m.text);
+			metrics.logMsgsDisplayed.increment();
+		}
+
+		if (isIdle()) {
+			stop();
+			active.set(false);
+			// A request may have been posted after above check, while timer
+			// was still seen as active.
+			if (!isIdle() && active.compareAndSet(false, true)) {
+				start();
+			}
+		}
+
+	}
+
+	/**
+	 *
+	 */
+	private void wakeUp() {
+
+		if (active.compareAndSet(false, true)) {
+			Platform.runLater(starter);
+		}
+
+	}
+
+	/**
+	 *
+	 * @return true if there is nothing left to display
+	 */
+	private boolean isIdle() {
+
+		if ((frames.size() != 0) || !logMsgs.isEmpty() || chartPending) {
+			return false;
+		}
+		DisplayedDevice device;
+		for (int i = 0; i < MAX_DISPLAYED_DEVICES; i++) {
+			device = devices.get(i);
+			if ((device != null) && (device.temp.get() != NO_TEMPERATURE)) {
+				return false;
+			}
+		}
+		return true;
+
+	}
+
+}
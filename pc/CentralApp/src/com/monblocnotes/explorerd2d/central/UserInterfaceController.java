@@ -24,9 +24,10 @@
 package com.monblocnotes.explorerd2d.central;
 
 import java.net.URL;
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
 import java.util.ResourceBundle;
 
 import javafx.collections.FXCollections;
@@ -38,14 +39,24 @@ import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
 import javafx.scene.text.Text;
 
 public class UserInterfaceController implements Initializable, EventHandler<ActionEvent> {
 
-	private final static int MAX_NB_FRAMES = 100;
-	private final static int MAX_NB_LOGMSGS = 100;
+	private final static int MAX_NB_FRAMES = 100000;
+	private final static int MAX_NB_LOGMSGS = 100000;
 
-	private final static String SEPARATOR = " - ";
+	// Fixed cell height, so that list views never have to render
+	// non-visible messages to compute their layout.
+	private final static double CELL_HEIGHT = 24.0;
+
+	private final static String SEPARATOR = ": ";
+
+	// Identifier of remote devices, in hexadecimal, as typed by the user.
+	private final static int MAX_DEVICE_ID = 0xFFFF;
+
+	private final static Logger log = Logger.get(LogCategory.UI);
 
 	@FXML private ComboBox<String> serialPortCB;
 	@FXML private Button setRemoteLedRBtn;
@@ -55,30 +66,34 @@ public class UserInterfaceController implements Initializable, EventHandler<Acti
 	@FXML private ListView<String> recFramesLV;
 	@FXML private ListView<String> logMsgsLV;
 	@FXML private Text temperatureTxt;
+	@FXML private TextField deviceIdTF;
+	@FXML private TemperatureChart temperatureChart;
 
-	private ObservableList<String> displayedFrames;
 	private ListViewMessages recFrames;
 
-	private ObservableList<String> displayedLogMsgs;
 	private ListViewMessages logMsgs;
 
 	private ProcessAction processAction;
 
-	private SimpleDateFormat timeFormat;
+	private DecimalFormat decimalFormat;
 
 	/**
 	 * For EventHandler<ActionEvent> interface.
 	 * Is called only by the combo box, when the user selects a serial port.
+	 * Several serial ports can be selected one after the other: they are all
+	 * handled. Commands are sent using last selected one.
 	 */
 	@Override
 	public void handle(ActionEvent event) {
 
+		if (serialPortCB.getValue() == null) {
+			// Selected port was removed from the list.
+			return;
+		}
 		if (processAction != null) {
 			processAction.serialPortValue(serialPortCB.getValue());
-			// User is no more allowed to modify serial port.
-			serialPortCB.setDisable(true);
 		} else {
-			displayLogMsg("internal error: processAction is null");
+			log.error("internal error: processAction is null");
 		}
 	}
 
@@ -93,10 +108,14 @@ public class UserInterfaceController implements Initializable, EventHandler<Acti
 			@Override
 			public void handle(ActionEvent event) {
 
+				int deviceId = getDeviceId();
+				if (deviceId < 0) {
+					return;
+				}
 				if (processAction != null) {
-					processAction.setRemoteLedR();
+					processAction.setRemoteLedR(deviceId);
 				} else {
-					displayLogMsg("internal error: processAction is null");
+					log.error("internal error: processAction is null");
 				}
 
 			}
@@ -107,10 +126,14 @@ public class UserInterfaceController implements Initializable, EventHandler<Acti
 			@Override
 			public void handle(ActionEvent event) {
 
+				int deviceId = getDeviceId();
+				if (deviceId < 0) {
+					return;
+				}
 				if (processAction != null) {
-					processAction.setRemoteLedG();
+					processAction.setRemoteLedG(deviceId);
 				} else {
-					displayLogMsg("internal error: processAction is null");
+					log.error("internal error: processAction is null");
 				}
 
 			}
@@ -121,10 +144,14 @@ public class UserInterfaceController implements Initializable, EventHandler<Acti
 			@Override
 			public void handle(ActionEvent event) {
 
+				int deviceId = getDeviceId();
+				if (deviceId < 0) {
+					return;
+				}
 				if (processAction != null) {
-					processAction.setRemoteLedB();
+					processAction.setRemoteLedB(deviceId);
 				} else {
-					displayLogMsg("internal error: processAction is null");
+					log.error("internal error: processAction is null");
 				}
 
 			}
@@ -135,24 +162,28 @@ public class UserInterfaceController implements Initializable, EventHandler<Acti
 			@Override
 			public void handle(ActionEvent event) {
 
+				int deviceId = getDeviceId();
+				if (deviceId < 0) {
+					return;
+				}
 				if (processAction != null) {
-					processAction.setRemoteLedOff();
+					processAction.setRemoteLedOff(deviceId);
 				} else {
-					displayLogMsg("internal error: processAction is null");
+					log.error("internal error: processAction is null");
 				}
 
 			}
 		});
 
 		// To display latest received frames.
-		displayedFrames = FXCollections.observableArrayList();
-		recFramesLV.setItems(displayedFrames);
-		recFrames = new ListViewMessages(displayedFrames, MAX_NB_FRAMES);
+		recFrames = new ListViewMessages(MAX_NB_FRAMES, StandardCharsets.ISO_8859_1);
+		recFramesLV.setFixedCellSize(CELL_HEIGHT);
+		recFramesLV.setItems(recFrames);
 
 		// To display latest log messages.
-		displayedLogMsgs = FXCollections.observableArrayList();
-		logMsgsLV.setItems(displayedLogMsgs);
-		logMsgs = new ListViewMessages(displayedLogMsgs, MAX_NB_LOGMSGS);
+		logMsgs = new ListViewMessages(MAX_NB_LOGMSGS, StandardCharsets.UTF_8);
+		logMsgsLV.setFixedCellSize(CELL_HEIGHT);
+		logMsgsLV.setItems(logMsgs);
 
 		// To get serial port selected by the user.
 		serialPortCB.setOnAction(this);
@@ -160,7 +191,7 @@ public class UserInterfaceController implements Initializable, EventHandler<Acti
 		// Setup button states.
 		enableActions(false);
 
-		timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+		decimalFormat = new DecimalFormat("#0.0");
 
 	}
 
@@ -170,9 +201,28 @@ public class UserInterfaceController implements Initializable, EventHandler<Acti
 	 */
 	public void displayFrame(String frame) {
 
-		Date currentTime = new Date();
-		String s = timeFormat.format(currentTime);
-		recFrames.addMessage(s + SEPARATOR + frame);
+		recFrames.addMessage(frame);
+
+	}
+
+	/**
+	 *
+	 * @param frame frame content, as received, i.e. without type
+	 */
+	public void displayFrame(byte[] frame) {
+
+		recFrames.addMessage(frame);
+
+	}
+
+	/**
+	 *
+	 * @param time reception time of the frame, in ms since epoch
+	 * @param frame frame content, as received, i.e. without type
+	 */
+	public void displayFrame(long time, byte[] frame) {
+
+		recFrames.addMessage(time, frame);
 
 	}
 
@@ -182,19 +232,64 @@ public class UserInterfaceController implements Initializable, EventHandler<Acti
 	 */
 	public void displayLogMsg(String logMsg) {
 
-		Date currentTime = new Date();
-		String s = timeFormat.format(currentTime);
-		logMsgs.addMessage(s + SEPARATOR + logMsg);
+		logMsgs.addMessage(logMsg);
 
 	}
 
 	/**
 	 *
-	 * @param temp
+	 * @param time time of the message, in ms since epoch
+	 * @param logMsg
 	 */
-	public void displayTemperature(String temp) {
+	public void displayLogMsg(long time, String logMsg) {
 
-		temperatureTxt.setText(temp);
+		logMsgs.addMessage(time, logMsg);
+
+	}
+
+	/**
+	 *
+	 * @param source name of the remote device the temperature was received
+	 *        from, see DisplayFrameSink.getSeriesName()
+	 * @param time reception time of the temperature, in ms since epoch
+	 * @param temp temperature in degrees Celsius
+	 */
+	public void displayTemperature(String source, long time, float temp) {
+
+		String temps = decimalFormat.format(temp) + "\u00B0C";
+		displayLogMsg(time, source + SEPARATOR + "temperature: " + temps);
+		temperatureTxt.setText(temps + " (" + source + ")");
+
+	}
+
+	/**
+	 * Identifier of the remote device LED commands are sent to, typed in hexadecimal.
+	 *
+	 * @return -1 if identifier is not valid
+	 */
+	private int getDeviceId() {
+
+		String text = deviceIdTF.getText().trim();
+		try {
+			int deviceId = Integer.parseInt(text, 16);
+			if ((deviceId >= 0) && (deviceId <= MAX_DEVICE_ID)) {
+				return deviceId;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below.
+		}
+		displayLogMsg("invalid device identifier: " + text);
+		return -1;
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	public TemperatureChart getTemperatureChart() {
+
+		return temperatureChart;
 
 	}
 
@@ -221,6 +316,7 @@ public class UserInterfaceController implements Initializable, EventHandler<Acti
 	}
 
 	/**
+	 * Ports are displayed in name order.
 	 *
 	 * @param portNameList
 	 */
@@ -228,10 +324,36 @@ public class UserInterfaceController implements Initializable, EventHandler<Acti
 
 		ObservableList<String> ol = FXCollections.observableArrayList();
 		ol.setAll(portNameList);
+		FXCollections.sort(ol);
 		serialPortCB.setItems(ol);
 
 	}
 
+	/**
+	 * Port is inserted in name order, unless it is already in the list.
+	 *
+	 * @param portName
+	 */
+	public void addSerialPort(String portName) {
+
+		ObservableList<String> ol = serialPortCB.getItems();
+		int i = Collections.binarySearch(ol, portName);
+		if (i < 0) {
+			ol.add(-i - 1, portName);
+		}
+
+	}
+
+	/**
+	 *
+	 * @param portName
+	 */
+	public void removeSerialPort(String portName) {
+
+		serialPortCB.getItems().remove(portName);
+
+	}
+
 	/**
 	 * How to process actions. Implemented by Main.
 	 */
@@ -239,13 +361,13 @@ public class UserInterfaceController implements Initializable, EventHandler<Acti
 
 		public void serialPortValue(String serialPortName);
 
-		public void setRemoteLedR();
+		public void setRemoteLedR(int deviceId);
 
-		public void setRemoteLedG();
+		public void setRemoteLedG(int deviceId);
 
-		public void setRemoteLedB();
+		public void setRemoteLedB(int deviceId);
 
-		public void setRemoteLedOff();
+		public void setRemoteLedOff(int deviceId);
 
 	}
 
@@ -0,0 +1,141 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ *
+ * Byte streams similar to what is received from the central device. Lines are
+ * taken from central.ino traces. A fixed seed is used, so that every run
+ * processes the same bytes.
+ *
+ */
+public class ByteStreams {
+
+	// Kinds of streams.
+	public static enum Kind {
+		// Mostly RN2483 command / response traces, as during a radio window.
+		TRACE_HEAVY,
+		// Mostly temperature frames from remote devices.
+		APPLICATION_HEAVY,
+		// As many traces as application frames.
+		MIXED,
+		// Mixed stream, with lost bytes, missing LF and too long lines.
+		CORRUPTED
+	};
+
+	private final static String[] TRACES = {
+			"T--------------------",
+			"T> radio set wdt 5000",
+			"T< ok",
+			"T> radio rx 0",
+			"T< ok",
+			"T< radio_err",
+			"T> radio tx 4C000152",
+			"T< ok",
+			"T< radio_tx_ok",
+			"T< radio_rx  54000100F4"
+	};
+	private final static String APPLICATION = "A540001";
+
+	private final static long SEED = 20180101L;
+
+	/**
+	 *
+	 * @param kind
+	 * @param nbFrames number of lines in stream
+	 * @return
+	 */
+	public static byte[] create(Kind kind, int nbFrames) {
+
+		Random random = new Random(SEED);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(nbFrames * 24);
+		int traceIndex = 0;
+		for (int i = 0; i < nbFrames; i++) {
+			boolean application;
+			switch (kind) {
+			case TRACE_HEAVY:
+				application = random.nextInt(20) == 0;
+				break;
+			case APPLICATION_HEAVY:
+				application = random.nextInt(20) != 0;
+				break;
+			default:
+				application = random.nextBoolean();
+			}
+			byte[] line;
+			if (application) {
+				// Raw ADC value, around 20 degrees Celsius.
+				int raw = 220 + random.nextInt(20);
+				line = String.format("%s%04X", APPLICATION, raw).getBytes(StandardCharsets.US_ASCII);
+			} else {
+				line = TRACES[traceIndex].getBytes(StandardCharsets.US_ASCII);
+				traceIndex = (traceIndex + 1) % TRACES.length;
+			}
+			if ((kind == Kind.CORRUPTED) && (random.nextInt(10) == 0)) {
+				corrupt(random, out, line);
+				continue;
+			}
+			out.write(line, 0, line.length);
+			out.write(0x0D);
+			out.write(0x0A);
+		}
+		return out.toByteArray();
+
+	}
+
+	/**
+	 * Writes a corrupted line.
+	 *
+	 * @param random
+	 * @param out
+	 * @param line
+	 */
+	private static void corrupt(Random random, ByteArrayOutputStream out, byte[] line) {
+
+		switch (random.nextInt(3)) {
+		case 0:
+			// Bytes lost: line is truncated, and merged with next one.
+			out.write(line, 0, random.nextInt(line.length));
+			break;
+		case 1:
+			// LF lost.
+			out.write(line, 0, line.length);
+			out.write(0x0D);
+			break;
+		default:
+			// Garbage, longer than maximum payload length.
+			for (int i = 0; i < 64; i++) {
+				out.write(0x20 + random.nextInt(0x5F));
+			}
+			out.write(0x0D);
+			out.write(0x0A);
+		}
+
+	}
+
+}
@@ -0,0 +1,141 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.monblocnotes.explorerd2d.central.Frame;
+import com.monblocnotes.explorerd2d.central.FrameHandler;
+import com.monblocnotes.explorerd2d.central.FrameListener;
+
+/**
+ *
+ * Frame assembly over streams received as chunks, as read from the serial port.
+ * One operation is one line of the stream.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameAssemblerBenchmark {
+
+	private final static int NB_FRAMES = 1000;
+
+	@Param({"TRACE_HEAVY", "APPLICATION_HEAVY", "MIXED", "CORRUPTED"})
+	public ByteStreams.Kind kind;
+
+	// 1 is what was read per serial port event before chunked reads.
+	@Param({"1", "64", "1024"})
+	public int chunkSize;
+
+	private byte[][] chunks;
+	private int[] lengths;
+	private NullDisplay display;
+	private FrameHandler frameHandler;
+	private long assembledBytes;
+	private FrameListener frameListener;
+
+	/**
+	 *
+	 */
+	@Setup
+	public void setup() {
+
+		byte[] stream = ByteStreams.create(kind, NB_FRAMES);
+		int nbChunks = (stream.length + chunkSize - 1) / chunkSize;
+		chunks = new byte[nbChunks][];
+		lengths = new int[nbChunks];
+		for (int i = 0; i < nbChunks; i++) {
+			int from = i * chunkSize;
+			int to = Math.min(from + chunkSize, stream.length);
+			// Same buffer size as the one used by ingest pipeline.
+			chunks[i] = Arrays.copyOf(Arrays.copyOfRange(stream, from, to), Math.max(chunkSize, 1024));
+			lengths[i] = to - from;
+		}
+		display = new NullDisplay();
+		frameHandler = new FrameHandler(display);
+		frameHandler.setSource(0, "bench");
+		frameListener = new FrameListener() {
+
+			@Override
+			public void frameAssembled(Frame frame) {
+
+				assembledBytes += frame.getLength();
+
+			}
+
+		};
+
+	}
+
+	/**
+	 * Assembly only: frames are given to a listener.
+	 *
+	 * @return
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NB_FRAMES)
+	public long assemble() {
+
+		for (int i = 0; i < chunks.length; i++) {
+			frameHandler.frameAssembler(chunks[i], lengths[i], frameListener);
+		}
+		return assembledBytes;
+
+	}
+
+	/**
+	 * Assembly followed by processing of every frame.
+	 *
+	 * @return
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NB_FRAMES)
+	public long assembleAndProcess() {
+
+		for (int i = 0; i < chunks.length; i++) {
+			frameHandler.frameAssembler(chunks[i], lengths[i]);
+		}
+		return display.frameBytes + display.logs;
+
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.monblocnotes.explorerd2d.central.Frame;
+import com.monblocnotes.explorerd2d.central.FrameHandler;
+
+/**
+ *
+ * Conversion of frames for display: as a string, and as the byte array posted
+ * to the user interface.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameToStringBenchmark {
+
+	private FrameHandler frameHandler;
+	private Frame shortFrame;
+	private Frame longFrame;
+	private byte[] prefix;
+
+	/**
+	 *
+	 */
+	@Setup
+	public void setup() {
+
+		frameHandler = new FrameHandler(new NullDisplay());
+		shortFrame = ProcessFrameBenchmark.createFrame("A54000100F4");
+		longFrame = ProcessFrameBenchmark.createFrame("T> radio set wdt 5000");
+		prefix = "/dev/ttyACM0: ".getBytes();
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	@Benchmark
+	public String frameToStringShort() {
+
+		return frameHandler.frameToString(shortFrame);
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	@Benchmark
+	public String frameToStringLong() {
+
+		return frameHandler.frameToString(longFrame);
+
+	}
+
+	/**
+	 * What is done for every frame displayed by the JavaFX application.
+	 *
+	 * @return
+	 */
+	@Benchmark
+	public byte[] copyContentWithPrefix() {
+
+		return longFrame.copyContent(prefix);
+
+	}
+
+}
@@ -0,0 +1,115 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.monblocnotes.explorerd2d.central.Frame;
+
+/**
+ *
+ * Decoding of hexadecimal ASCII digits, as used for application frames.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HexDecodingBenchmark {
+
+	private Frame upperCaseFrame;
+	private Frame lowerCaseFrame;
+	private int[] characters;
+
+	/**
+	 *
+	 */
+	@Setup
+	public void setup() {
+
+		upperCaseFrame = ProcessFrameBenchmark.createFrame("A54ABCD");
+		lowerCaseFrame = ProcessFrameBenchmark.createFrame("A54abcd");
+		characters = new int[256];
+		for (int i = 0; i < characters.length; i++) {
+			characters[i] = i;
+		}
+
+	}
+
+	/**
+	 * Raw value of a temperature frame, upper case digits.
+	 *
+	 * @return
+	 */
+	@Benchmark
+	public int getHexByteUpperCase() {
+
+		return upperCaseFrame.getHexByte(3) * 256 + upperCaseFrame.getHexByte(5);
+
+	}
+
+	/**
+	 * Raw value of a temperature frame, lower case digits.
+	 *
+	 * @return
+	 */
+	@Benchmark
+	public int getHexByteLowerCase() {
+
+		return lowerCaseFrame.getHexByte(3) * 256 + lowerCaseFrame.getHexByte(5);
+
+	}
+
+	/**
+	 * Every byte value, valid digit or not.
+	 *
+	 * @return
+	 */
+	@Benchmark
+	@OperationsPerInvocation(256)
+	public int hexDigitAllValues() {
+
+		int sum = 0;
+		for (int i = 0; i < characters.length; i++) {
+			sum += Frame.hexDigit(characters[i]);
+		}
+		return sum;
+
+	}
+
+}
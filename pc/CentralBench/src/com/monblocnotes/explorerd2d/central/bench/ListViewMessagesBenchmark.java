@@ -0,0 +1,133 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.monblocnotes.explorerd2d.central.ListViewMessages;
+
+import javafx.collections.ListChangeListener;
+
+/**
+ *
+ * Addition of messages to a full list displayed by a ListView, for several list
+ * sizes: every addition removes the oldest message. A change listener is
+ * registered, as done by the ListView. JavaFX toolkit is not required.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ListViewMessagesBenchmark {
+
+	// Maximum number of messages in list. UserInterfaceController uses 100000.
+	@Param({"100", "10000", "100000", "1000000"})
+	public int size;
+
+	private ListViewMessages listViewMessages;
+	private String message;
+	private byte[] frame;
+	private long changes;
+
+	/**
+	 *
+	 */
+	@Setup
+	public void setup() {
+
+		listViewMessages = new ListViewMessages(size, StandardCharsets.ISO_8859_1);
+		message = "/dev/ttyACM0: temperature: 20.1\u00B0C";
+		frame = "/dev/ttyACM0: > radio set wdt 5000".getBytes(StandardCharsets.ISO_8859_1);
+		for (int i = 0; i < size; i++) {
+			listViewMessages.addMessage(frame);
+		}
+		listViewMessages.addListener(new ListChangeListener<String>() {
+
+			@Override
+			public void onChanged(Change<? extends String> c) {
+
+				while (c.next()) {
+					changes += c.getAddedSize() + c.getRemovedSize();
+				}
+
+			}
+
+		});
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	@Benchmark
+	public long addMessageString() {
+
+		listViewMessages.addMessage(message);
+		return changes;
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	@Benchmark
+	public long addMessageBytes() {
+
+		listViewMessages.addMessage(frame);
+		return changes;
+
+	}
+
+	/**
+	 * Rendering of the last message, as done by a visible cell.
+	 *
+	 * @return
+	 */
+	@Benchmark
+	public String addMessageAndGet() {
+
+		listViewMessages.addMessage(frame);
+		return listViewMessages.get(listViewMessages.size() - 1);
+
+	}
+
+}
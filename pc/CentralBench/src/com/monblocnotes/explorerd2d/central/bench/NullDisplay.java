@@ -0,0 +1,72 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central.bench;
+
+import com.monblocnotes.explorerd2d.central.DisplayMessage;
+import com.monblocnotes.explorerd2d.central.Frame;
+
+/**
+ *
+ * Display that only counts calls, so that benchmarks measure frame handling and
+ * not display. Counters are read at the end of each iteration, to prevent dead
+ * code elimination.
+ *
+ */
+public class NullDisplay implements DisplayMessage {
+
+	public long logs;
+	public long frames;
+	public long frameBytes;
+	public float lastTemperature;
+
+	@Override
+	public void displayLog(String message) {
+
+		logs++;
+
+	}
+
+	@Override
+	public void displayFrame(String message) {
+
+		frames++;
+
+	}
+
+	@Override
+	public void displayFrameLater(Frame frame) {
+
+		frames++;
+		frameBytes += frame.getLength();
+
+	}
+
+	@Override
+	public void displayTemperature(Frame frame, float temp) {
+
+		lastTemperature = temp;
+
+	}
+
+}
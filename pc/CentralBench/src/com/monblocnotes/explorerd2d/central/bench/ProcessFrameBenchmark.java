@@ -0,0 +1,113 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2018 Pascal Bodin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.monblocnotes.explorerd2d.central.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.monblocnotes.explorerd2d.central.Frame;
+import com.monblocnotes.explorerd2d.central.FrameHandler;
+
+/**
+ *
+ * Decoding of assembled frames, and dispatch to frame sinks.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessFrameBenchmark {
+
+	private NullDisplay display;
+	private FrameHandler frameHandler;
+	private Frame traceFrame;
+	private Frame temperatureFrame;
+
+	/**
+	 *
+	 */
+	@Setup
+	public void setup() {
+
+		display = new NullDisplay();
+		frameHandler = new FrameHandler(display);
+		frameHandler.setSource(0, "bench");
+		traceFrame = createFrame("T< radio_rx  54000100F4");
+		temperatureFrame = createFrame("A54000100F4");
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	@Benchmark
+	public long processTraceFrame() {
+
+		frameHandler.processFrame(traceFrame);
+		return display.frames;
+
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	@Benchmark
+	public float processTemperatureFrame() {
+
+		frameHandler.processFrame(temperatureFrame);
+		return display.lastTemperature;
+
+	}
+
+	/**
+	 *
+	 * @param line
+	 * @return
+	 */
+	static Frame createFrame(String line) {
+
+		byte[] b = line.getBytes(StandardCharsets.US_ASCII);
+		Frame frame = new Frame();
+		frame.set(b, 0, b.length);
+		return frame;
+
+	}
+
+}